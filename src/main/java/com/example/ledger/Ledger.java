@@ -2,6 +2,8 @@ package com.example.ledger;
 
 import java.util.ArrayList;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -13,26 +15,59 @@ import java.util.List;
  */
 public class Ledger {
 
+  /** Capacity of ledgers created without one. */
+  public static final int DEFAULT_CAPACITY = 100;
+
   /** Array storing the ledger entries. */
   private final List<LedgerEntry> entries;
 
   /** Array storing the balances. */
   private final List<Integer> balances;
 
+  /** The ledger entries in the order they were added. */
+  private final List<LedgerEntry> addedOrder;
+
+  /**
+   * Position in addedOrder of each entry, in sorted order. Only the first
+   * entries.size() values are used. Kept up to date as entries are sorted
+   * into place, so the add order can be saved without sorting again.
+   */
+  private int[] addPositions = new int[0];
+
+  /** Whether every entry was added in sorted order. */
+  private boolean addedInOrder = true;
+
   /** Current balance of the ledger. */
   private int balance;
 
+  /**
+   * Sum of the mixed hash codes of the entries. Addition is commutative, so
+   * it is kept up to date as entries are added, in any order, without
+   * looking at the other entries.
+   */
+  private int contentHash;
+
   /** int representaion of the capacity of the ledger. */
   private final int capacity;
 
+  /**
+   * Journal new entries are written to as they are added, or null. Volatile
+   * so additions can check for it without taking the lock.
+   */
+  private volatile LedgerJournal journal;
+
+  /** Id of this ledger in the journal. Guarded by this ledger's lock. */
+  private String journalId;
+
   /**
    * Creates a ledger with default maximum size.
    */
   public Ledger() {
-    this.capacity = 100;
+    this.capacity = DEFAULT_CAPACITY;
     this.balance = 0;
     this.entries = new ArrayList<>();
     this.balances = new ArrayList<>();
+    this.addedOrder = new ArrayList<>();
   }
 
   /**
@@ -49,6 +84,7 @@ public class Ledger {
     this.balance = 0;
     this.entries = new ArrayList<>();
     this.balances = new ArrayList<>();
+    this.addedOrder = new ArrayList<>();
   }
 
   /**
@@ -135,17 +171,72 @@ public class Ledger {
   }
 
   /**
-   * Sorts entries and updates balances.
+   * Sorts the entries added last into place and updates balances from the
+   * first entry that moved. The new entries are sorted on their own and
+   * merged into the sorted ones, carrying their positions in add order with
+   * them; equal entries stay in the order they were added.
+   *
+   * @param added the number of entries added since the last sort
    */
-  private void sort() {
-    entries.sort(entryCompWithNull);
-    balances.clear();
+  private void sort(int added) {
+    LedgerEvents.Sort event = new LedgerEvents.Sort();
+    event.begin();
+    int size = entries.size();
+    int existing = size - added;
+    if (addPositions.length < size) {
+      addPositions = Arrays.copyOf(addPositions, Math.max(size, addPositions.length * 2));
+    }
 
-    int runningBalance = 0;
-    for (int i = 0; i < entries.size(); i++) {
+    // Usually the new entries are in order and sort after the others
+    boolean inPlace = true;
+    for (int i = Math.max(existing, 1); i < size && inPlace; i++) {
+      inPlace = entryCompWithNull.compare(entries.get(i - 1), entries.get(i)) <= 0;
+    }
+    // While every entry was added in order, entries matches addedOrder
+    addedInOrder &= inPlace;
+
+    int from = existing;
+    if (inPlace) {
+      for (int i = existing; i < size; i++) {
+        addPositions[i] = i;
+      }
+    } else {
+      Integer[] order = new Integer[added];
+      for (int j = 0; j < added; j++) {
+        order[j] = existing + j;
+      }
+      // Arrays.sort on objects is stable, keeping equal entries in add order
+      Arrays.sort(order, (a, b) -> entryCompWithNull.compare(addedOrder.get(a),
+          addedOrder.get(b)));
+      // Merge from the end, where the new entries were appended
+      int i = existing - 1;
+      int k = size - 1;
+      for (int j = added - 1; j >= 0; k--) {
+        LedgerEntry next = addedOrder.get(order[j]);
+        if (i >= 0 && entryCompWithNull.compare(entries.get(i), next) > 0) {
+          entries.set(k, entries.get(i));
+          addPositions[k] = addPositions[i];
+          i--;
+        } else {
+          entries.set(k, next);
+          addPositions[k] = order[j];
+          j--;
+        }
+      }
+      from = i + 1;
+    }
+
+    balances.subList(from, balances.size()).clear();
+    int runningBalance = from == 0 ? 0 : balances.get(from - 1);
+    for (int i = from; i < size; i++) {
       runningBalance += entries.get(i).getAmount();
       balances.add(runningBalance);
     }
+    if (event.shouldCommit()) {
+      event.entries = entries.size();
+      event.added = added;
+      event.commit();
+    }
   }
 
   /**
@@ -159,9 +250,98 @@ public class Ledger {
       throw new IllegalArgumentException("Null entry");
     }
 
-    entries.add(entry);
-    sort();
-    balance += entry.getAmount();
+    long started = System.nanoTime();
+    if (journal != null) {
+      LedgerJournal target;
+      long sequence;
+      synchronized (this) {
+        target = journal;
+        sequence = target.enqueue(journalId, entries.size(), List.of(entry));
+        entries.add(entry);
+        addedOrder.add(entry);
+        sort(1);
+        balance += entry.getAmount();
+        contentHash += mix(entry.hashCode());
+      }
+      // Wait outside the lock, so writers to this ledger share a commit
+      target.awaitDurable(sequence);
+    } else {
+      entries.add(entry);
+      addedOrder.add(entry);
+      sort(1);
+      balance += entry.getAmount();
+      contentHash += mix(entry.hashCode());
+    }
+    LedgerMetrics.recordAddEntry(System.nanoTime() - started);
+  }
+
+  /**
+   * Adds many entries to the ledger, sorting and rebuilding the balances
+   * once at the end instead of after every entry.
+   *
+   * @param newEntries the entries to add
+   * @throws IllegalArgumentException if the list or any entry is null
+   */
+  public void addEntries(List<LedgerEntry> newEntries) {
+    if (newEntries == null) {
+      throw new IllegalArgumentException("Null entries");
+    }
+    int added = 0;
+    int addedHash = 0;
+    for (LedgerEntry entry : newEntries) {
+      if (entry == null) {
+        throw new IllegalArgumentException("Null entry");
+      }
+      added += entry.getAmount();
+      addedHash += mix(entry.hashCode());
+    }
+
+    if (journal != null) {
+      LedgerJournal target;
+      long sequence;
+      synchronized (this) {
+        target = journal;
+        sequence = target.enqueue(journalId, entries.size(), newEntries);
+        entries.addAll(newEntries);
+        addedOrder.addAll(newEntries);
+        sort(newEntries.size());
+        balance += added;
+        contentHash += addedHash;
+      }
+      target.awaitDurable(sequence);
+      return;
+    }
+
+    entries.addAll(newEntries);
+    addedOrder.addAll(newEntries);
+    sort(newEntries.size());
+    balance += added;
+    contentHash += addedHash;
+  }
+
+  /**
+   * Attaches a write-ahead journal. From then on every added entry is
+   * enqueued in the journal and added to the ledger under the ledger's lock,
+   * so journal order matches add order, and the add returns once the entry
+   * is durable. The wait happens after the lock is released, so concurrent
+   * writers to this ledger share a group commit; readers may see an entry
+   * shortly before it is durable. If the journal fails the add throws
+   * IllegalStateException with the entry already in memory, and the journal
+   * accepts nothing more.
+   *
+   * @param journal  the journal to write to
+   * @param ledgerId the id of this ledger in the journal
+   * @throws IllegalArgumentException if any input is null
+   */
+  public synchronized void attachJournal(LedgerJournal journal, String ledgerId) {
+    if (journal == null) {
+      throw new IllegalArgumentException("Null journal");
+    }
+    if (ledgerId == null) {
+      throw new IllegalArgumentException("Null ledger id");
+    }
+    this.journal = journal;
+    this.journalId = ledgerId;
   }
 
   /**
@@ -189,10 +369,7 @@ public class Ledger {
       throw new IllegalArgumentException("Amount is zero");
     }
 
-    LedgerEntry entry = new LedgerEntry(month, day, year, description, amount);
-    entries.add(entry);
-    balance += amount;
-    sort();
+    addEntry(new LedgerEntry(month, day, year, description, amount));
   }
 
   /**
@@ -238,6 +415,37 @@ public class Ledger {
     return dateRangeLedger;
   }
 
+  /**
+   * Creates a ledger holding the entries of several ledgers, sorted once
+   * after they have all been added.
+   *
+   * @param ledgers the ledgers to merge
+   * @param size    the maximum number of entries of the merged ledger
+   * @return the merged ledger
+   * @throws IllegalArgumentException if the list or any ledger is null, or
+   *                                  size is non-positive
+   */
+  public static Ledger merge(List<Ledger> ledgers, int size) {
+    if (ledgers == null) {
+      throw new IllegalArgumentException("Null ledgers");
+    }
+    int total = 0;
+    for (Ledger ledger : ledgers) {
+      if (ledger == null) {
+        throw new IllegalArgumentException("null ledger");
+      }
+      total += ledger.getNumEntries();
+    }
+
+    List<LedgerEntry> all = new ArrayList<>(total);
+    for (Ledger ledger : ledgers) {
+      all.addAll(ledger.entries);
+    }
+    Ledger merged = new Ledger(size);
+    merged.addEntries(all);
+    return merged;
+  }
+
   public LedgerEntry getEntry(int index) {
     if (index < 0 || index >= entries.size()) {
       throw new IllegalArgumentException("Invalid index");
@@ -245,6 +453,204 @@ public class Ledger {
     return entries.get(index);
   }
 
+  /**
+   * Fills an empty ledger with entries that are already sorted and their
+   * running balances, without sorting or recomputing anything.
+   *
+   * @param sortedEntries   the entries in sorted order
+   * @param runningBalances the balance after each entry
+   * @throws IllegalArgumentException if the ledger is not empty or the
+   *                                  lengths differ
+   */
+  void restoreSorted(List<LedgerEntry> sortedEntries, int[] runningBalances) {
+    restoreSorted(sortedEntries, runningBalances, null);
+  }
+
+  /**
+   * Fills an empty ledger with entries that are already sorted, their
+   * running balances and the order they were added in, without sorting or
+   * recomputing anything.
+   *
+   * @param sortedEntries   the entries in sorted order
+   * @param runningBalances the balance after each entry
+   * @param addSequence     the position in add order of each entry, as from
+   *                        getAddSequence, or null if they were added in
+   *                        sorted order
+   * @throws IllegalArgumentException if the ledger is not empty, the lengths
+   *                                  differ or the add sequence is invalid
+   */
+  void restoreSorted(List<LedgerEntry> sortedEntries, int[] runningBalances,
+      int[] addSequence) {
+    if (!entries.isEmpty() || sortedEntries.size() != runningBalances.length) {
+      throw new IllegalArgumentException("Invalid snapshot");
+    }
+    List<LedgerEntry> added = addSequence == null ? sortedEntries
+        : inAddOrder(sortedEntries, addSequence);
+    entries.addAll(sortedEntries);
+    addedOrder.addAll(added);
+    addPositions = new int[sortedEntries.size()];
+    for (int i = 0; i < addPositions.length; i++) {
+      addPositions[i] = addSequence == null ? i : addSequence[i];
+      addedInOrder &= addPositions[i] == i;
+    }
+    for (int runningBalance : runningBalances) {
+      balances.add(runningBalance);
+    }
+    for (LedgerEntry entry : sortedEntries) {
+      contentHash += mix(entry.hashCode());
+    }
+    balance = runningBalances.length == 0 ? 0 : runningBalances[runningBalances.length - 1];
+  }
+
+  /**
+   * Builds a ledger from entries read from a request body, restoring the
+   * order they were added in if the body gave it. Entries already in sorted
+   * order are restored without sorting.
+   *
+   * @param capacity    the capacity of the ledger
+   * @param entries     the entries
+   * @param addSequence the position in add order of each entry, or null if
+   *                    they were added in the order given
+   * @return the ledger
+   * @throws IllegalArgumentException if the capacity or add sequence is
+   *                                  invalid
+   */
+  static Ledger fromEntries(int capacity, List<LedgerEntry> entries, int[] addSequence) {
+    Ledger ledger = new Ledger(capacity);
+    for (int i = 1; i < entries.size(); i++) {
+      if (entries.get(i - 1).compareTo(entries.get(i)) > 0) {
+        ledger.addEntries(addSequence == null ? entries : inAddOrder(entries, addSequence));
+        return ledger;
+      }
+    }
+    int[] runningBalances = new int[entries.size()];
+    int runningBalance = 0;
+    for (int i = 0; i < runningBalances.length; i++) {
+      runningBalance += entries.get(i).getAmount();
+      runningBalances[i] = runningBalance;
+    }
+    ledger.restoreSorted(entries, runningBalances, addSequence);
+    return ledger;
+  }
+
+  /**
+   * Gets the position in add order of each entry, in sorted order, so the
+   * add order can be saved next to the sorted entries and restored with
+   * restoreSorted. Equal entries sort in the order they were added, so
+   * sorting the positions by entry gives the sorted order.
+   *
+   * @return the positions, or null if the entries were added in sorted
+   *         order
+   */
+  synchronized int[] getAddSequence() {
+    return addedInOrder ? null : Arrays.copyOf(addPositions, entries.size());
+  }
+
+  /**
+   * Puts entries into the order they were added in.
+   *
+   * @param entries     the entries
+   * @param addSequence the position in add order of each entry
+   * @return the entries in add order
+   * @throws IllegalArgumentException if the add sequence is not a
+   *                                  permutation of the entry positions
+   */
+  private static List<LedgerEntry> inAddOrder(List<LedgerEntry> entries, int[] addSequence) {
+    if (addSequence.length != entries.size()) {
+      throw new IllegalArgumentException("Invalid add sequence");
+    }
+    LedgerEntry[] added = new LedgerEntry[addSequence.length];
+    for (int i = 0; i < addSequence.length; i++) {
+      int position = addSequence[i];
+      if (position < 0 || position >= added.length || added[position] != null) {
+        throw new IllegalArgumentException("Invalid add sequence");
+      }
+      added[position] = entries.get(i);
+    }
+    return Arrays.asList(added);
+  }
+
+  /**
+   * Gets a read-only view of the entries in sorted order, for bulk access
+   * without per-index bounds checks.
+   *
+   * @return the entries
+   */
+  List<LedgerEntry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Creates an independent copy of this ledger without sorting or
+   * recomputing anything. The copy has no journal attached.
+   *
+   * @return the copy
+   */
+  synchronized Ledger copy() {
+    Ledger copy = new Ledger(capacity);
+    copy.entries.addAll(entries);
+    copy.balances.addAll(balances);
+    copy.addedOrder.addAll(addedOrder);
+    copy.addPositions = Arrays.copyOf(addPositions, entries.size());
+    copy.addedInOrder = addedInOrder;
+    copy.balance = balance;
+    copy.contentHash = contentHash;
+    return copy;
+  }
+
+  /**
+   * Gets the entries added after a given number of entries had been added,
+   * in the order they were added. Entries are never removed, so the entry
+   * count works as a high-water mark for incremental exports even though
+   * new entries may sort before old ones.
+   *
+   * @param mark the number of entries already seen
+   * @return a copy of the entries added since
+   * @throws IllegalArgumentException if mark is negative or larger than the
+   *                                  number of entries
+   */
+  List<LedgerEntry> getEntriesAddedSince(int mark) {
+    if (mark < 0 || mark > addedOrder.size()) {
+      throw new IllegalArgumentException("Invalid high-water mark");
+    }
+    return new ArrayList<>(addedOrder.subList(mark, addedOrder.size()));
+  }
+
+  /**
+   * Gets the version of this ledger. Entries are never removed, so the
+   * number of entries ever added increases with every change.
+   *
+   * @return the version
+   */
+  public synchronized int getVersion() {
+    return addedOrder.size();
+  }
+
+  /**
+   * Gets a hash of the entries, kept up to date as they are added. Equal
+   * ledgers have equal content hashes.
+   *
+   * @return the content hash
+   */
+  synchronized int getContentHash() {
+    return contentHash;
+  }
+
+  /**
+   * Spreads the bits of an entry hash code, so that sums of hash codes of
+   * similar entries rarely collide.
+   *
+   * @param hash the entry hash code
+   * @return the mixed hash
+   */
+  private static int mix(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x85EBCA6B;
+    hash ^= hash >>> 13;
+    hash *= 0xC2B2AE35;
+    return hash ^ (hash >>> 16);
+  }
+
   @Override
   public String toString() {
     StringBuilder result = new StringBuilder("Date,Description,Amount,Balance\n");
@@ -274,11 +680,19 @@ public class Ledger {
       return false;
     if (this.balance != otherLedger.balance)
       return false;
+    // Rejects almost every unequal pair without comparing the entries
+    if (this.contentHash != otherLedger.contentHash)
+      return false;
     if (!this.entries.equals(otherLedger.entries))
       return false;
     return this.balances.equals(otherLedger.balances);
   }
 
+  @Override
+  public int hashCode() {
+    return 31 * capacity + contentHash;
+  }
+
   private static final Comparator<LedgerEntry> entryCompWithNull = new Comparator<LedgerEntry>() {
     @Override
     public int compare(LedgerEntry o1, LedgerEntry o2) {
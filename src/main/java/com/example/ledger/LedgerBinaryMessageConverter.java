@@ -0,0 +1,62 @@
+package com.example.ledger;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes ledgers in the compact binary wire format, for request
+ * and response bodies of type application/x-ledger-binary. Spring selects it
+ * by content negotiation: a Content-Type of that type for a Ledger request
+ * body, and an Accept of that type for a Ledger response.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerBinaryMessageConverter extends AbstractHttpMessageConverter<Ledger> {
+
+  /** Media type of the binary wire format. */
+  public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(LedgerWireFormat.MEDIA_TYPE);
+
+  /** Maximum number of entries in a ledger read from a request. */
+  private final int maxEntries;
+
+  /**
+   * Creates the converter.
+   *
+   * @param maxEntries the maximum number of entries in a ledger read from a
+   *                   request
+   * @throws IllegalArgumentException if maxEntries is not positive
+   */
+  public LedgerBinaryMessageConverter(int maxEntries) {
+    super(MEDIA_TYPE);
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Invalid max entries");
+    }
+    this.maxEntries = maxEntries;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return Ledger.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected Ledger readInternal(Class<? extends Ledger> clazz, HttpInputMessage inputMessage)
+      throws IOException {
+    try {
+      return LedgerWireFormat.read(inputMessage.getBody(), maxEntries);
+    } catch (IllegalArgumentException e) {
+      throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+    }
+  }
+
+  @Override
+  protected void writeInternal(Ledger ledger, HttpOutputMessage outputMessage)
+      throws IOException {
+    LedgerWireFormat.write(outputMessage.getBody(), ledger);
+  }
+}
@@ -0,0 +1,133 @@
+package com.example.ledger;
+
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the shared ledger components the controllers use, and the
+ * MeterBinder beans that publish their state to the application's
+ * MeterRegistry.
+ *
+ * @author Zakariya Mohamed
+ */
+@Configuration
+public class LedgerConfiguration {
+
+  /**
+   * Provides the import admission controller.
+   *
+   * @param maxConcurrentImports the maximum number of imports parsing at once
+   * @param maxQueuedImports     the maximum number of imports waiting to start
+   * @param memoryBudgetPercent  the share of the maximum heap imports may use
+   * @param queueTimeoutMillis   how long an import may wait to start
+   * @param retryAfterSeconds    the Retry-After sent when an import is turned
+   *                             away
+   * @return the admission controller
+   */
+  @Bean
+  public LedgerImportAdmission ledgerImportAdmission(
+      @Value("${ledger.import.max-concurrent:4}") int maxConcurrentImports,
+      @Value("${ledger.import.max-queued:16}") int maxQueuedImports,
+      @Value("${ledger.import.memory-budget-percent:50}") int memoryBudgetPercent,
+      @Value("${ledger.import.queue-timeout-ms:2000}") long queueTimeoutMillis,
+      @Value("${ledger.import.retry-after-seconds:5}") long retryAfterSeconds) {
+    return new LedgerImportAdmission(maxConcurrentImports, maxQueuedImports,
+        Runtime.getRuntime().maxMemory() / 100 * memoryBudgetPercent,
+        Duration.ofMillis(queueTimeoutMillis), retryAfterSeconds);
+  }
+
+  /**
+   * Provides the parse cache.
+   *
+   * @param cacheMaxEntries    the maximum number of parsed ledgers cached
+   * @param cacheMemoryPercent the share of the maximum heap cached ledgers
+   *                           may use
+   * @return the cache
+   */
+  @Bean
+  public LedgerParseCache ledgerParseCache(
+      @Value("${ledger.cache.max-entries:64}") int cacheMaxEntries,
+      @Value("${ledger.cache.memory-percent:10}") int cacheMemoryPercent) {
+    return new LedgerParseCache(cacheMaxEntries,
+        Runtime.getRuntime().maxMemory() / 100 * cacheMemoryPercent);
+  }
+
+  /**
+   * Provides the background importer, closed when the application stops so
+   * its running imports are stopped and their reserved memory returned.
+   *
+   * @param maxFinishedJobs the maximum number of finished jobs kept
+   * @return the importer
+   */
+  @Bean(destroyMethod = "close")
+  public LedgerImportJobs ledgerImportJobs(
+      @Value("${ledger.import.max-finished-jobs:100}") int maxFinishedJobs) {
+    return new LedgerImportJobs(LedgerImportJobs.DEFAULT_RETENTION, maxFinishedJobs);
+  }
+
+  /**
+   * Provides the ledger repository, which recovers its journal when it is
+   * opened and writes changed ledgers to disk and closes the journal when
+   * the application stops.
+   *
+   * @param directory the directory holding cold ledgers
+   * @param maxHot    the maximum number of ledgers kept in memory
+   * @return the repository
+   */
+  @Bean(destroyMethod = "close")
+  public LedgerRepository ledgerRepository(
+      @Value("${ledger.repository.directory:data/ledgers}") String directory,
+      @Value("${ledger.repository.max-hot:32}") int maxHot) {
+    return new LedgerRepository(Paths.get(directory), maxHot);
+  }
+
+  /**
+   * Publishes the admission controller's gauges.
+   *
+   * @param admission the admission controller
+   * @return the binder
+   */
+  @Bean
+  public MeterBinder ledgerImportAdmissionMetrics(LedgerImportAdmission admission) {
+    return LedgerMetrics.admissionMetrics(admission);
+  }
+
+  /**
+   * Publishes the parse cache's statistics.
+   *
+   * @param cache the parse cache
+   * @return the binder
+   */
+  @Bean
+  public MeterBinder ledgerParseCacheMetrics(LedgerParseCache cache) {
+    return LedgerMetrics.parseCacheMetrics(cache);
+  }
+
+  /**
+   * Publishes the background importer's job counts.
+   *
+   * @param jobs the importer
+   * @return the binder
+   */
+  @Bean
+  public MeterBinder ledgerImportJobsMetrics(LedgerImportJobs jobs) {
+    return LedgerMetrics.importJobsMetrics(jobs);
+  }
+
+  /**
+   * Publishes the repository's statistics.
+   *
+   * @param repository the repository
+   * @return the binder
+   */
+  @Bean
+  public MeterBinder ledgerRepositoryMetrics(LedgerRepository repository) {
+    return LedgerMetrics.repositoryMetrics(repository);
+  }
+}
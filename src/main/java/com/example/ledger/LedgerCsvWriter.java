@@ -0,0 +1,256 @@
+package com.example.ledger;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes ledger entries as CSV rows into a reusable byte buffer and writes
+ * the buffer to a channel in large chunks. Dates and integers are formatted
+ * straight into the buffer without creating intermediate strings.
+ *
+ * @author Zakariya Mohamed
+ */
+class LedgerCsvWriter implements Flushable {
+
+  /** Size in bytes of the write buffer. */
+  static final int BUFFER_SIZE = 256 * 1024;
+
+  /** Header row written at the start of every exported file. */
+  static final String HEADER = "Date,Description,Amount,Balance\n";
+
+  /** Longest possible row excluding the description. */
+  private static final int MAX_FIXED_ROW_LENGTH = 8 + 1 + 1 + 11 + 1 + 11 + 1;
+
+  /** Channel the buffer is flushed to. */
+  private final WritableByteChannel channel;
+
+  /** Backing array of the buffer. */
+  private final byte[] bytes;
+
+  /** Buffer wrapping bytes, used to write to the channel. */
+  private final ByteBuffer buffer;
+
+  /** Number of bytes currently held in the buffer. */
+  private int position;
+
+  /** Number of bytes already written to the channel. */
+  private long bytesFlushed;
+
+  /**
+   * Creates a writer with the default buffer size.
+   *
+   * @param channel the channel to write to
+   */
+  LedgerCsvWriter(WritableByteChannel channel) {
+    this(channel, BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a writer with the given buffer size.
+   *
+   * @param channel    the channel to write to
+   * @param bufferSize the buffer size in bytes
+   * @throws IllegalArgumentException if the buffer cannot hold a row
+   */
+  LedgerCsvWriter(WritableByteChannel channel, int bufferSize) {
+    if (bufferSize < HEADER.length() + MAX_FIXED_ROW_LENGTH) {
+      throw new IllegalArgumentException("Invalid buffer size");
+    }
+    this.channel = channel;
+    this.bytes = new byte[bufferSize];
+    this.buffer = ByteBuffer.wrap(bytes);
+  }
+
+  /**
+   * Gets the number of bytes written so far, including buffered bytes.
+   *
+   * @return the number of bytes written
+   */
+  long getBytesWritten() {
+    return bytesFlushed + position;
+  }
+
+  /**
+   * Writes the header row followed by every entry of a ledger.
+   *
+   * @param ledger the ledger to write
+   * @return the number of entries written
+   * @throws IOException if writing fails
+   */
+  int writeLedger(Ledger ledger) throws IOException {
+    List<LedgerEntry> entries = ledger.getEntries();
+    writeHeader();
+    writeEntries(entries, 0);
+    return entries.size();
+  }
+
+  /**
+   * Writes the header row.
+   *
+   * @throws IOException if writing fails
+   */
+  void writeHeader() throws IOException {
+    ensureCapacity(HEADER.length());
+    writeAscii(HEADER);
+  }
+
+  /**
+   * Writes entries with a running balance.
+   *
+   * @param entries        the entries to write
+   * @param openingBalance the balance before the first entry
+   * @return the balance after the last entry
+   * @throws IOException if writing fails
+   */
+  int writeEntries(List<LedgerEntry> entries, int openingBalance) throws IOException {
+    int balance = openingBalance;
+    for (int i = 0; i < entries.size(); i++) {
+      LedgerEntry entry = entries.get(i);
+      balance += entry.getAmount();
+      writeEntry(entry, balance);
+    }
+    return balance;
+  }
+
+  /**
+   * Writes one entry as a row.
+   *
+   * @param entry   the entry to write
+   * @param balance the balance after the entry
+   * @throws IOException if writing fails
+   */
+  void writeEntry(LedgerEntry entry, int balance) throws IOException {
+    ensureCapacity(MAX_FIXED_ROW_LENGTH);
+    writeDate(entry.getDate().getDate());
+    bytes[position++] = ',';
+
+    writeDescription(entry.getDescription());
+
+    ensureCapacity(MAX_FIXED_ROW_LENGTH);
+    bytes[position++] = ',';
+    writeInt(entry.getAmount());
+    bytes[position++] = ',';
+    writeInt(balance);
+    bytes[position++] = '\n';
+  }
+
+  /**
+   * Writes all buffered bytes to the channel.
+   *
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void flush() throws IOException {
+    buffer.clear().limit(position);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    bytesFlushed += position;
+    position = 0;
+  }
+
+  /**
+   * Flushes the buffer if it cannot hold the given number of bytes.
+   *
+   * @param needed the number of bytes about to be written
+   * @throws IOException if writing fails
+   */
+  private void ensureCapacity(int needed) throws IOException {
+    if (bytes.length - position < needed) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes a YYYYMMDD date.
+   *
+   * @param date the date as an int in YYYYMMDD format
+   */
+  private void writeDate(int date) {
+    for (int i = 7; i >= 0; i--) {
+      bytes[position + i] = (byte) ('0' + date % 10);
+      date /= 10;
+    }
+    position += 8;
+  }
+
+  /**
+   * Writes an int in decimal.
+   *
+   * @param value the value to write
+   */
+  private void writeInt(int value) {
+    long remaining = value;
+    if (remaining < 0) {
+      bytes[position++] = '-';
+      remaining = -remaining;
+    }
+
+    int digits = 1;
+    for (long limit = 10; limit <= remaining; limit *= 10) {
+      digits++;
+    }
+    for (int i = digits - 1; i >= 0; i--) {
+      bytes[position + i] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    position += digits;
+  }
+
+  /**
+   * Writes a description as UTF-8, copying ASCII characters directly.
+   *
+   * @param description the description to write
+   * @throws IOException if writing fails
+   */
+  private void writeDescription(String description) throws IOException {
+    int length = description.length();
+    for (int i = 0; i < length; i++) {
+      if (description.charAt(i) >= 0x80) {
+        writeBytes(description.getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+    }
+
+    int written = 0;
+    while (written < length) {
+      ensureCapacity(1);
+      int chunk = Math.min(length - written, bytes.length - position);
+      for (int i = 0; i < chunk; i++) {
+        bytes[position++] = (byte) description.charAt(written++);
+      }
+    }
+  }
+
+  /**
+   * Writes raw bytes, flushing as needed.
+   *
+   * @param data the bytes to write
+   * @throws IOException if writing fails
+   */
+  private void writeBytes(byte[] data) throws IOException {
+    int written = 0;
+    while (written < data.length) {
+      ensureCapacity(1);
+      int chunk = Math.min(data.length - written, bytes.length - position);
+      System.arraycopy(data, written, bytes, position, chunk);
+      position += chunk;
+      written += chunk;
+    }
+  }
+
+  /**
+   * Writes an ASCII string that fits in the buffer.
+   *
+   * @param text the text to write
+   */
+  private void writeAscii(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      bytes[position++] = (byte) text.charAt(i);
+    }
+  }
+}
@@ -57,9 +57,36 @@ public class LedgerDate implements Comparable<LedgerDate> {
    * @throws IllegalArgumentException if the date is invalid
    */
   public LedgerDate(int month, int day, int year) {
+    if (!isValid(month, day, year)) {
+      throw new IllegalArgumentException("Invalid date");
+    }
+    this.date = year * TEN_THOUSAND + month * 100 + day;
+  }
+
+  /**
+   * Converts a YYYYMMDD request parameter to a LedgerDate.
+   *
+   * @param date the date as YYYYMMDD
+   * @return the LedgerDate
+   * @throws IllegalArgumentException if the date is invalid
+   */
+  public static LedgerDate fromParameter(int date) {
+    return new LedgerDate((date / 100) % 100, date % 100, date / TEN_THOUSAND);
+  }
+
+  /**
+   * Checks whether the given month, day, and year form a valid LedgerDate
+   * without creating one.
+   *
+   * @param month the month (1-12)
+   * @param day   the day (1-31)
+   * @param year  the year (2020-2050)
+   * @return true if the date is valid, false otherwise
+   */
+  public static boolean isValid(int month, int day, int year) {
     if (year < MIN_YEAR || year > MAX_YEAR || month < 1 ||
         month > NUM_OF_MONTHS || day < 1 || day > MAX_DAYS_IN_MONTH) {
-      throw new IllegalArgumentException("Invalid date");
+      return false;
     }
 
     int maxDays = DAYS_IN_MONTH[month - 1];
@@ -69,10 +96,7 @@ public class LedgerDate implements Comparable<LedgerDate> {
       }
     }
 
-    if (day > maxDays) {
-      throw new IllegalArgumentException("Invalid date");
-    }
-    this.date = year * TEN_THOUSAND + month * 100 + day;
+    return day <= maxDays;
   }
 
   /**
@@ -139,6 +163,16 @@ public class LedgerDate implements Comparable<LedgerDate> {
     return date == other.date;
   }
 
+  /**
+   * Returns a hash code consistent with equals.
+   *
+   * @return the date as YYYYMMDD
+   */
+  @Override
+  public int hashCode() {
+    return date;
+  }
+
   /**
    * Compares this LedgerDate with another for sorting.
    *
@@ -0,0 +1,74 @@
+package com.example.ledger;
+
+/**
+ * Builds and compares HTTP entity tags for ledgers, so clients polling a
+ * ledger can send If-None-Match and get a 304 when nothing has changed.
+ * The tag combines the ledger's version, which grows with every added
+ * entry, with its content hash; both are kept up to date as entries are
+ * added, so building a tag costs O(1). Tags are weak because the same tag
+ * is used for every representation of the ledger (JSON, NDJSON, CSV).
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerETags {
+
+  /** Prefix of a weak entity tag. */
+  private static final String WEAK_PREFIX = "W/";
+
+  /**
+   * Not instantiable.
+   */
+  private LedgerETags() {
+  }
+
+  /**
+   * Builds the entity tag of a ledger.
+   *
+   * @param ledger the ledger
+   * @return the weak entity tag, quoted
+   * @throws IllegalArgumentException if ledger is null
+   */
+  public static String of(Ledger ledger) {
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+    return WEAK_PREFIX + "\"" + ledger.getVersion() + "-"
+        + Integer.toHexString(ledger.getContentHash()) + "\"";
+  }
+
+  /**
+   * Checks an If-None-Match header against an entity tag, using weak
+   * comparison as conditional GETs do.
+   *
+   * @param ifNoneMatch the header value: "*" or a comma separated list of
+   *                    tags, or null if the header was not sent
+   * @param eTag        the current entity tag
+   * @return true if the client's copy is current and 304 should be sent
+   */
+  public static boolean matches(String ifNoneMatch, String eTag) {
+    if (ifNoneMatch == null || eTag == null) {
+      return false;
+    }
+    if (ifNoneMatch.trim().equals("*")) {
+      return true;
+    }
+    String current = opaque(eTag);
+    for (String tag : ifNoneMatch.split(",")) {
+      if (opaque(tag).equals(current)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Strips whitespace and any weak prefix from a tag.
+   *
+   * @param tag the tag
+   * @return the quoted opaque tag
+   */
+  private static String opaque(String tag) {
+    String trimmed = tag.trim();
+    return trimmed.startsWith(WEAK_PREFIX) ? trimmed.substring(WEAK_PREFIX.length()) : trimmed;
+  }
+}
@@ -104,6 +104,16 @@ public class LedgerEntry implements Comparable<LedgerEntry> {
         this.amount == other.amount;
   }
 
+  /**
+   * Returns a hash code consistent with equals.
+   *
+   * @return the hash code
+   */
+  @Override
+  public int hashCode() {
+    return (31 * date.hashCode() + description.hashCode()) * 31 + amount;
+  }
+
   /**
    * This method is used for sorting LedgerEntry objects where earliest date
    * is first then description alphabetically then amount increasing
@@ -0,0 +1,153 @@
+package com.example.ledger;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for the phases of reading and writing
+ * ledgers. They are recorded by any JFR recording, for example one started
+ * with -XX:StartFlightRecording, and show up under "Ledger" in JDK Mission
+ * Control or with "jfr print --categories Ledger". Events nest by time on
+ * their thread, so a slow import shows its file open, parse and every sort
+ * inside the parse.
+ *
+ * <p>
+ * A sort runs for every addEntry, so Sort events only record sorts of at
+ * least 1 ms by default. To see every one, lower the threshold, for example
+ * with jfr configure +com.example.ledger.Sort#threshold=0ms.
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerEvents {
+
+  /**
+   * Not instantiable.
+   */
+  private LedgerEvents() {
+  }
+
+  /**
+   * A ledger file opened for reading or writing.
+   */
+  @Name("com.example.ledger.FileOpen")
+  @Label("Ledger File Open")
+  @Category("Ledger")
+  @StackTrace(false)
+  public static class FileOpen extends Event {
+
+    /** The file opened. */
+    @Label("Path")
+    String path;
+
+    /** Whether the file was opened for writing. */
+    @Label("Write")
+    boolean write;
+
+    /** Size of the file when it was opened. */
+    @Label("Size")
+    @DataAmount
+    long bytes;
+  }
+
+  /**
+   * Parsing a ledger from CSV or binary data, including adding the entries
+   * to the ledger.
+   */
+  @Name("com.example.ledger.Parse")
+  @Label("Ledger Parse")
+  @Category("Ledger")
+  @StackTrace(false)
+  public static class Parse extends Event {
+
+    /** The file parsed, or null for a stream. */
+    @Label("Path")
+    String path;
+
+    /** The format, csv or binary. */
+    @Label("Format")
+    String format;
+
+    /** Entries parsed, up to the failing row if parsing failed. */
+    @Label("Rows")
+    long rows;
+
+    /** Bytes of uncompressed data read. */
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+  }
+
+  /**
+   * Sorting a ledger's entries and rebuilding its balances after entries
+   * were added.
+   */
+  @Name("com.example.ledger.Sort")
+  @Label("Ledger Sort")
+  @Category("Ledger")
+  @Description("Sort and balance rebuild after adding entries")
+  @Threshold("1 ms")
+  @StackTrace(false)
+  public static class Sort extends Event {
+
+    /** Entries in the ledger after the addition. */
+    @Label("Entries")
+    int entries;
+
+    /** Entries added before the sort. */
+    @Label("Added")
+    int added;
+  }
+
+  /**
+   * Encoding a ledger as CSV or binary data.
+   */
+  @Name("com.example.ledger.Serialize")
+  @Label("Ledger Serialize")
+  @Category("Ledger")
+  @StackTrace(false)
+  public static class Serialize extends Event {
+
+    /** The file written, or null for a stream. */
+    @Label("Path")
+    String path;
+
+    /** The format, csv or binary. */
+    @Label("Format")
+    String format;
+
+    /** Entries encoded. */
+    @Label("Rows")
+    long rows;
+
+    /** Bytes encoded, before any compression. */
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+  }
+
+  /**
+   * Writing a file atomically: filling a temporary file, forcing it to disk
+   * and renaming it into place. Serialize events nest inside.
+   */
+  @Name("com.example.ledger.Write")
+  @Label("Ledger File Write")
+  @Category("Ledger")
+  @StackTrace(false)
+  public static class Write extends Event {
+
+    /** The file written. */
+    @Label("Path")
+    String path;
+
+    /** Bytes written to the file. */
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+  }
+}
@@ -1,7 +1,27 @@
 package com.example.ledger;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Handles reading and writing ledger data to/from files.
@@ -26,7 +46,113 @@ public class LedgerFileProcessing {
   public static final int DAY_END = 8;
 
   /**
-   * Reads ledger entries from a file and creates a Ledger object.
+   * size in bytes of the read buffer used when validating files
+   */
+  public static final int VALIDATION_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * most bytes of one line validateLedgerFile holds; longer lines are
+   * recorded as errors and skipped
+   */
+  public static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  /**
+   * size in bytes of the buffer used when writing to a stream
+   */
+  public static final int STREAM_BUFFER_SIZE = 32 * 1024;
+
+  /**
+   * most bytes of data one byte of gzip input may decompress to; larger
+   * expansions are rejected, matching the expansion import admission
+   * budgets for
+   */
+  public static final int MAX_GZIP_EXPANSION = LedgerImportAdmission.GZIP_EXPANSION;
+
+  /**
+   * file extension of gzip compressed ledger files
+   */
+  public static final String GZIP_EXTENSION = ".gz";
+
+  /**
+   * suffix appended to a CSV file name to name its sidecar date index
+   */
+  public static final String INDEX_EXTENSION = ".idx";
+
+  /**
+   * header line of a sidecar date index
+   */
+  public static final String INDEX_HEADER = "Date,Offset\n";
+
+  /**
+   * prefix of the last line of a sidecar date index, which records the
+   * length of the indexed CSV file
+   */
+  public static final String INDEX_LENGTH_PREFIX = "Length,";
+
+  /**
+   * suffix appended to a CSV file name to name the sidecar file recording
+   * the high-water mark of the last export appended to it
+   */
+  public static final String MARK_EXTENSION = ".mark";
+
+  /**
+   * file extension used for the compact binary format
+   */
+  public static final String BINARY_EXTENSION = ".ldgb";
+
+  /**
+   * magic number at the start of a binary ledger file ("LDGB")
+   */
+  public static final int BINARY_MAGIC = 0x4C444742;
+
+  /**
+   * version of the binary ledger format, with records split into indexed
+   * blocks
+   */
+  public static final int BINARY_VERSION = 2;
+
+  /**
+   * version of the original binary ledger format with one record block and
+   * no index, still accepted when reading
+   */
+  public static final int BINARY_VERSION_UNBLOCKED = 1;
+
+  /**
+   * maximum number of records in one block of a binary ledger file
+   */
+  public static final int BINARY_BLOCK_ROWS = 4096;
+
+  /**
+   * size in bytes of one block index entry: min date, max date, row count
+   * and byte offset
+   */
+  public static final int BINARY_INDEX_ENTRY_SIZE = 3 * Integer.BYTES + Long.BYTES;
+
+  /**
+   * size in bytes of the binary trailer: block count, index offset and magic
+   */
+  public static final int BINARY_TRAILER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+  /**
+   * size in bytes of the binary header: magic, version, entry count,
+   * dictionary size and dictionary length
+   */
+  public static final int BINARY_HEADER_SIZE = 5 * Integer.BYTES;
+
+  /**
+   * size in bytes of one binary record: date, amount and description id
+   */
+  public static final int BINARY_RECORD_SIZE = 3 * Integer.BYTES;
+
+  /**
+   * header every ledger file must start with
+   */
+  public static final String REQUIRED_HEADER = "Date,Description,Amount";
+
+  /**
+   * Reads ledger entries from a file and creates a Ledger object. Gzip
+   * compressed files are detected by their magic bytes and decompressed
+   * while they are parsed.
    *
    * @param filepath   the path to the input file
    * @param sizeLedger the maximum size of the ledger
@@ -42,87 +168,23 @@ public class LedgerFileProcessing {
     }
 
     FileInputStream fileInput = null;
-    Scanner scanner = null;
-    Ledger ledger = new Ledger(sizeLedger);
-
     try {
+      LedgerEvents.FileOpen open = new LedgerEvents.FileOpen();
+      open.begin();
       fileInput = new FileInputStream(filepath);
+      if (open.shouldCommit()) {
+        opened(open, filepath, false, fileInput.getChannel().size());
+      }
       if (fileInput.available() == 0) {
         throw new IllegalArgumentException("Input file is empty.");
       }
-
-      scanner = new Scanner(fileInput);
-
-      if (scanner.hasNextLine()) {
-        String header = scanner.nextLine();
-        if (!header.startsWith("Date,Description,Amount")) {
-          throw new IllegalArgumentException("Invalid file");
-        }
-      }
-
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine().trim();
-        if (line.isEmpty()) {
-          continue;
-        }
-
-        Scanner lineScanner = null;
-        try {
-          lineScanner = new Scanner(line);
-          lineScanner.useDelimiter(",");
-
-          if (!lineScanner.hasNext()) {
-            throw new IllegalArgumentException("Invalid file");
-          }
-          String dateStr = lineScanner.next().trim();
-
-          if (!lineScanner.hasNext()) {
-            throw new IllegalArgumentException("Invalid file");
-          }
-          String description = lineScanner.next().trim();
-
-          if (!lineScanner.hasNext()) {
-            throw new IllegalArgumentException("Invalid file");
-          }
-          String amountStr = lineScanner.next().trim();
-
-          int year;
-          int month;
-          int day;
-          try {
-            year = Integer.parseInt(dateStr.substring(0, YEAR_END_AND_MONTH_START));
-            month = Integer.parseInt(dateStr.substring(YEAR_END_AND_MONTH_START,
-                MONTH_END_AND_DAY_START));
-            day = Integer.parseInt(dateStr.substring(MONTH_END_AND_DAY_START, DAY_END));
-          } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
-            throw new IllegalArgumentException("Invalid file");
-          }
-
-          int amount;
-          try {
-            amount = Integer.parseInt(amountStr);
-          } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Invalid file");
-          }
-
-          LedgerEntry entry = new LedgerEntry(month, day, year, description, amount);
-          ledger.addEntry(entry);
-        } finally {
-          if (lineScanner != null) {
-            lineScanner.close();
-          }
-        }
-      }
-    } catch (IllegalArgumentException e) {
-      throw e;
+      return readCsv(fileInput, sizeLedger, rows -> {
+      }, filepath);
     } catch (FileNotFoundException e) {
       throw new IllegalArgumentException("Input file not found.");
     } catch (IOException e) {
       throw new IllegalArgumentException("Error reading file.");
     } finally {
-      if (scanner != null) {
-        scanner.close();
-      }
       if (fileInput != null) {
         try {
           fileInput.close();
@@ -131,76 +193,1656 @@ public class LedgerFileProcessing {
         }
       }
     }
+  }
 
-    return ledger;
+  /**
+   * Reads ledger entries from a stream and creates a Ledger object. Gzip
+   * compressed data is detected by its magic bytes and decompressed while it
+   * is parsed. The stream is not closed.
+   *
+   * @param input      the stream to read
+   * @param sizeLedger the maximum size of the ledger
+   * @return the populated Ledger object
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public static Ledger readLedgerFromStream(InputStream input, int sizeLedger) {
+    return readLedgerFromStream(input, sizeLedger, rows -> {
+    });
   }
 
   /**
-   * Writes ledger entries to a file.
+   * Reads ledger entries from a stream, reporting the number of rows parsed
+   * so far after each row.
    *
-   * @param filepath the path to the output file
-   * @param ledger   the Ledger object to write
+   * @param input      the stream to read
+   * @param sizeLedger the maximum size of the ledger
+   * @param progress   receives the number of rows parsed so far
+   * @return the populated Ledger object
    * @throws IllegalArgumentException if any input is invalid
    */
-  public static void writeLedgerToFile(String filepath, Ledger ledger) {
-    if (filepath == null || filepath.trim().isEmpty()) {
-      throw new IllegalArgumentException("Invalid filepath");
+  static Ledger readLedgerFromStream(InputStream input, int sizeLedger,
+      LongConsumer progress) {
+    if (input == null) {
+      throw new IllegalArgumentException("Null input");
     }
-    if (ledger == null) {
-      throw new IllegalArgumentException("null ledger");
+    if (sizeLedger <= 0) {
+      throw new IllegalArgumentException("Invalid size");
     }
+    return readCsv(input, sizeLedger, progress, null);
+  }
 
-    FileOutputStream fileOutputStream = null;
-    OutputStreamWriter outputStreamWriter = null;
+  /**
+   * Reads CSV ledger data from a stream, recording metrics and a Parse
+   * event.
+   *
+   * @param input      the stream to read
+   * @param sizeLedger the maximum size of the ledger
+   * @param progress   receives the number of rows parsed so far
+   * @param path       the file being read, or null for a stream
+   * @return the populated Ledger object
+   * @throws IllegalArgumentException if the data is invalid
+   */
+  private static Ledger readCsv(InputStream input, int sizeLedger, LongConsumer progress,
+      String path) {
+    long started = System.nanoTime();
+    LedgerEvents.Parse event = new LedgerEvents.Parse();
+    event.begin();
+    CountingInputStream counted = null;
     try {
+      counted = new CountingInputStream(decompressIfGzipped(input));
+      Ledger ledger = parseCsv(counted, sizeLedger, rows -> {
+        event.rows = rows;
+        progress.accept(rows);
+      });
+      LedgerMetrics.recordRead(LedgerMetrics.FORMAT_CSV, System.nanoTime() - started,
+          counted.getCount(), ledger);
+      return ledger;
+    } catch (IOException e) {
+      LedgerMetrics.recordReadFailure(LedgerMetrics.FORMAT_CSV, "Error reading file.");
+      throw new IllegalArgumentException("Error reading file.");
+    } catch (IllegalArgumentException e) {
+      LedgerMetrics.recordReadFailure(LedgerMetrics.FORMAT_CSV, e.getMessage());
+      throw e;
+    } finally {
+      // Committed on failure too, with the rows parsed before it
+      if (event.shouldCommit()) {
+        event.path = path;
+        event.format = LedgerMetrics.FORMAT_CSV;
+        event.bytes = counted == null ? 0 : counted.getCount();
+        event.commit();
+      }
+    }
+  }
+
+  /**
+   * Parses CSV ledger data, reporting the number of rows parsed so far after
+   * each row.
+   *
+   * @param input      the uncompressed data
+   * @param sizeLedger the maximum size of the ledger
+   * @param progress   receives the number of rows parsed so far
+   * @return the populated Ledger object
+   * @throws IllegalArgumentException if the data is invalid
+   */
+  private static Ledger parseCsv(InputStream input, int sizeLedger, LongConsumer progress) {
+    Ledger ledger = new Ledger(sizeLedger);
+    Scanner scanner = new Scanner(input);
+
+    if (!scanner.hasNextLine()) {
+      // Scanner hides read errors, such as corrupt gzip data, as end of input
+      if (scanner.ioException() != null) {
+        throw new IllegalArgumentException("Error reading file.");
+      }
+      throw new IllegalArgumentException("Input file is empty.");
+    }
+    String header = scanner.nextLine();
+    if (!header.startsWith(REQUIRED_HEADER)) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+
+    while (scanner.hasNextLine()) {
+      String line = scanner.nextLine().trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+
+      LedgerEntry entry;
       try {
-        FileInputStream testExists = new FileInputStream(filepath);
-        testExists.close();
-        throw new IllegalArgumentException("Output file already exists.");
-      } catch (FileNotFoundException e) {
-        /// checkstyle
+        entry = parseEntry(line);
+      } catch (IllegalArgumentException e) {
+        LedgerMetrics.recordFailedRow(LedgerMetrics.OPERATION_READ, e.getMessage());
+        throw e;
+      }
+      ledger.addEntry(entry);
+      progress.accept(ledger.getNumEntries());
+    }
+    if (scanner.ioException() != null) {
+      throw new IllegalArgumentException("Error reading file.");
+    }
+
+    return ledger;
+  }
+
+  /**
+   * Wraps a stream so gzip compressed data is decompressed on the fly.
+   * Uncompressed data is passed through unchanged. Reading decompressed
+   * data that grows past MAX_GZIP_EXPANSION times the compressed bytes
+   * read throws an IllegalArgumentException. Closing the returned stream
+   * does not close the given one.
+   *
+   * @param input the stream to wrap
+   * @return a stream of uncompressed bytes
+   * @throws IOException if the stream cannot be read
+   */
+  static InputStream decompressIfGzipped(InputStream input) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(new FilterInputStream(input) {
+      @Override
+      public void close() {
+        /// the caller owns the underlying stream
       }
+    }, VALIDATION_BUFFER_SIZE);
+    buffered.mark(2);
+    boolean gzipped = isGzipped(buffered);
+    buffered.reset();
+    if (gzipped) {
+      return new LimitedGzipInputStream(new CountingInputStream(buffered));
+    }
+    return buffered;
+  }
 
-      fileOutputStream = new FileOutputStream(filepath);
-      outputStreamWriter = new OutputStreamWriter(fileOutputStream);
+  /**
+   * Checks whether a stream holds gzip compressed data by reading its first
+   * two bytes, the same test decompressIfGzipped uses, so a compressed file
+   * is recognized whatever it is named.
+   *
+   * @param input the stream to check, positioned at its start
+   * @return true if the stream starts with the gzip magic bytes
+   * @throws IOException if the stream cannot be read
+   */
+  public static boolean isGzipped(InputStream input) throws IOException {
+    int first = input.read();
+    int second = input.read();
+    return first == (GZIPInputStream.GZIP_MAGIC & 0xFF)
+        && second == (GZIPInputStream.GZIP_MAGIC >>> 8);
+  }
 
-      outputStreamWriter.write("Date,Description,Amount,Balance\n");
+  /**
+   * Checks whether a file holds gzip compressed data by reading its first
+   * two bytes.
+   *
+   * @param file the file to check
+   * @return true if the file starts with the gzip magic bytes
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isGzipped(Path file) throws IOException {
+    try (InputStream input = Files.newInputStream(file)) {
+      return isGzipped(input);
+    }
+  }
 
-      int balance = 0;
-      for (int i = 0; i < ledger.getNumEntries(); i++) {
-        LedgerEntry entry = ledger.getEntry(i);
-        balance += entry.getAmount();
+  /**
+   * Checks whether a path names a gzip compressed file.
+   *
+   * @param filepath the path to check
+   * @return true if the path ends with the gzip extension
+   */
+  public static boolean isGzipPath(String filepath) {
+    return filepath.toLowerCase(Locale.ROOT).endsWith(GZIP_EXTENSION);
+  }
+
+  /**
+   * Resolves a client supplied filename against an export directory,
+   * rejecting names that would leave it, such as "../ledger.csv" or an
+   * absolute path.
+   *
+   * @param directory the export directory
+   * @param filename  the filename to resolve
+   * @return the resolved, normalized path inside the directory
+   * @throws IllegalArgumentException if the filename is invalid or
+   *                                  resolves outside the directory
+   */
+  public static Path resolveExportPath(Path directory, String filename) {
+    if (directory == null || filename == null || filename.isBlank()) {
+      throw new IllegalArgumentException("Invalid filename");
+    }
+    Path base = directory.toAbsolutePath().normalize();
+    Path resolved;
+    try {
+      resolved = base.resolve(filename).normalize();
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("Invalid filename");
+    }
+    if (!resolved.startsWith(base) || resolved.equals(base)) {
+      throw new IllegalArgumentException("Invalid filename");
+    }
+    return resolved;
+  }
+
+  /**
+   * Parses one trimmed, non-empty data line into an entry.
+   *
+   * @param line the line to parse
+   * @return the entry
+   * @throws IllegalArgumentException if the line is invalid
+   */
+  private static LedgerEntry parseEntry(String line) {
+    Scanner lineScanner = null;
+    try {
+      lineScanner = new Scanner(line);
+      lineScanner.useDelimiter(",");
 
-        int year = entry.getDate().getYear();
-        int month = entry.getDate().getMonth();
-        int day = entry.getDate().getDay();
+      if (!lineScanner.hasNext()) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+      String dateStr = lineScanner.next().trim();
 
-        String dateStr = String.format("%04d%02d%02d", year, month, day);
+      if (!lineScanner.hasNext()) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+      String description = lineScanner.next().trim();
 
-        String line = dateStr + ","
-            + entry.getDescription() + ","
-            + entry.getAmount() + ","
-            + balance + "\n";
+      if (!lineScanner.hasNext()) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+      String amountStr = lineScanner.next().trim();
 
-        outputStreamWriter.write(line);
+      int year;
+      int month;
+      int day;
+      try {
+        year = Integer.parseInt(dateStr.substring(0, YEAR_END_AND_MONTH_START));
+        month = Integer.parseInt(dateStr.substring(YEAR_END_AND_MONTH_START,
+            MONTH_END_AND_DAY_START));
+        day = Integer.parseInt(dateStr.substring(MONTH_END_AND_DAY_START, DAY_END));
+      } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+        throw new IllegalArgumentException("Invalid file");
       }
-    } catch (IOException e) {
-      throw new IllegalArgumentException("Error writing to file");
+
+      int amount;
+      try {
+        amount = Integer.parseInt(amountStr);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+
+      return new LedgerEntry(month, day, year, description, amount);
     } finally {
-      if (outputStreamWriter != null) {
-        try {
-          outputStreamWriter.close();
-        } catch (IOException e) {
-          /// checkstyle
+      if (lineScanner != null) {
+        lineScanner.close();
+      }
+    }
+  }
+
+  /**
+   * Reads only the entries between two dates, inclusive, from a CSV file
+   * written by writeLedgerToFile. The sidecar index next to the file is used
+   * to seek straight to the first matching row, and reading stops at the
+   * first row past the range. Files without a matching index are read in
+   * full and filtered.
+   *
+   * @param filepath   the path to the input file
+   * @param start      the first date to include
+   * @param end        the last date to include
+   * @param sizeLedger the maximum size of the ledger
+   * @return a Ledger holding the entries in the date range
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public static Ledger readLedgerFromFile(String filepath, LedgerDate start, LedgerDate end,
+      int sizeLedger) {
+    if (filepath == null || filepath.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    if (sizeLedger <= 0) {
+      throw new IllegalArgumentException("Invalid size");
+    }
+    if (start == null || end == null) {
+      throw new IllegalArgumentException("Null date");
+    }
+
+    long offset = findIndexedOffset(Paths.get(filepath), start.getDate());
+    if (offset < 0) {
+      return readLedgerFromFile(filepath, sizeLedger).getDateRange(start, end);
+    }
+
+    List<LedgerEntry> entries = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+            Channels.newInputStream(channel.position(offset)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        LedgerEntry entry = parseEntry(line);
+        if (entry.getDate().compareTo(end) > 0) {
+          break;
+        }
+        if (entry.getDate().compareTo(start) >= 0) {
+          entries.add(entry);
         }
       }
-      if (fileOutputStream != null) {
-        try {
-          fileOutputStream.close();
-        } catch (IOException e) {
-          /// checkstyle
+    } catch (NoSuchFileException e) {
+      throw new IllegalArgumentException("Input file not found.");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading file.");
+    }
+
+    Ledger ledger = new Ledger(sizeLedger);
+    ledger.addEntries(entries);
+    return ledger;
+  }
+
+  /**
+   * Looks up the offset of the first row dated on or after a date in the
+   * sidecar index of a CSV file.
+   *
+   * @param csv  the path to the CSV file
+   * @param date the packed date to look up
+   * @return the byte offset, or -1 if there is no usable index
+   */
+  private static long findIndexedOffset(Path csv, int date) {
+    Path indexPath = csv.resolveSibling(csv.getFileName() + INDEX_EXTENSION);
+    List<String> lines;
+    long csvSize;
+    try {
+      lines = Files.readAllLines(indexPath, StandardCharsets.US_ASCII);
+      csvSize = Files.size(csv);
+    } catch (IOException e) {
+      return -1;
+    }
+    if (lines.size() < 2 || !lines.get(0).equals(INDEX_HEADER.trim())) {
+      return -1;
+    }
+
+    try {
+      // An index whose recorded length does not match is stale
+      String lengthLine = lines.get(lines.size() - 1);
+      if (!lengthLine.startsWith(INDEX_LENGTH_PREFIX)
+          || Long.parseLong(lengthLine.substring(INDEX_LENGTH_PREFIX.length())) != csvSize) {
+        return -1;
+      }
+
+      int low = 1;
+      int high = lines.size() - 2;
+      long offset = csvSize;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        String row = lines.get(mid);
+        int comma = row.indexOf(',');
+        if (Integer.parseInt(row.substring(0, comma)) >= date) {
+          offset = Long.parseLong(row.substring(comma + 1));
+          high = mid - 1;
+        } else {
+          low = mid + 1;
         }
       }
+      return offset;
+    } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Validates a ledger file in a single streaming pass without building a
+   * Ledger. Accepts exactly the files readLedgerFromFile accepts, except
+   * that lines longer than MAX_LINE_LENGTH bytes are errors.
+   *
+   * @param filepath         the path to the input file
+   * @param maxErrors        the maximum number of errors to record
+   * @param stopAtFirstError whether to stop at the first error found
+   * @return the validation result
+   * @throws IllegalArgumentException if any input is invalid or the file
+   *                                  cannot be read
+   */
+  public static LedgerValidationResult validateLedgerFile(String filepath,
+      int maxErrors, boolean stopAtFirstError) {
+    if (filepath == null || filepath.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+
+    try (InputStream input = new FileInputStream(filepath)) {
+      return validateLedgerFile(input, maxErrors, stopAtFirstError);
+    } catch (FileNotFoundException e) {
+      throw new IllegalArgumentException("Input file not found.");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading file.");
+    }
+  }
+
+  /**
+   * Validates ledger data from a stream in a single pass without building a
+   * Ledger. Only the current line is held in memory, up to MAX_LINE_LENGTH
+   * bytes; a longer line is recorded as "Line too long" and skipped. Lines
+   * end where Scanner.nextLine ends them: at \r\n, \n, \r, \u2028,
+   * \u2029 or \u0085, read as UTF-8. The stream is not closed.
+   *
+   * @param input            the stream to validate
+   * @param maxErrors        the maximum number of errors to record
+   * @param stopAtFirstError whether to stop at the first error found
+   * @return the validation result
+   * @throws IllegalArgumentException if any input is invalid or the stream
+   *                                  cannot be read
+   */
+  public static LedgerValidationResult validateLedgerFile(InputStream input,
+      int maxErrors, boolean stopAtFirstError) {
+    if (input == null) {
+      throw new IllegalArgumentException("Null input");
+    }
+    LedgerValidationResult result = new LedgerValidationResult(maxErrors);
+
+    byte[] buffer = new byte[VALIDATION_BUFFER_SIZE];
+    byte[] line = new byte[256];
+    int lineLength = 0;
+    long lineNumber = 0;
+    boolean anyBytes = false;
+    boolean afterCr = false;
+    boolean tooLong = false;
+
+    try {
+      input = decompressIfGzipped(input);
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        anyBytes |= read > 0;
+        for (int i = 0; i < read; i++) {
+          byte b = buffer[i];
+          if (b == '\n' && afterCr) {
+            // The \n of a \r\n, whose line already ended at the \r
+            afterCr = false;
+            continue;
+          }
+          afterCr = b == '\r';
+          int separator = b == '\n' || b == '\r' ? 1 : 0;
+          if (separator == 0) {
+            if (lineLength == line.length) {
+              if (line.length < MAX_LINE_LENGTH) {
+                line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+              } else {
+                // Keep only the bytes a split multi-byte separator needs
+                tooLong = true;
+                line[0] = line[lineLength - 2];
+                line[1] = line[lineLength - 1];
+                lineLength = 2;
+              }
+            }
+            line[lineLength++] = b;
+            separator = unicodeSeparatorLength(line, lineLength);
+            if (separator == 0) {
+              continue;
+            }
+            lineLength -= separator;
+          }
+
+          lineNumber++;
+          boolean proceed = tooLong ? lineTooLong(lineNumber, result, stopAtFirstError)
+              : validateLine(line, lineLength, lineNumber, result, stopAtFirstError);
+          if (!proceed) {
+            result.stopEarly();
+            return result;
+          }
+          lineLength = 0;
+          tooLong = false;
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading file.");
+    }
+
+    if (!anyBytes) {
+      result.addError(1, "Input file is empty.");
+    } else if (tooLong) {
+      lineTooLong(lineNumber + 1, result, stopAtFirstError);
+    } else if (lineLength > 0) {
+      validateLine(line, lineLength, lineNumber + 1, result, stopAtFirstError);
+    }
+    return result;
+  }
+
+  /**
+   * Checks whether a line ends with one of the UTF-8 encoded separators
+   * Scanner ends lines at besides \r and \n: \u2028, \u2029 or \u0085.
+   * These are not continuation bytes of any longer character.
+   *
+   * @param line   the line bytes
+   * @param length the number of bytes in the line
+   * @return the length of the separator, or 0 if the line does not end
+   *         with one
+   */
+  private static int unicodeSeparatorLength(byte[] line, int length) {
+    int last = line[length - 1] & 0xFF;
+    if (last == 0x85 && length >= 2 && (line[length - 2] & 0xFF) == 0xC2) {
+      return 2;
+    }
+    if ((last == 0xA8 || last == 0xA9) && length >= 3 && (line[length - 2] & 0xFF) == 0x80
+        && (line[length - 3] & 0xFF) == 0xE2) {
+      return 3;
+    }
+    return 0;
+  }
+
+  /**
+   * Records a line longer than MAX_LINE_LENGTH.
+   *
+   * @param lineNumber       the 1-based line number
+   * @param result           the result to record into
+   * @param stopAtFirstError whether validation stops at the first error
+   * @return true if validation should continue
+   */
+  private static boolean lineTooLong(long lineNumber, LedgerValidationResult result,
+      boolean stopAtFirstError) {
+    result.addError(lineNumber, "Line too long");
+    LedgerMetrics.recordFailedRow(LedgerMetrics.OPERATION_VALIDATE, "Line too long");
+    // Without a header the rest of the file cannot be interpreted
+    return lineNumber != 1 && !stopAtFirstError;
+  }
+
+  /**
+   * Validates one line and records the outcome.
+   *
+   * @param line             the line bytes
+   * @param length           the number of bytes in the line
+   * @param lineNumber       the 1-based line number
+   * @param result           the result to record into
+   * @param stopAtFirstError whether validation stops at the first error
+   * @return true if validation should continue
+   */
+  private static boolean validateLine(byte[] line, int length, long lineNumber,
+      LedgerValidationResult result, boolean stopAtFirstError) {
+    int start = skipWhitespace(line, 0, length);
+    int end = trimWhitespace(line, start, length);
+
+    if (lineNumber == 1) {
+      if (!startsWith(line, start, end, REQUIRED_HEADER)) {
+        // Without a header the rest of the file cannot be interpreted
+        result.addError(lineNumber, "Invalid header");
+        LedgerMetrics.recordFailedRow(LedgerMetrics.OPERATION_VALIDATE, "Invalid header");
+        return false;
+      }
+      return true;
+    }
+    if (start == end) {
+      return true;
+    }
+
+    String error = validateEntry(line, start, end);
+    if (error == null) {
+      result.addEntry();
+      return true;
+    }
+    result.addError(lineNumber, error);
+    LedgerMetrics.recordFailedRow(LedgerMetrics.OPERATION_VALIDATE, error);
+    return !stopAtFirstError;
+  }
+
+  /**
+   * Validates the fields of a trimmed, non-empty entry line.
+   *
+   * @param line  the line bytes
+   * @param start the index of the first byte
+   * @param end   the index after the last byte
+   * @return the error message, or null if the entry is valid
+   */
+  private static String validateEntry(byte[] line, int start, int end) {
+    int firstComma = indexOf(line, ',', start, end);
+    int secondComma = firstComma < 0 ? -1 : indexOf(line, ',', firstComma + 1, end);
+    if (secondComma < 0) {
+      return "Missing field";
+    }
+    int thirdComma = indexOf(line, ',', secondComma + 1, end);
+    int amountEnd = thirdComma < 0 ? end : thirdComma;
+
+    int dateStart = skipWhitespace(line, start, firstComma);
+    if (trimWhitespace(line, dateStart, firstComma) - dateStart < DAY_END) {
+      return "Invalid date";
+    }
+    int year = parseDigits(line, dateStart, dateStart + YEAR_END_AND_MONTH_START);
+    int month = parseDigits(line, dateStart + YEAR_END_AND_MONTH_START,
+        dateStart + MONTH_END_AND_DAY_START);
+    int day = parseDigits(line, dateStart + MONTH_END_AND_DAY_START, dateStart + DAY_END);
+    if (year < 0 || month < 0 || day < 0 || !LedgerDate.isValid(month, day, year)) {
+      return "Invalid date";
+    }
+
+    if (skipWhitespace(line, firstComma + 1, secondComma) == secondComma) {
+      return "Empty or all whitespace description";
+    }
+
+    int amountStart = skipWhitespace(line, secondComma + 1, amountEnd);
+    long amount = parseAmount(line, amountStart, trimWhitespace(line, amountStart, amountEnd));
+    if (amount == Long.MIN_VALUE) {
+      return "Invalid amount";
+    }
+    if (amount == 0) {
+      return "Amount is zero";
+    }
+    return null;
+  }
+
+  /**
+   * Finds the first occurrence of a byte in a range.
+   *
+   * @param line   the bytes to search
+   * @param target the byte to find
+   * @param from   the start index, inclusive
+   * @param to     the end index, exclusive
+   * @return the index of the byte, or -1 if not found
+   */
+  private static int indexOf(byte[] line, char target, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (line[i] == target) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Skips leading whitespace as String.trim would.
+   *
+   * @param line the bytes
+   * @param from the start index, inclusive
+   * @param to   the end index, exclusive
+   * @return the index of the first non-whitespace byte, or to
+   */
+  private static int skipWhitespace(byte[] line, int from, int to) {
+    while (from < to && (line[from] & 0xFF) <= ' ') {
+      from++;
+    }
+    return from;
+  }
+
+  /**
+   * Skips trailing whitespace as String.trim would.
+   *
+   * @param line the bytes
+   * @param from the start index, inclusive
+   * @param to   the end index, exclusive
+   * @return the index after the last non-whitespace byte, or from
+   */
+  private static int trimWhitespace(byte[] line, int from, int to) {
+    while (to > from && (line[to - 1] & 0xFF) <= ' ') {
+      to--;
+    }
+    return to;
+  }
+
+  /**
+   * Checks whether a range of bytes starts with an ASCII prefix.
+   *
+   * @param line   the bytes
+   * @param from   the start index, inclusive
+   * @param to     the end index, exclusive
+   * @param prefix the prefix
+   * @return true if the range starts with the prefix
+   */
+  private static boolean startsWith(byte[] line, int from, int to, String prefix) {
+    if (to - from < prefix.length()) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (line[from + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses an unsigned run of decimal digits.
+   *
+   * @param line the bytes
+   * @param from the start index, inclusive
+   * @param to   the end index, exclusive
+   * @return the value, or -1 if any byte is not a digit
+   */
+  private static int parseDigits(byte[] line, int from, int to) {
+    int value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = line[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Parses a signed int as Integer.parseInt would.
+   *
+   * @param line the bytes
+   * @param from the start index, inclusive
+   * @param to   the end index, exclusive
+   * @return the value, or Long.MIN_VALUE if it is not a valid int
+   */
+  private static long parseAmount(byte[] line, int from, int to) {
+    if (from == to) {
+      return Long.MIN_VALUE;
+    }
+    boolean negative = line[from] == '-';
+    if (negative || line[from] == '+') {
+      from++;
+    }
+    if (from == to) {
+      return Long.MIN_VALUE;
+    }
+
+    long value = 0;
+    for (int i = from; i < to; i++) {
+      int digit = line[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return Long.MIN_VALUE;
+      }
+      value = value * 10 + digit;
+      if (value > (long) Integer.MAX_VALUE + 1) {
+        return Long.MIN_VALUE;
+      }
+    }
+    value = negative ? -value : value;
+    if (value > Integer.MAX_VALUE) {
+      return Long.MIN_VALUE;
+    }
+    return value;
+  }
+
+  /**
+   * Writes ledger entries to a file. The rows are encoded into a reusable
+   * buffer and written in large chunks to a temporary file next to the
+   * target, which is then renamed into place so readers never see a partial
+   * file. A small sidecar index file mapping each date to the byte offset of
+   * its first row is written next to it for date range reads. Paths ending
+   * in .gz are gzip compressed as they are written and get no index.
+   *
+   * @param filepath the path to the output file
+   * @param ledger   the Ledger object to write
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public static void writeLedgerToFile(String filepath, Ledger ledger) {
+    if (filepath == null || filepath.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+
+    long started = System.nanoTime();
+    long[] written = new long[2];
+    if (isGzipPath(filepath)) {
+      // Offsets into compressed data are meaningless, so no index is written
+      writeAtomically(filepath, false, channel -> {
+        LedgerEvents.Serialize event = new LedgerEvents.Serialize();
+        event.begin();
+        GZIPOutputStream output = new GZIPOutputStream(Channels.newOutputStream(channel),
+            STREAM_BUFFER_SIZE);
+        LedgerCsvWriter writer = new LedgerCsvWriter(Channels.newChannel(output));
+        written[0] = writer.writeLedger(ledger);
+        writer.flush();
+        output.finish();
+        written[1] = writer.getBytesWritten();
+        serialized(event, filepath, LedgerMetrics.FORMAT_CSV, written[0], written[1]);
+      });
+      LedgerMetrics.recordWrite(LedgerMetrics.FORMAT_CSV, System.nanoTime() - started,
+          written[0], written[1]);
+      return;
+    }
+
+    StringBuilder index = new StringBuilder(INDEX_HEADER);
+    writeAtomically(filepath, false, channel -> {
+      LedgerEvents.Serialize event = new LedgerEvents.Serialize();
+      event.begin();
+      LedgerCsvWriter writer = new LedgerCsvWriter(channel);
+      writer.writeHeader();
+
+      List<LedgerEntry> entries = ledger.getEntries();
+      int balance = 0;
+      int lastDate = 0;
+      for (int i = 0; i < entries.size(); i++) {
+        LedgerEntry entry = entries.get(i);
+        int date = entry.getDate().getDate();
+        if (date != lastDate) {
+          index.append(date).append(',').append(writer.getBytesWritten()).append('\n');
+          lastDate = date;
+        }
+        balance += entry.getAmount();
+        writer.writeEntry(entry, balance);
+      }
+      writer.flush();
+      index.append(INDEX_LENGTH_PREFIX).append(writer.getBytesWritten()).append('\n');
+      written[0] = entries.size();
+      written[1] = writer.getBytesWritten();
+      serialized(event, filepath, LedgerMetrics.FORMAT_CSV, written[0], written[1]);
+    });
+
+    writeAtomically(filepath + INDEX_EXTENSION, true, channel -> {
+      ByteBuffer bytes = ByteBuffer.wrap(index.toString().getBytes(StandardCharsets.US_ASCII));
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    });
+    LedgerMetrics.recordWrite(LedgerMetrics.FORMAT_CSV, System.nanoTime() - started,
+        written[0], written[1]);
+  }
+
+  /**
+   * Exports only the entries added to a ledger since a previous export. The
+   * previous export's high-water mark is the number of entries the ledger
+   * had when it ran, and the new mark is returned for the next export. New
+   * entries are written in date order with the balance column carried
+   * forward from the ledger's balance at the previous mark.
+   *
+   * <p>
+   * In append mode the rows are added to the end of an existing export,
+   * which is created with a header if it does not exist yet; appending to a
+   * .gz path adds a new gzip member, which readers decompress as one stream.
+   * The mark each append reaches is recorded in a sidecar file next to the
+   * export, and an append whose mark does not match it is rejected, so the
+   * same entries are never appended twice. If the append fails the file is
+   * truncated back to its previous length. Otherwise a new delta file is
+   * written holding just the header and the new rows. Either way the cost
+   * depends only on the number of new entries. A CSV that has been appended
+   * to no longer matches its sidecar index, so date range reads of it fall
+   * back to a full read.
+   *
+   * @param filepath the path to the output file
+   * @param ledger   the Ledger object to export
+   * @param since    the high-water mark of the previous export, 0 for none
+   * @param append   whether to append to the file instead of writing a delta
+   *                 file
+   * @return the new high-water mark
+   * @throws IllegalArgumentException if any input is invalid or does not
+   *                                  match the mark recorded for the file
+   */
+  public static int exportLedgerSince(String filepath, Ledger ledger, int since,
+      boolean append) {
+    if (filepath == null || filepath.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+
+    List<LedgerEntry> added;
+    int mark;
+    int closingBalance;
+    synchronized (ledger) {
+      added = ledger.getEntriesAddedSince(since);
+      mark = ledger.getNumEntries();
+      closingBalance = ledger.getBalance();
+    }
+    int openingBalance = closingBalance;
+    for (LedgerEntry entry : added) {
+      openingBalance -= entry.getAmount();
+    }
+    added.sort(null);
+    int opening = openingBalance;
+    boolean compress = isGzipPath(filepath);
+
+    if (!append) {
+      writeAtomically(filepath, false, channel -> writeRows(channel, added, opening, true,
+          compress));
+      return mark;
+    }
+
+    Path target = Paths.get(filepath);
+    String markPath = filepath + MARK_EXTENSION;
+    try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      // Held until the channel closes, so concurrent appends check in turn
+      channel.lock();
+      long length = channel.size();
+      if (since != (length == 0 ? 0 : readExportMark(Paths.get(markPath)))) {
+        throw new IllegalArgumentException("High-water mark does not match the export");
+      }
+      try {
+        writeRows(channel, added, opening, length == 0, compress);
+        channel.force(true);
+        byte[] recorded = (mark + "\n").getBytes(StandardCharsets.US_ASCII);
+        writeAtomically(markPath, true, markChannel -> markChannel.write(
+            ByteBuffer.wrap(recorded)));
+      } catch (IOException | RuntimeException e) {
+        // Leave the export as it was, so the same append can be retried
+        channel.truncate(length);
+        channel.force(true);
+        throw e;
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error writing to file");
+    }
+    return mark;
+  }
+
+  /**
+   * Reads the high-water mark recorded for an export that has been appended
+   * to.
+   *
+   * @param markPath the sidecar file
+   * @return the recorded mark
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if no mark is recorded
+   */
+  private static int readExportMark(Path markPath) throws IOException {
+    if (!Files.isRegularFile(markPath)) {
+      throw new IllegalArgumentException("No high-water mark recorded for the export");
+    }
+    try {
+      return Integer.parseInt(Files.readString(markPath, StandardCharsets.US_ASCII).trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("No high-water mark recorded for the export");
+    }
+  }
+
+  /**
+   * Writes entries as CSV rows with a running balance.
+   *
+   * @param channel        the channel to write to
+   * @param entries        the entries to write
+   * @param openingBalance the balance before the first entry
+   * @param header         whether to write the header row first
+   * @param compress       whether to gzip compress the rows
+   * @throws IOException if writing fails
+   */
+  private static void writeRows(FileChannel channel, List<LedgerEntry> entries,
+      int openingBalance, boolean header, boolean compress) throws IOException {
+    LedgerEvents.Serialize event = new LedgerEvents.Serialize();
+    event.begin();
+    GZIPOutputStream gzip = compress ? new GZIPOutputStream(Channels.newOutputStream(channel),
+        STREAM_BUFFER_SIZE) : null;
+    LedgerCsvWriter writer = new LedgerCsvWriter(gzip != null ? Channels.newChannel(gzip)
+        : channel);
+    if (header) {
+      writer.writeHeader();
+    }
+    writer.writeEntries(entries, openingBalance);
+    writer.flush();
+    if (gzip != null) {
+      gzip.finish();
+    }
+    serialized(event, null, LedgerMetrics.FORMAT_CSV, entries.size(), writer.getBytesWritten());
+  }
+
+  /**
+   * Writes ledger entries as CSV to a stream, flushing in chunks so a
+   * consumer can start reading rows before the whole ledger is written. The
+   * stream is flushed but not closed.
+   *
+   * @param output the stream to write to
+   * @param ledger the Ledger object to write
+   * @throws IllegalArgumentException if any input is invalid
+   * @throws IOException              if writing to the stream fails
+   */
+  public static void writeLedgerToStream(OutputStream output, Ledger ledger)
+      throws IOException {
+    writeLedgerToStream(output, ledger, false);
+  }
+
+  /**
+   * Writes ledger entries as CSV to a stream, optionally gzip compressing
+   * them as they are written. The stream is flushed but not closed.
+   *
+   * @param output   the stream to write to
+   * @param ledger   the Ledger object to write
+   * @param compress whether to gzip compress the output
+   * @throws IllegalArgumentException if any input is invalid
+   * @throws IOException              if writing to the stream fails
+   */
+  public static void writeLedgerToStream(OutputStream output, Ledger ledger,
+      boolean compress) throws IOException {
+    if (output == null) {
+      throw new IllegalArgumentException("Null output");
+    }
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+
+    long started = System.nanoTime();
+    LedgerEvents.Serialize event = new LedgerEvents.Serialize();
+    event.begin();
+    GZIPOutputStream gzip = compress ? new GZIPOutputStream(output, STREAM_BUFFER_SIZE, true)
+        : null;
+    LedgerCsvWriter writer = new LedgerCsvWriter(
+        Channels.newChannel(gzip != null ? gzip : output), STREAM_BUFFER_SIZE);
+    int rows = writer.writeLedger(ledger);
+    writer.flush();
+    if (gzip != null) {
+      gzip.finish();
+    }
+    output.flush();
+    serialized(event, null, LedgerMetrics.FORMAT_CSV, rows, writer.getBytesWritten());
+    LedgerMetrics.recordWrite(LedgerMetrics.FORMAT_CSV, System.nanoTime() - started, rows,
+        writer.getBytesWritten());
+  }
+
+  /**
+   * Writes a ledger to a file in the compact binary format. The file holds
+   * a header, a dictionary of the distinct descriptions, and one fixed-width
+   * record per entry with the packed date, the amount, and the description
+   * id. Records are grouped into blocks of BINARY_BLOCK_ROWS, and a footer
+   * index stores each block's date range, row count and offset so date
+   * range reads can skip blocks.
+   *
+   * @param filepath the path to the output file
+   * @param ledger   the Ledger object to write
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public static void writeLedgerToBinaryFile(String filepath, Ledger ledger) {
+    if (filepath == null || filepath.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+
+    List<LedgerEntry> entries = ledger.getEntries();
+    Map<String, Integer> ids = new HashMap<>();
+    List<byte[]> dictionary = new ArrayList<>();
+    int[] descriptionIds = new int[entries.size()];
+    long dictionaryBytes = 0;
+    for (int i = 0; i < entries.size(); i++) {
+      String description = entries.get(i).getDescription();
+      Integer id = ids.get(description);
+      if (id == null) {
+        id = dictionary.size();
+        ids.put(description, id);
+        byte[] encoded = description.getBytes(StandardCharsets.UTF_8);
+        dictionary.add(encoded);
+        dictionaryBytes += Integer.BYTES + encoded.length;
+      }
+      descriptionIds[i] = id;
+    }
+    if (dictionaryBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Ledger too large");
+    }
+    int dictionaryLength = (int) dictionaryBytes;
+
+    long started = System.nanoTime();
+    long[] fileSize = new long[1];
+    writeAtomically(filepath, false, channel -> {
+      LedgerEvents.Serialize event = new LedgerEvents.Serialize();
+      event.begin();
+      ByteBuffer buffer = ByteBuffer.allocate(LedgerCsvWriter.BUFFER_SIZE);
+      buffer.putInt(BINARY_MAGIC)
+          .putInt(BINARY_VERSION)
+          .putInt(entries.size())
+          .putInt(dictionary.size())
+          .putInt(dictionaryLength);
+
+      for (byte[] encoded : dictionary) {
+        writeFully(channel, buffer, Integer.BYTES);
+        buffer.putInt(encoded.length);
+        int written = 0;
+        while (written < encoded.length) {
+          writeFully(channel, buffer, 1);
+          int chunk = Math.min(encoded.length - written, buffer.remaining());
+          buffer.put(encoded, written, chunk);
+          written += chunk;
+        }
+      }
+
+      int blockCount = (entries.size() + BINARY_BLOCK_ROWS - 1) / BINARY_BLOCK_ROWS;
+      ByteBuffer index = ByteBuffer.allocate(blockCount * BINARY_INDEX_ENTRY_SIZE);
+      long offset = BINARY_HEADER_SIZE + (long) dictionaryLength;
+      for (int blockStart = 0; blockStart < entries.size(); blockStart += BINARY_BLOCK_ROWS) {
+        int blockEnd = Math.min(blockStart + BINARY_BLOCK_ROWS, entries.size());
+        int minDate = Integer.MAX_VALUE;
+        int maxDate = Integer.MIN_VALUE;
+        for (int i = blockStart; i < blockEnd; i++) {
+          LedgerEntry entry = entries.get(i);
+          int date = entry.getDate().getDate();
+          minDate = Math.min(minDate, date);
+          maxDate = Math.max(maxDate, date);
+          writeFully(channel, buffer, BINARY_RECORD_SIZE);
+          buffer.putInt(date)
+              .putInt(entry.getAmount())
+              .putInt(descriptionIds[i]);
+        }
+        index.putInt(minDate).putInt(maxDate).putInt(blockEnd - blockStart).putLong(offset);
+        offset += (long) (blockEnd - blockStart) * BINARY_RECORD_SIZE;
+      }
+
+      index.flip();
+      while (index.hasRemaining()) {
+        writeFully(channel, buffer, 1);
+        int chunk = Math.min(index.remaining(), buffer.remaining());
+        buffer.put(index.array(), index.position(), chunk);
+        index.position(index.position() + chunk);
+      }
+      writeFully(channel, buffer, BINARY_TRAILER_SIZE);
+      buffer.putInt(blockCount).putLong(offset).putInt(BINARY_MAGIC);
+      writeFully(channel, buffer, buffer.capacity());
+      fileSize[0] = channel.position();
+      serialized(event, filepath, LedgerMetrics.FORMAT_BINARY, entries.size(), fileSize[0]);
+    });
+    LedgerMetrics.recordWrite(LedgerMetrics.FORMAT_BINARY, System.nanoTime() - started,
+        entries.size(), fileSize[0]);
+  }
+
+  /**
+   * Reads a ledger from a file in the compact binary format. The records
+   * are mapped once and decoded straight into entries, so no text is
+   * parsed, and since they are stored in sorted order the ledger is filled
+   * without sorting.
+   *
+   * @param filepath   the path to the input file
+   * @param sizeLedger the maximum size of the ledger
+   * @return the populated Ledger object
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public static Ledger readLedgerFromBinaryFile(String filepath, int sizeLedger) {
+    return readBinary(filepath, Integer.MIN_VALUE, Integer.MAX_VALUE, sizeLedger);
+  }
+
+  /**
+   * Reads only the entries between two dates, inclusive, from a file in the
+   * compact binary format. The block index is checked first and blocks whose
+   * date range does not overlap the requested range are never read.
+   *
+   * @param filepath   the path to the input file
+   * @param start      the first date to include
+   * @param end        the last date to include
+   * @param sizeLedger the maximum size of the ledger
+   * @return a Ledger holding the entries in the date range
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public static Ledger readLedgerFromBinaryFile(String filepath, LedgerDate start,
+      LedgerDate end, int sizeLedger) {
+    if (start == null || end == null) {
+      throw new IllegalArgumentException("Null date");
+    }
+    return readBinary(filepath, start.getDate(), end.getDate(), sizeLedger);
+  }
+
+  /**
+   * Reads the entries with dates in a range from a binary ledger file.
+   *
+   * @param filepath   the path to the input file
+   * @param startDate  the first packed date to include
+   * @param endDate    the last packed date to include
+   * @param sizeLedger the maximum size of the ledger
+   * @return the populated Ledger object
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  private static Ledger readBinary(String filepath, int startDate, int endDate,
+      int sizeLedger) {
+    if (filepath == null || filepath.trim().isEmpty()) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    if (sizeLedger <= 0) {
+      throw new IllegalArgumentException("Invalid size");
+    }
+
+    long started = System.nanoTime();
+    LedgerEvents.FileOpen open = new LedgerEvents.FileOpen();
+    open.begin();
+    try (FileChannel channel = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      opened(open, filepath, false, fileSize);
+      LedgerEvents.Parse parse = new LedgerEvents.Parse();
+      parse.begin();
+      if (fileSize == 0) {
+        throw new IllegalArgumentException("Input file is empty.");
+      }
+      if (fileSize < BINARY_HEADER_SIZE) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+
+      ByteBuffer header = readBlock(channel, 0, BINARY_HEADER_SIZE);
+      int magic = header.getInt();
+      int version = header.getInt();
+      int count = header.getInt();
+      int dictionarySize = header.getInt();
+      int dictionaryLength = header.getInt();
+      // Every description takes at least its four byte length, which bounds
+      // the dictionary array before it is allocated
+      if (magic != BINARY_MAGIC || count < 0 || dictionaryLength < 0 || dictionarySize < 0
+          || dictionarySize > dictionaryLength / Integer.BYTES) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+      long recordsStart = (long) BINARY_HEADER_SIZE + dictionaryLength;
+      long recordsLength = (long) count * BINARY_RECORD_SIZE;
+
+      ByteBuffer index;
+      if (version == BINARY_VERSION) {
+        index = readBlockIndex(channel, fileSize, recordsStart, recordsLength);
+      } else if (version == BINARY_VERSION_UNBLOCKED
+          && recordsStart + recordsLength == fileSize) {
+        // Unblocked files hold one block covering every date
+        index = ByteBuffer.allocate(BINARY_INDEX_ENTRY_SIZE);
+        index.putInt(Integer.MIN_VALUE).putInt(Integer.MAX_VALUE).putInt(count)
+            .putLong(recordsStart).flip();
+      } else {
+        throw new IllegalArgumentException("Invalid file");
+      }
+
+      String[] descriptions = readDictionary(
+          readBlock(channel, BINARY_HEADER_SIZE, dictionaryLength), dictionarySize);
+
+      // Blocks are stored in date order, so the ones in range are contiguous
+      long bytesRead = recordsStart + index.remaining();
+      long spanStart = -1;
+      long spanEnd = -1;
+      while (index.hasRemaining()) {
+        int minDate = index.getInt();
+        int maxDate = index.getInt();
+        int blockRows = index.getInt();
+        long offset = index.getLong();
+        if (maxDate < startDate || minDate > endDate) {
+          continue;
+        }
+        if (spanStart < 0) {
+          spanStart = offset;
+        }
+        spanEnd = offset + (long) blockRows * BINARY_RECORD_SIZE;
+      }
+
+      List<LedgerEntry> entries = new ArrayList<>();
+      if (spanStart >= 0) {
+        if (spanEnd - spanStart > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException("Ledger too large");
+        }
+        IntBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, spanStart,
+            spanEnd - spanStart).asIntBuffer();
+        bytesRead += spanEnd - spanStart;
+        entries = new ArrayList<>((int) ((spanEnd - spanStart) / BINARY_RECORD_SIZE));
+        try {
+          while (records.hasRemaining()) {
+            int date = records.get();
+            int amount = records.get();
+            int descriptionId = records.get();
+            if (date >= startDate && date <= endDate) {
+              entries.add(new LedgerEntry((date / 100) % 100, date % 100,
+                  date / LedgerDate.TEN_THOUSAND, descriptions[descriptionId], amount));
+            }
+          }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+          throw new IllegalArgumentException("Invalid file");
+        }
+      }
+      int rows = entries.size();
+
+      // Records are written in sorted order, so the ledger is restored
+      // without sorting; fromEntries only sorts files that are not
+      Ledger ledger = Ledger.fromEntries(sizeLedger, entries, null);
+      if (parse.shouldCommit()) {
+        parse.path = filepath;
+        parse.format = LedgerMetrics.FORMAT_BINARY;
+        parse.rows = rows;
+        parse.bytes = bytesRead;
+        parse.commit();
+      }
+      LedgerMetrics.recordRead(LedgerMetrics.FORMAT_BINARY, System.nanoTime() - started,
+          bytesRead, ledger);
+      return ledger;
+    } catch (NoSuchFileException e) {
+      throw new IllegalArgumentException("Input file not found.");
+    } catch (IOException e) {
+      LedgerMetrics.recordReadFailure(LedgerMetrics.FORMAT_BINARY, "Error reading file.");
+      throw new IllegalArgumentException("Error reading file.");
+    } catch (IllegalArgumentException e) {
+      LedgerMetrics.recordReadFailure(LedgerMetrics.FORMAT_BINARY, e.getMessage());
+      throw e;
+    }
+  }
+
+  /**
+   * Reads and checks the block index from the footer of a blocked binary
+   * file. Each index entry holds a block's min date, max date, row count and
+   * byte offset.
+   *
+   * @param channel       the channel to read from
+   * @param fileSize      the size of the file
+   * @param recordsStart  the offset of the first block
+   * @param recordsLength the total length of all blocks
+   * @return the index entries, flipped for reading
+   * @throws IOException              if reading fails
+   * @throws IllegalArgumentException if the index is malformed
+   */
+  private static ByteBuffer readBlockIndex(FileChannel channel, long fileSize,
+      long recordsStart, long recordsLength) throws IOException {
+    if (fileSize < recordsStart + BINARY_TRAILER_SIZE) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+    ByteBuffer trailer = readBlock(channel, fileSize - BINARY_TRAILER_SIZE, BINARY_TRAILER_SIZE);
+    int blockCount = trailer.getInt();
+    long indexOffset = trailer.getLong();
+    if (trailer.getInt() != BINARY_MAGIC || blockCount < 0
+        || indexOffset != recordsStart + recordsLength
+        || indexOffset + (long) blockCount * BINARY_INDEX_ENTRY_SIZE
+            + BINARY_TRAILER_SIZE != fileSize) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+
+    ByteBuffer index = readBlock(channel, indexOffset, blockCount * BINARY_INDEX_ENTRY_SIZE);
+    long expectedOffset = recordsStart;
+    for (int i = 0; i < blockCount; i++) {
+      index.position(i * BINARY_INDEX_ENTRY_SIZE + 2 * Integer.BYTES);
+      int blockRows = index.getInt();
+      if (blockRows < 0 || index.getLong() != expectedOffset) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+      expectedOffset += (long) blockRows * BINARY_RECORD_SIZE;
+    }
+    if (expectedOffset != indexOffset) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+    return index.rewind();
+  }
+
+  /**
+   * Reads exactly length bytes at a position into a new buffer.
+   *
+   * @param channel  the channel to read from
+   * @param position the file position to start at
+   * @param length   the number of bytes to read
+   * @return the buffer, flipped for reading
+   * @throws IOException              if reading fails
+   * @throws IllegalArgumentException if the file ends early
+   */
+  private static ByteBuffer readBlock(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new IllegalArgumentException("Invalid file");
+      }
+    }
+    return buffer.flip();
+  }
+
+  /**
+   * Decodes a description dictionary block.
+   *
+   * @param block the dictionary bytes
+   * @param size  the number of descriptions
+   * @return the descriptions indexed by id
+   * @throws IllegalArgumentException if the block is malformed
+   */
+  private static String[] readDictionary(ByteBuffer block, int size) {
+    String[] descriptions = new String[size];
+    try {
+      for (int i = 0; i < size; i++) {
+        int length = block.getInt();
+        if (length < 0 || length > block.remaining()) {
+          throw new IllegalArgumentException("Invalid file");
+        }
+        descriptions[i] = new String(block.array(), block.position(), length,
+            StandardCharsets.UTF_8);
+        block.position(block.position() + length);
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+    if (block.hasRemaining()) {
+      throw new IllegalArgumentException("Invalid file");
+    }
+    return descriptions;
+  }
+
+  /**
+   * Writes the buffer to the channel if it has less than needed bytes free.
+   *
+   * @param channel the channel to write to
+   * @param buffer  the buffer being filled
+   * @param needed  the number of bytes about to be put
+   * @throws IOException if writing fails
+   */
+  private static void writeFully(WritableByteChannel channel, ByteBuffer buffer, int needed)
+      throws IOException {
+    if (buffer.remaining() >= needed) {
+      return;
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Writes a file by filling a temporary sibling file, forcing it to disk
+   * and renaming it onto the target, so readers never see a partial file.
+   *
+   * @param filepath        the path to the output file
+   * @param replaceExisting whether an existing file may be replaced
+   * @param content         writes the file content to the channel
+   * @throws IllegalArgumentException if the file exists or cannot be written
+   */
+  static void writeAtomically(String filepath, boolean replaceExisting,
+      ChannelWriter content) {
+    Path target = Paths.get(filepath);
+    if (!replaceExisting && Files.exists(target)) {
+      throw new IllegalArgumentException("Output file already exists.");
+    }
+
+    Path temp = target.resolveSibling(target.getFileName() + "." + System.nanoTime() + ".tmp");
+    LedgerEvents.Write event = new LedgerEvents.Write();
+    event.begin();
+    try {
+      LedgerEvents.FileOpen open = new LedgerEvents.FileOpen();
+      open.begin();
+      try (FileChannel channel = FileChannel.open(temp,
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        opened(open, temp.toString(), true, 0);
+        content.write(channel);
+        channel.force(true);
+        if (event.isEnabled()) {
+          event.bytes = channel.size();
+        }
+      }
+      moveIntoPlace(temp, target, replaceExisting);
+      if (event.shouldCommit()) {
+        event.path = filepath;
+        event.commit();
+      }
+    } catch (FileAlreadyExistsException e) {
+      throw new IllegalArgumentException("Output file already exists.");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error writing to file");
+    } finally {
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException e) {
+        /// checkstyle
+      }
+    }
+  }
+
+  /**
+   * Commits a FileOpen event, if it is being recorded.
+   *
+   * @param event the event, begun before the file was opened
+   * @param path  the file
+   * @param write whether the file was opened for writing
+   * @param bytes the size of the file
+   */
+  private static void opened(LedgerEvents.FileOpen event, String path, boolean write,
+      long bytes) {
+    if (event.shouldCommit()) {
+      event.path = path;
+      event.write = write;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  /**
+   * Commits a Serialize event, if it is being recorded.
+   *
+   * @param event  the event, begun before encoding started
+   * @param path   the file written, or null for a stream
+   * @param format the format
+   * @param rows   the entries encoded
+   * @param bytes  the bytes encoded
+   */
+  private static void serialized(LedgerEvents.Serialize event, String path, String format,
+      long rows, long bytes) {
+    if (event.shouldCommit()) {
+      event.path = path;
+      event.format = format;
+      event.rows = rows;
+      event.bytes = bytes;
+      event.commit();
+    }
+  }
+
+  /**
+   * Writes file content to an open channel.
+   */
+  @FunctionalInterface
+  interface ChannelWriter {
+
+    /**
+     * Writes the content.
+     *
+     * @param channel the channel to write to
+     * @throws IOException if writing fails
+     */
+    void write(FileChannel channel) throws IOException;
+  }
+
+  /**
+   * Renames a finished temporary file to its target name, atomically where
+   * the file system supports it. When an existing file may not be replaced,
+   * the file is published with a hard link, which fails if the target
+   * exists at that moment instead of after a separate check; the caller
+   * deletes the temporary file.
+   *
+   * @param temp            the finished temporary file
+   * @param target          the final path
+   * @param replaceExisting whether an existing file may be replaced
+   * @throws FileAlreadyExistsException if the target exists and may not be
+   *                                    replaced
+   * @throws IOException                if the file cannot be moved
+   */
+  private static void moveIntoPlace(Path temp, Path target, boolean replaceExisting)
+      throws IOException {
+    if (!replaceExisting) {
+      try {
+        Files.createLink(target, temp);
+        return;
+      } catch (FileAlreadyExistsException e) {
+        throw e;
+      } catch (UnsupportedOperationException | FileSystemException e) {
+        /// no hard links on this file system, so use a move that never
+        /// replaces
+      }
+      Files.move(temp, target);
+      return;
+    }
+    try {
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Counts the bytes read through it.
+   */
+  static class CountingInputStream extends FilterInputStream {
+
+    /** Receives the count after each read. */
+    private final LongConsumer progress;
+
+    /** Bytes read so far. */
+    private long count;
+
+    /**
+     * Wraps a stream.
+     *
+     * @param input the stream to count
+     */
+    CountingInputStream(InputStream input) {
+      this(input, count -> {
+      });
+    }
+
+    /**
+     * Wraps a stream, reporting the number of bytes read so far after each
+     * read.
+     *
+     * @param input    the stream to count
+     * @param progress receives the number of bytes read so far
+     */
+    CountingInputStream(InputStream input, LongConsumer progress) {
+      super(input);
+      this.progress = progress;
+    }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return the count
+     */
+    long getCount() {
+      return count;
+    }
+
+    /**
+     * Adds bytes read to the count.
+     *
+     * @param bytes the bytes read
+     */
+    void add(long bytes) {
+      count += bytes;
+      progress.accept(count);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int value = super.read();
+      if (value >= 0) {
+        add(1);
+      }
+      return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        add(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      add(skipped);
+      return skipped;
+    }
+  }
+
+  /**
+   * Decompresses gzip data, rejecting it once the decompressed bytes pass
+   * MAX_GZIP_EXPANSION times the compressed bytes read, so a small gzip
+   * bomb cannot inflate without bound. Small inputs may expand to one read
+   * buffer regardless.
+   */
+  private static class LimitedGzipInputStream extends CountingInputStream {
+
+    /** The compressed bytes. */
+    private final CountingInputStream compressed;
+
+    /**
+     * Wraps a compressed stream.
+     *
+     * @param compressed the compressed bytes
+     * @throws IOException if the gzip header cannot be read
+     */
+    LimitedGzipInputStream(CountingInputStream compressed) throws IOException {
+      super(new GZIPInputStream(compressed, VALIDATION_BUFFER_SIZE));
+      this.compressed = compressed;
+    }
+
+    @Override
+    void add(long bytes) {
+      super.add(bytes);
+      if (getCount() > Math.max(VALIDATION_BUFFER_SIZE,
+          compressed.getCount() * MAX_GZIP_EXPANSION)) {
+        throw new IllegalArgumentException("Decompressed data too large");
+      }
     }
   }
 }
@@ -1,17 +1,31 @@
 package com.example.ledger;
 
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * REST controller for handling ledger file operations.
@@ -23,93 +37,231 @@ import java.util.Map;
 @RequestMapping("/api/ledger/files")
 public class LedgerFileProcessingController {
 
-  private static final String UPLOAD_DIR = "uploads/";
   private static final String EXPORT_DIR = "exports/";
-  private static final int DEFAULT_LEDGER_SIZE = 1000;
+  private static final MediaType CSV_MEDIA_TYPE = new MediaType("text", "csv", StandardCharsets.UTF_8);
+  private static final MediaType GZIP_MEDIA_TYPE = new MediaType("application", "gzip");
+  private static final String JOBS_PATH = "/api/ledger/files/jobs/";
+
+  private final LedgerImportJobs importJobs;
+  private final LedgerImportAdmission admission;
+  private final LedgerParseCache parseCache;
+
+  /**
+   * Creates the controller with the beans from LedgerConfiguration.
+   *
+   * @param admission  the import admission controller
+   * @param parseCache the parse cache
+   * @param importJobs the background importer
+   */
+  public LedgerFileProcessingController(LedgerImportAdmission admission,
+      LedgerParseCache parseCache, LedgerImportJobs importJobs) {
+    this.admission = admission;
+    this.parseCache = parseCache;
+    this.importJobs = importJobs;
+  }
 
   /**
-   * Uploads a ledger file and imports its contents.
+   * Uploads a ledger file and imports its contents. Gzip compressed uploads
+   * (.csv.gz) are decompressed while they are parsed. With async set, the
+   * upload is copied to a temporary file and a job id is returned straight
+   * away while it is parsed in the background. Uploads whose content was
+   * parsed before are served from the parse cache.
    *
    * @param file       the CSV file to upload
    * @param sizeLedger optional maximum size for the ledger (defaults to 1000)
-   * @return ResponseEntity with the imported Ledger or error message
+   * @param async      optional flag to parse in a background job
+   * @return ResponseEntity with the imported Ledger, the job id, or error
+   *         message
    */
   @PostMapping("/upload")
   public ResponseEntity<Map<String, Object>> uploadLedgerFile(
       @RequestParam("file") MultipartFile file,
-      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger) {
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger,
+      @RequestParam(value = "async", defaultValue = "false") boolean async) {
 
     Map<String, Object> response = new HashMap<>();
 
     try {
       // Validate file
-      if (file.isEmpty()) {
-        response.put("error", "Please select a file to upload");
-        return ResponseEntity.badRequest().body(response);
-      }
-
-      if (!file.getOriginalFilename().toLowerCase().endsWith(".csv")) {
-        response.put("error", "Only CSV files are supported");
-        return ResponseEntity.badRequest().body(response);
-      }
-
-      // Create upload directory if it doesn't exist
-      Path uploadPath = Paths.get(UPLOAD_DIR);
-      if (!Files.exists(uploadPath)) {
-        Files.createDirectories(uploadPath);
+      checkUpload(file);
+
+      if (async) {
+        LedgerImportAdmission.Permit permit = admission.acquire(estimateUploadMemory(file));
+        // The multipart data is gone once the request ends, so keep a copy
+        Path copy = null;
+        try {
+          copy = Files.createTempFile("ledger-upload-", ".csv");
+          file.transferTo(copy);
+          return jobAccepted(importJobs.submit(copy, sizeLedger, true, permit));
+        } catch (IOException | RuntimeException e) {
+          permit.close();
+          if (copy != null) {
+            Files.deleteIfExists(copy);
+          }
+          throw e;
+        }
       }
 
-      // Save uploaded file
-      String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-      Path filePath = uploadPath.resolve(fileName);
-      Files.copy(file.getInputStream(), filePath);
+      Imported result = uploadNow(file, sizeLedger, admission, parseCache);
+      return imported(result.ledger(), "File uploaded and processed successfully",
+          result.cached());
 
-      // Import ledger from file
-      Ledger ledger = LedgerFileProcessing.readLedgerFromFile(filePath.toString(), sizeLedger);
-
-      // Clean up uploaded file
-      Files.deleteIfExists(filePath);
+    } catch (LedgerImportAdmission.RejectedException e) {
+      return rejected(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    } catch (IOException e) {
+      response.put("error", "Error processing file: " + e.getMessage());
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+  }
 
-      response.put("success", true);
-      response.put("message", "File uploaded and processed successfully");
-      response.put("ledger", ledger);
-      response.put("entriesCount", ledger.getNumEntries());
+  /**
+   * Uploads many ledger files in one request and parses them concurrently,
+   * one virtual thread per file. Each file's outcome is reported in request
+   * order. With merge set, the parsed ledgers are combined into a single
+   * consolidated ledger, which is only returned if every file parsed.
+   *
+   * @param files      the CSV files to upload
+   * @param sizeLedger optional maximum size for each ledger and the merged
+   *                   ledger (defaults to 1000)
+   * @param merge      optional flag to merge the files into one ledger
+   * @return ResponseEntity with the per-file results and merged Ledger, or
+   *         error message
+   */
+  @PostMapping("/upload-batch")
+  public ResponseEntity<Map<String, Object>> uploadLedgerFiles(
+      @RequestParam("files") List<MultipartFile> files,
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger,
+      @RequestParam(value = "merge", defaultValue = "false") boolean merge) {
 
-      return ResponseEntity.ok(response);
+    Map<String, Object> response = new HashMap<>();
 
-    } catch (IllegalArgumentException e) {
-      response.put("error", e.getMessage());
+    if (files == null || files.isEmpty()) {
+      response.put("error", "Please select files to upload");
       return ResponseEntity.badRequest().body(response);
+    }
+    if (sizeLedger <= 0) {
+      response.put("error", "Invalid size");
+      return ResponseEntity.badRequest().body(response);
+    }
+
+    // The whole batch is admitted, or turned away, as one import
+    long memory = 0;
+    try {
+      for (MultipartFile file : files) {
+        memory += estimateUploadMemory(file);
+      }
     } catch (IOException e) {
       response.put("error", "Error processing file: " + e.getMessage());
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
     }
+
+    List<Future<Ledger>> parses = new ArrayList<>();
+    try (LedgerImportAdmission.Permit permit = admission.acquire(memory);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (MultipartFile file : files) {
+        parses.add(executor.submit(() -> parseUpload(file, sizeLedger)));
+      }
+    } catch (LedgerImportAdmission.RejectedException e) {
+      return rejected(e);
+    }
+
+    List<Map<String, Object>> results = new ArrayList<>();
+    List<Ledger> ledgers = new ArrayList<>();
+    int failed = 0;
+    for (int i = 0; i < files.size(); i++) {
+      Map<String, Object> result = new HashMap<>();
+      result.put("filename", files.get(i).getOriginalFilename());
+      try {
+        Ledger ledger = parses.get(i).get();
+        ledgers.add(ledger);
+        result.put("success", true);
+        result.put("entriesCount", ledger.getNumEntries());
+        if (!merge) {
+          result.put("ledger", ledger);
+        }
+      } catch (ExecutionException e) {
+        failed++;
+        result.put("error", e.getCause() instanceof IOException
+            ? "Error processing file: " + e.getCause().getMessage()
+            : e.getCause().getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        response.put("error", "Upload interrupted");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+      }
+      results.add(result);
+    }
+
+    response.put("results", results);
+    response.put("filesProcessed", files.size() - failed);
+    response.put("filesFailed", failed);
+
+    if (merge) {
+      if (failed > 0) {
+        response.put("error", failed + " of " + files.size() + " files failed; nothing merged");
+        return ResponseEntity.badRequest().body(response);
+      }
+      Ledger merged = Ledger.merge(ledgers, sizeLedger);
+      response.put("ledger", merged);
+      response.put("entriesCount", merged.getNumEntries());
+    }
+
+    response.put("success", failed == 0);
+    response.put("message", "Files uploaded and processed");
+    return ResponseEntity.ok(response);
   }
 
   /**
-   * Imports a ledger from a file path on the server.
+   * Imports a ledger from a file path on the server. When a start and end
+   * date are given only entries in that range are imported, using the
+   * file's block or sidecar index to skip the rest. With async set, a full
+   * import returns a job id straight away and runs in the background; date
+   * range imports only read the matching part of the file and always run
+   * inline. Full imports of content that was parsed before are served from
+   * the parse cache.
    *
    * @param filepath   the path to the file on the server
    * @param sizeLedger optional maximum size for the ledger
-   * @return ResponseEntity with the imported Ledger or error message
+   * @param startDate  optional first date to import, as YYYYMMDD
+   * @param endDate    optional last date to import, as YYYYMMDD
+   * @param async      optional flag to import in a background job
+   * @return ResponseEntity with the imported Ledger, the job id, or error
+   *         message
    */
   @PostMapping("/import")
   public ResponseEntity<Map<String, Object>> importLedgerFromFile(
       @RequestParam("filepath") String filepath,
-      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger) {
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger,
+      @RequestParam(value = "startDate", required = false) Integer startDate,
+      @RequestParam(value = "endDate", required = false) Integer endDate,
+      @RequestParam(value = "async", defaultValue = "false") boolean async) {
 
     Map<String, Object> response = new HashMap<>();
 
     try {
-      Ledger ledger = LedgerFileProcessing.readLedgerFromFile(filepath, sizeLedger);
+      if (filepath == null || filepath.trim().isEmpty()) {
+        throw new IllegalArgumentException("Invalid filepath");
+      }
 
-      response.put("success", true);
-      response.put("message", "Ledger imported successfully");
-      response.put("ledger", ledger);
-      response.put("entriesCount", ledger.getNumEntries());
+      if (async && startDate == null && endDate == null) {
+        LedgerImportAdmission.Permit permit = admission.acquire(estimateFileMemory(filepath));
+        try {
+          return jobAccepted(importJobs.submit(Paths.get(filepath), sizeLedger, false,
+              permit));
+        } catch (RuntimeException e) {
+          permit.close();
+          throw e;
+        }
+      }
 
-      return ResponseEntity.ok(response);
+      Imported result = importNow(filepath, sizeLedger, startDate, endDate);
+      return imported(result.ledger(), "Ledger imported successfully", result.cached());
 
+    } catch (LedgerImportAdmission.RejectedException e) {
+      return rejected(e);
     } catch (IllegalArgumentException e) {
       response.put("error", e.getMessage());
       return ResponseEntity.badRequest().body(response);
@@ -117,16 +269,192 @@ public class LedgerFileProcessingController {
   }
 
   /**
-   * Exports a ledger to a CSV file.
+   * Uploads a ledger file and returns the imported ledger in the binary
+   * wire format, for clients that accept application/x-ledger-binary. It
+   * parses and caches as /upload does, but always inline. Errors are
+   * reported by status alone.
+   *
+   * @param file       the CSV file to upload
+   * @param sizeLedger optional maximum size for the ledger (defaults to 1000)
+   * @return ResponseEntity with the imported Ledger
+   */
+  @PostMapping(value = "/upload", produces = LedgerWireFormat.MEDIA_TYPE)
+  public ResponseEntity<Ledger> uploadLedgerFileBinary(
+      @RequestParam("file") MultipartFile file,
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger) {
+
+    try {
+      checkUpload(file);
+      return ResponseEntity.ok(uploadNow(file, sizeLedger, admission, parseCache).ledger());
+
+    } catch (LedgerImportAdmission.RejectedException e) {
+      return rejectedStatus(e);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    } catch (IOException e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+  }
+
+  /**
+   * Imports a ledger from a file path on the server and returns it in the
+   * binary wire format, for clients that accept application/x-ledger-binary.
+   * It reads and caches as /import does, but always inline. Errors are
+   * reported by status alone.
+   *
+   * @param filepath   the path to the file on the server
+   * @param sizeLedger optional maximum size for the ledger
+   * @param startDate  optional first date to import, as YYYYMMDD
+   * @param endDate    optional last date to import, as YYYYMMDD
+   * @return ResponseEntity with the imported Ledger
+   */
+  @PostMapping(value = "/import", produces = LedgerWireFormat.MEDIA_TYPE)
+  public ResponseEntity<Ledger> importLedgerFromFileBinary(
+      @RequestParam("filepath") String filepath,
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger,
+      @RequestParam(value = "startDate", required = false) Integer startDate,
+      @RequestParam(value = "endDate", required = false) Integer endDate) {
+
+    try {
+      if (filepath == null || filepath.trim().isEmpty()) {
+        throw new IllegalArgumentException("Invalid filepath");
+      }
+      return ResponseEntity.ok(importNow(filepath, sizeLedger, startDate, endDate).ledger());
+
+    } catch (LedgerImportAdmission.RejectedException e) {
+      return rejectedStatus(e);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+  }
+
+  /**
+   * Parses an upload inline, from the parse cache if its content was parsed
+   * before. Gzip compressed uploads are decompressed while they are parsed.
+   *
+   * LedgerRepositoryController parses its uploads here too, so both are
+   * admitted against the same budget.
+   *
+   * @param file       the checked upload
+   * @param sizeLedger the maximum size of the ledger
+   * @param admission  the import admission controller
+   * @param parseCache the parse cache
+   * @return the ledger and whether it came from the cache
+   * @throws LedgerImportAdmission.RejectedException if admission is refused
+   * @throws IllegalArgumentException                if the file is invalid
+   * @throws IOException                             if the upload cannot be
+   *                                                 read
+   */
+  static Imported uploadNow(MultipartFile file, int sizeLedger,
+      LedgerImportAdmission admission, LedgerParseCache parseCache) throws IOException {
+    String contentHash;
+    try (InputStream input = file.getInputStream()) {
+      contentHash = LedgerParseCache.hash(input);
+    }
+    Ledger cached = parseCache.get(contentHash, sizeLedger);
+    if (cached != null) {
+      return new Imported(cached, true);
+    }
+
+    // Parse straight from the upload, decompressing gzip on the fly
+    Ledger ledger;
+    try (LedgerImportAdmission.Permit permit = admission.acquire(estimateUploadMemory(file));
+        InputStream input = file.getInputStream()) {
+      ledger = LedgerFileProcessing.readLedgerFromStream(input, sizeLedger);
+    }
+    parseCache.put(contentHash, sizeLedger, ledger);
+    return new Imported(ledger, false);
+  }
+
+  /**
+   * Imports a file on the server inline. Full imports are served from the
+   * parse cache if the content was parsed before.
+   *
+   * @param filepath   the path to the file
+   * @param sizeLedger the maximum size of the ledger
+   * @param startDate  the first date to read as YYYYMMDD, or null for all
+   * @param endDate    the last date to read as YYYYMMDD, or null for all
+   * @return the ledger and whether it came from the cache
+   * @throws LedgerImportAdmission.RejectedException if admission is refused
+   * @throws IllegalArgumentException                if any input is invalid
+   */
+  private Imported importNow(String filepath, int sizeLedger, Integer startDate,
+      Integer endDate) {
+    String contentHash = null;
+    if (startDate == null && endDate == null) {
+      contentHash = LedgerParseCache.hash(Paths.get(filepath));
+      Ledger cached = parseCache.get(contentHash, sizeLedger);
+      if (cached != null) {
+        return new Imported(cached, true);
+      }
+    }
+
+    boolean binary = filepath.toLowerCase(Locale.ROOT).endsWith(LedgerFileProcessing.BINARY_EXTENSION);
+    Ledger ledger;
+    try (LedgerImportAdmission.Permit permit = admission.acquire(estimateFileMemory(filepath))) {
+      ledger = readLedger(filepath, binary, sizeLedger, startDate, endDate);
+    }
+    if (contentHash != null) {
+      parseCache.put(contentHash, sizeLedger, ledger);
+    }
+    return new Imported(ledger, false);
+  }
+
+  /**
+   * Reads a ledger file on the server, optionally only a date range of it.
+   *
+   * @param filepath   the path to the file
+   * @param binary     whether the file is in the binary format
+   * @param sizeLedger the maximum size of the ledger
+   * @param startDate  the first date to read as YYYYMMDD, or null for all
+   * @param endDate    the last date to read as YYYYMMDD, or null for all
+   * @return the ledger
+   * @throws IllegalArgumentException if any input is invalid or only one
+   *                                  date is given
+   */
+  private static Ledger readLedger(String filepath, boolean binary, int sizeLedger,
+      Integer startDate, Integer endDate) {
+    if (startDate == null && endDate == null) {
+      return binary
+          ? LedgerFileProcessing.readLedgerFromBinaryFile(filepath, sizeLedger)
+          : LedgerFileProcessing.readLedgerFromFile(filepath, sizeLedger);
+    }
+    if (startDate == null || endDate == null) {
+      throw new IllegalArgumentException("Both startDate and endDate are required");
+    }
+    LedgerDate start = LedgerDate.fromParameter(startDate);
+    LedgerDate end = LedgerDate.fromParameter(endDate);
+    return binary
+        ? LedgerFileProcessing.readLedgerFromBinaryFile(filepath, start, end, sizeLedger)
+        : LedgerFileProcessing.readLedgerFromFile(filepath, start, end, sizeLedger);
+  }
+
+  /**
+   * Exports a ledger to a CSV file, or to the compact binary format. CSV
+   * exports can be incremental: "append" mode adds only the entries added
+   * since the given high-water mark to an existing export, and "delta" mode
+   * writes them to a new file with the balance carried forward. The
+   * response holds the high-water mark to pass to the next export; an append
+   * whose mark does not match the one recorded for the file is rejected.
    *
    * @param ledger   the Ledger object to export
    * @param filename optional filename (defaults to timestamp-based name)
+   * @param format   optional file format, "csv" (default) or "binary"
+   * @param compress optional flag to gzip compress a CSV export
+   * @param mode     optional export mode, "full" (default), "append" or
+   *                 "delta"
+   * @param since    optional high-water mark of the previous export
+   *                 (defaults to 0)
    * @return ResponseEntity with export status and file path
    */
   @PostMapping("/export")
   public ResponseEntity<Map<String, Object>> exportLedgerToFile(
       @RequestBody Ledger ledger,
-      @RequestParam(value = "filename", required = false) String filename) {
+      @RequestParam(value = "filename", required = false) String filename,
+      @RequestParam(value = "format", defaultValue = "csv") String format,
+      @RequestParam(value = "compress", defaultValue = "false") boolean compress,
+      @RequestParam(value = "mode", defaultValue = "full") String mode,
+      @RequestParam(value = "since", defaultValue = "0") int since) {
 
     Map<String, Object> response = new HashMap<>();
 
@@ -137,22 +465,57 @@ public class LedgerFileProcessingController {
         Files.createDirectories(exportPath);
       }
 
+      boolean binary = "binary".equalsIgnoreCase(format);
+      if (!binary && !"csv".equalsIgnoreCase(format)) {
+        response.put("error", "Unsupported format: " + format);
+        return ResponseEntity.badRequest().body(response);
+      }
+      boolean append = "append".equalsIgnoreCase(mode);
+      boolean delta = "delta".equalsIgnoreCase(mode);
+      if (!append && !delta && !"full".equalsIgnoreCase(mode)) {
+        response.put("error", "Unsupported mode: " + mode);
+        return ResponseEntity.badRequest().body(response);
+      }
+      if (binary && (append || delta)) {
+        response.put("error", "Incremental export requires csv format");
+        return ResponseEntity.badRequest().body(response);
+      }
+      if (append && (filename == null || filename.trim().isEmpty())) {
+        response.put("error", "Append mode requires a filename");
+        return ResponseEntity.badRequest().body(response);
+      }
+      String extension = binary ? LedgerFileProcessing.BINARY_EXTENSION
+          : compress ? ".csv" + LedgerFileProcessing.GZIP_EXTENSION : ".csv";
+
       // Generate filename if not provided
       if (filename == null || filename.trim().isEmpty()) {
-        filename = "ledger_export_" + System.currentTimeMillis() + ".csv";
-      } else if (!filename.toLowerCase().endsWith(".csv")) {
-        filename += ".csv";
+        filename = "ledger_export_" + System.currentTimeMillis() + extension;
+      } else if (!filename.toLowerCase(Locale.ROOT).endsWith(extension)) {
+        filename += extension;
       }
 
-      String fullPath = exportPath.resolve(filename).toString();
-
-      LedgerFileProcessing.writeLedgerToFile(fullPath, ledger);
+      String fullPath = LedgerFileProcessing.resolveExportPath(exportPath, filename)
+          .toString();
+
+      int entriesExported = ledger.getNumEntries();
+      int highWaterMark = ledger.getNumEntries();
+      if (append || delta) {
+        highWaterMark = LedgerFileProcessing.exportLedgerSince(fullPath, ledger, since,
+            append);
+        entriesExported = highWaterMark - since;
+      } else if (binary) {
+        LedgerFileProcessing.writeLedgerToBinaryFile(fullPath, ledger);
+      } else {
+        LedgerFileProcessing.writeLedgerToFile(fullPath, ledger);
+      }
 
       response.put("success", true);
       response.put("message", "Ledger exported successfully");
       response.put("filepath", fullPath);
       response.put("filename", filename);
-      response.put("entriesExported", ledger.getNumEntries());
+      response.put("mode", mode.toLowerCase(Locale.ROOT));
+      response.put("entriesExported", entriesExported);
+      response.put("highWaterMark", highWaterMark);
 
       return ResponseEntity.ok(response);
 
@@ -166,14 +529,111 @@ public class LedgerFileProcessingController {
   }
 
   /**
-   * Validates a ledger file format without importing it.
+   * Exports a ledger as a CSV download streamed straight to the response.
+   * Nothing is written to the server's disk, and because no content length
+   * is set the rows are sent with chunked transfer encoding as they are
+   * produced.
+   *
+   * @param ledger   the Ledger object to export
+   * @param filename optional download filename (defaults to timestamp-based
+   *                 name)
+   * @param compress optional flag to gzip compress the download
+   * @return ResponseEntity streaming the CSV body
+   */
+  @PostMapping("/export/download")
+  public ResponseEntity<StreamingResponseBody> downloadLedger(
+      @RequestBody Ledger ledger,
+      @RequestParam(value = "filename", required = false) String filename,
+      @RequestParam(value = "compress", defaultValue = "false") boolean compress) {
+
+    String extension = compress ? ".csv" + LedgerFileProcessing.GZIP_EXTENSION : ".csv";
+    if (filename == null || filename.trim().isEmpty()) {
+      filename = "ledger_export_" + System.currentTimeMillis() + extension;
+    } else if (!filename.toLowerCase(Locale.ROOT).endsWith(extension)) {
+      filename += extension;
+    }
+
+    StreamingResponseBody body = output -> LedgerFileProcessing.writeLedgerToStream(
+        output, ledger, compress);
+
+    return ResponseEntity.ok()
+        .contentType(compress ? GZIP_MEDIA_TYPE : CSV_MEDIA_TYPE)
+        .header(HttpHeaders.CONTENT_DISPOSITION,
+            ContentDisposition.attachment().filename(filename).build().toString())
+        .body(body);
+  }
+
+  /**
+   * Reports the progress of a background import job: rows parsed, bytes
+   * read, throughput and estimated time left, and once it has finished, the
+   * imported ledger or the error. Finished jobs are kept for a limited time.
+   *
+   * @param jobId the job id returned when the import was started
+   * @return ResponseEntity with the job status or error message
+   */
+  @GetMapping("/jobs/{jobId}")
+  public ResponseEntity<Map<String, Object>> getImportJob(@PathVariable String jobId) {
+    Map<String, Object> response = new HashMap<>();
+
+    LedgerImportJobs.ImportJob job = importJobs.getJob(jobId);
+    if (job == null) {
+      response.put("error", "Job not found or expired");
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+    }
+
+    response.put("jobId", job.getId());
+    response.put("source", job.getSource());
+    response.put("status", job.getStatus().name());
+    response.put("rowsParsed", job.getRowsParsed());
+    response.put("bytesRead", job.getBytesRead());
+    response.put("totalBytes", job.getTotalBytes());
+    response.put("queuedMillis", job.getQueuedMillis());
+    response.put("elapsedMillis", job.getElapsedMillis());
+    response.put("bytesPerSecond", Math.round(job.getBytesPerSecond()));
+    response.put("etaMillis", job.getEtaMillis());
+    if (job.getStatus() == LedgerImportJobs.Status.SUCCEEDED) {
+      response.put("success", true);
+      response.put("ledger", job.getLedger());
+      response.put("entriesCount", job.getLedger().getNumEntries());
+    } else if (job.getStatus() == LedgerImportJobs.Status.FAILED) {
+      response.put("error", job.getError());
+    }
+
+    return ResponseEntity.ok(response);
+  }
+
+  /**
+   * Reports how well the parse cache is doing.
+   *
+   * @return ResponseEntity with the cache counters
+   */
+  @GetMapping("/cache/stats")
+  public ResponseEntity<Map<String, Object>> getParseCacheStats() {
+    Map<String, Object> response = new HashMap<>();
+    response.put("hits", parseCache.getHits());
+    response.put("misses", parseCache.getMisses());
+    response.put("hitRate", parseCache.getHitRate());
+    response.put("evictions", parseCache.getEvictions());
+    response.put("size", parseCache.getSize());
+    response.put("bytes", parseCache.getBytes());
+    return ResponseEntity.ok(response);
+  }
+
+  /**
+   * Validates a ledger file format without importing it. The upload is
+   * streamed through a single validation pass, so no Ledger is built.
    *
-   * @param file the CSV file to validate
+   * @param file             the CSV file to validate
+   * @param maxErrors        optional maximum number of errors to report
+   *                         (defaults to 10)
+   * @param stopAtFirstError optional flag to stop at the first error
    * @return ResponseEntity with validation results
    */
   @PostMapping("/validate")
   public ResponseEntity<Map<String, Object>> validateLedgerFile(
-      @RequestParam("file") MultipartFile file) {
+      @RequestParam("file") MultipartFile file,
+      @RequestParam(value = "maxErrors", defaultValue = "10") int maxErrors,
+      @RequestParam(value = "stopAtFirstError", defaultValue = "false") boolean stopAtFirstError) {
 
     Map<String, Object> response = new HashMap<>();
 
@@ -183,27 +643,29 @@ public class LedgerFileProcessingController {
         return ResponseEntity.badRequest().body(response);
       }
 
-      if (!file.getOriginalFilename().toLowerCase().endsWith(".csv")) {
+      if (!isCsvFilename(file.getOriginalFilename())) {
         response.put("error", "Only CSV files are supported");
         return ResponseEntity.badRequest().body(response);
       }
 
-      // Create temporary file for validation
-      Path tempPath = Files.createTempFile("validate_", ".csv");
-      Files.copy(file.getInputStream(), tempPath,
-          java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+      LedgerValidationResult result;
+      try (InputStream input = file.getInputStream()) {
+        result = LedgerFileProcessing.validateLedgerFile(input, maxErrors, stopAtFirstError);
+      }
 
-      // Try to read the file (this will validate format)
-      Ledger testLedger = LedgerFileProcessing.readLedgerFromFile(
-          tempPath.toString(), DEFAULT_LEDGER_SIZE);
+      response.put("valid", result.isValid());
+      response.put("entriesFound", result.getEntriesFound());
+      response.put("errorCount", result.getErrorCount());
+      response.put("errors", result.getErrors());
+      response.put("stoppedEarly", result.isStoppedEarly());
 
-      // Clean up temp file
-      Files.deleteIfExists(tempPath);
+      if (!result.isValid()) {
+        response.put("error", result.getErrors().isEmpty()
+            ? "Invalid file" : result.getErrors().get(0).toString());
+        return ResponseEntity.badRequest().body(response);
+      }
 
-      response.put("valid", true);
       response.put("message", "File format is valid");
-      response.put("entriesFound", testLedger.getNumEntries());
-
       return ResponseEntity.ok(response);
 
     } catch (IllegalArgumentException e) {
@@ -217,6 +679,173 @@ public class LedgerFileProcessingController {
     }
   }
 
+  /**
+   * Checks whether an uploaded file name is a plain or gzip compressed CSV.
+   *
+   * @param filename the original file name
+   * @return true if the name ends with .csv or .csv.gz
+   */
+  private static boolean isCsvFilename(String filename) {
+    String lower = filename.toLowerCase(Locale.ROOT);
+    return lower.endsWith(".csv") || lower.endsWith(".csv" + LedgerFileProcessing.GZIP_EXTENSION);
+  }
+
+  /**
+   * Checks that an upload is a non-empty plain or gzip compressed CSV.
+   *
+   * @param file the uploaded file
+   * @throws IllegalArgumentException if the file is empty or not CSV
+   */
+  private static void checkUpload(MultipartFile file) {
+    if (file.isEmpty()) {
+      throw new IllegalArgumentException("Please select a file to upload");
+    }
+    if (file.getOriginalFilename() == null || !isCsvFilename(file.getOriginalFilename())) {
+      throw new IllegalArgumentException("Only CSV files are supported");
+    }
+  }
+
+  /**
+   * Parses one file of a batch upload.
+   *
+   * @param file       the uploaded file
+   * @param sizeLedger the maximum size of the ledger
+   * @return the parsed ledger
+   * @throws IllegalArgumentException if the file is empty, not CSV, or
+   *                                  invalid
+   * @throws IOException              if the upload cannot be read
+   */
+  private static Ledger parseUpload(MultipartFile file, int sizeLedger) throws IOException {
+    checkUpload(file);
+    try (InputStream input = file.getInputStream()) {
+      return LedgerFileProcessing.readLedgerFromStream(input, sizeLedger);
+    }
+  }
+
+  /**
+   * Estimates the heap needed to parse an upload. Compression is detected
+   * from the content, as the parser does, since a client can name gzip data
+   * anything.
+   *
+   * @param file the uploaded file
+   * @return the estimated bytes
+   * @throws IOException if the upload cannot be read
+   */
+  private static long estimateUploadMemory(MultipartFile file) throws IOException {
+    try (InputStream input = file.getInputStream()) {
+      return LedgerImportAdmission.estimateMemory(file.getSize(),
+          LedgerFileProcessing.isGzipped(input));
+    }
+  }
+
+  /**
+   * Estimates the heap needed to import a file on the server.
+   *
+   * @param filepath the path to the file
+   * @return the estimated bytes, or 0 if the file cannot be read, in which
+   *         case the import itself reports the error
+   */
+  private static long estimateFileMemory(String filepath) {
+    try {
+      Path file = Paths.get(filepath);
+      return LedgerImportAdmission.estimateMemory(Files.size(file),
+          LedgerFileProcessing.isGzipped(file));
+    } catch (IOException | InvalidPathException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Builds the response for an import turned away by admission control:
+   * 429 when every import slot is busy, 503 when the memory budget is used
+   * up, each with a Retry-After header, and 413 for a file too large to
+   * ever fit the budget.
+   *
+   * @param e the rejection
+   * @return ResponseEntity with the error message
+   */
+  static ResponseEntity<Map<String, Object>> rejected(
+      LedgerImportAdmission.RejectedException e) {
+    Map<String, Object> response = new HashMap<>();
+    response.put("error", e.getMessage());
+    HttpStatus status = rejectionStatus(e);
+    if (e.getRetryAfterSeconds() <= 0) {
+      return ResponseEntity.status(status).body(response);
+    }
+    response.put("retryAfterSeconds", e.getRetryAfterSeconds());
+    return ResponseEntity.status(status)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+        .body(response);
+  }
+
+  /**
+   * Builds the bodiless response for an import turned away by admission
+   * control, with the same status and Retry-After as rejected.
+   *
+   * @param <T> the body type of the response
+   * @param e   the rejection
+   * @return ResponseEntity with no body
+   */
+  private static <T> ResponseEntity<T> rejectedStatus(LedgerImportAdmission.RejectedException e) {
+    if (e.getRetryAfterSeconds() <= 0) {
+      return ResponseEntity.status(rejectionStatus(e)).build();
+    }
+    return ResponseEntity.status(rejectionStatus(e))
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+        .build();
+  }
+
+  /**
+   * Maps an admission rejection to its response status.
+   *
+   * @param e the rejection
+   * @return 429, 503 or 413
+   */
+  private static HttpStatus rejectionStatus(LedgerImportAdmission.RejectedException e) {
+    return switch (e.getReason()) {
+      case TOO_MANY_REQUESTS -> HttpStatus.TOO_MANY_REQUESTS;
+      case INSUFFICIENT_MEMORY -> HttpStatus.SERVICE_UNAVAILABLE;
+      case TOO_LARGE -> HttpStatus.PAYLOAD_TOO_LARGE;
+    };
+  }
+
+  /**
+   * Builds the response for an imported ledger.
+   *
+   * @param ledger  the imported ledger
+   * @param message the success message
+   * @param cached  whether the ledger came from the parse cache
+   * @return ResponseEntity with the ledger
+   */
+  private static ResponseEntity<Map<String, Object>> imported(Ledger ledger, String message,
+      boolean cached) {
+    Map<String, Object> response = new HashMap<>();
+    response.put("success", true);
+    response.put("message", message);
+    response.put("ledger", ledger);
+    response.put("entriesCount", ledger.getNumEntries());
+    response.put("cached", cached);
+    return ResponseEntity.ok(response);
+  }
+
+  /**
+   * Builds the 202 response for a started import job.
+   *
+   * @param job the started job
+   * @return ResponseEntity with the job id and where to poll its status
+   */
+  private static ResponseEntity<Map<String, Object>> jobAccepted(
+      LedgerImportJobs.ImportJob job) {
+    Map<String, Object> response = new HashMap<>();
+    response.put("success", true);
+    response.put("message", "Import started");
+    response.put("jobId", job.getId());
+    response.put("statusUrl", JOBS_PATH + job.getId());
+    return ResponseEntity.status(HttpStatus.ACCEPTED)
+        .header(HttpHeaders.LOCATION, JOBS_PATH + job.getId())
+        .body(response);
+  }
+
   /**
    * Gets information about the expected file format.
    *
@@ -232,7 +861,17 @@ public class LedgerFileProcessingController {
     response.put("amountFormat", "Integer (positive for income, negative for expenses)");
     response.put("example", "20231215,Grocery Shopping,-150");
     response.put("notes", "File must start with the header row and contain at least one data row");
+    response.put("compression", "Gzip compressed files (.csv.gz) are accepted and detected automatically");
 
     return ResponseEntity.ok(response);
   }
+
+  /**
+   * A ledger imported inline.
+   *
+   * @param ledger the ledger
+   * @param cached whether it came from the parse cache
+   */
+  record Imported(Ledger ledger, boolean cached) {
+  }
 }
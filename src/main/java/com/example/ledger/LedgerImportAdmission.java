@@ -0,0 +1,344 @@
+package com.example.ledger;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds the imports that run at once, so bursts of large uploads are
+ * turned away early instead of exhausting the heap. An import needs one of
+ * a fixed number of slots plus a share of a memory budget estimated from
+ * its file size. Imports that cannot start straight away wait in a bounded
+ * queue for a limited time; anything beyond that is rejected with a hint of
+ * when to retry.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerImportAdmission {
+
+  /**
+   * Estimated heap bytes a parsed ledger needs per byte of CSV: each row of
+   * roughly 30 bytes becomes an entry, a date, a description string and a
+   * boxed balance.
+   */
+  public static final int MEMORY_PER_FILE_BYTE = 6;
+
+  /** Assumed expansion of gzip compressed CSV when decompressed. */
+  public static final int GZIP_EXPANSION = 8;
+
+  /** Maximum number of imports running at once. */
+  private final int maxConcurrent;
+
+  /** Maximum number of imports waiting for a slot or memory. */
+  private final int maxQueued;
+
+  /** Estimated heap bytes all running imports may use together. */
+  private final long memoryBudget;
+
+  /** How long an import may wait in the queue. */
+  private final long queueTimeoutNanos;
+
+  /** Seconds callers are told to wait before retrying. */
+  private final long retryAfterSeconds;
+
+  /** Guards the counters below. */
+  private final ReentrantLock lock = new ReentrantLock(true);
+
+  /** Signalled whenever a permit is released. */
+  private final Condition released = lock.newCondition();
+
+  /** Imports running now. */
+  private int active;
+
+  /** Imports waiting now. */
+  private int waiting;
+
+  /**
+   * Estimated heap bytes held by running imports and by the results of
+   * finished ones that are still kept.
+   */
+  private long reserved;
+
+  /**
+   * Creates an admission controller.
+   *
+   * @param maxConcurrent     the maximum number of imports running at once
+   * @param maxQueued         the maximum number of imports waiting
+   * @param memoryBudget      the estimated heap bytes running imports may use
+   * @param queueTimeout      how long an import may wait in the queue
+   * @param retryAfterSeconds the seconds rejected callers should wait
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public LedgerImportAdmission(int maxConcurrent, int maxQueued, long memoryBudget,
+      Duration queueTimeout, long retryAfterSeconds) {
+    if (maxConcurrent <= 0) {
+      throw new IllegalArgumentException("Invalid max concurrent imports");
+    }
+    if (maxQueued < 0) {
+      throw new IllegalArgumentException("Invalid max queued imports");
+    }
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("Invalid memory budget");
+    }
+    if (queueTimeout == null || queueTimeout.isNegative()) {
+      throw new IllegalArgumentException("Invalid queue timeout");
+    }
+    if (retryAfterSeconds <= 0) {
+      throw new IllegalArgumentException("Invalid retry after");
+    }
+    this.maxConcurrent = maxConcurrent;
+    this.maxQueued = maxQueued;
+    this.memoryBudget = memoryBudget;
+    this.queueTimeoutNanos = queueTimeout.toNanos();
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * Estimates the heap a ledger parsed from a file will need.
+   *
+   * @param fileBytes  the size of the file
+   * @param compressed whether the file is gzip compressed
+   * @return the estimated bytes
+   */
+  public static long estimateMemory(long fileBytes, boolean compressed) {
+    long bytes = Math.max(0, fileBytes) * MEMORY_PER_FILE_BYTE;
+    return compressed ? bytes * GZIP_EXPANSION : bytes;
+  }
+
+  /**
+   * Admits an import, waiting in the queue for up to the queue timeout if
+   * there is no free slot or not enough memory. The returned permit must be
+   * closed when the import finishes.
+   *
+   * @param memory the estimated heap bytes the import needs
+   * @return the permit
+   * @throws RejectedException if the import is not admitted
+   */
+  public Permit acquire(long memory) {
+    long cost = Math.max(0, memory);
+    if (cost > memoryBudget) {
+      throw new RejectedException(Reason.TOO_LARGE, "File is too large to import", 0);
+    }
+
+    lock.lock();
+    try {
+      if (!fits(cost) && waiting >= maxQueued) {
+        throw new RejectedException(Reason.TOO_MANY_REQUESTS,
+            "Too many imports in progress", retryAfterSeconds);
+      }
+
+      waiting++;
+      try {
+        long nanos = queueTimeoutNanos;
+        while (!fits(cost)) {
+          if (nanos <= 0) {
+            if (active >= maxConcurrent) {
+              throw new RejectedException(Reason.TOO_MANY_REQUESTS,
+                  "Too many imports in progress", retryAfterSeconds);
+            }
+            throw new RejectedException(Reason.INSUFFICIENT_MEMORY,
+                "Not enough memory to import now", retryAfterSeconds);
+          }
+          nanos = released.awaitNanos(nanos);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedException(Reason.TOO_MANY_REQUESTS,
+            "Interrupted while waiting to import", retryAfterSeconds);
+      } finally {
+        waiting--;
+      }
+
+      active++;
+      reserved += cost;
+      return new Permit(cost);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Checks whether an import could start now. Must hold the lock.
+   *
+   * @param cost the estimated heap bytes the import needs
+   * @return true if there is a free slot and enough memory
+   */
+  private boolean fits(long cost) {
+    return active < maxConcurrent && reserved + cost <= memoryBudget;
+  }
+
+  /**
+   * Gets the number of imports running now.
+   *
+   * @return running imports
+   */
+  public int getActive() {
+    lock.lock();
+    try {
+      return active;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of imports waiting for a slot or memory.
+   *
+   * @return waiting imports
+   */
+  public int getWaiting() {
+    lock.lock();
+    try {
+      return waiting;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the estimated heap bytes held by running imports and retained
+   * results.
+   *
+   * @return reserved bytes
+   */
+  public long getReservedMemory() {
+    lock.lock();
+    try {
+      return reserved;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * An admitted import's slot and memory, returned when it is closed.
+   */
+  public class Permit implements Closeable {
+
+    /** The reserved memory. Guarded by the admission lock. */
+    private long cost;
+
+    /** Whether the permit still holds a slot. Guarded by the admission lock. */
+    private boolean running = true;
+
+    /** Whether the permit has been returned. */
+    private boolean closed;
+
+    /**
+     * Creates a permit.
+     *
+     * @param cost the reserved memory
+     */
+    private Permit(long cost) {
+      this.cost = cost;
+    }
+
+    /**
+     * Returns the slot but keeps reserving memory for a result that
+     * outlives the import, such as the ledger of a finished background job.
+     * The memory is returned when the permit is closed. Has no effect once
+     * the slot or the whole permit has been returned.
+     *
+     * @param memory the estimated heap bytes the result holds
+     */
+    public void retain(long memory) {
+      lock.lock();
+      try {
+        if (closed || !running) {
+          return;
+        }
+        running = false;
+        active--;
+        long kept = Math.max(0, memory);
+        reserved += kept - cost;
+        cost = kept;
+        released.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Returns the slot and memory. Closing again has no effect.
+     */
+    @Override
+    public void close() {
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (running) {
+          running = false;
+          active--;
+        }
+        reserved -= cost;
+        released.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Why an import was not admitted.
+   */
+  public enum Reason {
+
+    /** Every slot is busy and the queue is full or waiting timed out. */
+    TOO_MANY_REQUESTS,
+
+    /** The memory budget stayed exhausted while waiting. */
+    INSUFFICIENT_MEMORY,
+
+    /** The import needs more than the whole memory budget. */
+    TOO_LARGE
+  }
+
+  /**
+   * Thrown when an import is not admitted.
+   */
+  public static class RejectedException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Why the import was rejected. */
+    private final Reason reason;
+
+    /** Seconds to wait before retrying, or 0 if retrying will not help. */
+    private final long retryAfterSeconds;
+
+    /**
+     * Creates the exception.
+     *
+     * @param reason            why the import was rejected
+     * @param message           the message
+     * @param retryAfterSeconds seconds to wait before retrying
+     */
+    RejectedException(Reason reason, String message, long retryAfterSeconds) {
+      super(message);
+      this.reason = reason;
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Gets why the import was rejected.
+     *
+     * @return the reason
+     */
+    public Reason getReason() {
+      return reason;
+    }
+
+    /**
+     * Gets how long to wait before retrying.
+     *
+     * @return the seconds, or 0 if retrying will not help
+     */
+    public long getRetryAfterSeconds() {
+      return retryAfterSeconds;
+    }
+  }
+}
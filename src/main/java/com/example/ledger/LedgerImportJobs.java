@@ -0,0 +1,562 @@
+package com.example.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs ledger file imports in the background so the caller gets a job id
+ * straight away instead of waiting for the parse. Each import runs on its
+ * own virtual thread and records how many rows and bytes it has parsed, so
+ * its throughput and remaining time can be polled. Finished jobs, with
+ * their ledger or error, are kept until a retention period has passed
+ * since they finished, and only a bounded number of them: beyond that the
+ * oldest are dropped early. A job admitted with a permit gives up its slot
+ * when it finishes but keeps the estimated heap of its ledger reserved
+ * until the job is dropped, so kept results count against the import
+ * memory budget.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerImportJobs implements Closeable {
+
+  /** How long finished jobs are kept by default. */
+  public static final Duration DEFAULT_RETENTION = Duration.ofMinutes(15);
+
+  /** How many finished jobs are kept by default. */
+  public static final int DEFAULT_MAX_FINISHED = 100;
+
+  /** Jobs by id. */
+  private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+  /** Runs each import on a new virtual thread. */
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+  /** Nanoseconds a finished job is kept. */
+  private final long retentionNanos;
+
+  /** Maximum number of finished jobs kept. */
+  private final int maxFinished;
+
+  /** Whether close has been called. */
+  private volatile boolean closed;
+
+  /**
+   * Creates a job runner that keeps the default number of finished jobs for
+   * the default period.
+   */
+  public LedgerImportJobs() {
+    this(DEFAULT_RETENTION);
+  }
+
+  /**
+   * Creates a job runner that keeps the default number of finished jobs.
+   *
+   * @param retention how long finished jobs are kept
+   * @throws IllegalArgumentException if retention is null or not positive
+   */
+  public LedgerImportJobs(Duration retention) {
+    this(retention, DEFAULT_MAX_FINISHED);
+  }
+
+  /**
+   * Creates a job runner.
+   *
+   * @param retention   how long finished jobs are kept
+   * @param maxFinished the maximum number of finished jobs kept
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public LedgerImportJobs(Duration retention, int maxFinished) {
+    if (retention == null || retention.isZero() || retention.isNegative()) {
+      throw new IllegalArgumentException("Invalid retention");
+    }
+    if (maxFinished <= 0) {
+      throw new IllegalArgumentException("Invalid size");
+    }
+    this.retentionNanos = retention.toNanos();
+    this.maxFinished = maxFinished;
+  }
+
+  /**
+   * Starts importing a ledger file in the background. CSV files, plain or
+   * gzip compressed, are parsed with progress reporting; binary files are
+   * read in one step.
+   *
+   * @param file           the file to import
+   * @param sizeLedger     the maximum size of the ledger
+   * @param deleteWhenDone whether to delete the file once the job finishes,
+   *                       for temporary copies of uploads
+   * @return the new job
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public ImportJob submit(Path file, int sizeLedger, boolean deleteWhenDone) {
+    return submit(file, sizeLedger, deleteWhenDone, null);
+  }
+
+  /**
+   * Starts importing a ledger file in the background under an admission
+   * permit. When the job finishes the permit's slot is returned; a failed
+   * job returns its memory too, while a successful one keeps the estimated
+   * heap of its ledger reserved until the job is dropped. The permit is
+   * left to the caller if the job cannot be started.
+   *
+   * @param file           the file to import
+   * @param sizeLedger     the maximum size of the ledger
+   * @param deleteWhenDone whether to delete the file once the job finishes
+   * @param permit         the permit the import was admitted with, or null
+   * @return the new job
+   * @throws IllegalArgumentException if any input is invalid
+   * @throws IllegalStateException    if the job runner has been closed
+   */
+  public ImportJob submit(Path file, int sizeLedger, boolean deleteWhenDone,
+      LedgerImportAdmission.Permit permit) {
+    if (closed) {
+      throw new IllegalStateException("Import jobs closed");
+    }
+    if (file == null) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    if (sizeLedger <= 0) {
+      throw new IllegalArgumentException("Invalid size");
+    }
+    long totalBytes;
+    try {
+      totalBytes = Files.size(file);
+    } catch (NoSuchFileException e) {
+      throw new IllegalArgumentException("Input file not found.");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading file.");
+    }
+
+    evictExpired();
+    ImportJob job = new ImportJob(UUID.randomUUID().toString(),
+        file.getFileName().toString(), totalBytes, permit);
+    jobs.put(job.getId(), job);
+    try {
+      executor.execute(() -> {
+        try {
+          run(job, file, sizeLedger, deleteWhenDone);
+        } finally {
+          job.retainResult();
+          if (closed) {
+            job.release();
+          }
+          evictOverflow();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.getId());
+      throw new IllegalStateException("Import jobs closed");
+    }
+    return job;
+  }
+
+  /**
+   * Gets a job by id.
+   *
+   * @param id the job id
+   * @return the job, or null if it is unknown or has been evicted
+   */
+  public ImportJob getJob(String id) {
+    if (id == null) {
+      return null;
+    }
+    evictExpired();
+    return jobs.get(id);
+  }
+
+  /**
+   * Counts the jobs with a status.
+   *
+   * @param status the status
+   * @return the number of jobs
+   */
+  public int count(Status status) {
+    int count = 0;
+    for (ImportJob job : jobs.values()) {
+      if (job.getStatus() == status) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Drops finished jobs whose retention period has passed.
+   *
+   * @return the number of jobs dropped
+   */
+  public int evictExpired() {
+    long now = System.nanoTime();
+    int evicted = 0;
+    for (ImportJob job : jobs.values()) {
+      if (job.isDone() && now - job.finishedNanos >= retentionNanos && drop(job)) {
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Drops the oldest finished jobs while more than the maximum are kept.
+   * Synchronized so jobs finishing together do not drop more than needed.
+   */
+  private synchronized void evictOverflow() {
+    while (count(Status.SUCCEEDED) + count(Status.FAILED) > maxFinished) {
+      ImportJob oldest = null;
+      for (ImportJob job : jobs.values()) {
+        if (job.isDone() && (oldest == null || job.finishedNanos - oldest.finishedNanos < 0)) {
+          oldest = job;
+        }
+      }
+      if (oldest == null) {
+        return;
+      }
+      drop(oldest);
+    }
+  }
+
+  /**
+   * Removes a job and returns the memory its result held.
+   *
+   * @param job the job
+   * @return true if the job was still kept
+   */
+  private boolean drop(ImportJob job) {
+    if (!jobs.remove(job.getId(), job)) {
+      return false;
+    }
+    job.release();
+    return true;
+  }
+
+  /**
+   * Stops running imports, drops every job and returns the memory their
+   * results held.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (ImportJob job : jobs.values()) {
+      drop(job);
+    }
+  }
+
+  /**
+   * Runs one import and records its outcome.
+   *
+   * @param job            the job to run
+   * @param file           the file to import
+   * @param sizeLedger     the maximum size of the ledger
+   * @param deleteWhenDone whether to delete the file afterwards
+   */
+  private static void run(ImportJob job, Path file, int sizeLedger, boolean deleteWhenDone) {
+    job.startedNanos = System.nanoTime();
+    job.status = Status.RUNNING;
+    try {
+      Ledger ledger;
+      if (file.toString().toLowerCase(Locale.ROOT).endsWith(LedgerFileProcessing.BINARY_EXTENSION)) {
+        ledger = LedgerFileProcessing.readLedgerFromBinaryFile(file.toString(), sizeLedger);
+        job.bytesRead = job.totalBytes;
+        job.rowsParsed = ledger.getNumEntries();
+      } else {
+        try (InputStream input = new LedgerFileProcessing.CountingInputStream(
+            Files.newInputStream(file), count -> job.bytesRead = count)) {
+          ledger = LedgerFileProcessing.readLedgerFromStream(input, sizeLedger,
+              rows -> job.rowsParsed = rows);
+        }
+      }
+      job.ledger = ledger;
+      job.finish(Status.SUCCEEDED);
+    } catch (IllegalArgumentException e) {
+      job.error = e.getMessage();
+      job.finish(Status.FAILED);
+    } catch (IOException e) {
+      job.error = "Error reading file.";
+      job.finish(Status.FAILED);
+    } catch (RuntimeException e) {
+      job.error = "Error processing file: " + e.getMessage();
+      job.finish(Status.FAILED);
+    } finally {
+      if (deleteWhenDone) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          /// the temporary copy is left for the OS to clean up
+        }
+      }
+    }
+  }
+
+  /**
+   * The stages of an import job.
+   */
+  public enum Status {
+
+    /** Waiting for a thread. */
+    QUEUED,
+
+    /** Parsing the file. */
+    RUNNING,
+
+    /** Finished with a ledger. */
+    SUCCEEDED,
+
+    /** Finished with an error. */
+    FAILED
+  }
+
+  /**
+   * One background import and its progress.
+   */
+  public static class ImportJob {
+
+    /** Job id. */
+    private final String id;
+
+    /** Name of the file being imported. */
+    private final String source;
+
+    /** Size of the file in bytes. */
+    private final long totalBytes;
+
+    /** When the job was submitted. */
+    private final long submittedNanos;
+
+    /** Current stage. */
+    private volatile Status status = Status.QUEUED;
+
+    /** Bytes of the file read so far. */
+    private volatile long bytesRead;
+
+    /** Rows parsed so far. */
+    private volatile long rowsParsed;
+
+    /** When parsing started, or 0. */
+    private volatile long startedNanos;
+
+    /** When the job finished, or 0. */
+    private volatile long finishedNanos;
+
+    /** The imported ledger, once succeeded. */
+    private volatile Ledger ledger;
+
+    /** The error message, once failed. */
+    private volatile String error;
+
+    /** The admission permit the job holds, or null. */
+    private final LedgerImportAdmission.Permit permit;
+
+    /**
+     * Creates a queued job.
+     *
+     * @param id         the job id
+     * @param source     the name of the file being imported
+     * @param totalBytes the size of the file in bytes
+     * @param permit     the admission permit the job holds, or null
+     */
+    ImportJob(String id, String source, long totalBytes,
+        LedgerImportAdmission.Permit permit) {
+      this.id = id;
+      this.source = source;
+      this.totalBytes = totalBytes;
+      this.permit = permit;
+      this.submittedNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the permit's slot, keeping the estimated heap of the ledger
+     * reserved if the job succeeded.
+     */
+    private void retainResult() {
+      if (permit == null) {
+        return;
+      }
+      Ledger result = ledger;
+      if (result == null) {
+        permit.close();
+      } else {
+        permit.retain(LedgerParseCache.estimateMemory(result));
+      }
+    }
+
+    /**
+     * Returns everything the permit still holds.
+     */
+    private void release() {
+      if (permit != null) {
+        permit.close();
+      }
+    }
+
+    /**
+     * Marks the job finished.
+     *
+     * @param outcome the final status
+     */
+    private void finish(Status outcome) {
+      finishedNanos = System.nanoTime();
+      status = outcome;
+    }
+
+    /**
+     * Gets the job id.
+     *
+     * @return the id
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * Gets the name of the file being imported.
+     *
+     * @return the file name
+     */
+    public String getSource() {
+      return source;
+    }
+
+    /**
+     * Gets the current stage.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Checks whether the job has finished, successfully or not.
+     *
+     * @return true if the job is done
+     */
+    public boolean isDone() {
+      Status current = status;
+      return current == Status.SUCCEEDED || current == Status.FAILED;
+    }
+
+    /**
+     * Gets the size of the file being imported.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return the bytes read
+     */
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    /**
+     * Gets the number of rows parsed so far.
+     *
+     * @return the rows parsed
+     */
+    public long getRowsParsed() {
+      return rowsParsed;
+    }
+
+    /**
+     * Gets the time spent parsing so far, or in total once finished.
+     *
+     * @return the elapsed milliseconds, 0 while queued
+     */
+    public long getElapsedMillis() {
+      long started = startedNanos;
+      if (started == 0) {
+        return 0;
+      }
+      long end = isDone() ? finishedNanos : System.nanoTime();
+      return TimeUnit.NANOSECONDS.toMillis(end - started);
+    }
+
+    /**
+     * Gets the time from submission until parsing started, or until now
+     * while queued.
+     *
+     * @return the queued milliseconds
+     */
+    public long getQueuedMillis() {
+      long started = startedNanos;
+      long end = started == 0 ? System.nanoTime() : started;
+      return TimeUnit.NANOSECONDS.toMillis(end - submittedNanos);
+    }
+
+    /**
+     * Gets the average read throughput.
+     *
+     * @return bytes read per second, 0 if nothing has been timed yet
+     */
+    public double getBytesPerSecond() {
+      long started = startedNanos;
+      if (started == 0) {
+        return 0;
+      }
+      long end = isDone() ? finishedNanos : System.nanoTime();
+      long elapsed = end - started;
+      return elapsed <= 0 ? 0 : bytesRead * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * Estimates the time left from the bytes still to read and the
+     * throughput so far.
+     *
+     * @return the estimated milliseconds left, 0 once finished, or -1 if
+     *         there is no estimate yet
+     */
+    public long getEtaMillis() {
+      if (isDone()) {
+        return 0;
+      }
+      double rate = getBytesPerSecond();
+      if (rate <= 0) {
+        return -1;
+      }
+      long remaining = Math.max(0, totalBytes - bytesRead);
+      return (long) (remaining * 1000 / rate);
+    }
+
+    /**
+     * Gets the imported ledger.
+     *
+     * @return the ledger, or null unless the job succeeded
+     */
+    public Ledger getLedger() {
+      return ledger;
+    }
+
+    /**
+     * Gets the error message.
+     *
+     * @return the message, or null unless the job failed
+     */
+    public String getError() {
+      return error;
+    }
+  }
+}
@@ -0,0 +1,604 @@
+package com.example.ledger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of ledger entries. Each appended entry is
+ * a small checksummed record in a segment file. Writers that append at the
+ * same time are batched into a group commit: one writer flushes everything
+ * pending with a single fsync while the others wait for it, so durability
+ * costs one fsync per batch instead of one per entry. Callers that must
+ * append under their own lock can enqueue records under it and wait for
+ * durability after releasing it, so they still share commits.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerJournal implements Closeable {
+
+  /** Prefix of journal segment file names. */
+  public static final String SEGMENT_PREFIX = "journal-";
+
+  /** Suffix of journal segment file names. */
+  public static final String SEGMENT_SUFFIX = ".log";
+
+  /** Size in bytes of a record's length and checksum fields. */
+  private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+  /** Directory holding the segment files. */
+  private final Path directory;
+
+  /** Guards the pending batch and the commit state. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signalled when a batch has been committed or has failed. */
+  private final Condition committed = lock.newCondition();
+
+  /** Channel of the segment being appended to. */
+  private FileChannel channel;
+
+  /** Number of the segment being appended to. */
+  private long segment;
+
+  /** Records waiting for the next commit. */
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  /** Emptied buffer reused as the next pending batch. */
+  private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+
+  /** Number of records appended so far. */
+  private long appended;
+
+  /** Number of records known to be on disk. */
+  private long durable;
+
+  /** Number of commits, each with one fsync. */
+  private long commits;
+
+  /** Whether a writer is currently committing a batch. */
+  private boolean flushing;
+
+  /** Whether the journal has been closed. */
+  private boolean closed;
+
+  /** First write failure; once set the journal accepts no more records. */
+  private IOException failure;
+
+  /**
+   * Opens a journal in a directory, starting a new segment after any that
+   * already exist.
+   *
+   * @param directory the directory holding the segment files
+   * @throws IllegalArgumentException if the journal cannot be opened
+   */
+  public LedgerJournal(Path directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("Null directory");
+    }
+    this.directory = directory;
+    try {
+      Files.createDirectories(directory);
+      List<Long> segments = listSegments(directory);
+      this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+      this.channel = openSegment(segment);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error opening journal");
+    }
+  }
+
+  /**
+   * Appends one entry and waits until it is durable on disk.
+   *
+   * @param ledgerId the id of the ledger the entry belongs to
+   * @param ordinal  the number of entries the ledger held before this one
+   * @param entry    the entry to append
+   * @throws IllegalArgumentException if any input is invalid
+   * @throws IllegalStateException    if the journal is closed or has failed
+   */
+  public void append(String ledgerId, int ordinal, LedgerEntry entry) {
+    if (entry == null) {
+      throw new IllegalArgumentException("Null entry");
+    }
+    appendAll(ledgerId, ordinal, List.of(entry));
+  }
+
+  /**
+   * Appends entries that were added to a ledger together and waits until
+   * they are durable on disk.
+   *
+   * @param ledgerId     the id of the ledger the entries belong to
+   * @param firstOrdinal the number of entries the ledger held before these
+   * @param entries      the entries to append
+   * @throws IllegalArgumentException if any input is invalid
+   * @throws IllegalStateException    if the journal is closed or has failed
+   */
+  public void appendAll(String ledgerId, int firstOrdinal, List<LedgerEntry> entries) {
+    awaitDurable(enqueue(ledgerId, firstOrdinal, entries));
+  }
+
+  /**
+   * Adds entries to the pending batch without waiting for them to be
+   * written. Records are written in the order they are enqueued. Pass the
+   * returned sequence number to awaitDurable before treating the entries
+   * as durable.
+   *
+   * @param ledgerId     the id of the ledger the entries belong to
+   * @param firstOrdinal the number of entries the ledger held before these
+   * @param entries      the entries to append
+   * @return the sequence number of the last entry, or 0 if there are none
+   * @throws IllegalArgumentException if any input is invalid
+   * @throws IllegalStateException    if the journal is closed or has failed
+   */
+  public long enqueue(String ledgerId, int firstOrdinal, List<LedgerEntry> entries) {
+    if (ledgerId == null) {
+      throw new IllegalArgumentException("Null ledger id");
+    }
+    if (entries == null) {
+      throw new IllegalArgumentException("Null entries");
+    }
+    if (entries.isEmpty()) {
+      return 0;
+    }
+
+    // Encode outside the lock so writers only contend for the copy
+    ByteArrayOutputStream records = new ByteArrayOutputStream();
+    for (int i = 0; i < entries.size(); i++) {
+      if (entries.get(i) == null) {
+        throw new IllegalArgumentException("Null entry");
+      }
+      records.writeBytes(encode(ledgerId, firstOrdinal + i, entries.get(i)));
+    }
+
+    lock.lock();
+    try {
+      checkUsable();
+      records.writeTo(pending);
+      appended += entries.size();
+      return appended;
+    } catch (IOException e) {
+      throw new IllegalStateException("Error writing journal", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until every record up to a sequence number is durable on disk,
+   * committing the pending batch if no other writer is already doing so.
+   *
+   * @param sequence the sequence number returned by enqueue
+   * @throws IllegalStateException if the journal is closed or has failed
+   *                               before the records were written
+   */
+  public void awaitDurable(long sequence) {
+    lock.lock();
+    try {
+      awaitCommit(sequence);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until a sequence number is durable, committing the pending batch
+   * if no other writer is already doing so. Must be called holding the lock.
+   *
+   * @param sequence the sequence number to wait for
+   */
+  private void awaitCommit(long sequence) {
+    while (durable < sequence) {
+      checkUsable();
+      if (flushing) {
+        committed.awaitUninterruptibly();
+        continue;
+      }
+
+      flushing = true;
+      ByteArrayOutputStream batch = pending;
+      long batchEnd = appended;
+      pending = spare;
+      FileChannel target = channel;
+
+      IOException error = null;
+      lock.unlock();
+      try {
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toByteArray());
+        while (bytes.hasRemaining()) {
+          target.write(bytes);
+        }
+        target.force(false);
+      } catch (IOException e) {
+        error = e;
+      } finally {
+        lock.lock();
+      }
+
+      batch.reset();
+      spare = batch;
+      flushing = false;
+      if (error != null) {
+        failure = error;
+      } else {
+        durable = batchEnd;
+        commits++;
+      }
+      committed.signalAll();
+    }
+  }
+
+  /**
+   * Finishes the current segment and starts appending to a new one. Every
+   * record appended before this call is durable in an earlier segment once
+   * it returns, so those segments can be dropped once the ledgers they
+   * changed have been stored.
+   *
+   * @return the number of the new segment
+   * @throws IllegalStateException if the journal is closed or has failed
+   */
+  public long rotate() {
+    lock.lock();
+    try {
+      while (flushing) {
+        committed.awaitUninterruptibly();
+      }
+      checkUsable();
+
+      // Commit records whose writers have not yet woken up to do it
+      if (pending.size() > 0) {
+        ByteBuffer bytes = ByteBuffer.wrap(pending.toByteArray());
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+        channel.force(false);
+        pending.reset();
+        durable = appended;
+        commits++;
+        committed.signalAll();
+      }
+
+      FileChannel next = openSegment(segment + 1);
+      channel.close();
+      channel = next;
+      segment++;
+      return segment;
+    } catch (IOException e) {
+      failure = e;
+      committed.signalAll();
+      throw new IllegalStateException("Error writing journal", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Deletes every segment numbered below a given segment.
+   *
+   * @param directory the journal directory
+   * @param segment   the first segment to keep
+   * @throws IllegalArgumentException if a segment cannot be deleted
+   */
+  public static void deleteSegmentsBefore(Path directory, long segment) {
+    try {
+      for (long number : listSegments(directory)) {
+        if (number < segment) {
+          Files.deleteIfExists(segmentPath(directory, number));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error deleting journal segments");
+    }
+  }
+
+  /**
+   * Gets the number of records appended so far.
+   *
+   * @return number of records
+   */
+  public long getRecordCount() {
+    lock.lock();
+    try {
+      return appended;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of group commits so far. Each commit costs one fsync.
+   *
+   * @return number of commits
+   */
+  public long getCommitCount() {
+    lock.lock();
+    try {
+      return commits;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the directory holding the segment files.
+   *
+   * @return the directory
+   */
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Closes the journal after any in-progress commit finishes.
+   */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      while (flushing) {
+        committed.awaitUninterruptibly();
+      }
+      if (closed) {
+        return;
+      }
+      closed = true;
+      channel.close();
+    } catch (IOException e) {
+      /// nothing more can be written either way
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Replays every intact record in a journal directory in the order it was
+   * written. A torn or corrupt record ends its segment, since it can only be
+   * the tail of a write that never completed.
+   *
+   * @param directory the directory holding the segment files
+   * @param consumer  receives each record
+   * @throws IllegalArgumentException if the journal cannot be read
+   */
+  public static void replay(Path directory, Consumer<JournalRecord> consumer) {
+    if (directory == null) {
+      throw new IllegalArgumentException("Null directory");
+    }
+    if (consumer == null) {
+      throw new IllegalArgumentException("Null consumer");
+    }
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+
+    try {
+      for (long number : listSegments(directory)) {
+        replaySegment(Files.readAllBytes(segmentPath(directory, number)), consumer);
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading journal");
+    }
+  }
+
+  /**
+   * Replays the intact records of one segment.
+   *
+   * @param bytes    the segment content
+   * @param consumer receives each record
+   */
+  private static void replaySegment(byte[] bytes, Consumer<JournalRecord> consumer) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        return;
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(bytes, buffer.position(), length);
+      if ((int) crc.getValue() != checksum) {
+        return;
+      }
+
+      JournalRecord record;
+      try {
+        record = decode(new DataInputStream(
+            new ByteArrayInputStream(bytes, buffer.position(), length)));
+      } catch (IOException | IllegalArgumentException e) {
+        return;
+      }
+      buffer.position(buffer.position() + length);
+      consumer.accept(record);
+    }
+  }
+
+  /**
+   * Encodes an entry as a length-prefixed, checksummed record.
+   *
+   * @param ledgerId the ledger id
+   * @param ordinal  the entry's ordinal within the ledger
+   * @param entry    the entry
+   * @return the record bytes
+   */
+  private static byte[] encode(String ledgerId, int ordinal, LedgerEntry entry) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    try {
+      DataOutputStream data = new DataOutputStream(bytes);
+      data.writeInt(0);
+      data.writeInt(0);
+      data.writeUTF(ledgerId);
+      data.writeInt(ordinal);
+      data.writeInt(entry.getDate().getDate());
+      data.writeInt(entry.getAmount());
+      data.writeUTF(entry.getDescription());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid entry");
+    }
+
+    byte[] record = bytes.toByteArray();
+    int length = record.length - RECORD_HEADER_SIZE;
+    CRC32 crc = new CRC32();
+    crc.update(record, RECORD_HEADER_SIZE, length);
+    ByteBuffer.wrap(record).putInt(length).putInt((int) crc.getValue());
+    return record;
+  }
+
+  /**
+   * Decodes a record payload.
+   *
+   * @param data the payload
+   * @return the record
+   * @throws IOException if the payload is truncated
+   */
+  private static JournalRecord decode(DataInputStream data) throws IOException {
+    String ledgerId = data.readUTF();
+    int ordinal = data.readInt();
+    int date = data.readInt();
+    int amount = data.readInt();
+    String description = data.readUTF();
+    if (data.available() != 0) {
+      throw new EOFException();
+    }
+    LedgerEntry entry = new LedgerEntry((date / 100) % 100, date % 100,
+        date / LedgerDate.TEN_THOUSAND, description, amount);
+    return new JournalRecord(ledgerId, ordinal, entry);
+  }
+
+  /**
+   * Throws if records can no longer be appended. Must be called holding the
+   * lock.
+   */
+  private void checkUsable() {
+    if (closed) {
+      throw new IllegalStateException("Journal is closed");
+    }
+    checkFailure();
+  }
+
+  /**
+   * Throws if an earlier commit failed. Must be called holding the lock.
+   */
+  private void checkFailure() {
+    if (failure != null) {
+      throw new IllegalStateException("Error writing journal", failure);
+    }
+  }
+
+  /**
+   * Opens a new segment file for appending.
+   *
+   * @param number the segment number
+   * @return the channel
+   * @throws IOException if the file cannot be created
+   */
+  private FileChannel openSegment(long number) throws IOException {
+    return FileChannel.open(segmentPath(directory, number),
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Gets the path of a segment file.
+   *
+   * @param directory the journal directory
+   * @param number    the segment number
+   * @return the path
+   */
+  static Path segmentPath(Path directory, long number) {
+    return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * Lists the segment numbers in a directory in ascending order.
+   *
+   * @param directory the journal directory
+   * @return the segment numbers
+   * @throws IOException if the directory cannot be listed
+   */
+  static List<Long> listSegments(Path directory) throws IOException {
+    List<Long> numbers = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+        SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+              name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException e) {
+          /// not a segment written by this class
+        }
+      }
+    }
+    numbers.sort(null);
+    return numbers;
+  }
+
+  /**
+   * A single journaled entry.
+   */
+  public static class JournalRecord {
+
+    /** The id of the ledger the entry belongs to. */
+    private final String ledgerId;
+
+    /** The number of entries the ledger held before this one. */
+    private final int ordinal;
+
+    /** The entry. */
+    private final LedgerEntry entry;
+
+    /**
+     * Creates a record.
+     *
+     * @param ledgerId the ledger id
+     * @param ordinal  the entry's ordinal within the ledger
+     * @param entry    the entry
+     */
+    public JournalRecord(String ledgerId, int ordinal, LedgerEntry entry) {
+      this.ledgerId = ledgerId;
+      this.ordinal = ordinal;
+      this.entry = entry;
+    }
+
+    /**
+     * Gets the ledger id.
+     *
+     * @return the ledger id
+     */
+    public String getLedgerId() {
+      return ledgerId;
+    }
+
+    /**
+     * Gets the number of entries the ledger held before this one.
+     *
+     * @return the ordinal
+     */
+    public int getOrdinal() {
+      return ordinal;
+    }
+
+    /**
+     * Gets the entry.
+     *
+     * @return the entry
+     */
+    public LedgerEntry getEntry() {
+      return entry;
+    }
+  }
+}
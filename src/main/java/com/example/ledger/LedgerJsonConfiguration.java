@@ -0,0 +1,28 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.databind.Module;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the ledger JSON module with the application's ObjectMapper.
+ *
+ * @author Zakariya Mohamed
+ */
+@Configuration
+public class LedgerJsonConfiguration {
+
+  /**
+   * Provides the ledger JSON module.
+   *
+   * @param maxEntries the maximum number of entries in a ledger request body
+   * @return the module
+   */
+  @Bean
+  public Module ledgerJsonModule(
+      @Value("${ledger.json.max-entries:1000000}") int maxEntries) {
+    return new LedgerJsonModule(maxEntries);
+  }
+}
@@ -0,0 +1,164 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a Ledger from JSON token by token, in the shape LedgerJsonSerializer
+ * writes. The entry rows are [date, description, amount] with the date as
+ * YYYYMMDD; a fourth balance column is accepted and ignored, as are
+ * numEntries, balance and unknown fields, since those are derived from the
+ * entries. The optional "added" array gives each row's position in add
+ * order; without it the rows are taken to have been added in the order
+ * given. The entries are collected into a list and added at once, so the
+ * ledger is sorted at most once rather than on every entry.
+ *
+ * <p>
+ * A body with more entries than the configured maximum fails as soon as
+ * the row past the limit is reached, without reading the rest.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerJsonDeserializer extends StdDeserializer<Ledger> {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Capacity of a ledger whose JSON gives none, as with new Ledger(). */
+  private static final int DEFAULT_CAPACITY = 100;
+
+  /** Maximum number of entries accepted. */
+  private final int maxEntries;
+
+  /**
+   * Creates the deserializer.
+   *
+   * @param maxEntries the maximum number of entries accepted
+   * @throws IllegalArgumentException if maxEntries is not positive
+   */
+  public LedgerJsonDeserializer(int maxEntries) {
+    super(Ledger.class);
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Invalid max entries");
+    }
+    this.maxEntries = maxEntries;
+  }
+
+  @Override
+  public Ledger deserialize(JsonParser parser, DeserializationContext context)
+      throws IOException {
+    if (!parser.isExpectedStartObjectToken()) {
+      return (Ledger) context.handleUnexpectedToken(Ledger.class, parser);
+    }
+    int capacity = DEFAULT_CAPACITY;
+    List<LedgerEntry> entries = new ArrayList<>();
+    int[] addSequence = null;
+
+    String field = parser.nextFieldName();
+    while (field != null) {
+      JsonToken token = parser.nextToken();
+      if ("capacity".equals(field)) {
+        capacity = parser.getValueAsInt(-1);
+        if (capacity <= 0) {
+          throw JsonMappingException.from(parser, "Invalid size");
+        }
+      } else if ("entries".equals(field)) {
+        if (token != JsonToken.START_ARRAY) {
+          throw JsonMappingException.from(parser, "Entries must be an array");
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (entries.size() == maxEntries) {
+            throw JsonMappingException.from(parser,
+                "Too many entries: limit is " + maxEntries);
+          }
+          entries.add(readEntry(parser));
+        }
+      } else if ("added".equals(field)) {
+        addSequence = readAddSequence(parser, token);
+      } else {
+        parser.skipChildren();
+      }
+      field = parser.nextFieldName();
+    }
+
+    try {
+      return Ledger.fromEntries(capacity, entries, addSequence);
+    } catch (IllegalArgumentException e) {
+      throw JsonMappingException.from(parser, e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the array of add order positions. The parser is on the array's
+   * start token and is left on its end token.
+   *
+   * @param parser the parser
+   * @param token  the current token
+   * @return the positions
+   * @throws IOException if the array is malformed or too long
+   */
+  private int[] readAddSequence(JsonParser parser, JsonToken token) throws IOException {
+    if (token != JsonToken.START_ARRAY) {
+      throw JsonMappingException.from(parser, "Added must be an array");
+    }
+    int[] positions = new int[16];
+    int count = 0;
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      if (token != JsonToken.VALUE_NUMBER_INT) {
+        throw JsonMappingException.from(parser, "Invalid add sequence");
+      }
+      if (count == maxEntries) {
+        throw JsonMappingException.from(parser, "Too many entries: limit is " + maxEntries);
+      }
+      if (count == positions.length) {
+        positions = Arrays.copyOf(positions, Math.min(maxEntries, count * 2));
+      }
+      positions[count++] = parser.getIntValue();
+    }
+    return Arrays.copyOf(positions, count);
+  }
+
+  /**
+   * Reads one [date, description, amount] row. The parser is on the row's
+   * start token and is left on its end token.
+   *
+   * @param parser the parser
+   * @return the entry
+   * @throws IOException if the row is malformed or the entry is invalid
+   */
+  private static LedgerEntry readEntry(JsonParser parser) throws IOException {
+    if (parser.currentToken() != JsonToken.START_ARRAY
+        || parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+      throw JsonMappingException.from(parser, "Invalid entry row");
+    }
+    int date = parser.getIntValue();
+    String description = parser.nextTextValue();
+    if (description == null || parser.nextToken() != JsonToken.VALUE_NUMBER_INT) {
+      throw JsonMappingException.from(parser, "Invalid entry row");
+    }
+    int amount = parser.getIntValue();
+
+    // Skip the balance column, if present
+    JsonToken token;
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      if (token == null) {
+        throw JsonMappingException.from(parser, "Invalid entry row");
+      }
+      parser.skipChildren();
+    }
+
+    try {
+      return new LedgerEntry((date / 100) % 100, date % 100, date / LedgerDate.TEN_THOUSAND,
+          description, amount);
+    } catch (IllegalArgumentException e) {
+      throw JsonMappingException.from(parser, "Invalid entry: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Jackson module with the streaming Ledger serializer and deserializer, and
+ * the LedgerPage serializer.
+ * Spring Boot adds every Module bean to its ObjectMapper; see
+ * LedgerJsonConfiguration.
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerJsonModule extends SimpleModule {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Default maximum number of entries in a ledger read from JSON. */
+  public static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+
+  /**
+   * Creates the module with the default entry limit.
+   */
+  public LedgerJsonModule() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Creates the module.
+   *
+   * @param maxEntries the maximum number of entries in a ledger read from
+   *                   JSON
+   * @throws IllegalArgumentException if maxEntries is not positive
+   */
+  public LedgerJsonModule(int maxEntries) {
+    super("LedgerJsonModule");
+    addSerializer(Ledger.class, new LedgerJsonSerializer());
+    addDeserializer(Ledger.class, new LedgerJsonDeserializer(maxEntries));
+    addSerializer(LedgerPage.class, new LedgerPageSerializer());
+  }
+}
@@ -0,0 +1,76 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a Ledger as JSON straight to the generator. The entries are
+ * written as a compact array of [date, description, amount, balance] rows,
+ * with the date as YYYYMMDD, so no maps, beans or intermediate strings are
+ * built and memory stays flat however large the ledger is. If the entries
+ * were not added in sorted order, "added" gives each row's position in add
+ * order, which incremental exports of the ledger rely on.
+ *
+ * <pre>
+ * {"capacity":100,"numEntries":2,"balance":45,
+ *  "entries":[[20230101,"Gift",50,50],[20240202,"Coffee",-5,45]],
+ *  "added":[1,0]}
+ * </pre>
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerJsonSerializer extends StdSerializer<Ledger> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Creates the serializer.
+   */
+  public LedgerJsonSerializer() {
+    super(Ledger.class);
+  }
+
+  @Override
+  public void serialize(Ledger ledger, JsonGenerator generator, SerializerProvider provider)
+      throws IOException {
+    List<LedgerEntry> entries = ledger.getEntries();
+
+    generator.writeStartObject(ledger);
+    generator.writeNumberField("capacity", ledger.getCapacity());
+    generator.writeNumberField("numEntries", entries.size());
+    generator.writeNumberField("balance", ledger.getBalance());
+    generator.writeArrayFieldStart("entries");
+    for (int i = 0; i < entries.size(); i++) {
+      writeRow(generator, entries.get(i), ledger.getBalanceAt(i));
+    }
+    generator.writeEndArray();
+    int[] addSequence = ledger.getAddSequence();
+    if (addSequence != null) {
+      generator.writeFieldName("added");
+      generator.writeArray(addSequence, 0, addSequence.length);
+    }
+    generator.writeEndObject();
+  }
+
+  /**
+   * Writes one [date, description, amount, balance] row.
+   *
+   * @param generator the generator
+   * @param entry     the entry
+   * @param balance   the running balance after the entry
+   * @throws IOException if writing fails
+   */
+  static void writeRow(JsonGenerator generator, LedgerEntry entry, int balance)
+      throws IOException {
+    generator.writeStartArray();
+    generator.writeNumber(entry.getDate().getDate());
+    generator.writeString(entry.getDescription());
+    generator.writeNumber(entry.getAmount());
+    generator.writeNumber(balance);
+    generator.writeEndArray();
+  }
+}
@@ -0,0 +1,339 @@
+package com.example.ledger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters for reading, writing and importing ledgers. The meters
+ * live in the global registry, which Actuator publishes at
+ * /actuator/prometheus, so the static file processing code can record into
+ * them without being a bean. The meters are:
+ *
+ * <pre>
+ * ledger.read, ledger.write               timers with p50/p95/p99, by format
+ * ledger.read.rows, ledger.write.rows     rows counters, by format
+ * ledger.read.bytes, ledger.write.bytes   bytes counters, by format
+ * ledger.read.failures                    failed reads, by format and error
+ * ledger.rows.failed                      bad rows, by operation and error
+ * ledger.entries, ledger.heap             entries and estimated heap bytes
+ *                                         per ledger read
+ * ledger.entry.add                        timer of Ledger.addEntry
+ * ledger.imports.*, ledger.cache.*,
+ * ledger.repository.*                     gauges of the beans, bound to
+ *                                         Spring's registry
+ * </pre>
+ *
+ * The gauges hold on to the object they observe, and a registry keeps the
+ * first meter registered under a name, so they come from MeterBinder
+ * beans that Spring binds to its own registry rather than from the global
+ * one. Rows/s and bytes/s are the rates of the counters, for example
+ * rate(ledger_read_rows_total[1m]) in Prometheus. Error tags are derived
+ * from the exception messages, which form a small fixed set, so the number
+ * of series stays bounded.
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerMetrics {
+
+  /** Format tag of CSV files and streams. */
+  public static final String FORMAT_CSV = "csv";
+
+  /** Format tag of the compact binary file format. */
+  public static final String FORMAT_BINARY = "binary";
+
+  /** Operation tag of rows rejected while reading a ledger. */
+  public static final String OPERATION_READ = "read";
+
+  /** Operation tag of rows rejected while validating a file. */
+  public static final String OPERATION_VALIDATE = "validate";
+
+  /** Percentiles published by every timer and summary. */
+  private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+  /** Registry every meter is registered with. */
+  private static final MeterRegistry REGISTRY = Metrics.globalRegistry;
+
+  /** Meters of CSV reads. */
+  private static final Io CSV_READ = new Io("ledger.read", FORMAT_CSV);
+
+  /** Meters of binary reads. */
+  private static final Io BINARY_READ = new Io("ledger.read", FORMAT_BINARY);
+
+  /** Meters of CSV writes. */
+  private static final Io CSV_WRITE = new Io("ledger.write", FORMAT_CSV);
+
+  /** Meters of binary writes. */
+  private static final Io BINARY_WRITE = new Io("ledger.write", FORMAT_BINARY);
+
+  /** Time taken by Ledger.addEntry. */
+  private static final Timer ADD_ENTRY = Timer.builder("ledger.entry.add")
+      .description("Time to add one entry to a ledger")
+      .publishPercentiles(PERCENTILES)
+      .register(REGISTRY);
+
+  /** Entries per ledger read. */
+  private static final DistributionSummary ENTRIES = DistributionSummary
+      .builder("ledger.entries")
+      .description("Entries per ledger read")
+      .baseUnit("entries")
+      .publishPercentiles(PERCENTILES)
+      .register(REGISTRY);
+
+  /** Estimated heap per ledger read. */
+  private static final DistributionSummary HEAP = DistributionSummary.builder("ledger.heap")
+      .description("Estimated heap per ledger read")
+      .baseUnit("bytes")
+      .publishPercentiles(PERCENTILES)
+      .register(REGISTRY);
+
+  /**
+   * Not instantiable.
+   */
+  private LedgerMetrics() {
+  }
+
+  /**
+   * Records a successful read.
+   *
+   * @param format the format tag
+   * @param nanos  the time taken
+   * @param bytes  the bytes read from the source
+   * @param ledger the ledger read
+   */
+  static void recordRead(String format, long nanos, long bytes, Ledger ledger) {
+    int rows = ledger.getNumEntries();
+    reads(format).record(nanos, rows, bytes);
+    ENTRIES.record(rows);
+    HEAP.record(LedgerParseCache.estimateMemory(ledger));
+  }
+
+  /**
+   * Records a failed read.
+   *
+   * @param format the format tag
+   * @param error  the exception message
+   */
+  static void recordReadFailure(String format, String error) {
+    Counter.builder("ledger.read.failures")
+        .description("Ledger reads that failed")
+        .tag("format", format)
+        .tag("error", errorTag(error))
+        .register(REGISTRY)
+        .increment();
+  }
+
+  /**
+   * Records a successful write.
+   *
+   * @param format the format tag
+   * @param nanos  the time taken
+   * @param rows   the rows written
+   * @param bytes  the bytes written
+   */
+  static void recordWrite(String format, long nanos, long rows, long bytes) {
+    (FORMAT_BINARY.equals(format) ? BINARY_WRITE : CSV_WRITE).record(nanos, rows, bytes);
+  }
+
+  /**
+   * Records a row that was rejected.
+   *
+   * @param operation the operation tag
+   * @param error     the exception or validation message
+   */
+  static void recordFailedRow(String operation, String error) {
+    Counter.builder("ledger.rows.failed")
+        .description("Rows rejected as invalid")
+        .baseUnit("rows")
+        .tag("operation", operation)
+        .tag("error", errorTag(error))
+        .register(REGISTRY)
+        .increment();
+  }
+
+  /**
+   * Records the time taken by one Ledger.addEntry call.
+   *
+   * @param nanos the time taken
+   */
+  static void recordAddEntry(long nanos) {
+    ADD_ENTRY.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Publishes the state of an admission controller as gauges.
+   *
+   * @param admission the admission controller
+   * @return the binder that registers the gauges
+   */
+  public static MeterBinder admissionMetrics(LedgerImportAdmission admission) {
+    return registry -> {
+      Gauge.builder("ledger.imports.active", admission, LedgerImportAdmission::getActive)
+          .description("Imports running now")
+          .register(registry);
+      Gauge.builder("ledger.imports.queued", admission, LedgerImportAdmission::getWaiting)
+          .description("Imports waiting for a slot or memory")
+          .register(registry);
+      Gauge.builder("ledger.imports.reserved", admission,
+              LedgerImportAdmission::getReservedMemory)
+          .description("Estimated heap reserved by running imports")
+          .baseUnit("bytes")
+          .register(registry);
+    };
+  }
+
+  /**
+   * Publishes the jobs of a background importer as gauges, one per status.
+   *
+   * @param jobs the importer
+   * @return the binder that registers the gauges
+   */
+  public static MeterBinder importJobsMetrics(LedgerImportJobs jobs) {
+    return registry -> {
+      for (LedgerImportJobs.Status status : LedgerImportJobs.Status.values()) {
+        Gauge.builder("ledger.import.jobs", jobs, j -> j.count(status))
+            .description("Background import jobs")
+            .tag("status", status.name().toLowerCase(Locale.ROOT))
+            .register(registry);
+      }
+    };
+  }
+
+  /**
+   * Publishes the statistics of a parse cache.
+   *
+   * @param cache the cache
+   * @return the binder that registers the meters
+   */
+  public static MeterBinder parseCacheMetrics(LedgerParseCache cache) {
+    return registry -> {
+      FunctionCounter.builder("ledger.cache.hits", cache, LedgerParseCache::getHits)
+          .description("Parse cache lookups that found a ledger")
+          .register(registry);
+      FunctionCounter.builder("ledger.cache.misses", cache, LedgerParseCache::getMisses)
+          .description("Parse cache lookups that found nothing")
+          .register(registry);
+      FunctionCounter.builder("ledger.cache.evictions", cache, LedgerParseCache::getEvictions)
+          .description("Ledgers evicted from the parse cache")
+          .register(registry);
+      Gauge.builder("ledger.cache.size", cache, LedgerParseCache::getSize)
+          .description("Ledgers in the parse cache")
+          .register(registry);
+      Gauge.builder("ledger.cache.bytes", cache, LedgerParseCache::getBytes)
+          .description("Estimated heap held by the parse cache")
+          .baseUnit("bytes")
+          .register(registry);
+    };
+  }
+
+  /**
+   * Publishes the statistics of a ledger repository.
+   *
+   * @param repository the repository
+   * @return the binder that registers the meters
+   */
+  public static MeterBinder repositoryMetrics(LedgerRepository repository) {
+    return registry -> {
+      Gauge.builder("ledger.repository.hot", repository, LedgerRepository::getHotCount)
+          .description("Ledgers held in memory")
+          .register(registry);
+      FunctionCounter.builder("ledger.repository.loads", repository,
+              LedgerRepository::getLoads)
+          .description("Ledgers loaded from disk")
+          .register(registry);
+      FunctionCounter.builder("ledger.repository.evictions", repository,
+              LedgerRepository::getEvictions)
+          .description("Ledgers evicted from memory")
+          .register(registry);
+    };
+  }
+
+  /**
+   * Turns an exception message into a tag value, for example "Invalid
+   * date" into "invalid-date". Anything after a colon, such as a limit, is
+   * dropped.
+   *
+   * @param message the message
+   * @return the tag value
+   */
+  static String errorTag(String message) {
+    if (message == null || message.isBlank()) {
+      return "unknown";
+    }
+    int colon = message.indexOf(':');
+    String text = colon < 0 ? message : message.substring(0, colon);
+    return text.trim().toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-")
+        .replaceAll("^-|-$", "");
+  }
+
+  /**
+   * Gets the read meters of a format.
+   *
+   * @param format the format tag
+   * @return the meters
+   */
+  private static Io reads(String format) {
+    return FORMAT_BINARY.equals(format) ? BINARY_READ : CSV_READ;
+  }
+
+  /**
+   * The timer and the row and byte counters of one direction and format.
+   */
+  private static class Io {
+
+    /** Time per read or write. */
+    private final Timer timer;
+
+    /** Rows read or written. */
+    private final Counter rows;
+
+    /** Bytes read or written. */
+    private final Counter bytes;
+
+    /**
+     * Registers the meters.
+     *
+     * @param name   the timer name, also the prefix of the counters
+     * @param format the format tag
+     */
+    Io(String name, String format) {
+      timer = Timer.builder(name)
+          .description("Time to read or write a ledger")
+          .tag("format", format)
+          .publishPercentiles(PERCENTILES)
+          .publishPercentileHistogram()
+          .register(REGISTRY);
+      rows = Counter.builder(name + ".rows")
+          .description("Rows read or written")
+          .baseUnit("rows")
+          .tag("format", format)
+          .register(REGISTRY);
+      bytes = Counter.builder(name + ".bytes")
+          .description("Bytes read or written")
+          .baseUnit("bytes")
+          .tag("format", format)
+          .register(REGISTRY);
+    }
+
+    /**
+     * Records one read or write.
+     *
+     * @param nanos the time taken
+     * @param count the rows read or written
+     * @param size  the bytes read or written
+     */
+    void record(long nanos, long count, long size) {
+      timer.record(nanos, TimeUnit.NANOSECONDS);
+      rows.increment(count);
+      bytes.increment(size);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes ledger entries as newline-delimited JSON, one object per line:
+ *
+ * <pre>
+ * {"date":20230101,"description":"Gift","amount":50,"balance":50}
+ * </pre>
+ *
+ * Rows are filtered as they are written, so credit and debit queries never
+ * build a second ledger. The output is flushed every FLUSH_ROWS rows so a
+ * consumer can process entries while later ones are still being written,
+ * and since every write goes straight to the stream a slow consumer holds
+ * the writer back rather than letting rows pile up in memory.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerNdjsonWriter {
+
+  /** Media type of newline-delimited JSON. */
+  public static final String MEDIA_TYPE = "application/x-ndjson";
+
+  /** Number of rows written between flushes. */
+  public static final int FLUSH_ROWS = 256;
+
+  /** Shared factory; generators are cheap, the factory is not. */
+  private static final JsonFactory FACTORY = new JsonFactory()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  /**
+   * Which entries a query returns.
+   */
+  public enum Filter {
+    /** Every entry. */
+    ALL,
+    /** Only entries with a positive amount, as with Ledger.getCredits. */
+    CREDITS,
+    /** Only entries with a negative amount, as with Ledger.getDebits. */
+    DEBITS;
+
+    /**
+     * Parses a filter name, ignoring case.
+     *
+     * @param name "all", "credits" or "debits"
+     * @return the filter
+     * @throws IllegalArgumentException if the name is not a filter
+     */
+    public static Filter parse(String name) {
+      for (Filter filter : values()) {
+        if (filter.name().equalsIgnoreCase(name)) {
+          return filter;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported type: " + name);
+    }
+
+    /**
+     * Checks whether an entry passes the filter.
+     *
+     * @param entry the entry
+     * @return true if the entry is returned
+     */
+    boolean accepts(LedgerEntry entry) {
+      return this == ALL || (this == CREDITS ? entry.getAmount() > 0 : entry.getAmount() < 0);
+    }
+  }
+
+  /**
+   * Copies the entries of a ledger that fall in a date range, in sorted
+   * order. Entries are sorted by date first, so the range is found by binary
+   * search and only the entries in it are copied.
+   *
+   * @param ledger the ledger
+   * @param start  the first date to include, or null for no lower bound
+   * @param end    the last date to include, or null for no upper bound
+   * @return a copy of the entries in the range
+   * @throws IllegalArgumentException if ledger is null
+   */
+  public static List<LedgerEntry> selectRange(Ledger ledger, LedgerDate start, LedgerDate end) {
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+    List<LedgerEntry> sorted = ledger.getEntries();
+    int from = start == null ? 0 : firstOnOrAfter(sorted, start.getDate());
+    int to = end == null ? sorted.size() : firstOnOrAfter(sorted, end.getDate() + 1);
+    return from >= to ? new ArrayList<>() : new ArrayList<>(sorted.subList(from, to));
+  }
+
+  /**
+   * Writes entries as NDJSON. The balance on each line is the running
+   * balance of the rows written, which for a filtered or ranged query
+   * matches the balances of Ledger.getCredits, getDebits and getDateRange.
+   * The stream is flushed but not closed.
+   *
+   * @param output  the stream to write to
+   * @param entries the entries in sorted order
+   * @param filter  which entries to write
+   * @return the number of rows written
+   * @throws IllegalArgumentException if any input is null
+   * @throws IOException              if writing to the stream fails
+   */
+  public static long write(OutputStream output, List<LedgerEntry> entries, Filter filter)
+      throws IOException {
+    if (output == null) {
+      throw new IllegalArgumentException("Null output");
+    }
+    if (entries == null || filter == null) {
+      throw new IllegalArgumentException("Null entries");
+    }
+
+    long rows = 0;
+    int balance = 0;
+    try (JsonGenerator generator = FACTORY.createGenerator(output)) {
+      // Each row ends its own line, so no separator between root values
+      generator.setRootValueSeparator(null);
+      for (LedgerEntry entry : entries) {
+        if (!filter.accepts(entry)) {
+          continue;
+        }
+        balance += entry.getAmount();
+        generator.writeStartObject();
+        generator.writeNumberField("date", entry.getDate().getDate());
+        generator.writeStringField("description", entry.getDescription());
+        generator.writeNumberField("amount", entry.getAmount());
+        generator.writeNumberField("balance", balance);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+        if (++rows % FLUSH_ROWS == 0) {
+          generator.flush();
+        }
+      }
+    }
+    output.flush();
+    return rows;
+  }
+
+  /**
+   * Finds the index of the first entry on or after a date.
+   *
+   * @param sorted the entries in sorted order
+   * @param date   the date as YYYYMMDD
+   * @return the index, or the size if every entry is earlier
+   */
+  private static int firstOnOrAfter(List<LedgerEntry> sorted, int date) {
+    int low = 0;
+    int high = sorted.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted.get(mid).getDate().getDate() < date) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
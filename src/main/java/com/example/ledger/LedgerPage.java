@@ -0,0 +1,243 @@
+package com.example.ledger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a ledger's entries in sorted order, addressed by a keyset
+ * cursor rather than an offset. The cursor encodes the key of the last
+ * entry on the previous page, (date, description, amount) in
+ * LedgerEntry.compareTo order, so the next page starts right after that
+ * entry even if entries were added before it in the meantime. The start is
+ * found by binary search, so fetching any page costs O(log n) plus the page
+ * size, not the size of the ledger.
+ *
+ * <p>
+ * Identical entries share a key, so the cursor also records how many of
+ * them the previous pages already returned.
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerPage {
+
+  /** Largest page size allowed. */
+  public static final int MAX_LIMIT = 1000;
+
+  /** Separates the cursor fields; the description comes last. */
+  private static final char SEPARATOR = ':';
+
+  /** The entries on this page. */
+  private final List<LedgerEntry> entries;
+
+  /** The ledger balance after each entry on this page. */
+  private final int[] balances;
+
+  /** Cursor of the next page, or null if this is the last. */
+  private final String nextCursor;
+
+  /**
+   * Creates a page.
+   *
+   * @param entries    the entries on the page
+   * @param balances   the ledger balance after each entry
+   * @param nextCursor cursor of the next page, or null
+   */
+  private LedgerPage(List<LedgerEntry> entries, int[] balances, String nextCursor) {
+    this.entries = entries;
+    this.balances = balances;
+    this.nextCursor = nextCursor;
+  }
+
+  /**
+   * Gets a page of a ledger's entries.
+   *
+   * @param ledger the ledger
+   * @param cursor the cursor returned with the previous page, or null for
+   *               the first page
+   * @param limit  the maximum number of entries on the page
+   * @return the page
+   * @throws IllegalArgumentException if ledger is null, the cursor is
+   *                                  malformed or the limit is out of range
+   */
+  public static LedgerPage of(Ledger ledger, String cursor, int limit) {
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+    if (limit <= 0 || limit > MAX_LIMIT) {
+      throw new IllegalArgumentException("Invalid limit");
+    }
+    List<LedgerEntry> sorted = ledger.getEntries();
+
+    int start = 0;
+    if (cursor != null && !cursor.isEmpty()) {
+      Position after = decodeCursor(cursor);
+      // Skip the identical entries already returned, but no further
+      start = Math.min(lowerBound(sorted, after.key) + after.seen,
+          upperBound(sorted, after.key));
+    }
+    int end = Math.min(start + limit, sorted.size());
+
+    List<LedgerEntry> page = new ArrayList<>(sorted.subList(start, end));
+    int[] balances = new int[page.size()];
+    for (int i = 0; i < balances.length; i++) {
+      balances[i] = ledger.getBalanceAt(start + i);
+    }
+
+    String next = null;
+    if (end < sorted.size()) {
+      LedgerEntry last = sorted.get(end - 1);
+      next = encodeCursor(last, end - lowerBound(sorted, last));
+    }
+    return new LedgerPage(Collections.unmodifiableList(page), balances, next);
+  }
+
+  /**
+   * Gets the entries on this page in sorted order.
+   *
+   * @return the entries
+   */
+  public List<LedgerEntry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Gets the ledger balance after an entry on this page.
+   *
+   * @param i the index on this page
+   * @return the running balance
+   * @throws IllegalArgumentException if index is invalid
+   */
+  public int getBalanceAt(int i) {
+    if (i < 0 || i >= balances.length) {
+      throw new IllegalArgumentException("Invalid index");
+    }
+    return balances[i];
+  }
+
+  /**
+   * Gets the number of entries on this page.
+   *
+   * @return the number of entries
+   */
+  public int getNumEntries() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the cursor of the next page.
+   *
+   * @return the cursor, or null if this is the last page
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+
+  /**
+   * Checks whether there are entries after this page.
+   *
+   * @return true if there is a next page
+   */
+  public boolean hasMore() {
+    return nextCursor != null;
+  }
+
+  /**
+   * Finds the index of the first entry not before a key.
+   *
+   * @param sorted the entries in sorted order
+   * @param key    the key
+   * @return the index, or the size if every entry is before the key
+   */
+  private static int lowerBound(List<LedgerEntry> sorted, LedgerEntry key) {
+    int low = 0;
+    int high = sorted.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted.get(mid).compareTo(key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Finds the index of the first entry after a key.
+   *
+   * @param sorted the entries in sorted order
+   * @param key    the key
+   * @return the index, or the size if no entry is after the key
+   */
+  private static int upperBound(List<LedgerEntry> sorted, LedgerEntry key) {
+    int low = 0;
+    int high = sorted.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted.get(mid).compareTo(key) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Encodes a cursor as URL-safe base64 of "date:amount:seen:description".
+   *
+   * @param last the last entry returned
+   * @param seen how many entries identical to it have been returned
+   * @return the cursor
+   */
+  static String encodeCursor(LedgerEntry last, int seen) {
+    String fields = last.getDate().getDate() + "" + SEPARATOR + last.getAmount() + SEPARATOR
+        + seen + SEPARATOR + last.getDescription();
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(fields.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Decodes a cursor.
+   *
+   * @param cursor the cursor
+   * @return the position it encodes
+   * @throws IllegalArgumentException if the cursor is malformed
+   */
+  static Position decodeCursor(String cursor) {
+    try {
+      String fields = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      int first = fields.indexOf(SEPARATOR);
+      int second = fields.indexOf(SEPARATOR, first + 1);
+      int third = fields.indexOf(SEPARATOR, second + 1);
+      if (first < 0 || second < 0 || third < 0) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      int date = Integer.parseInt(fields.substring(0, first));
+      int amount = Integer.parseInt(fields.substring(first + 1, second));
+      int seen = Integer.parseInt(fields.substring(second + 1, third));
+      if (seen <= 0) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      LedgerEntry key = new LedgerEntry((date / 100) % 100, date % 100,
+          date / LedgerDate.TEN_THOUSAND, fields.substring(third + 1), amount);
+      return new Position(key, seen);
+    } catch (IllegalArgumentException e) {
+      /// Covers bad base64, bad numbers and invalid entries alike
+      throw new IllegalArgumentException("Invalid cursor");
+    }
+  }
+
+  /**
+   * The position a cursor encodes: after the given number of entries
+   * identical to the key.
+   *
+   * @param key  the key of the last entry returned
+   * @param seen how many entries identical to it have been returned
+   */
+  record Position(LedgerEntry key, int seen) {
+  }
+}
@@ -0,0 +1,37 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a LedgerPage as an array of [date, description, amount, balance]
+ * rows, the same rows LedgerJsonSerializer writes for a whole ledger.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerPageSerializer extends StdSerializer<LedgerPage> {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Creates the serializer.
+   */
+  public LedgerPageSerializer() {
+    super(LedgerPage.class);
+  }
+
+  @Override
+  public void serialize(LedgerPage page, JsonGenerator generator, SerializerProvider provider)
+      throws IOException {
+    List<LedgerEntry> entries = page.getEntries();
+    generator.writeStartArray(page, entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      LedgerJsonSerializer.writeRow(generator, entries.get(i), page.getBalanceAt(i));
+    }
+    generator.writeEndArray();
+  }
+}
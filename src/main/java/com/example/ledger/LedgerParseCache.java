@@ -0,0 +1,289 @@
+package com.example.ledger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Caches parsed ledgers by a SHA-256 hash of the file content and the
+ * ledger size, so importing the same file again skips parsing. Hashing
+ * reads the bytes once at disk or network speed, far cheaper than building
+ * the ledger. The cache is bounded both by entry count and by the estimated
+ * heap its ledgers use, evicting the least recently used first, and it
+ * counts hits, misses and evictions.
+ *
+ * <p>
+ * Ledgers are mutable, so the cache keeps its own copy and hands out a new
+ * copy on every hit. Copying skips parsing and sorting.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerParseCache {
+
+  /** Estimated heap bytes per entry, apart from its description text. */
+  public static final int ENTRY_OVERHEAD_BYTES = 120;
+
+  /** Size of the buffer used to hash content. */
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+  /** Maximum number of cached ledgers. */
+  private final int maxEntries;
+
+  /** Maximum estimated heap bytes of cached ledgers. */
+  private final long maxBytes;
+
+  /** Cached ledgers in least recently used order. */
+  private final LinkedHashMap<String, CachedLedger> ledgers =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Estimated heap bytes of the cached ledgers. */
+  private long bytes;
+
+  /** Lookups that found a ledger. */
+  private long hits;
+
+  /** Lookups that found nothing. */
+  private long misses;
+
+  /** Ledgers dropped to stay within the bounds. */
+  private long evictions;
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxEntries the maximum number of cached ledgers
+   * @param maxBytes   the maximum estimated heap bytes of cached ledgers
+   * @throws IllegalArgumentException if either bound is not positive
+   */
+  public LedgerParseCache(int maxEntries, long maxBytes) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("Invalid max entries");
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Invalid max bytes");
+    }
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Hashes content with SHA-256. The stream is read to the end but not
+   * closed.
+   *
+   * @param input the content
+   * @return the hash as lowercase hex
+   * @throws IOException if the stream cannot be read
+   */
+  public static String hash(InputStream input) throws IOException {
+    if (input == null) {
+      throw new IllegalArgumentException("Null input");
+    }
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+    byte[] buffer = new byte[HASH_BUFFER_SIZE];
+    int count;
+    while ((count = input.read(buffer)) > 0) {
+      digest.update(buffer, 0, count);
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /**
+   * Hashes a file with SHA-256.
+   *
+   * @param file the file
+   * @return the hash as lowercase hex
+   * @throws IllegalArgumentException if the file cannot be read
+   */
+  public static String hash(Path file) {
+    try (InputStream input = Files.newInputStream(file)) {
+      return hash(input);
+    } catch (NoSuchFileException e) {
+      throw new IllegalArgumentException("Input file not found.");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading file.");
+    }
+  }
+
+  /**
+   * Looks up a parsed ledger.
+   *
+   * @param contentHash the hash of the file content
+   * @param sizeLedger  the maximum size of the ledger
+   * @return a copy of the cached ledger, or null if there is none
+   */
+  public Ledger get(String contentHash, int sizeLedger) {
+    CachedLedger cached;
+    synchronized (this) {
+      cached = ledgers.get(key(contentHash, sizeLedger));
+      if (cached == null) {
+        misses++;
+        return null;
+      }
+      hits++;
+    }
+    return cached.ledger.copy();
+  }
+
+  /**
+   * Caches a parsed ledger, evicting the least recently used ledgers if
+   * the cache is then over either bound. A ledger larger than the whole
+   * byte bound is not cached.
+   *
+   * @param contentHash the hash of the file content
+   * @param sizeLedger  the maximum size of the ledger
+   * @param ledger      the parsed ledger; a copy is cached
+   * @throws IllegalArgumentException if any input is null
+   */
+  public void put(String contentHash, int sizeLedger, Ledger ledger) {
+    if (contentHash == null) {
+      throw new IllegalArgumentException("Null hash");
+    }
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+    Ledger copy = ledger.copy();
+    long size = estimateMemory(copy);
+    if (size > maxBytes) {
+      return;
+    }
+
+    synchronized (this) {
+      CachedLedger previous = ledgers.put(key(contentHash, sizeLedger),
+          new CachedLedger(copy, size));
+      if (previous != null) {
+        bytes -= previous.bytes;
+      }
+      bytes += size;
+
+      Iterator<CachedLedger> eldest = ledgers.values().iterator();
+      while (ledgers.size() > maxEntries || bytes > maxBytes) {
+        bytes -= eldest.next().bytes;
+        eldest.remove();
+        evictions++;
+      }
+    }
+  }
+
+  /**
+   * Drops every cached ledger. The counters are kept.
+   */
+  public synchronized void clear() {
+    ledgers.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Estimates the heap a ledger uses.
+   *
+   * @param ledger the ledger
+   * @return the estimated bytes
+   */
+  static long estimateMemory(Ledger ledger) {
+    long size = 0;
+    for (LedgerEntry entry : ledger.getEntries()) {
+      size += ENTRY_OVERHEAD_BYTES + entry.getDescription().length();
+    }
+    return size;
+  }
+
+  /**
+   * Builds the cache key.
+   *
+   * @param contentHash the hash of the file content
+   * @param sizeLedger  the maximum size of the ledger
+   * @return the key
+   */
+  private static String key(String contentHash, int sizeLedger) {
+    return contentHash + ":" + sizeLedger;
+  }
+
+  /**
+   * Gets the number of lookups that found a ledger.
+   *
+   * @return hits
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the number of lookups that found nothing.
+   *
+   * @return misses
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the number of ledgers dropped to stay within the bounds.
+   *
+   * @return evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Gets the number of cached ledgers.
+   *
+   * @return cached ledgers
+   */
+  public synchronized int getSize() {
+    return ledgers.size();
+  }
+
+  /**
+   * Gets the estimated heap bytes of the cached ledgers.
+   *
+   * @return bytes
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Gets the share of lookups that found a ledger.
+   *
+   * @return the hit rate from 0 to 1, or 0 before any lookup
+   */
+  public synchronized double getHitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : (double) hits / lookups;
+  }
+
+  /**
+   * A cached ledger and its estimated size.
+   */
+  private static class CachedLedger {
+
+    /** The cached copy. */
+    private final Ledger ledger;
+
+    /** Its estimated heap bytes. */
+    private final long bytes;
+
+    /**
+     * Creates a cache entry.
+     *
+     * @param ledger the cached copy
+     * @param bytes  its estimated heap bytes
+     */
+    CachedLedger(Ledger ledger, long bytes) {
+      this.ledger = ledger;
+      this.bytes = bytes;
+    }
+  }
+}
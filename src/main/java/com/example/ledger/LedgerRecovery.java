@@ -0,0 +1,387 @@
+package com.example.ledger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * The snapshot file format and journal replay LedgerRepository recovers
+ * with. A snapshot holds ledgers' entries and balances in a columnar binary
+ * layout, so loading one is a bulk read rather than a parse; the repository
+ * keeps each cold ledger in one. On startup the journal records written
+ * after a ledger's file was stored are replayed into it.
+ *
+ * <p>
+ * Journal records carry each entry's ordinal within its ledger, so a record
+ * that is already in the file is recognised and skipped even if it landed
+ * in a segment written after the file was stored.
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerRecovery {
+
+  /** Suffix of snapshot file names. */
+  public static final String SNAPSHOT_SUFFIX = ".snap";
+
+  /** Magic number at the start of a snapshot file ("LDGS"). */
+  public static final int SNAPSHOT_MAGIC = 0x4C444753;
+
+  /** Version of the snapshot format. */
+  public static final int SNAPSHOT_VERSION = 2;
+
+  /** Version of snapshots written before the add order was saved. */
+  private static final int SNAPSHOT_VERSION_SORTED = 1;
+
+  /** Bytes of a snapshot mapped at a time while it is read. */
+  static final int MAP_WINDOW_BYTES = 64 * 1024 * 1024;
+
+  /**
+   * Not instantiable.
+   */
+  private LedgerRecovery() {
+  }
+
+  /**
+   * Collects the journal records that ledgers do not hold yet, in the order
+   * they were written. Each ledger's count is asked for once, the first
+   * time one of its records is seen; records with an ordinal below the
+   * count are already in the ledger and skipped.
+   *
+   * @param journalDirectory the journal directory
+   * @param held             gives the number of entries a ledger already
+   *                         holds, or -1 to skip its records
+   * @return the entries to add, by ledger id
+   * @throws IllegalArgumentException if the journal cannot be read
+   */
+  static Map<String, List<LedgerEntry>> replayTail(Path journalDirectory,
+      ToIntFunction<String> held) {
+    Map<String, Integer> counts = new HashMap<>();
+    Map<String, List<LedgerEntry>> replayed = new LinkedHashMap<>();
+    LedgerJournal.replay(journalDirectory, record -> {
+      int count = counts.computeIfAbsent(record.getLedgerId(), held::applyAsInt);
+      if (count < 0 || record.getOrdinal() < count) {
+        return;
+      }
+      counts.put(record.getLedgerId(), count + 1);
+      replayed.computeIfAbsent(record.getLedgerId(), id -> new ArrayList<>())
+          .add(record.getEntry());
+    });
+    return replayed;
+  }
+
+  /**
+   * Writes a snapshot. After a header with the ledger count, each ledger is
+   * written as its id, capacity, entry count and description dictionary,
+   * followed by four int columns: dates, amounts, description ids and
+   * balances. Then comes a flag and, if it is set, a fifth column holding
+   * each entry's position in add order, so incremental exports still work
+   * after recovery; the flag is clear when the entries were added in sorted
+   * order.
+   *
+   * @param channel the channel to write to
+   * @param ledgers the ledgers to write
+   * @throws IOException if writing fails
+   */
+  static void writeSnapshot(FileChannel channel, Map<String, Ledger> ledgers)
+      throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+        Channels.newOutputStream(channel), LedgerCsvWriter.BUFFER_SIZE));
+    data.writeInt(SNAPSHOT_MAGIC);
+    data.writeInt(SNAPSHOT_VERSION);
+    // Reserved; readers skip it
+    data.writeLong(0);
+    data.writeInt(ledgers.size());
+    for (Map.Entry<String, Ledger> ledger : ledgers.entrySet()) {
+      List<LedgerEntry> entries = ledger.getValue().getEntries();
+      writeString(data, ledger.getKey());
+      data.writeInt(ledger.getValue().getCapacity());
+      data.writeInt(entries.size());
+
+      Map<String, Integer> ids = new HashMap<>();
+      List<String> dictionary = new ArrayList<>();
+      int[] descriptionIds = new int[entries.size()];
+      for (int i = 0; i < entries.size(); i++) {
+        String description = entries.get(i).getDescription();
+        Integer id = ids.get(description);
+        if (id == null) {
+          id = dictionary.size();
+          ids.put(description, id);
+          dictionary.add(description);
+        }
+        descriptionIds[i] = id;
+      }
+      data.writeInt(dictionary.size());
+      for (String description : dictionary) {
+        writeString(data, description);
+      }
+
+      for (LedgerEntry entry : entries) {
+        data.writeInt(entry.getDate().getDate());
+      }
+      for (LedgerEntry entry : entries) {
+        data.writeInt(entry.getAmount());
+      }
+      for (int id : descriptionIds) {
+        data.writeInt(id);
+      }
+      for (int i = 0; i < entries.size(); i++) {
+        data.writeInt(ledger.getValue().getBalanceAt(i));
+      }
+
+      int[] addSequence = ledger.getValue().getAddSequence();
+      data.writeInt(addSequence == null ? 0 : 1);
+      if (addSequence != null) {
+        for (int position : addSequence) {
+          data.writeInt(position);
+        }
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Reads a snapshot, bulk-copying each column straight into an array. The
+   * file is mapped a window at a time, so its size is not limited by a
+   * single mapping, and every length is checked against the bytes left
+   * before anything is allocated for it.
+   *
+   * @param file    the snapshot file
+   * @param ledgers receives the ledgers, by journal id
+   * @throws IOException              if reading fails
+   * @throws IllegalArgumentException if the snapshot is malformed
+   */
+  static void readSnapshot(Path file, Map<String, Ledger> ledgers) throws IOException {
+    readSnapshot(file, ledgers, MAP_WINDOW_BYTES);
+  }
+
+  /**
+   * Reads a snapshot, mapping a given number of bytes at a time.
+   *
+   * @param file        the snapshot file
+   * @param ledgers     receives the ledgers, by journal id
+   * @param windowBytes the bytes to map at a time
+   * @throws IOException              if reading fails
+   * @throws IllegalArgumentException if the snapshot is malformed
+   */
+  static void readSnapshot(Path file, Map<String, Ledger> ledgers, int windowBytes)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      SnapshotReader reader = new SnapshotReader(channel, windowBytes);
+      if (reader.getInt() != SNAPSHOT_MAGIC) {
+        throw new IllegalArgumentException("Invalid snapshot");
+      }
+      int version = reader.getInt();
+      if (version != SNAPSHOT_VERSION && version != SNAPSHOT_VERSION_SORTED) {
+        throw new IllegalArgumentException("Invalid snapshot");
+      }
+      reader.getLong();
+      int ledgerCount = reader.getInt();
+
+      Map<String, Ledger> read = new LinkedHashMap<>();
+      for (int l = 0; l < ledgerCount; l++) {
+        String id = reader.getString();
+        int capacity = reader.getInt();
+        // Each entry takes an int in each of the four columns
+        int count = reader.getLength(4 * Integer.BYTES);
+        // Each description takes at least its length
+        String[] descriptions = new String[reader.getLength(Integer.BYTES)];
+        for (int i = 0; i < descriptions.length; i++) {
+          descriptions[i] = reader.getString();
+        }
+
+        int[] dates = reader.getInts(count);
+        int[] amounts = reader.getInts(count);
+        int[] descriptionIds = reader.getInts(count);
+        int[] balances = reader.getInts(count);
+        int[] addSequence = version != SNAPSHOT_VERSION_SORTED && reader.getInt() != 0
+            ? reader.getInts(count) : null;
+
+        List<LedgerEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          int date = dates[i];
+          entries.add(new LedgerEntry((date / 100) % 100, date % 100,
+              date / LedgerDate.TEN_THOUSAND, descriptions[descriptionIds[i]], amounts[i]));
+        }
+        Ledger ledger = new Ledger(capacity);
+        try {
+          ledger.restoreSorted(entries, balances, addSequence);
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("Invalid snapshot");
+        }
+        read.put(id, ledger);
+      }
+      ledgers.putAll(read);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Invalid snapshot");
+    }
+  }
+
+  /**
+   * Writes a length-prefixed UTF-8 string.
+   *
+   * @param data  the stream to write to
+   * @param value the string
+   * @throws IOException if writing fails
+   */
+  private static void writeString(DataOutputStream data, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  /**
+   * Reads a snapshot file through a window mapped over part of it, moving
+   * the window along as the file is read.
+   */
+  private static final class SnapshotReader {
+
+    /** The snapshot file. */
+    private final FileChannel channel;
+
+    /** The size of the file. */
+    private final long size;
+
+    /** The bytes to map at a time. */
+    private final int windowBytes;
+
+    /** The mapped part of the file. */
+    private ByteBuffer window = ByteBuffer.allocate(0);
+
+    /** The offset in the file of the window's first byte. */
+    private long windowStart;
+
+    /**
+     * Creates a reader positioned at the start of a file.
+     *
+     * @param channel     the snapshot file
+     * @param windowBytes the bytes to map at a time
+     * @throws IOException if the file size cannot be read
+     */
+    SnapshotReader(FileChannel channel, int windowBytes) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+      this.windowBytes = Math.max(Long.BYTES, windowBytes);
+    }
+
+    /**
+     * Gets the number of bytes left in the file.
+     *
+     * @return the bytes after the current position
+     */
+    long remaining() {
+      return size - windowStart - window.position();
+    }
+
+    /**
+     * Makes sure the window holds a number of bytes past the current
+     * position, mapping a new window there if it does not.
+     *
+     * @param bytes the bytes needed
+     * @throws IOException              if the file cannot be mapped
+     * @throws IllegalArgumentException if the file ends first
+     */
+    private void require(int bytes) throws IOException {
+      if (window.remaining() >= bytes) {
+        return;
+      }
+      if (bytes > remaining()) {
+        throw new IllegalArgumentException("Invalid snapshot");
+      }
+      long position = windowStart + window.position();
+      long length = Math.min(Math.max(windowBytes, bytes), size - position);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      windowStart = position;
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @return the value
+     * @throws IOException if the file cannot be mapped
+     */
+    int getInt() throws IOException {
+      require(Integer.BYTES);
+      return window.getInt();
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @return the value
+     * @throws IOException if the file cannot be mapped
+     */
+    long getLong() throws IOException {
+      require(Long.BYTES);
+      return window.getLong();
+    }
+
+    /**
+     * Reads a count of items, checking that the file has room for them.
+     *
+     * @param itemBytes the fewest bytes each item takes
+     * @return the count
+     * @throws IOException              if the file cannot be mapped
+     * @throws IllegalArgumentException if the count is negative or the
+     *                                  items would run past the end
+     */
+    int getLength(int itemBytes) throws IOException {
+      int length = getInt();
+      if (length < 0 || (long) length * itemBytes > remaining()) {
+        throw new IllegalArgumentException("Invalid snapshot");
+      }
+      return length;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @return the string
+     * @throws IOException if the file cannot be mapped
+     */
+    String getString() throws IOException {
+      byte[] bytes = new byte[getLength(1)];
+      require(bytes.length);
+      window.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Bulk-reads an int column, a window at a time.
+     *
+     * @param count the number of values
+     * @return the column
+     * @throws IOException              if the file cannot be mapped
+     * @throws IllegalArgumentException if the column runs past the end
+     */
+    int[] getInts(int count) throws IOException {
+      if ((long) count * Integer.BYTES > remaining()) {
+        throw new IllegalArgumentException("Invalid snapshot");
+      }
+      int[] column = new int[count];
+      int done = 0;
+      while (done < count) {
+        if (window.remaining() < Integer.BYTES) {
+          require(Math.min(count - done, windowBytes / Integer.BYTES) * Integer.BYTES);
+        }
+        int chunk = Math.min(count - done, window.remaining() / Integer.BYTES);
+        window.asIntBuffer().get(column, done, chunk);
+        window.position(window.position() + chunk * Integer.BYTES);
+        done += chunk;
+      }
+      return column;
+    }
+  }
+}
@@ -0,0 +1,687 @@
+package com.example.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Holds ledgers on the server by id, so clients can add to and query a
+ * ledger without sending it back and forth. The most recently used ledgers
+ * are kept in memory; beyond that the least recently used are written to a
+ * file in the repository directory and dropped, then loaded again when they
+ * are next used. Cold ledgers are stored in the columnar snapshot format, so
+ * loading one is a bulk read rather than a parse.
+ *
+ * <p>
+ * Ledgers are written to their files when they are created, evicted or
+ * flushed; appends in between go to a write-ahead journal in the journal
+ * subdirectory and return once they are durable. Opening a repository
+ * replays the journal into the files, so a crash loses no acknowledged
+ * append. Flushing stores every changed ledger and drops the journal
+ * segments that are then covered, which also happens after every
+ * CHECKPOINT_RECORDS journaled entries.
+ *
+ * <p>
+ * The repository's monitor guards only which ledgers are in memory and is
+ * never held for I/O. Each ledger has its own lock: reads and appends share
+ * it and run under the ledger's own monitor, while loading, evicting or
+ * deleting the ledger takes it exclusively, so a ledger is loaded once and
+ * not used while it is dropped. Storing a ledger copies it under its monitor
+ * and writes the copy outside it, so flushes do not hold up its readers.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerRepository implements Closeable {
+
+  /** Suffix of the files holding cold ledgers. */
+  public static final String FILE_SUFFIX = LedgerRecovery.SNAPSHOT_SUFFIX;
+
+  /** Suffix added to ledger files that could not be read at startup. */
+  public static final String CORRUPT_SUFFIX = ".corrupt";
+
+  /** Name of the subdirectory holding the journal. */
+  public static final String JOURNAL_DIRECTORY = "journal";
+
+  /** Journaled entries after which changed ledgers are flushed. */
+  public static final int CHECKPOINT_RECORDS = 100_000;
+
+  /** Ids are used as file names, so only these are accepted. */
+  private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  /** Directory holding the cold ledgers. */
+  private final Path directory;
+
+  /** Maximum number of ledgers kept in memory. */
+  private final int maxHot;
+
+  /** Journal of the entries appended since each ledger was stored. */
+  private final LedgerJournal journal;
+
+  /** Held while flushing, so flushes run one at a time. */
+  private final Object flushLock = new Object();
+
+  /** Journal record count when changed ledgers were last flushed. */
+  private volatile long checkpointRecords;
+
+  /** Ledgers in memory, least recently used first. */
+  private final LinkedHashMap<String, HotLedger> hot = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Ledgers dropped from the hot set that are still being written out. */
+  private final Map<String, HotLedger> evicting = new HashMap<>();
+
+  /** Number of ledgers loaded from disk. */
+  private long loads;
+
+  /** Number of ledgers dropped from memory. */
+  private long evictions;
+
+  /**
+   * Opens a repository, first replaying any journal left by a previous run
+   * into the ledger files.
+   *
+   * @param directory the directory holding the cold ledgers
+   * @param maxHot    the maximum number of ledgers kept in memory
+   * @throws IllegalArgumentException if any input is invalid, the directory
+   *                                  cannot be created or the journal cannot
+   *                                  be recovered
+   */
+  public LedgerRepository(Path directory, int maxHot) {
+    if (directory == null) {
+      throw new IllegalArgumentException("Null directory");
+    }
+    if (maxHot <= 0) {
+      throw new IllegalArgumentException("Invalid max hot ledgers");
+    }
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error opening repository");
+    }
+    this.directory = directory;
+    this.maxHot = maxHot;
+    Path journalDirectory = directory.resolve(JOURNAL_DIRECTORY);
+    recover(journalDirectory);
+    this.journal = new LedgerJournal(journalDirectory);
+  }
+
+  /**
+   * Adds a ledger under a new id, writing it to its file before returning.
+   * The repository takes ownership of the ledger, so the caller must not
+   * change it afterwards.
+   *
+   * @param ledger the ledger to add
+   * @return the new id
+   * @throws IllegalArgumentException if ledger is null or cannot be written
+   */
+  public String create(Ledger ledger) {
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+    String id = UUID.randomUUID().toString();
+    HotLedger created = new HotLedger(ledger);
+    // Nobody else knows the id yet, so no lock is needed to write it
+    store(id, created);
+    ledger.attachJournal(journal, id);
+    List<Map.Entry<String, HotLedger>> coldest;
+    synchronized (this) {
+      hot.put(id, created);
+      coldest = takeColdest();
+    }
+    evict(coldest);
+    return id;
+  }
+
+  /**
+   * Checks whether a ledger exists.
+   *
+   * @param id the ledger id
+   * @return true if the ledger is in memory or on disk
+   */
+  public boolean exists(String id) {
+    if (!isValidId(id)) {
+      return false;
+    }
+    HotLedger found;
+    synchronized (this) {
+      found = find(id);
+    }
+    return found != null && found.isLoaded() || Files.exists(file(id));
+  }
+
+  /**
+   * Runs a function against a ledger, loading it first if it is cold. The
+   * function runs under the ledger's monitor, so it sees no append part way
+   * and holds up appends to that ledger only; it should copy what it needs
+   * and leave any I/O or other slow work on the copy until it returns. It
+   * must not keep or change the ledger.
+   *
+   * @param <T>    the result type
+   * @param id     the ledger id
+   * @param reader the function to run
+   * @return the function's result
+   * @throws NoSuchElementException   if there is no such ledger
+   * @throws IllegalArgumentException if the ledger cannot be loaded
+   */
+  public <T> T read(String id, Function<Ledger, T> reader) {
+    if (reader == null) {
+      throw new IllegalArgumentException("Null reader");
+    }
+    return use(id, ledger -> {
+      synchronized (ledger) {
+        return reader.apply(ledger);
+      }
+    });
+  }
+
+  /**
+   * Adds entries to a ledger, loading it first if it is cold. Returns once
+   * the entries are durable in the journal.
+   *
+   * @param id      the ledger id
+   * @param entries the entries to add
+   * @return the number of entries in the ledger afterwards
+   * @throws NoSuchElementException   if there is no such ledger
+   * @throws IllegalArgumentException if the entries are invalid or the
+   *                                  ledger cannot be loaded
+   * @throws IllegalStateException    if the journal has failed
+   */
+  public int append(String id, List<LedgerEntry> entries) {
+    int numEntries = use(id, ledger -> {
+      ledger.addEntries(entries);
+      return ledger.getNumEntries();
+    });
+    if (journal.getRecordCount() - checkpointRecords >= CHECKPOINT_RECORDS) {
+      synchronized (flushLock) {
+        // Another append may have flushed while this one waited
+        if (journal.getRecordCount() - checkpointRecords >= CHECKPOINT_RECORDS) {
+          flush();
+        }
+      }
+    }
+    return numEntries;
+  }
+
+  /**
+   * Deletes a ledger from memory and disk.
+   *
+   * @param id the ledger id
+   * @return true if the ledger existed
+   * @throws IllegalArgumentException if the file cannot be deleted
+   */
+  public boolean delete(String id) {
+    if (!isValidId(id)) {
+      return false;
+    }
+    HotLedger target;
+    boolean placeholder = false;
+    synchronized (this) {
+      target = find(id);
+      if (target == null) {
+        // Held in the ledger's place so it is not loaded while its file goes
+        target = new HotLedger(null);
+        target.lock.writeLock().lock();
+        hot.put(id, target);
+        placeholder = true;
+      }
+    }
+    if (!placeholder) {
+      target.lock.writeLock().lock();
+    }
+    try {
+      boolean existed = target.isLoaded();
+      target.dropped = true;
+      try {
+        existed |= Files.deleteIfExists(file(id));
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Error deleting ledger");
+      }
+      return existed;
+    } finally {
+      forget(id, target);
+      target.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Lists the ids of every ledger, in memory or on disk.
+   *
+   * @return the ids in sorted order
+   * @throws IllegalArgumentException if the directory cannot be listed
+   */
+  public List<String> getIds() {
+    TreeSet<String> ids = new TreeSet<>();
+    synchronized (this) {
+      for (Map.Entry<String, HotLedger> entry : hot.entrySet()) {
+        if (entry.getValue().isLoaded()) {
+          ids.add(entry.getKey());
+        }
+      }
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        ids.add(name.substring(0, name.length() - FILE_SUFFIX.length()));
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error listing ledgers");
+    }
+    return new ArrayList<>(ids);
+  }
+
+  /**
+   * Writes every changed ledger in memory to disk, keeping them in memory,
+   * and drops the journal segments the files now cover. Ledgers that were
+   * evicted were written out then, so every journaled entry is in a file.
+   * Reads and appends carry on meanwhile; an entry journaled after the
+   * rotation stays in the kept segments whether or not its ledger's copy
+   * includes it.
+   *
+   * @throws IllegalArgumentException if a ledger cannot be written
+   * @throws IllegalStateException    if the journal has failed
+   */
+  public void flush() {
+    synchronized (flushLock) {
+      long firstKeptSegment = journal.rotate();
+      List<Map.Entry<String, HotLedger>> ledgers = new ArrayList<>();
+      synchronized (this) {
+        for (Map.Entry<String, HotLedger> entry : hot.entrySet()) {
+          ledgers.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        for (Map.Entry<String, HotLedger> entry : evicting.entrySet()) {
+          ledgers.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+      }
+      for (Map.Entry<String, HotLedger> entry : ledgers) {
+        HotLedger target = entry.getValue();
+        // Shared, so the ledger is not dropped or deleted while it is stored
+        target.lock.readLock().lock();
+        try {
+          if (target.isLoaded()) {
+            store(entry.getKey(), target);
+          }
+        } finally {
+          target.lock.readLock().unlock();
+        }
+      }
+      LedgerJournal.deleteSegmentsBefore(journal.getDirectory(), firstKeptSegment);
+      checkpointRecords = journal.getRecordCount();
+    }
+  }
+
+  /**
+   * Flushes every changed ledger and closes the journal.
+   *
+   * @throws IllegalArgumentException if a ledger cannot be written
+   */
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      journal.close();
+    }
+  }
+
+  /**
+   * Gets the number of ledgers in memory.
+   *
+   * @return hot ledgers
+   */
+  public synchronized int getHotCount() {
+    return hot.size();
+  }
+
+  /**
+   * Gets the number of ledgers loaded from disk so far.
+   *
+   * @return loads
+   */
+  public synchronized long getLoads() {
+    return loads;
+  }
+
+  /**
+   * Gets the number of ledgers dropped from memory so far.
+   *
+   * @return evictions
+   */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Runs a function against a ledger while holding its lock shared, loading
+   * the ledger first if it is cold. If the ledger is dropped before the lock
+   * is taken, it is looked up again.
+   *
+   * @param <T>    the result type
+   * @param id     the ledger id
+   * @param action the function to run
+   * @return the function's result
+   * @throws NoSuchElementException   if there is no such ledger
+   * @throws IllegalArgumentException if the ledger cannot be loaded
+   */
+  private <T> T use(String id, Function<Ledger, T> action) {
+    while (true) {
+      HotLedger target = acquire(id);
+      target.lock.readLock().lock();
+      try {
+        if (!target.dropped) {
+          return action.apply(target.ledger);
+        }
+      } finally {
+        target.lock.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Gets a ledger from memory, loading it from disk if it is cold. The file
+   * is read outside the repository's monitor, under the new ledger's lock,
+   * so other requests for it wait for the load rather than repeat it.
+   *
+   * @param id the ledger id
+   * @return the ledger in memory, which may still be loading or dropped
+   * @throws NoSuchElementException   if there is no such ledger
+   * @throws IllegalArgumentException if the ledger cannot be loaded
+   */
+  private HotLedger acquire(String id) {
+    if (!isValidId(id)) {
+      throw new NoSuchElementException("Ledger not found");
+    }
+    HotLedger loading;
+    synchronized (this) {
+      HotLedger cached = find(id);
+      if (cached != null) {
+        return cached;
+      }
+      loading = new HotLedger(null);
+      // Nobody else has it yet, so this does not wait under the monitor
+      loading.lock.writeLock().lock();
+      hot.put(id, loading);
+    }
+
+    try {
+      if (!Files.exists(file(id))) {
+        throw new NoSuchElementException("Ledger not found");
+      }
+      Ledger ledger = readFile(id);
+      ledger.attachJournal(journal, id);
+      loading.storedVersion = ledger.getVersion();
+      loading.ledger = ledger;
+    } catch (RuntimeException e) {
+      loading.dropped = true;
+      forget(id, loading);
+      throw e;
+    } finally {
+      loading.lock.writeLock().unlock();
+    }
+
+    List<Map.Entry<String, HotLedger>> coldest;
+    synchronized (this) {
+      loads++;
+      coldest = takeColdest();
+    }
+    evict(coldest);
+    return loading;
+  }
+
+  /**
+   * Finds a ledger in memory, including one still being written out.
+   * Called under the repository's monitor.
+   *
+   * @param id the ledger id
+   * @return the ledger, or null if it is cold
+   */
+  private HotLedger find(String id) {
+    HotLedger found = hot.get(id);
+    return found != null ? found : evicting.get(id);
+  }
+
+  /**
+   * Removes a dropped ledger from memory, unless it has already been
+   * replaced.
+   *
+   * @param id     the ledger id
+   * @param ledger the dropped ledger
+   */
+  private synchronized void forget(String id, HotLedger ledger) {
+    hot.remove(id, ledger);
+    evicting.remove(id, ledger);
+  }
+
+  /**
+   * Reads a ledger from its file.
+   *
+   * @param id the ledger id
+   * @return the ledger, with no journal attached
+   * @throws IllegalArgumentException if the file cannot be read
+   */
+  private Ledger readFile(String id) {
+    Map<String, Ledger> ledgers = new LinkedHashMap<>();
+    try {
+      LedgerRecovery.readSnapshot(file(id), ledgers);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading ledger");
+    }
+    Ledger ledger = ledgers.get(id);
+    if (ledger == null) {
+      throw new IllegalArgumentException("Error reading ledger");
+    }
+    return ledger;
+  }
+
+  /**
+   * Adds the entries journaled after each ledger was last stored to its
+   * file, then drops the journal. Entries of ledgers whose file is gone
+   * were deleted with them and are skipped. A malformed file is renamed
+   * with CORRUPT_SUFFIX and its entries skipped too, so one bad file does
+   * not stop the others from opening. Runs before the journal is opened, so
+   * nothing is appended meanwhile.
+   *
+   * @param journalDirectory the journal directory
+   * @throws IllegalArgumentException if the journal or a file cannot be
+   *                                  read, or a file cannot be written
+   */
+  private void recover(Path journalDirectory) {
+    if (!Files.isDirectory(journalDirectory)) {
+      return;
+    }
+    Map<String, Ledger> recovered = new LinkedHashMap<>();
+    Map<String, List<LedgerEntry>> tail = LedgerRecovery.replayTail(journalDirectory, id -> {
+      if (!isValidId(id) || !Files.exists(file(id))) {
+        return -1;
+      }
+      Map<String, Ledger> ledgers = new LinkedHashMap<>();
+      try {
+        LedgerRecovery.readSnapshot(file(id), ledgers);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Error reading ledger");
+      } catch (IllegalArgumentException e) {
+        setAside(id);
+        return -1;
+      }
+      Ledger ledger = ledgers.get(id);
+      if (ledger == null) {
+        setAside(id);
+        return -1;
+      }
+      recovered.put(id, ledger);
+      return ledger.getNumEntries();
+    });
+    for (Map.Entry<String, List<LedgerEntry>> entries : tail.entrySet()) {
+      HotLedger ledger = new HotLedger(recovered.get(entries.getKey()));
+      ledger.ledger.addEntries(entries.getValue());
+      store(entries.getKey(), ledger);
+    }
+    LedgerJournal.deleteSegmentsBefore(journalDirectory, Long.MAX_VALUE);
+  }
+
+  /**
+   * Renames a malformed ledger file with CORRUPT_SUFFIX, keeping it for
+   * inspection while the ledger no longer exists.
+   *
+   * @param id the ledger id
+   * @throws IllegalArgumentException if the file cannot be renamed
+   */
+  private void setAside(String id) {
+    try {
+      Files.move(file(id), directory.resolve(id + FILE_SUFFIX + CORRUPT_SUFFIX),
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Error reading ledger");
+    }
+  }
+
+  /**
+   * Moves the least recently used ledgers out of the hot set until it is
+   * within its bound. They stay findable until evict has written them out.
+   * Called under the repository's monitor.
+   *
+   * @return the ledgers to evict
+   */
+  private List<Map.Entry<String, HotLedger>> takeColdest() {
+    List<Map.Entry<String, HotLedger>> coldest = new ArrayList<>();
+    Iterator<Map.Entry<String, HotLedger>> eldest = hot.entrySet().iterator();
+    while (hot.size() > maxHot) {
+      Map.Entry<String, HotLedger> entry = eldest.next();
+      eldest.remove();
+      evicting.put(entry.getKey(), entry.getValue());
+      coldest.add(Map.entry(entry.getKey(), entry.getValue()));
+      evictions++;
+    }
+    return coldest;
+  }
+
+  /**
+   * Writes out any of the given ledgers that have changed since they were
+   * last stored, then drops them. Each is held exclusively meanwhile, which
+   * holds up only requests for that ledger, and they would otherwise have
+   * to wait for its file. A ledger that cannot be written is kept in memory
+   * instead; its entries are still journaled and the next flush reports the
+   * error.
+   *
+   * @param coldest the ledgers to evict
+   */
+  private void evict(List<Map.Entry<String, HotLedger>> coldest) {
+    for (Map.Entry<String, HotLedger> entry : coldest) {
+      String id = entry.getKey();
+      HotLedger target = entry.getValue();
+      target.lock.writeLock().lock();
+      try {
+        if (target.isLoaded()) {
+          store(id, target);
+        }
+        target.dropped = true;
+        forget(id, target);
+      } catch (IllegalArgumentException e) {
+        synchronized (this) {
+          evicting.remove(id, target);
+          hot.put(id, target);
+        }
+      } finally {
+        target.lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Writes a ledger to its file, replacing the previous version, unless it
+   * is unchanged since it was last stored. The ledger is copied under its
+   * monitor and the copy written outside it. Stores of one ledger run one at
+   * a time, so an older copy never replaces a newer file.
+   *
+   * @param id     the ledger id
+   * @param ledger the ledger and its state
+   * @throws IllegalArgumentException if the ledger cannot be written
+   */
+  private void store(String id, HotLedger ledger) {
+    synchronized (ledger) {
+      int version;
+      Ledger copy;
+      synchronized (ledger.ledger) {
+        version = ledger.ledger.getVersion();
+        if (version == ledger.storedVersion) {
+          return;
+        }
+        copy = ledger.ledger.copy();
+      }
+      LedgerFileProcessing.writeAtomically(file(id).toString(), true,
+          channel -> LedgerRecovery.writeSnapshot(channel, Map.of(id, copy)));
+      ledger.storedVersion = version;
+    }
+  }
+
+  /**
+   * Gets the file of a ledger.
+   *
+   * @param id the ledger id
+   * @return the path
+   */
+  private Path file(String id) {
+    return directory.resolve(id + FILE_SUFFIX);
+  }
+
+  /**
+   * Checks whether an id is safe to use as a file name.
+   *
+   * @param id the id
+   * @return true if the id is valid
+   */
+  private static boolean isValidId(String id) {
+    return id != null && ID_PATTERN.matcher(id).matches();
+  }
+
+  /**
+   * A ledger in memory, its lock and the version last stored to its file.
+   * The lock is held shared to use the ledger and exclusively to load or
+   * drop it.
+   */
+  private static class HotLedger {
+
+    /** Guards loading and dropping the ledger. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The ledger, or null until it is loaded. */
+    private volatile Ledger ledger;
+
+    /** Whether the ledger has been evicted, deleted or failed to load. */
+    private volatile boolean dropped;
+
+    /** The ledger's version when it was last stored, or -1 if never. */
+    private int storedVersion = -1;
+
+    /**
+     * Creates a hot ledger.
+     *
+     * @param ledger the ledger, or null if it is still to be loaded
+     */
+    HotLedger(Ledger ledger) {
+      this.ledger = ledger;
+    }
+
+    /**
+     * Checks whether the ledger is loaded and not dropped.
+     *
+     * @return true if the ledger can be used
+     */
+    boolean isLoaded() {
+      return ledger != null && !dropped;
+    }
+  }
+}
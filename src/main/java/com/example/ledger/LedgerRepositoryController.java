@@ -0,0 +1,613 @@
+package com.example.ledger;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * REST controller for ledgers held on the server by id.
+ * Provides endpoints for creating ledgers, appending entries, querying
+ * them, and exporting them without sending the whole ledger each time.
+ *
+ * @author Zakariya Mohamed
+ */
+@RestController
+@RequestMapping("/api/ledgers")
+public class LedgerRepositoryController {
+
+  private static final String EXPORT_DIR = "exports/";
+  private static final MediaType CSV_MEDIA_TYPE = new MediaType("text", "csv", StandardCharsets.UTF_8);
+  private static final MediaType GZIP_MEDIA_TYPE = new MediaType("application", "gzip");
+
+  private final LedgerRepository repository;
+  private final LedgerImportAdmission admission;
+  private final LedgerParseCache parseCache;
+
+  /**
+   * Creates the controller with the beans from LedgerConfiguration.
+   *
+   * @param repository the repository
+   * @param admission  the import admission controller, shared with
+   *                   LedgerFileProcessingController
+   * @param parseCache the parse cache
+   */
+  public LedgerRepositoryController(LedgerRepository repository,
+      LedgerImportAdmission admission, LedgerParseCache parseCache) {
+    this.repository = repository;
+    this.admission = admission;
+    this.parseCache = parseCache;
+  }
+
+  /**
+   * Creates an empty ledger.
+   *
+   * @param sizeLedger optional maximum size for the ledger (defaults to 1000)
+   * @return ResponseEntity with the new ledger id or error message
+   */
+  @PostMapping
+  public ResponseEntity<Map<String, Object>> createLedger(
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger) {
+
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      String id = repository.create(new Ledger(sizeLedger));
+      response.put("success", true);
+      response.put("id", id);
+      return ResponseEntity.status(HttpStatus.CREATED).body(response);
+
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    }
+  }
+
+  /**
+   * Creates a ledger from an uploaded CSV file, plain or gzip compressed.
+   * The parse is admitted against the same memory budget as
+   * LedgerFileProcessingController's uploads and served from the same parse
+   * cache, and turned away with 429, 503 or 413 as those are.
+   *
+   * @param file       the CSV file to upload
+   * @param sizeLedger optional maximum size for the ledger (defaults to 1000)
+   * @return ResponseEntity with the new ledger id or error message
+   */
+  @PostMapping("/upload")
+  public ResponseEntity<Map<String, Object>> uploadLedger(
+      @RequestParam("file") MultipartFile file,
+      @RequestParam(value = "sizeLedger", defaultValue = "1000") int sizeLedger) {
+
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      if (file.isEmpty()) {
+        response.put("error", "Please select a file to upload");
+        return ResponseEntity.badRequest().body(response);
+      }
+
+      Ledger ledger = LedgerFileProcessingController.uploadNow(file, sizeLedger, admission,
+          parseCache).ledger();
+      int entriesCount = ledger.getNumEntries();
+      String id = repository.create(ledger);
+
+      response.put("success", true);
+      response.put("id", id);
+      response.put("entriesCount", entriesCount);
+      return ResponseEntity.status(HttpStatus.CREATED).body(response);
+
+    } catch (LedgerImportAdmission.RejectedException e) {
+      return LedgerFileProcessingController.rejected(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    } catch (IOException e) {
+      response.put("error", "Error processing file: " + e.getMessage());
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+  }
+
+  /**
+   * Lists the ids of every ledger.
+   *
+   * @return ResponseEntity with the ids
+   */
+  @GetMapping
+  public ResponseEntity<Map<String, Object>> listLedgers() {
+    Map<String, Object> response = new HashMap<>();
+    response.put("ids", repository.getIds());
+    response.put("hotCount", repository.getHotCount());
+    return ResponseEntity.ok(response);
+  }
+
+  /**
+   * Gets a ledger's size, balance and version without its entries. Like
+   * every GET of a ledger, it sends an ETag and answers a matching
+   * If-None-Match with 304.
+   *
+   * @param id          the ledger id
+   * @param ifNoneMatch optional ETag of the client's copy
+   * @return ResponseEntity with the summary or error message
+   */
+  @GetMapping("/{id}")
+  public ResponseEntity<Map<String, Object>> getLedgerSummary(
+      @PathVariable String id,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      Conditional<Void> read = readIfModified(id, ifNoneMatch, ledger -> {
+        response.put("id", id);
+        response.put("capacity", ledger.getCapacity());
+        response.put("numEntries", ledger.getNumEntries());
+        response.put("balance", ledger.getBalance());
+        response.put("version", ledger.getVersion());
+        return null;
+      });
+      if (!read.modified()) {
+        return notModified(read.eTag());
+      }
+      return ResponseEntity.ok().eTag(read.eTag()).body(response);
+
+    } catch (NoSuchElementException e) {
+      return notFound(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+  }
+
+  /**
+   * Gets a ledger's entries, optionally only those in a date range. Either
+   * end of the range may be left open, as with the NDJSON representation of
+   * the same URL.
+   *
+   * @param id          the ledger id
+   * @param startDate   optional first date to include, as YYYYMMDD
+   * @param endDate     optional last date to include, as YYYYMMDD
+   * @param ifNoneMatch optional ETag of the client's copy
+   * @return ResponseEntity with the Ledger or error message
+   */
+  @GetMapping("/{id}/entries")
+  public ResponseEntity<Map<String, Object>> getEntries(
+      @PathVariable String id,
+      @RequestParam(value = "startDate", required = false) Integer startDate,
+      @RequestParam(value = "endDate", required = false) Integer endDate,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      Conditional<Ledger> read;
+      if (startDate == null && endDate == null) {
+        read = readIfModified(id, ifNoneMatch, Ledger::copy);
+      } else {
+        LedgerDate start = toDate(startDate);
+        LedgerDate end = toDate(endDate);
+        // Copy only the range under the ledger's lock; build the ledger after
+        Conditional<Map.Entry<Integer, List<LedgerEntry>>> range = readIfModified(id, ifNoneMatch,
+            stored -> Map.entry(stored.getCapacity(),
+                LedgerNdjsonWriter.selectRange(stored, start, end)));
+        read = new Conditional<>(range.eTag(), range.modified(), !range.modified() ? null
+            : Ledger.fromEntries(range.value().getKey(), range.value().getValue(), null));
+      }
+      if (!read.modified()) {
+        return notModified(read.eTag(), HttpHeaders.ACCEPT);
+      }
+      Ledger ledger = read.value();
+
+      response.put("success", true);
+      response.put("id", id);
+      response.put("ledger", ledger);
+      response.put("entriesCount", ledger.getNumEntries());
+      return ResponseEntity.ok()
+          .eTag(read.eTag())
+          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+          .body(response);
+
+    } catch (NoSuchElementException e) {
+      return notFound(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    }
+  }
+
+  /**
+   * Streams a ledger's entries as newline-delimited JSON, for requests that
+   * accept application/x-ndjson. Rows are flushed as they are written, so
+   * the client can start on the first entries before the last are sent.
+   * It shares its URL and ETag with the JSON representation, so both send
+   * Vary: Accept to keep caches from answering one with the other.
+   *
+   * @param id          the ledger id
+   * @param type        optional query, "all" (default), "credits" or
+   *                    "debits"
+   * @param startDate   optional first date to include, as YYYYMMDD
+   * @param endDate     optional last date to include, as YYYYMMDD
+   * @param ifNoneMatch optional ETag of the client's copy
+   * @return ResponseEntity streaming one JSON object per entry
+   */
+  @GetMapping(value = "/{id}/entries", produces = LedgerNdjsonWriter.MEDIA_TYPE)
+  public ResponseEntity<StreamingResponseBody> streamEntries(
+      @PathVariable String id,
+      @RequestParam(value = "type", defaultValue = "all") String type,
+      @RequestParam(value = "startDate", required = false) Integer startDate,
+      @RequestParam(value = "endDate", required = false) Integer endDate,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+    Conditional<List<LedgerEntry>> read;
+    LedgerNdjsonWriter.Filter filter;
+    try {
+      filter = LedgerNdjsonWriter.Filter.parse(type);
+      LedgerDate start = toDate(startDate);
+      LedgerDate end = toDate(endDate);
+      // Copy only the range under the ledger's lock; filter while writing
+      read = readIfModified(id, ifNoneMatch,
+          ledger -> LedgerNdjsonWriter.selectRange(ledger, start, end));
+    } catch (NoSuchElementException e) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+
+    if (!read.modified()) {
+      return notModified(read.eTag(), HttpHeaders.ACCEPT);
+    }
+    List<LedgerEntry> entries = read.value();
+    StreamingResponseBody body = output -> LedgerNdjsonWriter.write(output, entries, filter);
+    return ResponseEntity.ok()
+        .eTag(read.eTag())
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+        .contentType(MediaType.APPLICATION_NDJSON)
+        .body(body);
+  }
+
+  /**
+   * Gets one page of a ledger's entries in sorted order. Pass the
+   * nextCursor of each response to get the page after it; it is absent on
+   * the last page.
+   *
+   * @param id          the ledger id
+   * @param cursor      optional cursor from the previous page (defaults to
+   *                    the first page)
+   * @param limit       optional page size, at most 1000 (defaults to 100)
+   * @param ifNoneMatch optional ETag of the client's copy
+   * @return ResponseEntity with the page's entries as [date, description,
+   *         amount, balance] rows, or error message
+   */
+  @GetMapping("/{id}/entries/page")
+  public ResponseEntity<Map<String, Object>> getEntriesPage(
+      @PathVariable String id,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "limit", defaultValue = "100") int limit,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      Conditional<LedgerPage> read = readIfModified(id, ifNoneMatch,
+          ledger -> LedgerPage.of(ledger, cursor, limit));
+      if (!read.modified()) {
+        return notModified(read.eTag());
+      }
+      LedgerPage page = read.value();
+
+      response.put("success", true);
+      response.put("id", id);
+      response.put("entries", page);
+      response.put("entriesCount", page.getNumEntries());
+      response.put("hasMore", page.hasMore());
+      if (page.hasMore()) {
+        response.put("nextCursor", page.getNextCursor());
+      }
+      return ResponseEntity.ok().eTag(read.eTag()).body(response);
+
+    } catch (NoSuchElementException e) {
+      return notFound(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    }
+  }
+
+  /**
+   * Appends entries to a ledger. Each entry is given as an object with a
+   * YYYYMMDD date, a description and an amount.
+   *
+   * @param id      the ledger id
+   * @param entries the entries to append
+   * @return ResponseEntity with the new size and balance or error message
+   */
+  @PostMapping("/{id}/entries")
+  public ResponseEntity<Map<String, Object>> appendEntries(
+      @PathVariable String id,
+      @RequestBody List<EntryRequest> entries) {
+
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      if (entries == null || entries.isEmpty()) {
+        throw new IllegalArgumentException("No entries");
+      }
+      List<LedgerEntry> parsed = new ArrayList<>(entries.size());
+      for (EntryRequest entry : entries) {
+        if (entry == null) {
+          throw new IllegalArgumentException("Null entry");
+        }
+        parsed.add(entry.toLedgerEntry());
+      }
+
+      int numEntries = repository.append(id, parsed);
+      response.put("success", true);
+      response.put("id", id);
+      response.put("entriesAdded", parsed.size());
+      response.put("numEntries", numEntries);
+      response.put("balance", repository.read(id, Ledger::getBalance));
+      return ResponseEntity.ok(response);
+
+    } catch (NoSuchElementException e) {
+      return notFound(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    }
+  }
+
+  /**
+   * Exports a ledger to a file in the export directory, as CSV or in the
+   * compact binary format. CSV exports can be incremental, as with
+   * /api/ledger/files/export.
+   *
+   * @param id       the ledger id
+   * @param filename optional filename (defaults to the ledger id)
+   * @param format   optional file format, "csv" (default) or "binary"
+   * @param mode     optional export mode, "full" (default), "append" or
+   *                 "delta"
+   * @param since    optional high-water mark of the previous export
+   * @return ResponseEntity with export status and file path
+   */
+  @PostMapping("/{id}/export")
+  public ResponseEntity<Map<String, Object>> exportLedger(
+      @PathVariable String id,
+      @RequestParam(value = "filename", required = false) String filename,
+      @RequestParam(value = "format", defaultValue = "csv") String format,
+      @RequestParam(value = "mode", defaultValue = "full") String mode,
+      @RequestParam(value = "since", defaultValue = "0") int since) {
+
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      boolean binary = "binary".equalsIgnoreCase(format);
+      if (!binary && !"csv".equalsIgnoreCase(format)) {
+        throw new IllegalArgumentException("Unsupported format: " + format);
+      }
+      boolean append = "append".equalsIgnoreCase(mode);
+      boolean delta = "delta".equalsIgnoreCase(mode);
+      if (!append && !delta && !"full".equalsIgnoreCase(mode)) {
+        throw new IllegalArgumentException("Unsupported mode: " + mode);
+      }
+      if (binary && (append || delta)) {
+        throw new IllegalArgumentException("Incremental export requires csv format");
+      }
+
+      String extension = binary ? LedgerFileProcessing.BINARY_EXTENSION : ".csv";
+      if (filename == null || filename.trim().isEmpty()) {
+        filename = id + (delta ? "_since_" + since : "") + extension;
+      } else if (!filename.toLowerCase(Locale.ROOT).endsWith(extension)) {
+        filename += extension;
+      }
+      Path exportPath = Paths.get(EXPORT_DIR);
+      Files.createDirectories(exportPath);
+      String fullPath = LedgerFileProcessing.resolveExportPath(exportPath, filename)
+          .toString();
+
+      // Write a copy, so the file is written outside the ledger's lock
+      Ledger ledger = repository.read(id, Ledger::copy);
+      int highWaterMark;
+      if (append || delta) {
+        highWaterMark = LedgerFileProcessing.exportLedgerSince(fullPath, ledger, since, append);
+      } else {
+        if (binary) {
+          LedgerFileProcessing.writeLedgerToBinaryFile(fullPath, ledger);
+        } else {
+          LedgerFileProcessing.writeLedgerToFile(fullPath, ledger);
+        }
+        highWaterMark = ledger.getNumEntries();
+      }
+
+      response.put("success", true);
+      response.put("message", "Ledger exported successfully");
+      response.put("filepath", fullPath);
+      response.put("filename", filename);
+      response.put("highWaterMark", highWaterMark);
+      return ResponseEntity.ok(response);
+
+    } catch (NoSuchElementException e) {
+      return notFound(e);
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.badRequest().body(response);
+    } catch (IOException e) {
+      response.put("error", "Error creating export directory: " + e.getMessage());
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+  }
+
+  /**
+   * Downloads a ledger as CSV, streamed straight to the response.
+   *
+   * @param id          the ledger id
+   * @param compress    optional flag to gzip compress the download
+   * @param ifNoneMatch optional ETag of the client's copy
+   * @return ResponseEntity streaming the CSV body
+   */
+  @GetMapping("/{id}/download")
+  public ResponseEntity<StreamingResponseBody> downloadLedger(
+      @PathVariable String id,
+      @RequestParam(value = "compress", defaultValue = "false") boolean compress,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+
+    Conditional<Ledger> read;
+    try {
+      read = readIfModified(id, ifNoneMatch, Ledger::copy);
+    } catch (NoSuchElementException e) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    if (!read.modified()) {
+      return notModified(read.eTag());
+    }
+    Ledger ledger = read.value();
+
+    String filename = id + (compress ? ".csv" + LedgerFileProcessing.GZIP_EXTENSION : ".csv");
+    StreamingResponseBody body = output -> LedgerFileProcessing.writeLedgerToStream(
+        output, ledger, compress);
+
+    return ResponseEntity.ok()
+        .eTag(read.eTag())
+        .contentType(compress ? GZIP_MEDIA_TYPE : CSV_MEDIA_TYPE)
+        .header(HttpHeaders.CONTENT_DISPOSITION,
+            ContentDisposition.attachment().filename(filename).build().toString())
+        .body(body);
+  }
+
+  /**
+   * Deletes a ledger.
+   *
+   * @param id the ledger id
+   * @return ResponseEntity with the deletion status or error message
+   */
+  @DeleteMapping("/{id}")
+  public ResponseEntity<Map<String, Object>> deleteLedger(@PathVariable String id) {
+    Map<String, Object> response = new HashMap<>();
+
+    try {
+      if (!repository.delete(id)) {
+        return notFound(new NoSuchElementException("Ledger not found"));
+      }
+      response.put("success", true);
+      response.put("id", id);
+      return ResponseEntity.ok(response);
+
+    } catch (IllegalArgumentException e) {
+      response.put("error", e.getMessage());
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    }
+  }
+
+  /**
+   * Runs a function against a ledger unless the client's copy, identified
+   * by its If-None-Match header, is current. The check and the read happen
+   * under the same lock, so the ETag always matches what was read, and a
+   * current client costs no copying.
+   *
+   * @param <T>         the result type
+   * @param id          the ledger id
+   * @param ifNoneMatch the If-None-Match header, or null
+   * @param reader      the function to run if the ledger has changed
+   * @return the ETag, and the function's result if it was run
+   * @throws NoSuchElementException if there is no such ledger
+   */
+  private <T> Conditional<T> readIfModified(String id, String ifNoneMatch,
+      Function<Ledger, T> reader) {
+    return repository.read(id, ledger -> {
+      String eTag = LedgerETags.of(ledger);
+      if (LedgerETags.matches(ifNoneMatch, eTag)) {
+        return new Conditional<>(eTag, false, null);
+      }
+      return new Conditional<>(eTag, true, reader.apply(ledger));
+    });
+  }
+
+  /**
+   * Builds the 304 response for a client whose copy is current.
+   *
+   * @param <T>  the body type of the response
+   * @param eTag the current ETag
+   * @param vary the request headers the 200 response varies on, which a
+   *             304 must repeat
+   * @return ResponseEntity with no body
+   */
+  private static <T> ResponseEntity<T> notModified(String eTag, String... vary) {
+    ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .eTag(eTag);
+    if (vary.length > 0) {
+      builder.header(HttpHeaders.VARY, vary);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Converts an optional YYYYMMDD date range parameter. The JSON and NDJSON
+   * entry queries share it, so both leave a missing end of the range open.
+   *
+   * @param date the date as YYYYMMDD, or null if absent
+   * @return the LedgerDate, or null if absent
+   * @throws IllegalArgumentException if the date is invalid
+   */
+  private static LedgerDate toDate(Integer date) {
+    return date == null ? null : LedgerDate.fromParameter(date);
+  }
+
+  /**
+   * Builds the 404 response for an unknown ledger.
+   *
+   * @param e the lookup failure
+   * @return ResponseEntity with the error message
+   */
+  private static ResponseEntity<Map<String, Object>> notFound(NoSuchElementException e) {
+    Map<String, Object> response = new HashMap<>();
+    response.put("error", e.getMessage());
+    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+  }
+
+  /**
+   * An entry to append, as sent in a request body.
+   *
+   * @param date        the date as YYYYMMDD
+   * @param description the description
+   * @param amount      the amount
+   */
+  public record EntryRequest(int date, String description, int amount) {
+
+    /**
+     * Converts the request to a ledger entry.
+     *
+     * @return the entry
+     * @throws IllegalArgumentException if any field is invalid
+     */
+    LedgerEntry toLedgerEntry() {
+      return new LedgerEntry((date / 100) % 100, date % 100, date / LedgerDate.TEN_THOUSAND,
+          description, amount);
+    }
+  }
+
+  /**
+   * The outcome of a conditional read.
+   *
+   * @param <T>      the result type
+   * @param eTag     the ledger's current ETag
+   * @param modified whether the client's copy was out of date, so the
+   *                 function was run
+   * @param value    the function's result, or null if it was not run
+   */
+  private record Conditional<T>(String eTag, boolean modified, T value) {
+  }
+}
@@ -0,0 +1,162 @@
+package com.example.ledger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a streaming validation pass over a ledger file. Holds the number
+ * of valid entries found and the first errors encountered, without keeping
+ * any of the parsed entries.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerValidationResult {
+
+  /** Number of valid entry lines found. */
+  private int entriesFound;
+
+  /** Total number of errors found, including ones not recorded. */
+  private int errorCount;
+
+  /** Whether validation stopped before reaching the end of the file. */
+  private boolean stoppedEarly;
+
+  /** Maximum number of errors to record. */
+  private final int maxErrors;
+
+  /** The first maxErrors errors found. */
+  private final List<LineError> errors;
+
+  /**
+   * Creates an empty validation result.
+   *
+   * @param maxErrors the maximum number of errors to record
+   * @throws IllegalArgumentException if maxErrors is negative
+   */
+  public LedgerValidationResult(int maxErrors) {
+    if (maxErrors < 0) {
+      throw new IllegalArgumentException("Invalid max errors");
+    }
+    this.maxErrors = maxErrors;
+    this.errors = new ArrayList<>(Math.min(maxErrors, 16));
+  }
+
+  /**
+   * Records a valid entry line.
+   */
+  void addEntry() {
+    entriesFound++;
+  }
+
+  /**
+   * Records an error on the given line.
+   *
+   * @param lineNumber the 1-based line number
+   * @param message    the error message
+   */
+  void addError(long lineNumber, String message) {
+    errorCount++;
+    if (errors.size() < maxErrors) {
+      errors.add(new LineError(lineNumber, message));
+    }
+  }
+
+  /**
+   * Marks that validation stopped before the end of the file.
+   */
+  void stopEarly() {
+    stoppedEarly = true;
+  }
+
+  /**
+   * Gets whether the file is valid.
+   *
+   * @return true if no errors were found
+   */
+  public boolean isValid() {
+    return errorCount == 0;
+  }
+
+  /**
+   * Gets the number of valid entry lines found.
+   *
+   * @return number of entries found
+   */
+  public int getEntriesFound() {
+    return entriesFound;
+  }
+
+  /**
+   * Gets the total number of errors found.
+   *
+   * @return number of errors
+   */
+  public int getErrorCount() {
+    return errorCount;
+  }
+
+  /**
+   * Gets whether validation stopped before the end of the file.
+   *
+   * @return true if validation stopped early
+   */
+  public boolean isStoppedEarly() {
+    return stoppedEarly;
+  }
+
+  /**
+   * Gets the recorded errors in line order.
+   *
+   * @return the recorded errors
+   */
+  public List<LineError> getErrors() {
+    return Collections.unmodifiableList(errors);
+  }
+
+  /**
+   * An error found on a single line of a ledger file.
+   */
+  public static class LineError {
+
+    /** The 1-based line number. */
+    private final long lineNumber;
+
+    /** The error message. */
+    private final String message;
+
+    /**
+     * Creates a line error.
+     *
+     * @param lineNumber the 1-based line number
+     * @param message    the error message
+     */
+    public LineError(long lineNumber, String message) {
+      this.lineNumber = lineNumber;
+      this.message = message;
+    }
+
+    /**
+     * Gets the line number.
+     *
+     * @return the line number
+     */
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    /**
+     * Gets the error message.
+     *
+     * @return the message
+     */
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String toString() {
+      return "Line " + lineNumber + ": " + message;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.example.ledger;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Adds the binary ledger message converter. It is added after the default
+ * converters, so JSON stays the format for clients that accept anything and
+ * the binary format is only used when it is asked for.
+ *
+ * @author Zakariya Mohamed
+ */
+@Configuration
+public class LedgerWebConfiguration implements WebMvcConfigurer {
+
+  /** Maximum number of entries in a ledger request body. */
+  private final int maxEntries;
+
+  /**
+   * Creates the configuration.
+   *
+   * @param maxEntries the maximum number of entries in a ledger request body
+   */
+  public LedgerWebConfiguration(
+      @Value("${ledger.json.max-entries:1000000}") int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    converters.add(new LedgerBinaryMessageConverter(maxEntries));
+  }
+}
@@ -0,0 +1,415 @@
+package com.example.ledger;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of a Ledger for traffic between services. After
+ * a magic number and version byte come, all as varints:
+ *
+ * <pre>
+ * capacity, entry count, dictionary size,
+ * dictionary: (byte length, UTF-8 bytes) per distinct description,
+ * entries: (date delta, description id, amount) per entry,
+ * add order flag, then if it is 1: add position - index, per entry
+ * </pre>
+ *
+ * Dates are YYYYMMDD as the difference from the previous entry's date, so
+ * in a sorted ledger most take one byte, and dates and amounts are zigzag
+ * encoded so negative values stay short. Balances are not sent; the reader
+ * derives them. A reader given entries already in sorted order fills the
+ * ledger without sorting it. The add order is only sent when the entries
+ * were not added in sorted order, and keeps incremental exports of the
+ * decoded ledger correct; version 1 data has no add order.
+ *
+ * @author Zakariya Mohamed
+ */
+public final class LedgerWireFormat {
+
+  /** Media type of the encoding. */
+  public static final String MEDIA_TYPE = "application/x-ledger-binary";
+
+  /** Magic number at the start of every encoded ledger, "LDGW". */
+  public static final int MAGIC = 0x4C444757;
+
+  /** Current version of the encoding. */
+  public static final int VERSION = 2;
+
+  /** Version of the encoding without the add order. */
+  private static final int VERSION_SORTED = 1;
+
+  /** Longest description accepted, in UTF-8 bytes. */
+  public static final int MAX_DESCRIPTION_BYTES = 64 * 1024;
+
+  /** Size of the read and write buffers. */
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  /** Largest list presized from an untrusted entry count. */
+  private static final int MAX_PRESIZE = 64 * 1024;
+
+  /**
+   * Not instantiable.
+   */
+  private LedgerWireFormat() {
+  }
+
+  /**
+   * Encodes a ledger to a stream. The stream is flushed but not closed.
+   *
+   * @param output the stream to write to
+   * @param ledger the ledger
+   * @throws IllegalArgumentException if any input is null
+   * @throws IOException              if writing to the stream fails
+   */
+  public static void write(OutputStream output, Ledger ledger) throws IOException {
+    if (output == null) {
+      throw new IllegalArgumentException("Null output");
+    }
+    if (ledger == null) {
+      throw new IllegalArgumentException("null ledger");
+    }
+    List<LedgerEntry> entries = ledger.getEntries();
+    int[] addSequence = ledger.getAddSequence();
+
+    // Number the distinct descriptions in order of first use
+    Map<String, Integer> ids = new HashMap<>();
+    List<byte[]> dictionary = new ArrayList<>();
+    int[] descriptionIds = new int[entries.size()];
+    for (int i = 0; i < descriptionIds.length; i++) {
+      String description = entries.get(i).getDescription();
+      Integer id = ids.get(description);
+      if (id == null) {
+        id = dictionary.size();
+        ids.put(description, id);
+        dictionary.add(description.getBytes(StandardCharsets.UTF_8));
+      }
+      descriptionIds[i] = id;
+    }
+
+    Encoder encoder = new Encoder(output);
+    encoder.writeFixedInt(MAGIC);
+    encoder.writeByte(VERSION);
+    encoder.writeVarint(ledger.getCapacity());
+    encoder.writeVarint(entries.size());
+    encoder.writeVarint(dictionary.size());
+    for (byte[] description : dictionary) {
+      encoder.writeVarint(description.length);
+      encoder.writeBytes(description);
+    }
+    int previousDate = 0;
+    for (int i = 0; i < descriptionIds.length; i++) {
+      LedgerEntry entry = entries.get(i);
+      int date = entry.getDate().getDate();
+      encoder.writeVarint(zigzag(date - previousDate));
+      encoder.writeVarint(descriptionIds[i]);
+      encoder.writeVarint(zigzag(entry.getAmount()));
+      previousDate = date;
+    }
+    encoder.writeVarint(addSequence == null ? 0 : 1);
+    if (addSequence != null) {
+      for (int i = 0; i < addSequence.length; i++) {
+        encoder.writeVarint(zigzag(addSequence[i] - i));
+      }
+    }
+    encoder.flush();
+  }
+
+  /**
+   * Decodes a ledger from a stream. The stream is buffered, so it may be
+   * read past the end of the ledger, and it is not closed.
+   *
+   * @param input      the stream to read from
+   * @param maxEntries the maximum number of entries accepted
+   * @return the ledger
+   * @throws IllegalArgumentException if the data is not a valid ledger or
+   *                                  has more than maxEntries entries
+   * @throws IOException              if reading from the stream fails
+   */
+  public static Ledger read(InputStream input, int maxEntries) throws IOException {
+    if (input == null) {
+      throw new IllegalArgumentException("Null input");
+    }
+    Decoder decoder = new Decoder(input);
+    if (decoder.readFixedInt() != MAGIC) {
+      throw new IllegalArgumentException("Invalid ledger data");
+    }
+    int version = decoder.readByte();
+    if (version != VERSION && version != VERSION_SORTED) {
+      throw new IllegalArgumentException("Unsupported ledger data version");
+    }
+    int capacity = decoder.readVarint();
+    int count = decoder.readVarint();
+    if (count < 0) {
+      throw new IllegalArgumentException("Invalid ledger data");
+    }
+    if (count > maxEntries) {
+      throw new IllegalArgumentException("Too many entries: limit is " + maxEntries);
+    }
+    int dictionarySize = decoder.readVarint();
+    if (dictionarySize < 0 || dictionarySize > count) {
+      throw new IllegalArgumentException("Invalid ledger data");
+    }
+    String[] dictionary = new String[dictionarySize];
+    for (int i = 0; i < dictionarySize; i++) {
+      int length = decoder.readVarint();
+      if (length < 0 || length > MAX_DESCRIPTION_BYTES) {
+        throw new IllegalArgumentException("Invalid ledger data");
+      }
+      dictionary[i] = new String(decoder.readBytes(length), StandardCharsets.UTF_8);
+    }
+
+    List<LedgerEntry> entries = new ArrayList<>(Math.min(count, MAX_PRESIZE));
+    int date = 0;
+    for (int i = 0; i < count; i++) {
+      date += unzigzag(decoder.readVarint());
+      int id = decoder.readVarint();
+      if (id < 0 || id >= dictionarySize) {
+        throw new IllegalArgumentException("Invalid ledger data");
+      }
+      LedgerEntry entry = new LedgerEntry((date / 100) % 100, date % 100,
+          date / LedgerDate.TEN_THOUSAND, dictionary[id], unzigzag(decoder.readVarint()));
+      entries.add(entry);
+    }
+
+    int[] addSequence = null;
+    if (version != VERSION_SORTED && decoder.readVarint() != 0) {
+      addSequence = new int[count];
+      for (int i = 0; i < count; i++) {
+        addSequence[i] = unzigzag(decoder.readVarint()) + i;
+      }
+    }
+    try {
+      return Ledger.fromEntries(capacity, entries, addSequence);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid ledger data");
+    }
+  }
+
+  /**
+   * Maps a signed int to an unsigned one so small magnitudes stay small.
+   *
+   * @param value the value
+   * @return the zigzag encoding
+   */
+  private static int zigzag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * Reverses zigzag encoding.
+   *
+   * @param value the zigzag encoding
+   * @return the value
+   */
+  private static int unzigzag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Writes fixed-width and varint fields into a reusable buffer.
+   */
+  private static class Encoder {
+
+    /** Stream the buffer is flushed to. */
+    private final OutputStream output;
+
+    /** The buffer. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Number of bytes in the buffer. */
+    private int position;
+
+    /**
+     * Creates an encoder.
+     *
+     * @param output the stream to write to
+     */
+    Encoder(OutputStream output) {
+      this.output = output;
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param value the byte
+     * @throws IOException if writing fails
+     */
+    void writeByte(int value) throws IOException {
+      if (position == buffer.length) {
+        drain();
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes a big-endian four byte int.
+     *
+     * @param value the value
+     * @throws IOException if writing fails
+     */
+    void writeFixedInt(int value) throws IOException {
+      writeByte(value >>> 24);
+      writeByte(value >>> 16);
+      writeByte(value >>> 8);
+      writeByte(value);
+    }
+
+    /**
+     * Writes an int as an unsigned varint, seven bits per byte.
+     *
+     * @param value the value
+     * @throws IOException if writing fails
+     */
+    void writeVarint(int value) throws IOException {
+      if (buffer.length - position < 5) {
+        drain();
+      }
+      while ((value & ~0x7F) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes raw bytes.
+     *
+     * @param bytes the bytes
+     * @throws IOException if writing fails
+     */
+    void writeBytes(byte[] bytes) throws IOException {
+      if (bytes.length > buffer.length - position) {
+        drain();
+      }
+      if (bytes.length > buffer.length) {
+        output.write(bytes);
+        return;
+      }
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    /**
+     * Writes the buffer and flushes the stream.
+     *
+     * @throws IOException if writing fails
+     */
+    void flush() throws IOException {
+      drain();
+      output.flush();
+    }
+
+    /**
+     * Writes the buffer to the stream and empties it.
+     *
+     * @throws IOException if writing fails
+     */
+    private void drain() throws IOException {
+      output.write(buffer, 0, position);
+      position = 0;
+    }
+  }
+
+  /**
+   * Reads fixed-width and varint fields through a reusable buffer.
+   */
+  private static class Decoder {
+
+    /** Stream the buffer is filled from. */
+    private final InputStream input;
+
+    /** The buffer. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Position of the next byte in the buffer. */
+    private int position;
+
+    /** Number of bytes in the buffer. */
+    private int limit;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param input the stream to read from
+     */
+    Decoder(InputStream input) {
+      this.input = input;
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return the byte, from 0 to 255
+     * @throws IOException if reading fails
+     */
+    int readByte() throws IOException {
+      if (position == limit) {
+        limit = input.read(buffer);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          throw new EOFException("Unexpected end of ledger data");
+        }
+      }
+      return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Reads a big-endian four byte int.
+     *
+     * @return the value
+     * @throws IOException if reading fails
+     */
+    int readFixedInt() throws IOException {
+      return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+
+    /**
+     * Reads an unsigned varint of at most five bytes.
+     *
+     * @return the value
+     * @throws IllegalArgumentException if the varint is too long
+     * @throws IOException              if reading fails
+     */
+    int readVarint() throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        int b = readByte();
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Invalid ledger data");
+    }
+
+    /**
+     * Reads raw bytes.
+     *
+     * @param length the number of bytes
+     * @return the bytes
+     * @throws IOException if reading fails
+     */
+    byte[] readBytes(int length) throws IOException {
+      byte[] bytes = new byte[length];
+      int copied = Math.min(length, limit - position);
+      System.arraycopy(buffer, position, bytes, 0, copied);
+      position += copied;
+      while (copied < length) {
+        int count = input.read(bytes, copied, length - copied);
+        if (count <= 0) {
+          throw new EOFException("Unexpected end of ledger data");
+        }
+        copied += count;
+      }
+      return bytes;
+    }
+  }
+}
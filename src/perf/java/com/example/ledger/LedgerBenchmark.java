@@ -0,0 +1,151 @@
+package com.example.ledger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks adding entries to a ledger and querying it.
+ *
+ * <p>
+ * The addEntry benchmarks fill an empty ledger one entry at a time and time
+ * the whole fill as a single shot, since each call sorts the ledger and
+ * rebuilds its balances and so gets slower as the ledger grows. Comparing
+ * the sizes shows how the fill scales. The query benchmarks run against a
+ * ledger of the given size built once per trial.
+ *
+ * @author Zakariya Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LedgerBenchmark {
+
+  /** Number of entries in the ledger. */
+  @Param({"1000", "10000", "100000"})
+  public int size;
+
+  /** Entries in sorted order. */
+  private List<LedgerEntry> sorted;
+
+  /** The same entries in random order. */
+  private List<LedgerEntry> shuffled;
+
+  /** Ledger holding the entries. */
+  private Ledger ledger;
+
+  /** First date of the range query. */
+  private LedgerDate rangeStart;
+
+  /** Last date of the range query. */
+  private LedgerDate rangeEnd;
+
+  /** Index of the next getBalanceAt lookup. */
+  private int index;
+
+  /**
+   * Builds the entries and the ledger.
+   */
+  @Setup
+  public void setUp() {
+    shuffled = LedgerBenchmarkData.entries(size, LedgerBenchmarkData.SEED, false);
+    sorted = LedgerBenchmarkData.entries(size, LedgerBenchmarkData.SEED, true);
+    ledger = new Ledger(size);
+    ledger.addEntries(shuffled);
+    // About a tenth of the thirty years of dates
+    rangeStart = new LedgerDate(1, 1, 2030);
+    rangeEnd = new LedgerDate(12, 31, 2032);
+  }
+
+  /**
+   * Fills a ledger with entries that arrive in sorted order.
+   *
+   * @return the ledger
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  public Ledger addEntryInOrder() {
+    Ledger filled = new Ledger(size);
+    for (LedgerEntry entry : sorted) {
+      filled.addEntry(entry);
+    }
+    return filled;
+  }
+
+  /**
+   * Fills a ledger with entries that arrive in random order.
+   *
+   * @return the ledger
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  public Ledger addEntryRandomOrder() {
+    Ledger filled = new Ledger(size);
+    for (LedgerEntry entry : shuffled) {
+      filled.addEntry(entry);
+    }
+    return filled;
+  }
+
+  /**
+   * Copies the credits into a new ledger.
+   *
+   * @return the credits
+   */
+  @Benchmark
+  public Ledger getCredits() {
+    return ledger.getCredits();
+  }
+
+  /**
+   * Copies the debits into a new ledger.
+   *
+   * @return the debits
+   */
+  @Benchmark
+  public Ledger getDebits() {
+    return ledger.getDebits();
+  }
+
+  /**
+   * Copies the entries in a three year range into a new ledger.
+   *
+   * @return the entries in the range
+   */
+  @Benchmark
+  public Ledger getDateRange() {
+    return ledger.getDateRange(rangeStart, rangeEnd);
+  }
+
+  /**
+   * Looks up the balance at a different index each call.
+   *
+   * @return the balance
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int getBalanceAt() {
+    index = (index + 7919) % size;
+    return ledger.getBalanceAt(index);
+  }
+}
@@ -0,0 +1,69 @@
+package com.example.ledger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the entries the benchmarks run on. The same seed always gives the
+ * same entries, so results from different runs are comparable.
+ *
+ * @author Zakariya Mohamed
+ */
+final class LedgerBenchmarkData {
+
+  /** Seed used by every benchmark. */
+  static final long SEED = 20240101L;
+
+  /** Number of distinct descriptions. */
+  private static final int DESCRIPTIONS = 500;
+
+  /** Largest absolute amount. */
+  private static final int MAX_AMOUNT = 5000;
+
+  /**
+   * Not instantiable.
+   */
+  private LedgerBenchmarkData() {
+  }
+
+  /**
+   * Creates entries with random dates between 2020 and 2049, descriptions
+   * and non-zero amounts.
+   *
+   * @param rows   the number of entries
+   * @param seed   the random seed
+   * @param sorted whether to return the entries in sorted order
+   * @return the entries
+   */
+  static List<LedgerEntry> entries(int rows, long seed, boolean sorted) {
+    Random random = new Random(seed);
+    List<LedgerEntry> entries = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      int amount = random.nextInt(MAX_AMOUNT) + 1;
+      entries.add(new LedgerEntry(random.nextInt(LedgerDate.NUM_OF_MONTHS) + 1,
+          random.nextInt(28) + 1,
+          LedgerDate.MIN_YEAR + random.nextInt(LedgerDate.MAX_YEAR - LedgerDate.MIN_YEAR),
+          "Vendor " + random.nextInt(DESCRIPTIONS),
+          random.nextBoolean() ? amount : -amount));
+    }
+    if (sorted) {
+      Collections.sort(entries);
+    }
+    return entries;
+  }
+
+  /**
+   * Creates a ledger holding random entries.
+   *
+   * @param rows the number of entries
+   * @param seed the random seed
+   * @return the ledger
+   */
+  static Ledger ledger(int rows, long seed) {
+    Ledger ledger = new Ledger(rows);
+    ledger.addEntries(entries(rows, seed, false));
+    return ledger;
+  }
+}
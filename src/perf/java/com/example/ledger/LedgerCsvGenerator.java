@@ -0,0 +1,274 @@
+package com.example.ledger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes synthetic ledger CSV files in the Date,Description,Amount format
+ * readLedgerFromFile expects. The same seed and settings always give the
+ * same file, byte for byte, and rows are written as they are generated so
+ * files of any size take constant memory.
+ *
+ * <ul>
+ * <li>Dates run forward from 2020 to the end of 2049. A date skew of 0
+ * spreads them evenly; higher skews bunch them towards recent dates, as
+ * real ledgers have more recent activity.</li>
+ * <li>The out-of-order fraction is the share of rows whose date is drawn
+ * from anywhere in the range instead of following the previous row, as
+ * with late postings and merged exports.</li>
+ * <li>Descriptions come from a pool of the given size, with a few popular
+ * ones making up most rows.</li>
+ * <li>About four rows in five are small debits and the rest larger
+ * credits.</li>
+ * </ul>
+ *
+ * Run main with no arguments for its usage.
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerCsvGenerator {
+
+  /** First date generated. */
+  private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+
+  /** Number of days from the first date to the end of 2049. */
+  private static final int DAYS = (int) (LocalDate.of(2049, 12, 31).toEpochDay()
+      - FIRST_DATE.toEpochDay());
+
+  /** Words descriptions are built from. */
+  private static final String[] MERCHANTS = {"Grocery", "Coffee", "Rent", "Salary", "Fuel",
+      "Pharmacy", "Restaurant", "Utilities", "Insurance", "Transfer", "Bookstore", "Cinema",
+      "Hardware", "Gym", "Parking", "Refund"};
+
+  /** Share of rows that are credits. */
+  private static final double CREDIT_FRACTION = 0.2;
+
+  /** Seed of the random numbers. */
+  private final long seed;
+
+  /** Number of data rows. */
+  private final int rows;
+
+  /** How strongly dates bunch towards the end of the range. */
+  private final double dateSkew;
+
+  /** Number of distinct descriptions. */
+  private final int descriptions;
+
+  /** Share of rows with a date out of order. */
+  private final double outOfOrder;
+
+  /**
+   * Creates a generator.
+   *
+   * @param seed         the random seed
+   * @param rows         the number of data rows
+   * @param dateSkew     0 for evenly spread dates, higher to bunch them
+   *                     towards recent dates
+   * @param descriptions the number of distinct descriptions
+   * @param outOfOrder   the share of rows with an out of order date, from 0
+   *                     to 1
+   * @throws IllegalArgumentException if any input is invalid
+   */
+  public LedgerCsvGenerator(long seed, int rows, double dateSkew, int descriptions,
+      double outOfOrder) {
+    if (rows < 0) {
+      throw new IllegalArgumentException("Invalid rows");
+    }
+    if (dateSkew < 0 || Double.isNaN(dateSkew)) {
+      throw new IllegalArgumentException("Invalid date skew");
+    }
+    if (descriptions <= 0) {
+      throw new IllegalArgumentException("Invalid description count");
+    }
+    if (!(outOfOrder >= 0 && outOfOrder <= 1)) {
+      throw new IllegalArgumentException("Invalid out of order fraction");
+    }
+    this.seed = seed;
+    this.rows = rows;
+    this.dateSkew = dateSkew;
+    this.descriptions = descriptions;
+    this.outOfOrder = outOfOrder;
+  }
+
+  /**
+   * Gets the number of data rows.
+   *
+   * @return the rows
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * Writes the CSV to a stream. The stream is flushed but not closed.
+   *
+   * @param output the stream to write to
+   * @throws IllegalArgumentException if output is null
+   * @throws IOException              if writing fails
+   */
+  public void write(OutputStream output) throws IOException {
+    if (output == null) {
+      throw new IllegalArgumentException("Null output");
+    }
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8),
+        LedgerFileProcessing.STREAM_BUFFER_SIZE);
+    writer.write(LedgerFileProcessing.REQUIRED_HEADER);
+    writer.write('\n');
+    generate((date, description, amount) -> {
+      writer.write(Integer.toString(date.getYear() * LedgerDate.TEN_THOUSAND
+          + date.getMonthValue() * 100 + date.getDayOfMonth()));
+      writer.write(',');
+      writer.write(description);
+      writer.write(',');
+      writer.write(Integer.toString(amount));
+      writer.write('\n');
+    });
+    writer.flush();
+  }
+
+  /**
+   * Generates the entries the CSV holds, in file order, without writing it.
+   *
+   * @return the entries
+   */
+  public List<LedgerEntry> entries() {
+    List<LedgerEntry> entries = new ArrayList<>(rows);
+    try {
+      generate((date, description, amount) -> entries.add(new LedgerEntry(
+          date.getMonthValue(), date.getDayOfMonth(), date.getYear(), description, amount)));
+    } catch (IOException e) {
+      /// the row consumer above never throws
+    }
+    return entries;
+  }
+
+  /**
+   * Generates the rows in order.
+   *
+   * @param row receives each row
+   * @throws IOException if the consumer fails
+   */
+  private void generate(Row row) throws IOException {
+    Random random = new Random(seed);
+    for (int i = 0; i < rows; i++) {
+      // Jittered quantiles keep the in-order dates ascending
+      double position = random.nextDouble() < outOfOrder ? random.nextDouble()
+          : (i + random.nextDouble()) / rows;
+      LocalDate date = FIRST_DATE.plusDays(
+          (long) (Math.pow(position, 1 / (1 + dateSkew)) * DAYS));
+      String description = description(
+          (int) (descriptions * Math.pow(random.nextDouble(), 3)));
+      int amount = random.nextDouble() < CREDIT_FRACTION ? 100 + random.nextInt(5000)
+          : -1 - random.nextInt(200);
+      row.accept(date, description, amount);
+    }
+  }
+
+  /**
+   * Writes the CSV to a file, replacing it if it exists.
+   *
+   * @param file the file to write
+   * @throws IllegalArgumentException if file is null
+   * @throws IOException              if writing fails
+   */
+  public void write(Path file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("Invalid filepath");
+    }
+    try (OutputStream output = Files.newOutputStream(file)) {
+      write(output);
+    }
+  }
+
+  /**
+   * Names a description, for example "Coffee 17".
+   *
+   * @param id the description id
+   * @return the description
+   */
+  private static String description(int id) {
+    return MERCHANTS[id % MERCHANTS.length] + " " + id / MERCHANTS.length;
+  }
+
+  /**
+   * Writes a file from the command line:
+   *
+   * <pre>
+   * LedgerCsvGenerator FILE [--rows=N] [--seed=N] [--date-skew=X]
+   *     [--descriptions=N] [--out-of-order=X]
+   * </pre>
+   *
+   * @param args the file and options
+   * @throws IOException if writing fails
+   */
+  public static void main(String[] args) throws IOException {
+    Map<String, String> options = new HashMap<>();
+    String file = null;
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.contains("=")) {
+        options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      } else {
+        file = arg;
+      }
+    }
+    if (file == null) {
+      System.err.println("usage: LedgerCsvGenerator FILE [--rows=100000] [--seed=1]"
+          + " [--date-skew=0] [--descriptions=1000] [--out-of-order=0]");
+      System.exit(2);
+    }
+    LedgerCsvGenerator generator = fromOptions(options);
+    generator.write(Paths.get(file));
+    System.out.println("Wrote " + generator.getRows() + " rows to " + file);
+  }
+
+  /**
+   * Creates a generator from command line options, using defaults for the
+   * ones not given.
+   *
+   * @param options the options by name
+   * @return the generator
+   * @throws IllegalArgumentException if an option is invalid
+   */
+  static LedgerCsvGenerator fromOptions(Map<String, String> options) {
+    try {
+      return new LedgerCsvGenerator(
+          Long.parseLong(options.getOrDefault("seed", "1")),
+          Integer.parseInt(options.getOrDefault("rows", "100000")),
+          Double.parseDouble(options.getOrDefault("date-skew", "0")),
+          Integer.parseInt(options.getOrDefault("descriptions", "1000")),
+          Double.parseDouble(options.getOrDefault("out-of-order", "0")));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid option: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Receives generated rows.
+   */
+  private interface Row {
+
+    /**
+     * Receives one row.
+     *
+     * @param date        the date
+     * @param description the description
+     * @param amount      the amount
+     * @throws IOException if the row cannot be written
+     */
+    void accept(LocalDate date, String description, int amount) throws IOException;
+  }
+}
@@ -0,0 +1,80 @@
+package com.example.ledger;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks comparing entries and constructing dates, the two operations
+ * every sort and every parsed row pays for. Inputs cycle through a table of
+ * random values so the JIT cannot fold them into constants.
+ *
+ * @author Zakariya Mohamed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedgerEntryBenchmark {
+
+  /** Number of inputs cycled through; a power of two. */
+  private static final int INPUTS = 1024;
+
+  /** Entries to compare. */
+  private LedgerEntry[] entries;
+
+  /** Months, days and years to construct dates from. */
+  private int[][] dates;
+
+  /** Index of the next input. */
+  private int next;
+
+  /**
+   * Builds the inputs.
+   */
+  @Setup
+  public void setUp() {
+    List<LedgerEntry> random = LedgerBenchmarkData.entries(INPUTS, LedgerBenchmarkData.SEED,
+        false);
+    entries = random.toArray(new LedgerEntry[0]);
+    dates = new int[INPUTS][];
+    for (int i = 0; i < INPUTS; i++) {
+      int date = entries[i].getDate().getDate();
+      dates[i] = new int[] {(date / 100) % 100, date % 100, date / LedgerDate.TEN_THOUSAND};
+    }
+  }
+
+  /**
+   * Compares two entries.
+   *
+   * @return the comparison
+   */
+  @Benchmark
+  public int compareTo() {
+    int i = next++ & (INPUTS - 1);
+    return entries[i].compareTo(entries[(i + 1) & (INPUTS - 1)]);
+  }
+
+  /**
+   * Constructs and validates a date.
+   *
+   * @return the date
+   */
+  @Benchmark
+  public LedgerDate newLedgerDate() {
+    int[] date = dates[next++ & (INPUTS - 1)];
+    return new LedgerDate(date[0], date[1], date[2]);
+  }
+}
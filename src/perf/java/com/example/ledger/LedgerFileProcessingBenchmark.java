@@ -0,0 +1,132 @@
+package com.example.ledger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading and writing CSV ledger files. Each operation is timed
+ * as a single shot over the whole file.
+ *
+ * <p>
+ * readLedgerFromFile adds the rows one at a time, so its cost grows with
+ * the square of the row count. At 1,000,000 rows a single read can take a
+ * very long time, so that size only runs when asked for with
+ * -p rows=1000000.
+ *
+ * @author Zakariya Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LedgerFileProcessingBenchmark {
+
+  /** Number of rows in the file. */
+  @Param({"1000", "100000"})
+  public int rows;
+
+  /** Directory holding the files. */
+  private Path directory;
+
+  /** CSV file the read benchmark reads. */
+  private String input;
+
+  /** CSV file the write benchmark writes. */
+  private Path output;
+
+  /** Ledger the write benchmarks write. */
+  private Ledger ledger;
+
+  /**
+   * Builds the ledger and writes the input file.
+   *
+   * @throws IOException if the directory cannot be created
+   */
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("ledger-benchmark");
+    ledger = LedgerBenchmarkData.ledger(rows, LedgerBenchmarkData.SEED);
+    input = directory.resolve("input.csv").toString();
+    LedgerFileProcessing.writeLedgerToFile(input, ledger);
+    output = directory.resolve("output.csv");
+  }
+
+  /**
+   * Removes the previous output, since writeLedgerToFile will not replace
+   * an existing file.
+   *
+   * @throws IOException if the file cannot be deleted
+   */
+  @Setup(Level.Invocation)
+  public void deleteOutput() throws IOException {
+    Files.deleteIfExists(output);
+    Files.deleteIfExists(output.resolveSibling(output.getFileName()
+        + LedgerFileProcessing.INDEX_EXTENSION));
+  }
+
+  /**
+   * Deletes the files.
+   *
+   * @throws IOException if a file cannot be deleted
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      List<Path> paths = files.sorted(Comparator.reverseOrder()).toList();
+      for (Path path : paths) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  /**
+   * Reads the CSV file into a ledger.
+   *
+   * @return the ledger
+   */
+  @Benchmark
+  public Ledger readCsv() {
+    return LedgerFileProcessing.readLedgerFromFile(input, rows);
+  }
+
+  /**
+   * Writes the ledger to a CSV file with its date index.
+   */
+  @Benchmark
+  public void writeCsv() {
+    LedgerFileProcessing.writeLedgerToFile(output.toString(), ledger);
+  }
+
+  /**
+   * Encodes the ledger as CSV into a stream that discards it, which leaves
+   * out the file system.
+   *
+   * @throws IOException never
+   */
+  @Benchmark
+  public void writeCsvToStream() throws IOException {
+    LedgerFileProcessing.writeLedgerToStream(OutputStream.nullOutputStream(), ledger);
+  }
+}
@@ -0,0 +1,418 @@
+package com.example.ledger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the file endpoints of a running application concurrently and
+ * reports throughput and latency percentiles per endpoint, with the
+ * server's heap and GC figures from Actuator before and after the run.
+ *
+ * <p>
+ * Ledger files are made with LedgerCsvGenerator, one per seed from the
+ * given seed on, and cycled through by every worker. Each worker sends
+ * /upload, /import, /validate and /export in turn. /import reads the
+ * generated files from the local disk, so the application must run on the
+ * same machine. Uploads and imports of content parsed before are served
+ * from the parse cache, so the default number of files is larger than the
+ * default ledger.cache.max-entries and every request parses; use fewer
+ * files than the cache holds to measure cache hits. Every export writes a new file under the
+ * server's exports directory.
+ *
+ * <pre>
+ * LedgerLoadTest [--url=http://localhost:8080] [--threads=8]
+ *     [--duration=60] [--files=100] [--rows=10000] [--seed=1]
+ *     [--date-skew=0] [--descriptions=1000] [--out-of-order=0]
+ * </pre>
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerLoadTest {
+
+  /** Path of the file endpoints. */
+  private static final String FILES_PATH = "/api/ledger/files";
+
+  /** Boundary of the multipart bodies. */
+  private static final String BOUNDARY = "ledger-load-test-boundary";
+
+  /** Percentiles reported. */
+  private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+  /**
+   * An endpoint the workers call.
+   */
+  enum Operation {
+    /** POST /upload with a generated file. */
+    UPLOAD,
+    /** POST /import of a generated file on disk. */
+    IMPORT,
+    /** POST /validate with a generated file. */
+    VALIDATE,
+    /** POST /export with a generated ledger as JSON. */
+    EXPORT
+  }
+
+  /** Base URL of the application. */
+  private final String url;
+
+  /** Client shared by the workers. */
+  private final HttpClient client = HttpClient.newBuilder()
+      .connectTimeout(Duration.ofSeconds(10))
+      .build();
+
+  /** Upload and validate bodies, one per file. */
+  private final List<byte[]> multipartBodies = new ArrayList<>();
+
+  /** Paths of the generated files, for imports. */
+  private final List<Path> files = new ArrayList<>();
+
+  /** Export bodies, one per file. */
+  private final List<byte[]> ledgerBodies = new ArrayList<>();
+
+  /** Rows in each file. */
+  private final int rows;
+
+  /** Latencies in nanoseconds, by operation. */
+  private final Map<Operation, Latencies> latencies = new HashMap<>();
+
+  /** Number of requests that did not return 2xx, by operation. */
+  private final Map<Operation, AtomicLong> failures = new HashMap<>();
+
+  /** Number of exports sent, to name the export files. */
+  private final AtomicLong exports = new AtomicLong();
+
+  /**
+   * Generates the files and request bodies.
+   *
+   * @param url       the base URL of the application
+   * @param generator settings of the generated files
+   * @param count     the number of files, each with the next seed
+   * @param seed      the seed of the first file
+   * @param directory where the files are written
+   * @throws IOException if a file cannot be written
+   */
+  LedgerLoadTest(String url, Map<String, String> generator, int count, long seed,
+      Path directory) throws IOException {
+    this.url = url;
+    ObjectMapper mapper = new ObjectMapper().registerModule(new LedgerJsonModule());
+    int rowCount = 0;
+    for (int i = 0; i < count; i++) {
+      Map<String, String> options = new HashMap<>(generator);
+      options.put("seed", Long.toString(seed + i));
+      LedgerCsvGenerator csv = LedgerCsvGenerator.fromOptions(options);
+      rowCount = csv.getRows();
+
+      Path file = directory.resolve("load-" + i + ".csv");
+      csv.write(file);
+      file.toFile().deleteOnExit();
+      files.add(file.toAbsolutePath());
+      byte[] content = Files.readAllBytes(file);
+      multipartBodies.add(multipart(file.getFileName().toString(), content));
+
+      Ledger ledger = new Ledger(Math.max(1, rowCount));
+      ledger.addEntries(csv.entries());
+      ledgerBodies.add(mapper.writeValueAsBytes(ledger));
+    }
+    this.rows = rowCount;
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new Latencies());
+      failures.put(operation, new AtomicLong());
+    }
+  }
+
+  /**
+   * Sends one request and records its latency.
+   *
+   * @param operation the endpoint
+   * @param file      the index of the file to send
+   * @throws IOException          if the request fails
+   * @throws InterruptedException if interrupted
+   */
+  void send(Operation operation, int file) throws IOException, InterruptedException {
+    String size = "sizeLedger=" + Math.max(1, rows);
+    HttpRequest.Builder request;
+    switch (operation) {
+      case UPLOAD:
+        request = multipartRequest("/upload?" + size, file);
+        break;
+      case VALIDATE:
+        request = multipartRequest("/validate?maxErrors=10", file);
+        break;
+      case IMPORT:
+        request = HttpRequest.newBuilder(URI.create(url + FILES_PATH + "/import?" + size
+            + "&filepath=" + URLEncoder.encode(files.get(file).toString(),
+                StandardCharsets.UTF_8)))
+            .POST(HttpRequest.BodyPublishers.noBody());
+        break;
+      default:
+        request = HttpRequest.newBuilder(URI.create(url + FILES_PATH + "/export?filename=load-"
+            + ProcessHandle.current().pid() + "-" + exports.incrementAndGet()))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(ledgerBodies.get(file)));
+        break;
+    }
+
+    long started = System.nanoTime();
+    HttpResponse<Void> response = client.send(request.build(),
+        HttpResponse.BodyHandlers.discarding());
+    latencies.get(operation).add(System.nanoTime() - started);
+    if (response.statusCode() / 100 != 2) {
+      failures.get(operation).incrementAndGet();
+    }
+  }
+
+  /**
+   * Runs the workers for a time and prints the report.
+   *
+   * @param threads the number of concurrent workers
+   * @param seconds how long to run
+   * @throws Exception if a worker fails
+   */
+  void run(int threads, int seconds) throws Exception {
+    Map<String, Double> before = serverStats();
+    long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+    long started = System.nanoTime();
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int worker = t;
+        workers.add(executor.submit(() -> {
+          Operation[] operations = Operation.values();
+          for (int i = worker; System.nanoTime() < deadline; i++) {
+            send(operations[i % operations.length], i / operations.length % files.size());
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : workers) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    double elapsed = (System.nanoTime() - started) / 1e9;
+
+    System.out.printf(Locale.ROOT, "%d threads, %.1f s, %d files of %d rows%n%n", threads,
+        elapsed, files.size(), rows);
+    System.out.printf(Locale.ROOT, "%-9s %8s %7s %9s %11s %9s %9s %9s %9s%n", "endpoint",
+        "requests", "failed", "req/s", "rows/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+    for (Operation operation : Operation.values()) {
+      long[] sorted = latencies.get(operation).sorted();
+      double throughput = sorted.length / elapsed;
+      System.out.printf(Locale.ROOT, "%-9s %8d %7d %9.1f %11.0f %9.1f %9.1f %9.1f %9.1f%n",
+          operation.name().toLowerCase(Locale.ROOT), sorted.length,
+          failures.get(operation).get(), throughput, throughput * rows,
+          percentile(sorted, PERCENTILES[0]), percentile(sorted, PERCENTILES[1]),
+          percentile(sorted, PERCENTILES[2]), percentile(sorted, 1));
+    }
+
+    Map<String, Double> after = serverStats();
+    System.out.println();
+    if (before.isEmpty() || after.isEmpty()) {
+      System.out.println("Server heap and GC: unavailable (is /actuator/metrics exposed?)");
+      return;
+    }
+    System.out.printf(Locale.ROOT, "Server heap used: %.0f MB before, %.0f MB after, "
+        + "%.0f MB max%n", before.get("heapUsed") / 1e6, after.get("heapUsed") / 1e6,
+        after.get("heapMax") / 1e6);
+    System.out.printf(Locale.ROOT, "Server allocated: %.0f MB (%.0f MB/s)%n",
+        (after.get("allocated") - before.get("allocated")) / 1e6,
+        (after.get("allocated") - before.get("allocated")) / 1e6 / elapsed);
+    System.out.printf(Locale.ROOT, "Server GC pauses: %.0f, %.0f ms total, %.0f ms max%n",
+        after.get("gcCount") - before.get("gcCount"),
+        (after.get("gcTime") - before.get("gcTime")) * 1000, after.get("gcMax") * 1000);
+  }
+
+  /**
+   * Reads the server's heap and GC figures from Actuator.
+   *
+   * @return the figures by name, or an empty map if Actuator is unavailable
+   */
+  private Map<String, Double> serverStats() {
+    Map<String, Double> stats = new HashMap<>();
+    try {
+      stats.put("heapUsed", metric("jvm.memory.used?tag=area:heap", "VALUE"));
+      stats.put("heapMax", metric("jvm.memory.max?tag=area:heap", "VALUE"));
+      stats.put("allocated", metric("jvm.gc.memory.allocated", "COUNT"));
+      stats.put("gcCount", metric("jvm.gc.pause", "COUNT"));
+      stats.put("gcTime", metric("jvm.gc.pause", "TOTAL_TIME"));
+      stats.put("gcMax", metric("jvm.gc.pause", "MAX"));
+    } catch (IOException | IllegalStateException e) {
+      /// report without server figures
+      stats.clear();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      stats.clear();
+    }
+    return stats;
+  }
+
+  /**
+   * Reads one statistic of an Actuator metric.
+   *
+   * @param metric    the metric name with any tag query
+   * @param statistic the statistic, such as VALUE or COUNT
+   * @return the value, or 0 if the metric has no such statistic yet
+   * @throws IOException          if the request fails
+   * @throws InterruptedException if interrupted
+   */
+  private double metric(String metric, String statistic)
+      throws IOException, InterruptedException {
+    HttpResponse<String> response = client.send(
+        HttpRequest.newBuilder(URI.create(url + "/actuator/metrics/" + metric)).build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() == 404 && metric.startsWith("jvm.gc.pause")) {
+      // No collection has happened yet
+      return 0;
+    }
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException("Metric unavailable: " + metric);
+    }
+    for (JsonNode measurement : new ObjectMapper().readTree(response.body())
+        .path("measurements")) {
+      if (statistic.equals(measurement.path("statistic").asText())) {
+        return measurement.path("value").asDouble();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Builds a multipart request sending a generated file as "file".
+   *
+   * @param path the endpoint path and query
+   * @param file the index of the file
+   * @return the request
+   */
+  private HttpRequest.Builder multipartRequest(String path, int file) {
+    return HttpRequest.newBuilder(URI.create(url + FILES_PATH + path))
+        .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+        .POST(HttpRequest.BodyPublishers.ofByteArray(multipartBodies.get(file)));
+  }
+
+  /**
+   * Encodes a file as a multipart/form-data body with one "file" part.
+   *
+   * @param filename the file name
+   * @param content  the file content
+   * @return the body
+   * @throws IOException never
+   */
+  private static byte[] multipart(String filename, byte[] content) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 256);
+    body.write(("--" + BOUNDARY + "\r\n"
+        + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+        + "Content-Type: text/csv\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+    body.write(content);
+    body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+    return body.toByteArray();
+  }
+
+  /**
+   * Gets a percentile of sorted latencies.
+   *
+   * @param sorted   the latencies in nanoseconds, sorted
+   * @param fraction the percentile, from 0 to 1
+   * @return the latency in milliseconds, or 0 if there are none
+   */
+  static double percentile(long[] sorted, double fraction) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(fraction * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+  }
+
+  /**
+   * Latencies recorded by several workers.
+   */
+  private static class Latencies {
+
+    /** The latencies in nanoseconds. */
+    private long[] values = new long[1024];
+
+    /** Number of latencies recorded. */
+    private int size;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency
+     */
+    synchronized void add(long nanos) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = nanos;
+    }
+
+    /**
+     * Copies the latencies in ascending order.
+     *
+     * @return the sorted latencies
+     */
+    synchronized long[] sorted() {
+      long[] copy = Arrays.copyOf(values, size);
+      Arrays.sort(copy);
+      return copy;
+    }
+  }
+
+  /**
+   * Generates the files and runs the load test; see the class comment for
+   * the options.
+   *
+   * @param args the options
+   * @throws Exception if the run fails
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        System.err.println("Unknown argument: " + arg);
+        System.exit(2);
+      }
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+    Map<String, String> generator = new HashMap<>();
+    generator.put("rows", options.getOrDefault("rows", "10000"));
+    for (String name : new String[] {"date-skew", "descriptions", "out-of-order"}) {
+      if (options.containsKey(name)) {
+        generator.put(name, options.get(name));
+      }
+    }
+
+    Path directory = Files.createTempDirectory("ledger-load");
+    directory.toFile().deleteOnExit();
+    LedgerLoadTest test = new LedgerLoadTest(options.getOrDefault("url",
+        "http://localhost:8080"), generator,
+        Integer.parseInt(options.getOrDefault("files", "100")),
+        Long.parseLong(options.getOrDefault("seed", "1")), directory);
+    test.run(Integer.parseInt(options.getOrDefault("threads", "8")),
+        Integer.parseInt(options.getOrDefault("duration", "60")));
+  }
+}
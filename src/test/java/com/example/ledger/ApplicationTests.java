@@ -3,7 +3,8 @@ package com.example.ledger;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Keep the repository and its journal out of the working tree
+@SpringBootTest(properties = "ledger.repository.directory=target/test-output/application-ledgers")
 class ApplicationTests {
 
 	@Test
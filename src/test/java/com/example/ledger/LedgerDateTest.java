@@ -68,6 +68,7 @@ public class LedgerDateTest {
     assertTrue(date.equals(date));
     assertTrue(date.equals(date2));
     assertTrue(date2.equals(date));
+    assertEquals(date.hashCode(), date2.hashCode());
     assertEquals(0, date.compareTo(date));
     assertEquals(0, date2.compareTo(date));
     LedgerDate date3 = new LedgerDate(2, 28, 2025);
@@ -178,4 +179,16 @@ public class LedgerDateTest {
 
   }
 
+  /**
+   * Tests converting a YYYYMMDD request parameter.
+   */
+  @Test
+  public void testFromParameter() {
+    assertEquals(new LedgerDate(7, 19, 2024), LedgerDate.fromParameter(20240719));
+
+    Exception exception = assertThrows(IllegalArgumentException.class,
+        () -> LedgerDate.fromParameter(20241301), "LedgerDate.fromParameter(20241301)");
+    assertEquals("Invalid date", exception.getMessage());
+  }
+
 }
@@ -0,0 +1,45 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerETags
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerETagsTest {
+
+  /**
+   * Tests that the tag changes with the ledger and matches equal ledgers.
+   */
+  @Test
+  public void testOf() {
+    Ledger ledger = new Ledger(10);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    String eTag = LedgerETags.of(ledger);
+    assertTrue(eTag.startsWith("W/\"1-"), eTag);
+    assertTrue(eTag.endsWith("\""), eTag);
+    assertEquals(eTag, LedgerETags.of(ledger.copy()));
+
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    assertNotEquals(eTag, LedgerETags.of(ledger));
+    assertThrows(IllegalArgumentException.class, () -> LedgerETags.of(null));
+  }
+
+  /**
+   * Tests If-None-Match comparison.
+   */
+  @Test
+  public void testMatches() {
+    String eTag = "W/\"2-abc\"";
+    assertTrue(LedgerETags.matches(eTag, eTag));
+    assertTrue(LedgerETags.matches("\"2-abc\"", eTag));
+    assertTrue(LedgerETags.matches("\"1-def\", W/\"2-abc\"", eTag));
+    assertTrue(LedgerETags.matches(" * ", eTag));
+    assertFalse(LedgerETags.matches("W/\"1-abc\"", eTag));
+    assertFalse(LedgerETags.matches("2-abc", eTag));
+    assertFalse(LedgerETags.matches(null, eTag));
+  }
+}
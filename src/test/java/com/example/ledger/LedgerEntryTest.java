@@ -102,6 +102,8 @@ public class LedgerEntryTest {
     assertTrue(entry.equals(entry));
     assertTrue(entry.equals(entry2));
     assertTrue(entry2.equals(entry));
+    assertEquals(entry.hashCode(), entry2.hashCode());
+    assertEquals(entry.hashCode(), new LedgerEntry(1, 2, 2040, " Birthday ", 100).hashCode());
     assertEquals(0, entry.compareTo(entry2));
     assertEquals(0, entry2.compareTo(entry));
 
@@ -0,0 +1,98 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerEvents
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerEventsTest {
+
+  /**
+   * Tests the events of writing and reading a CSV file, and that Sort events
+   * record the entries added.
+   *
+   * @throws IOException if the recording cannot be written or read
+   */
+  @Test
+  public void testWriteAndRead() throws IOException {
+    Path directory = Files.createTempDirectory("ledger-events");
+    String filepath = directory.resolve("ledger.csv").toString();
+    Path dump = directory.resolve("recording.jfr");
+    Ledger ledger = new Ledger(10);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Coffee", -5);
+
+    List<RecordedEvent> events;
+    try (Recording recording = new Recording()) {
+      recording.enable(LedgerEvents.Sort.class).withThreshold(Duration.ZERO);
+      recording.start();
+      LedgerFileProcessing.writeLedgerToFile(filepath, ledger);
+      LedgerFileProcessing.readLedgerFromFile(filepath, 10);
+      recording.stop();
+      recording.dump(dump);
+      events = RecordingFile.readAllEvents(dump);
+    }
+
+    RecordedEvent serialize = only(events, "com.example.ledger.Serialize");
+    assertEquals(filepath, serialize.getString("path"));
+    assertEquals("csv", serialize.getString("format"));
+    assertEquals(2, serialize.getLong("rows"));
+    assertTrue(serialize.getLong("bytes") > 0);
+
+    // The date index is written separately
+    List<RecordedEvent> writes = events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.example.ledger.Write"))
+        .toList();
+    assertEquals(2, writes.size());
+    RecordedEvent write = writes.get(0);
+    assertEquals(filepath, write.getString("path"));
+    assertEquals(filepath + LedgerFileProcessing.INDEX_EXTENSION, writes.get(1).getString("path"));
+    assertEquals(Files.size(Path.of(filepath)), write.getLong("bytes"));
+
+    RecordedEvent parse = only(events, "com.example.ledger.Parse");
+    assertEquals(filepath, parse.getString("path"));
+    assertEquals(2, parse.getLong("rows"));
+    assertEquals(Files.size(Path.of(filepath)), parse.getLong("bytes"));
+
+    long reads = events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.example.ledger.FileOpen"))
+        .filter(e -> filepath.equals(e.getString("path")) && !e.getBoolean("write"))
+        .count();
+    assertEquals(1, reads);
+
+    // One sort per row added while parsing
+    List<RecordedEvent> sorts = events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.example.ledger.Sort"))
+        .toList();
+    assertEquals(2, sorts.size());
+    assertEquals(1, sorts.get(0).getInt("added"));
+  }
+
+  /**
+   * Finds the single event of a type.
+   *
+   * @param events the recorded events
+   * @param name   the event name
+   * @return the event
+   */
+  private static RecordedEvent only(List<RecordedEvent> events, String name) {
+    List<RecordedEvent> matching = events.stream()
+        .filter(e -> e.getEventType().getName().equals(name))
+        .toList();
+    assertEquals(1, matching.size());
+    return matching.get(0);
+  }
+}
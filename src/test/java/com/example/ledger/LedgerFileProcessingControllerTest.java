@@ -0,0 +1,64 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+
+/**
+ * Tests LedgerFileProcessingController
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerFileProcessingControllerTest {
+
+  /**
+   * Creates a controller whose imports may use the given heap budget.
+   *
+   * @param memoryBudget the admission memory budget
+   * @return the controller
+   */
+  private static LedgerFileProcessingController controller(long memoryBudget) {
+    return new LedgerFileProcessingController(
+        new LedgerImportAdmission(1, 0, memoryBudget, Duration.ZERO, 1),
+        new LedgerParseCache(4, 1 << 20),
+        new LedgerImportJobs(LedgerImportJobs.DEFAULT_RETENTION, 1));
+  }
+
+  /**
+   * Tests that gzip content uploaded under a .csv name is budgeted as
+   * compressed data, so it cannot pass admission as plain CSV would.
+   *
+   * @throws IOException if the content cannot be compressed
+   */
+  @Test
+  public void testGzipUploadUnderCsvName() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write("Date,Description,Amount\n20230101,Gift,50\n".getBytes(
+          StandardCharsets.US_ASCII));
+    }
+    MockMultipartFile upload = new MockMultipartFile("file", "ledger.csv", "text/csv",
+        compressed.toByteArray());
+
+    // Enough for the upload as plain CSV, but not for it decompressed
+    ResponseEntity<Map<String, Object>> response = controller(
+        LedgerImportAdmission.estimateMemory(upload.getSize(), false))
+        .uploadLedgerFile(upload, 10, false);
+    assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+
+    response = controller(LedgerImportAdmission.estimateMemory(upload.getSize(), true))
+        .uploadLedgerFile(upload, 10, false);
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(1, response.getBody().get("entriesCount"));
+  }
+}
@@ -2,13 +2,20 @@ package com.example.ledger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 
@@ -187,4 +194,617 @@ public class LedgerFileProcessingTest {
                 res("missing-description.csv"), 10))
             .getMessage());
   }
+
+  /** Tests validateLedgerFile on valid and invalid files */
+  @Test
+  public void testValidateLedgerFile() {
+    LedgerValidationResult valid = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(("Date,Description,Amount,Balance\n"
+            + "20230101,Gift,50,50\n"
+            + "\n"
+            + "20330303,Dinner out,-100,-50\r\n"
+            + "20330303,Dinner out - friend's portion,30,-20").getBytes()),
+        10, false);
+    assertTrue(valid.isValid());
+    assertEquals(3, valid.getEntriesFound());
+    assertEquals(0, valid.getErrorCount());
+    assertFalse(valid.isStoppedEarly());
+
+    LedgerValidationResult badDate = LedgerFileProcessing.validateLedgerFile(
+        res("non-int-date.csv"), 10, false);
+    assertFalse(badDate.isValid());
+    assertEquals(2, badDate.getEntriesFound());
+    assertEquals(1, badDate.getErrorCount());
+    assertEquals(3, badDate.getErrors().get(0).getLineNumber());
+    assertEquals("Invalid date", badDate.getErrors().get(0).getMessage());
+
+    LedgerValidationResult badAmount = LedgerFileProcessing.validateLedgerFile(
+        res("non-int-amount.csv"), 10, false);
+    assertEquals("Line 4: Invalid amount", badAmount.getErrors().get(0).toString());
+
+    LedgerValidationResult badHeader = LedgerFileProcessing.validateLedgerFile(
+        res("two-columns.csv"), 10, false);
+    assertEquals("Invalid header", badHeader.getErrors().get(0).getMessage());
+    assertTrue(badHeader.isStoppedEarly());
+
+    LedgerValidationResult empty = LedgerFileProcessing.validateLedgerFile(
+        res("empty.csv"), 10, false);
+    assertEquals("Input file is empty.", empty.getErrors().get(0).getMessage());
+  }
+
+  /** Tests that validateLedgerFile ends lines where Scanner does */
+  @Test
+  public void testValidateLedgerFileLineSeparators() {
+    String data = "Date,Description,Amount\r"
+        + "20230101,Gift,50\r\n"
+        + "20230102,Rent,-40\u2028"
+        + "20230103,Refund,5\u0085"
+        + "20230230,Bad day,10\u2029"
+        + "20230104,Fine,1\r\r"
+        + "20230105,Zero,0";
+    LedgerValidationResult result = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), 10, false);
+    assertEquals(4, result.getEntriesFound());
+    assertEquals(2, result.getErrorCount());
+    assertEquals("Line 5: Invalid date", result.getErrors().get(0).toString());
+    assertEquals("Line 8: Amount is zero", result.getErrors().get(1).toString());
+  }
+
+  /** Tests that validateLedgerFile skips lines that are too long */
+  @Test
+  public void testValidateLedgerFileLineTooLong() {
+    String longLine = "20230101," + "x".repeat(LedgerFileProcessing.MAX_LINE_LENGTH * 2) + ",10";
+    String data = "Date,Description,Amount\n"
+        + longLine + "\u2028"
+        + "20230101,Gift,50\n"
+        + longLine;
+    LedgerValidationResult result = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), 10, false);
+    assertEquals(1, result.getEntriesFound());
+    assertEquals(2, result.getErrorCount());
+    assertEquals("Line 2: Line too long", result.getErrors().get(0).toString());
+    assertEquals("Line 4: Line too long", result.getErrors().get(1).toString());
+
+    LedgerValidationResult header = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream((longLine + "\n20230101,Gift,50\n").getBytes(
+            StandardCharsets.UTF_8)), 10, false);
+    assertEquals("Line 1: Line too long", header.getErrors().get(0).toString());
+    assertTrue(header.isStoppedEarly());
+  }
+
+  /** Tests error limits and stopping early in validateLedgerFile */
+  @Test
+  public void testValidateLedgerFileErrorLimits() {
+    String data = "Date,Description,Amount\n"
+        + "20230230,Bad day,10\n"
+        + "20230101,,10\n"
+        + "20230101,Zero,0\n"
+        + "20230101,Overflow,2147483648\n"
+        + "20230101\n"
+        + "20230101,Fine,-2147483648\n";
+
+    LedgerValidationResult all = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(data.getBytes()), 2, false);
+    assertEquals(5, all.getErrorCount());
+    assertEquals(2, all.getErrors().size());
+    assertEquals(1, all.getEntriesFound());
+    assertEquals("Invalid date", all.getErrors().get(0).getMessage());
+    assertEquals("Empty or all whitespace description",
+        all.getErrors().get(1).getMessage());
+
+    LedgerValidationResult first = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(data.getBytes()), 10, true);
+    assertEquals(1, first.getErrorCount());
+    assertEquals(2, first.getErrors().get(0).getLineNumber());
+    assertTrue(first.isStoppedEarly());
+
+    assertEquals("Invalid filepath",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.validateLedgerFile(" ", 10, false))
+            .getMessage());
+    assertEquals("Input file not found.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.validateLedgerFile(
+                tempOut("not-here.csv").toString(), 10, false))
+            .getMessage());
+    assertEquals("Invalid max errors",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.validateLedgerFile(
+                new ByteArrayInputStream(data.getBytes()), -1, false))
+            .getMessage());
+  }
+
+  /** Tests writeLedgerToFile leaves only the finished file behind */
+  @Test
+  public void testWriteLedgerToFileNoTempFiles() throws IOException {
+    Ledger ledger = new Ledger();
+    ledger.addEntry(5, 1, 2024, "Caf\u00e9 au lait", -4);
+    ledger.addEntry(5, 2, 2024, "Refund", Integer.MAX_VALUE);
+
+    Path dir = tempOut("atomic");
+    Files.createDirectories(dir);
+    try (Stream<Path> old = Files.list(dir)) {
+      for (Path p : old.toList()) {
+        Files.delete(p);
+      }
+    }
+
+    LedgerFileProcessing.writeLedgerToFile(dir.resolve("out.csv").toString(), ledger);
+
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(List.of(dir.resolve("out.csv"), dir.resolve("out.csv.idx")),
+          files.sorted().toList());
+    }
+    assertEquals("Date,Description,Amount,Balance\n"
+        + "20240501,Caf\u00e9 au lait,-4,-4\n"
+        + "20240502,Refund,2147483647,2147483643\n",
+        Files.readString(dir.resolve("out.csv"), StandardCharsets.UTF_8));
+  }
+
+  /** Tests LedgerCsvWriter when rows span many buffer flushes */
+  @Test
+  public void testCsvWriterSmallBuffer() throws IOException {
+    Ledger ledger = new Ledger();
+    StringBuilder expected = new StringBuilder("Date,Description,Amount,Balance\n");
+    int balance = 0;
+    for (int day = 1; day <= 28; day++) {
+      String description = "Entry number " + day + " with a fairly long description";
+      int amount = day % 2 == 0 ? day * 1000 : -day;
+      ledger.addEntry(2, day, 2024, description, amount);
+      balance += amount;
+      expected.append(String.format("202402%02d", day)).append(',')
+          .append(description).append(',').append(amount).append(',')
+          .append(balance).append('\n');
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LedgerCsvWriter writer = new LedgerCsvWriter(Channels.newChannel(out), 72);
+    writer.writeLedger(ledger);
+    writer.flush();
+
+    assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8));
+    assertEquals(out.size(), writer.getBytesWritten());
+  }
+
+  /** Tests writeLedgerToStream */
+  @Test
+  public void testWriteLedgerToStream() throws IOException {
+    Ledger ledger = new Ledger();
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    LedgerFileProcessing.writeLedgerToStream(out, ledger);
+    assertEquals("Date,Description,Amount,Balance\n"
+        + "20230101,Gift,50,50\n"
+        + "20330303,Dinner out,-100,-50\n",
+        out.toString(StandardCharsets.UTF_8));
+
+    assertEquals("null ledger",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.writeLedgerToStream(out, null))
+            .getMessage());
+    assertEquals("Null output",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.writeLedgerToStream(null, ledger))
+            .getMessage());
+  }
+
+  /** Tests writing and reading the binary format */
+  @Test
+  public void testBinaryFileRoundTrip() throws IOException {
+    Ledger ledger = new Ledger(15);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(3, 3, 2033, "Dinner out - friend's portion", 30);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(1, 2, 2023, "Gift", 25);
+    ledger.addEntry(1, 3, 2023, "Caf\u00e9", -5);
+
+    Path out = tempOut("Output-binary.ldgb");
+    Files.deleteIfExists(out);
+    LedgerFileProcessing.writeLedgerToBinaryFile(out.toString(), ledger);
+
+    // Four distinct descriptions are stored once each
+    assertEquals(LedgerFileProcessing.BINARY_HEADER_SIZE
+        + 4 * Integer.BYTES + "Dinner out".length()
+        + "Dinner out - friend's portion".length() + "Gift".length() + 5
+        + 5 * LedgerFileProcessing.BINARY_RECORD_SIZE
+        + LedgerFileProcessing.BINARY_INDEX_ENTRY_SIZE
+        + LedgerFileProcessing.BINARY_TRAILER_SIZE, Files.size(out));
+
+    Ledger read = LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), 15);
+    assertEquals(ledger, read);
+    assertEquals(ledger.toString(), read.toString());
+
+    assertEquals("Output file already exists.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.writeLedgerToBinaryFile(out.toString(), ledger))
+            .getMessage());
+  }
+
+  /** Tests that a file created while another write is in progress is kept */
+  @Test
+  public void testWriteAtomicallyRace() throws IOException {
+    Path out = tempOut("Output-race.csv");
+    Files.deleteIfExists(out);
+
+    assertEquals("Output file already exists.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.writeAtomically(out.toString(), false, channel -> {
+              channel.write(java.nio.ByteBuffer.wrap("mine".getBytes(StandardCharsets.UTF_8)));
+              Files.writeString(out, "theirs");
+            }))
+            .getMessage());
+    assertEquals("theirs", Files.readString(out));
+    try (Stream<Path> files = Files.list(out.getParent())) {
+      assertEquals(0, files.filter(p -> p.toString().endsWith(".tmp")).count());
+    }
+  }
+
+  /** Tests exception cases in readLedgerFromBinaryFile */
+  @Test
+  public void testExceptionsReadLedgerFromBinaryFile() throws IOException {
+    assertEquals("Invalid size",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile("a.ldgb", 0))
+            .getMessage());
+    assertEquals("Input file not found.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile(
+                tempOut("not-here.ldgb").toString(), 10))
+            .getMessage());
+    assertEquals("Input file is empty.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile(res("empty.csv"), 10))
+            .getMessage());
+    assertEquals("Invalid file",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile(
+                res("non-int-date.csv"), 10))
+            .getMessage());
+
+    Ledger ledger = new Ledger();
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    Path out = tempOut("Output-truncated.ldgb");
+    Files.deleteIfExists(out);
+    LedgerFileProcessing.writeLedgerToBinaryFile(out.toString(), ledger);
+    byte[] bytes = Files.readAllBytes(out);
+    Files.write(out, java.util.Arrays.copyOf(bytes, bytes.length - 1));
+    assertEquals("Invalid file",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), 10))
+            .getMessage());
+
+    // A dictionary size the dictionary bytes cannot hold
+    java.nio.ByteBuffer.wrap(bytes).putInt(3 * Integer.BYTES, Integer.MAX_VALUE);
+    Files.write(out, bytes);
+    assertEquals("Invalid file",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), 10))
+            .getMessage());
+  }
+
+  /** Tests date range reads that skip blocks of a binary file */
+  @Test
+  public void testReadLedgerFromBinaryFileDateRange() throws IOException {
+    List<LedgerEntry> entries = new java.util.ArrayList<>();
+    for (int year = 2020; year <= 2024; year++) {
+      for (int month = 1; month <= 12; month++) {
+        for (int day = 1; day <= 28; day++) {
+          for (int i = 0; i < 3; i++) {
+            entries.add(new LedgerEntry(month, day, year, "Item " + (i + day % 7),
+                i == 0 ? -10 : 10 + i));
+          }
+        }
+      }
+    }
+    Ledger ledger = new Ledger();
+    ledger.addEntries(entries);
+
+    Path out = tempOut("Output-blocks.ldgb");
+    Files.deleteIfExists(out);
+    LedgerFileProcessing.writeLedgerToBinaryFile(out.toString(), ledger);
+    assertEquals(ledger, LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), 100));
+
+    LedgerDate start = new LedgerDate(3, 1, 2024);
+    LedgerDate end = new LedgerDate(3, 31, 2024);
+    Ledger march = LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), start, end, 100);
+    assertEquals(28 * 3, march.getNumEntries());
+    assertEquals(ledger.getDateRange(start, end), march);
+
+    Ledger none = LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(),
+        new LedgerDate(1, 1, 2030), new LedgerDate(1, 1, 2031), 100);
+    assertEquals(0, none.getNumEntries());
+
+    assertEquals("Null date",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), null, end, 100))
+            .getMessage());
+  }
+
+  /** Tests reading the original unblocked binary format */
+  @Test
+  public void testReadLedgerFromUnblockedBinaryFile() throws IOException {
+    java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(64);
+    buffer.putInt(LedgerFileProcessing.BINARY_MAGIC)
+        .putInt(LedgerFileProcessing.BINARY_VERSION_UNBLOCKED)
+        .putInt(2).putInt(1).putInt(8)
+        .putInt(4).put("Gift".getBytes(StandardCharsets.US_ASCII))
+        .putInt(20230102).putInt(25).putInt(0)
+        .putInt(20230101).putInt(50).putInt(0);
+    Path out = tempOut("Output-unblocked.ldgb");
+    Files.write(out, java.util.Arrays.copyOf(buffer.array(), buffer.position()));
+
+    Ledger expected = new Ledger(10);
+    expected.addEntry(1, 1, 2023, "Gift", 50);
+    expected.addEntry(1, 2, 2023, "Gift", 25);
+    assertEquals(expected, LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(), 10));
+    assertEquals(1, LedgerFileProcessing.readLedgerFromBinaryFile(out.toString(),
+        new LedgerDate(1, 2, 2023), new LedgerDate(1, 2, 2023), 10).getNumEntries());
+  }
+
+  /** Tests date range reads through the sidecar index of a CSV file */
+  @Test
+  public void testReadLedgerFromFileDateRange() throws IOException {
+    Ledger ledger = new Ledger();
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 14, 2024, "Flowers", -30);
+    ledger.addEntry(3, 1, 2024, "Rent", -900);
+    ledger.addEntry(3, 1, 2024, "Salary", 2000);
+    ledger.addEntry(3, 31, 2024, "Dinner out", -100);
+    ledger.addEntry(4, 1, 2024, "Rent", -900);
+
+    Path out = tempOut("Output-indexed.csv");
+    Files.deleteIfExists(out);
+    LedgerFileProcessing.writeLedgerToFile(out.toString(), ledger);
+
+    Path index = tempOut("Output-indexed.csv" + LedgerFileProcessing.INDEX_EXTENSION);
+    assertEquals("Date,Offset\n"
+        + "20230101,32\n"
+        + "20240214,52\n"
+        + "20240301,76\n"
+        + "20240331,126\n"
+        + "20240401,156\n"
+        + "Length," + Files.size(out) + "\n",
+        Files.readString(index));
+
+    LedgerDate start = new LedgerDate(3, 1, 2024);
+    LedgerDate end = new LedgerDate(3, 31, 2024);
+    Ledger march = LedgerFileProcessing.readLedgerFromFile(out.toString(), start, end, 100);
+    assertEquals(ledger.getDateRange(start, end), march);
+    assertEquals(3, march.getNumEntries());
+
+    assertEquals(0, LedgerFileProcessing.readLedgerFromFile(out.toString(),
+        new LedgerDate(5, 1, 2024), new LedgerDate(6, 1, 2024), 100).getNumEntries());
+
+    // A stale index is ignored and the whole file is read instead
+    Files.writeString(out, "20240302,Late entry,5,0\n", StandardOpenOption.APPEND);
+    Ledger stale = LedgerFileProcessing.readLedgerFromFile(out.toString(), start, end, 100);
+    assertEquals(4, stale.getNumEntries());
+
+    Files.delete(index);
+    assertEquals(4, LedgerFileProcessing.readLedgerFromFile(out.toString(), start, end, 100)
+        .getNumEntries());
+  }
+
+  /** Tests writing and reading gzip compressed ledgers */
+  @Test
+  public void testGzipRoundTrip() throws IOException {
+    Ledger ledger = new Ledger(15);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(3, 3, 2033, "Dinner out - friend's portion", 30);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+
+    Path out = tempOut("Output-compressed.csv.gz");
+    Files.deleteIfExists(out);
+    LedgerFileProcessing.writeLedgerToFile(out.toString(), ledger);
+
+    byte[] bytes = Files.readAllBytes(out);
+    assertEquals(0x1f, bytes[0] & 0xFF);
+    assertEquals(0x8b, bytes[1] & 0xFF);
+    assertFalse(Files.exists(tempOut("Output-compressed.csv.gz"
+        + LedgerFileProcessing.INDEX_EXTENSION)));
+    try (java.util.zip.GZIPInputStream in = new java.util.zip.GZIPInputStream(
+        new ByteArrayInputStream(bytes))) {
+      assertEquals(ledger.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    assertEquals(ledger, LedgerFileProcessing.readLedgerFromFile(out.toString(), 15));
+    assertEquals(ledger, LedgerFileProcessing.readLedgerFromStream(
+        new ByteArrayInputStream(bytes), 15));
+    LedgerDate day = new LedgerDate(1, 1, 2023);
+    assertEquals(ledger.getDateRange(day, day),
+        LedgerFileProcessing.readLedgerFromFile(out.toString(), day, day, 15));
+
+    LedgerValidationResult result = LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(bytes), 10, false);
+    assertTrue(result.isValid());
+    assertEquals(3, result.getEntriesFound());
+
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    LedgerFileProcessing.writeLedgerToStream(streamed, ledger, true);
+    assertEquals(ledger, LedgerFileProcessing.readLedgerFromStream(
+        new ByteArrayInputStream(streamed.toByteArray()), 15));
+  }
+
+  /** Tests that gzip data is recognized by its content, not its name */
+  @Test
+  public void testIsGzipped() throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(compressed)) {
+      gzip.write("Date,Description,Amount\n20230101,Gift,50\n".getBytes(
+          StandardCharsets.US_ASCII));
+    }
+    Path misnamed = tempOut("Input-gzipped.csv");
+    Files.write(misnamed, compressed.toByteArray());
+    assertTrue(LedgerFileProcessing.isGzipped(misnamed));
+    assertTrue(LedgerFileProcessing.isGzipped(
+        new ByteArrayInputStream(compressed.toByteArray())));
+
+    Files.writeString(misnamed, "Date,Description,Amount\n");
+    assertFalse(LedgerFileProcessing.isGzipped(misnamed));
+    assertFalse(LedgerFileProcessing.isGzipped(new ByteArrayInputStream(new byte[] {0x1f})));
+    assertFalse(LedgerFileProcessing.isGzipped(new ByteArrayInputStream(new byte[0])));
+  }
+
+  /** Tests that gzip data expanding past the limit, or corrupt, is rejected */
+  @Test
+  public void testGzipLimits() throws IOException {
+    ByteArrayOutputStream bomb = new ByteArrayOutputStream();
+    try (java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(bomb)) {
+      gzip.write("Date,Description,Amount\n".getBytes(StandardCharsets.US_ASCII));
+      gzip.write(new byte[16 * 1024 * 1024]);
+    }
+    assertEquals("Decompressed data too large",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromStream(
+                new ByteArrayInputStream(bomb.toByteArray()), 10))
+            .getMessage());
+    assertEquals("Decompressed data too large",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.validateLedgerFile(
+                new ByteArrayInputStream(bomb.toByteArray()), 10, false))
+            .getMessage());
+
+    // A valid header followed by a corrupt deflate stream
+    ByteArrayOutputStream valid = new ByteArrayOutputStream();
+    try (java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(valid)) {
+      gzip.write("Date,Description,Amount\n20230101,Gift,50\n".getBytes(
+          StandardCharsets.US_ASCII));
+    }
+    byte[] corrupt = valid.toByteArray();
+    for (int i = 10; i < corrupt.length; i++) {
+      corrupt[i] = (byte) 0xFF;
+    }
+    assertEquals("Error reading file.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromStream(
+                new ByteArrayInputStream(corrupt), 10))
+            .getMessage());
+  }
+
+  /** Tests readLedgerFromStream with plain and invalid input */
+  @Test
+  public void testReadLedgerFromStream() {
+    Ledger ledger = LedgerFileProcessing.readLedgerFromStream(new ByteArrayInputStream(
+        "Date,Description,Amount\n20230101,Gift,50\n".getBytes()), 10);
+    assertEquals(1, ledger.getNumEntries());
+    assertEquals(50, ledger.getBalance());
+
+    assertEquals("Input file is empty.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromStream(
+                new ByteArrayInputStream(new byte[0]), 10))
+            .getMessage());
+    assertEquals("Invalid file",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromStream(
+                new ByteArrayInputStream("One,Two\n".getBytes()), 10))
+            .getMessage());
+    assertEquals("Error reading file.",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.readLedgerFromStream(
+                new ByteArrayInputStream(new byte[] {0x1f, (byte) 0x8b, 1, 2, 3}), 10))
+            .getMessage());
+  }
+
+  /**
+   * Tests incremental exports in append and delta mode.
+   *
+   * @throws IOException if an output file cannot be read
+   */
+  @Test
+  public void testExportLedgerSince() throws IOException {
+    Ledger ledger = new Ledger(15);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+
+    Path appended = tempOut("Output-appended.csv");
+    Files.deleteIfExists(appended);
+    int mark = LedgerFileProcessing.exportLedgerSince(appended.toString(), ledger, 0, true);
+    assertEquals(2, mark);
+    assertEquals(ledger.toString(), Files.readString(appended));
+
+    // The new entry sorts first, but only it is exported
+    ledger.addEntry(6, 6, 2022, "Refund", 25);
+    ledger.addEntry(6, 7, 2022, "Refund", 5);
+    Path delta = tempOut("Output-delta.csv");
+    Files.deleteIfExists(delta);
+    assertEquals(4, LedgerFileProcessing.exportLedgerSince(delta.toString(), ledger, mark,
+        false));
+    assertEquals("Date,Description,Amount,Balance\n20220606,Refund,25,-25\n"
+        + "20220607,Refund,5,-20\n", Files.readString(delta));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.exportLedgerSince(delta.toString(), ledger, 2, false));
+
+    mark = LedgerFileProcessing.exportLedgerSince(appended.toString(), ledger, mark, true);
+    assertEquals(4, mark);
+    assertTrue(Files.readString(appended).endsWith(
+        "20330303,Dinner out,-100,-50\n20220606,Refund,25,-25\n20220607,Refund,5,-20\n"));
+    assertEquals(ledger, LedgerFileProcessing.readLedgerFromFile(appended.toString(), 15));
+    assertEquals(4, LedgerFileProcessing.exportLedgerSince(appended.toString(), ledger, mark,
+        true));
+
+    // Marks other than the recorded one would duplicate or skip rows
+    String before = Files.readString(appended);
+    assertEquals("High-water mark does not match the export",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.exportLedgerSince(appended.toString(), ledger, 0, true))
+            .getMessage());
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.exportLedgerSince(appended.toString(), ledger, 2, true));
+    assertEquals(before, Files.readString(appended));
+
+    // A full export records no mark to append from
+    Path full = tempOut("Output-full.csv");
+    Files.deleteIfExists(full);
+    LedgerFileProcessing.writeLedgerToFile(full.toString(), ledger);
+    assertEquals("No high-water mark recorded for the export",
+        assertThrows(IllegalArgumentException.class,
+            () -> LedgerFileProcessing.exportLedgerSince(full.toString(), ledger, 4, true))
+            .getMessage());
+
+    // A failed append is truncated away
+    Path failed = tempOut("Output-failed.csv");
+    Files.deleteIfExists(failed);
+    Path blocked = Path.of(failed + LedgerFileProcessing.MARK_EXTENSION);
+    Files.createDirectories(blocked.resolve("blocked"));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.exportLedgerSince(failed.toString(), ledger, 0, true));
+    assertEquals(0, Files.size(failed));
+
+    Path compressed = tempOut("Output-appended.csv.gz");
+    Files.deleteIfExists(compressed);
+    LedgerFileProcessing.exportLedgerSince(compressed.toString(), ledger, 0, true);
+    ledger.addEntry(1, 2, 2023, "Gift", 10);
+    LedgerFileProcessing.exportLedgerSince(compressed.toString(), ledger, 4, true);
+    assertEquals(ledger, LedgerFileProcessing.readLedgerFromFile(compressed.toString(), 15));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.exportLedgerSince(null, ledger, 0, true));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.exportLedgerSince(appended.toString(), null, 0, true));
+    assertEquals("Invalid high-water mark", assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.exportLedgerSince(appended.toString(), ledger, 6, true))
+        .getMessage());
+  }
+
+  /**
+   * Tests that export filenames cannot leave the export directory.
+   */
+  @Test
+  public void testResolveExportPath() {
+    Path directory = Path.of("target", "test-output", "exports");
+    Path base = directory.toAbsolutePath().normalize();
+    assertEquals(base.resolve("ledger.csv"),
+        LedgerFileProcessing.resolveExportPath(directory, "ledger.csv"));
+    assertEquals(base.resolve("ledger.csv"),
+        LedgerFileProcessing.resolveExportPath(directory, "sub/../ledger.csv"));
+
+    for (String filename : new String[] {"../ledger.csv", "../../pom.xml.csv",
+        base.getRoot().resolve("tmp").resolve("ledger.csv").toString(), ".", "", null}) {
+      assertEquals("Invalid filename", assertThrows(IllegalArgumentException.class,
+          () -> LedgerFileProcessing.resolveExportPath(directory, filename)).getMessage());
+    }
+  }
 }
@@ -0,0 +1,146 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerImportAdmission
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerImportAdmissionTest {
+
+  /**
+   * Tests that slots are limited and returned on close.
+   */
+  @Test
+  public void testConcurrencyLimit() {
+    LedgerImportAdmission admission = new LedgerImportAdmission(2, 0, 1000,
+        Duration.ZERO, 3);
+    LedgerImportAdmission.Permit first = admission.acquire(100);
+    LedgerImportAdmission.Permit second = admission.acquire(100);
+    assertEquals(2, admission.getActive());
+    assertEquals(200, admission.getReservedMemory());
+
+    LedgerImportAdmission.RejectedException rejected = assertThrows(
+        LedgerImportAdmission.RejectedException.class, () -> admission.acquire(100));
+    assertEquals(LedgerImportAdmission.Reason.TOO_MANY_REQUESTS, rejected.getReason());
+    assertEquals(3, rejected.getRetryAfterSeconds());
+
+    first.close();
+    first.close();
+    assertEquals(1, admission.getActive());
+    admission.acquire(100).close();
+    second.close();
+    assertEquals(0, admission.getActive());
+    assertEquals(0, admission.getReservedMemory());
+  }
+
+  /**
+   * Tests that the memory budget is enforced.
+   */
+  @Test
+  public void testMemoryBudget() {
+    LedgerImportAdmission admission = new LedgerImportAdmission(4, 4, 1000,
+        Duration.ofMillis(20), 3);
+    LedgerImportAdmission.Permit permit = admission.acquire(800);
+
+    assertEquals(LedgerImportAdmission.Reason.INSUFFICIENT_MEMORY, assertThrows(
+        LedgerImportAdmission.RejectedException.class, () -> admission.acquire(300))
+        .getReason());
+    LedgerImportAdmission.RejectedException tooLarge = assertThrows(
+        LedgerImportAdmission.RejectedException.class, () -> admission.acquire(1001));
+    assertEquals(LedgerImportAdmission.Reason.TOO_LARGE, tooLarge.getReason());
+    assertEquals(0, tooLarge.getRetryAfterSeconds());
+
+    admission.acquire(200).close();
+    permit.close();
+    admission.acquire(1000).close();
+  }
+
+  /**
+   * Tests that a retained permit frees its slot but keeps its memory until
+   * it is closed.
+   */
+  @Test
+  public void testRetain() {
+    LedgerImportAdmission admission = new LedgerImportAdmission(1, 1, 1000,
+        Duration.ofMillis(20), 3);
+    LedgerImportAdmission.Permit permit = admission.acquire(600);
+    permit.retain(700);
+    permit.retain(100);
+    assertEquals(0, admission.getActive());
+    assertEquals(700, admission.getReservedMemory());
+
+    assertEquals(LedgerImportAdmission.Reason.INSUFFICIENT_MEMORY, assertThrows(
+        LedgerImportAdmission.RejectedException.class, () -> admission.acquire(400))
+        .getReason());
+    admission.acquire(300).close();
+
+    permit.close();
+    permit.retain(100);
+    assertEquals(0, admission.getActive());
+    assertEquals(0, admission.getReservedMemory());
+  }
+
+  /**
+   * Tests that a queued import starts once a permit is returned.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Test
+  public void testQueuedImportStarts() throws InterruptedException {
+    LedgerImportAdmission admission = new LedgerImportAdmission(1, 1, 1000,
+        Duration.ofSeconds(5), 3);
+    LedgerImportAdmission.Permit permit = admission.acquire(100);
+
+    AtomicReference<Object> outcome = new AtomicReference<>();
+    Thread waiter = new Thread(() -> {
+      try (LedgerImportAdmission.Permit queued = admission.acquire(100)) {
+        outcome.set(queued);
+      } catch (RuntimeException e) {
+        outcome.set(e);
+      }
+    });
+    waiter.start();
+    for (int i = 0; i < 500 && admission.getWaiting() != 1; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, admission.getWaiting());
+
+    // The queue holds one import, so another is turned away at once
+    assertEquals(LedgerImportAdmission.Reason.TOO_MANY_REQUESTS, assertThrows(
+        LedgerImportAdmission.RejectedException.class, () -> admission.acquire(100))
+        .getReason());
+
+    permit.close();
+    waiter.join(5000);
+    assertTrue(outcome.get() instanceof LedgerImportAdmission.Permit);
+    assertEquals(0, admission.getActive());
+  }
+
+  /**
+   * Tests memory estimates and exception cases.
+   */
+  @Test
+  public void testEstimateAndExceptions() {
+    assertEquals(600, LedgerImportAdmission.estimateMemory(100, false));
+    assertEquals(4800, LedgerImportAdmission.estimateMemory(100, true));
+    assertEquals(0, LedgerImportAdmission.estimateMemory(-1, false));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> new LedgerImportAdmission(0, 1, 1000, Duration.ZERO, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LedgerImportAdmission(1, -1, 1000, Duration.ZERO, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LedgerImportAdmission(1, 1, 0, Duration.ZERO, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LedgerImportAdmission(1, 1, 1000, null, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LedgerImportAdmission(1, 1, 1000, Duration.ZERO, 0));
+  }
+}
@@ -0,0 +1,164 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerImportJobs
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerImportJobsTest {
+
+  /** Directory for input files. */
+  private Path directory;
+
+  /**
+   * Sets up the input directory.
+   *
+   * @throws IOException if the directory cannot be created
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    directory = Files.createDirectories(Path.of("target", "test-output", "jobs"));
+  }
+
+  /**
+   * Waits for a job to finish.
+   *
+   * @param job the job
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static void await(LedgerImportJobs.ImportJob job) throws InterruptedException {
+    for (int i = 0; i < 500 && !job.isDone(); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(job.isDone());
+  }
+
+  /**
+   * Tests a successful import and its progress figures.
+   *
+   * @throws IOException          if the input file cannot be written
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Test
+  public void testImportSucceeds() throws IOException, InterruptedException {
+    Path file = directory.resolve("Input-job.csv");
+    Files.writeString(file, "Date,Description,Amount\n20230101,Gift,50\n20330303,Dinner out,-100\n");
+
+    try (LedgerImportJobs jobs = new LedgerImportJobs()) {
+      LedgerImportJobs.ImportJob job = jobs.submit(file, 10, false);
+      assertSame(job, jobs.getJob(job.getId()));
+      assertEquals("Input-job.csv", job.getSource());
+      await(job);
+
+      assertEquals(LedgerImportJobs.Status.SUCCEEDED, job.getStatus());
+      assertEquals(2, job.getRowsParsed());
+      assertEquals(Files.size(file), job.getBytesRead());
+      assertEquals(Files.size(file), job.getTotalBytes());
+      assertEquals(0, job.getEtaMillis());
+      assertNull(job.getError());
+      assertEquals(LedgerFileProcessing.readLedgerFromFile(file.toString(), 10), job.getLedger());
+      assertTrue(Files.exists(file));
+    }
+  }
+
+  /**
+   * Tests that failures are reported, temporary copies are deleted, and
+   * finished jobs are evicted once their retention has passed.
+   *
+   * @throws IOException          if the input file cannot be written
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Test
+  public void testFailureAndEviction() throws IOException, InterruptedException {
+    Path file = directory.resolve("Input-job-invalid.csv");
+    Files.writeString(file, "Date,Description,Amount\n2023x101,Gift,50\n");
+
+    try (LedgerImportJobs jobs = new LedgerImportJobs(Duration.ofMillis(50))) {
+      LedgerImportJobs.ImportJob job = jobs.submit(file, 10, true);
+      await(job);
+      assertEquals(LedgerImportJobs.Status.FAILED, job.getStatus());
+      assertEquals("Invalid file", job.getError());
+      assertNull(job.getLedger());
+      assertFalse(Files.exists(file));
+
+      Thread.sleep(60);
+      assertEquals(1, jobs.evictExpired());
+      assertNull(jobs.getJob(job.getId()));
+    }
+  }
+
+  /**
+   * Tests that only the newest finished jobs are kept, that kept ledgers
+   * stay reserved against the admission budget while failures return
+   * their memory, and that closing returns everything.
+   *
+   * @throws IOException          if the input files cannot be written
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Test
+  public void testFinishedJobsBoundedAndReserved() throws IOException, InterruptedException {
+    Path file = directory.resolve("Input-job-kept.csv");
+    Files.writeString(file, "Date,Description,Amount\n20230101,Gift,50\n");
+    Path invalid = directory.resolve("Input-job-kept-invalid.csv");
+    Files.writeString(invalid, "Date,Description,Amount\n2023x101,Gift,50\n");
+    LedgerImportAdmission admission = new LedgerImportAdmission(4, 4, 1_000_000,
+        Duration.ZERO, 1);
+    long kept = LedgerParseCache.estimateMemory(
+        LedgerFileProcessing.readLedgerFromFile(file.toString(), 10));
+
+    LedgerImportJobs jobs = new LedgerImportJobs(Duration.ofMinutes(1), 2);
+    LedgerImportJobs.ImportJob first = jobs.submit(file, 10, false, admission.acquire(1000));
+    await(first);
+    LedgerImportJobs.ImportJob failed = jobs.submit(invalid, 10, false,
+        admission.acquire(1000));
+    await(failed);
+    LedgerImportJobs.ImportJob last = jobs.submit(file, 10, false, admission.acquire(1000));
+    await(last);
+    // The slot is returned and the oldest job dropped just after the last
+    // job is marked done
+    for (int i = 0; i < 500 && (admission.getActive() > 0 || jobs.getJob(first.getId()) != null);
+        i++) {
+      Thread.sleep(10);
+    }
+
+    assertNull(jobs.getJob(first.getId()));
+    assertSame(failed, jobs.getJob(failed.getId()));
+    assertSame(last, jobs.getJob(last.getId()));
+    assertEquals(0, admission.getActive());
+    assertEquals(kept, admission.getReservedMemory());
+
+    jobs.close();
+    assertNull(jobs.getJob(last.getId()));
+    assertEquals(0, admission.getReservedMemory());
+    assertThrows(IllegalStateException.class, () -> jobs.submit(file, 10, false));
+  }
+
+  /**
+   * Tests exception cases.
+   */
+  @Test
+  public void testExceptions() {
+    assertThrows(IllegalArgumentException.class, () -> new LedgerImportJobs(Duration.ZERO));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LedgerImportJobs(Duration.ofMinutes(1), 0));
+    try (LedgerImportJobs jobs = new LedgerImportJobs()) {
+      assertThrows(IllegalArgumentException.class, () -> jobs.submit(null, 10, false));
+      assertThrows(IllegalArgumentException.class,
+          () -> jobs.submit(directory.resolve("Input-job.csv"), 0, false));
+      assertEquals("Input file not found.", assertThrows(IllegalArgumentException.class,
+          () -> jobs.submit(directory.resolve("missing.csv"), 10, false)).getMessage());
+      assertNull(jobs.getJob("unknown"));
+      assertNull(jobs.getJob(null));
+    }
+  }
+}
@@ -0,0 +1,245 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerJournal
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerJournalTest {
+
+  /** Journal directory, emptied before each test. */
+  private Path directory;
+
+  /**
+   * Sets up an empty journal directory.
+   *
+   * @throws IOException if the directory cannot be cleared
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    directory = Path.of("target", "test-output", "journal");
+    if (Files.exists(directory)) {
+      try (Stream<Path> files = Files.walk(directory)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /** Replays every record of a journal directory into a list. */
+  private List<LedgerJournal.JournalRecord> replay() {
+    List<LedgerJournal.JournalRecord> records = new ArrayList<>();
+    LedgerJournal.replay(directory, records::add);
+    return records;
+  }
+
+  /**
+   * Tests that entries added to a journaled ledger are replayed.
+   */
+  @Test
+  public void testAppendAndReplay() {
+    Ledger ledger = new Ledger();
+    try (LedgerJournal journal = new LedgerJournal(directory)) {
+      ledger.attachJournal(journal, "household");
+      ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+      ledger.addEntry(1, 1, 2023, "Gift", 50);
+      ledger.addEntries(List.of(new LedgerEntry(2, 2, 2024, "Café", -5),
+          new LedgerEntry(2, 3, 2024, "Refund", 5)));
+      assertEquals(4, journal.getRecordCount());
+      assertEquals(3, journal.getCommitCount());
+    }
+
+    List<LedgerJournal.JournalRecord> records = replay();
+    assertEquals(4, records.size());
+    assertEquals("household", records.get(0).getLedgerId());
+    assertEquals(0, records.get(0).getOrdinal());
+    assertEquals(new LedgerEntry(3, 3, 2033, "Dinner out", -100), records.get(0).getEntry());
+    assertEquals(3, records.get(3).getOrdinal());
+    assertEquals(new LedgerEntry(2, 2, 2024, "Café", -5), records.get(2).getEntry());
+
+    Ledger replayed = new Ledger();
+    for (LedgerJournal.JournalRecord record : records) {
+      replayed.addEntry(record.getEntry());
+    }
+    assertEquals(ledger, replayed);
+  }
+
+  /**
+   * Tests that concurrent writers share group commits.
+   *
+   * @throws InterruptedException if interrupted while joining
+   */
+  @Test
+  public void testConcurrentWritersGroupCommit() throws InterruptedException {
+    int writers = 8;
+    int perWriter = 50;
+    try (LedgerJournal journal = new LedgerJournal(directory)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int w = 0; w < writers; w++) {
+        String id = "ledger-" + w;
+        Thread thread = new Thread(() -> {
+          for (int i = 0; i < perWriter; i++) {
+            journal.append(id, i, new LedgerEntry(1, 1 + i % 28, 2024, "Item " + i, i + 1));
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertEquals(writers * perWriter, journal.getRecordCount());
+      assertTrue(journal.getCommitCount() < writers * perWriter);
+    }
+
+    Map<String, Integer> nextOrdinal = new HashMap<>();
+    for (LedgerJournal.JournalRecord record : replay()) {
+      int expected = nextOrdinal.getOrDefault(record.getLedgerId(), 0);
+      assertEquals(expected, record.getOrdinal());
+      nextOrdinal.put(record.getLedgerId(), expected + 1);
+    }
+    assertEquals(writers, nextOrdinal.size());
+    for (int count : nextOrdinal.values()) {
+      assertEquals(perWriter, count);
+    }
+  }
+
+  /**
+   * Tests that records enqueued by several writers before any of them waits
+   * are committed together with one fsync.
+   *
+   * @throws InterruptedException if interrupted while joining
+   */
+  @Test
+  public void testEnqueuedRecordsShareOneCommit() throws InterruptedException {
+    int writers = 8;
+    try (LedgerJournal journal = new LedgerJournal(directory)) {
+      java.util.concurrent.CountDownLatch enqueued =
+          new java.util.concurrent.CountDownLatch(writers);
+      List<Thread> threads = new ArrayList<>();
+      for (int w = 0; w < writers; w++) {
+        String id = "ledger-" + w;
+        Thread thread = new Thread(() -> {
+          long sequence = journal.enqueue(id, 0,
+              List.of(new LedgerEntry(1, 1, 2024, "Item", 1)));
+          enqueued.countDown();
+          try {
+            enqueued.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          journal.awaitDurable(sequence);
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertEquals(writers, journal.getRecordCount());
+      assertEquals(1, journal.getCommitCount());
+    }
+    assertEquals(writers, replay().size());
+  }
+
+  /**
+   * Tests that writers adding to the same journaled ledger share commits,
+   * since they wait for durability outside the ledger's lock.
+   *
+   * @throws InterruptedException if interrupted while joining
+   */
+  @Test
+  public void testSameLedgerWritersGroupCommit() throws InterruptedException {
+    int writers = 8;
+    int perWriter = 50;
+    Ledger ledger = new Ledger(writers * perWriter);
+    try (LedgerJournal journal = new LedgerJournal(directory)) {
+      ledger.attachJournal(journal, "shared");
+      List<Thread> threads = new ArrayList<>();
+      for (int w = 0; w < writers; w++) {
+        Thread thread = new Thread(() -> {
+          for (int i = 0; i < perWriter; i++) {
+            ledger.addEntry(1, 1 + i % 28, 2024, "Item " + i, i + 1);
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertEquals(writers * perWriter, journal.getRecordCount());
+      assertTrue(journal.getCommitCount() < writers * perWriter);
+    }
+
+    Ledger replayed = new Ledger(writers * perWriter);
+    for (LedgerJournal.JournalRecord record : replay()) {
+      assertEquals(replayed.getNumEntries(), record.getOrdinal());
+      replayed.addEntry(record.getEntry());
+    }
+    assertEquals(ledger, replayed);
+  }
+
+  /**
+   * Tests that a torn tail is ignored and reopening starts a new segment.
+   *
+   * @throws IOException if the segment cannot be modified
+   */
+  @Test
+  public void testTornTailAndReopen() throws IOException {
+    try (LedgerJournal journal = new LedgerJournal(directory)) {
+      journal.append("a", 0, new LedgerEntry(1, 1, 2023, "Gift", 50));
+      journal.append("a", 1, new LedgerEntry(1, 2, 2023, "Gift", 25));
+    }
+    Path first = LedgerJournal.segmentPath(directory, 1);
+    Files.write(first, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+    assertEquals(2, replay().size());
+
+    try (LedgerJournal journal = new LedgerJournal(directory)) {
+      journal.append("a", 2, new LedgerEntry(1, 3, 2023, "Gift", 10));
+    }
+    assertTrue(Files.exists(LedgerJournal.segmentPath(directory, 2)));
+    List<LedgerJournal.JournalRecord> records = replay();
+    assertEquals(3, records.size());
+    assertEquals(2, records.get(2).getOrdinal());
+  }
+
+  /**
+   * Tests exception cases.
+   */
+  @Test
+  public void testExceptions() {
+    LedgerJournal journal = new LedgerJournal(directory);
+    LedgerEntry entry = new LedgerEntry(1, 1, 2023, "Gift", 50);
+    assertThrows(IllegalArgumentException.class, () -> journal.append(null, 0, entry));
+    assertThrows(IllegalArgumentException.class, () -> journal.append("a", 0, null));
+    assertThrows(IllegalArgumentException.class, () -> new LedgerJournal(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> new Ledger().attachJournal(null, "a"));
+
+    journal.close();
+    assertEquals("Journal is closed",
+        assertThrows(IllegalStateException.class, () -> journal.append("a", 0, entry))
+            .getMessage());
+  }
+}
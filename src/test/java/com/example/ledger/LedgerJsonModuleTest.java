@@ -0,0 +1,152 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerJsonModule
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerJsonModuleTest {
+
+  /** Mapper with the ledger module registered. */
+  private final ObjectMapper mapper = new ObjectMapper().registerModule(new LedgerJsonModule());
+
+  /**
+   * Tests that entries are written as rows in sorted order with running
+   * balances, followed by the add order when it differs.
+   *
+   * @throws JsonProcessingException if serialization fails
+   */
+  @Test
+  public void testSerialize() throws JsonProcessingException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(3, 3, 2033, "Dinner \"out\"", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+
+    assertEquals("{\"capacity\":20,\"numEntries\":2,\"balance\":-50,\"entries\":["
+        + "[20230101,\"Gift\",50,50],[20330303,\"Dinner \\\"out\\\"\",-100,-50]],"
+        + "\"added\":[1,0]}",
+        mapper.writeValueAsString(ledger));
+    assertEquals("{\"capacity\":5,\"numEntries\":0,\"balance\":0,\"entries\":[]}",
+        mapper.writeValueAsString(new Ledger(5)));
+  }
+
+  /**
+   * Tests that a ledger nested in a response map uses the serializer.
+   *
+   * @throws JsonProcessingException if serialization fails
+   */
+  @Test
+  public void testSerializeInResponse() throws JsonProcessingException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    assertEquals("{\"ledger\":{\"capacity\":20,\"numEntries\":1,\"balance\":50,"
+        + "\"entries\":[[20230101,\"Gift\",50,50]]}}",
+        mapper.writeValueAsString(Map.of("ledger", ledger)));
+  }
+
+  /**
+   * Tests that a page is written as rows with the ledger's balances.
+   *
+   * @throws JsonProcessingException if serialization fails
+   */
+  @Test
+  public void testSerializePage() throws JsonProcessingException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    LedgerPage page = LedgerPage.of(ledger, LedgerPage.of(ledger, null, 1).getNextCursor(), 1);
+    assertEquals("[[20240202,\"Refund\",25,75]]", mapper.writeValueAsString(page));
+  }
+
+  /**
+   * Tests that serialized ledgers read back equal, and that derived fields
+   * and unknown fields are ignored.
+   *
+   * @throws JsonProcessingException if serialization fails
+   */
+  @Test
+  public void testRoundTrip() throws JsonProcessingException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+
+    Ledger read = mapper.readValue(mapper.writeValueAsString(ledger), Ledger.class);
+    assertEquals(ledger, read);
+    assertEquals(20, read.getCapacity());
+    assertEquals(-25, read.getBalance());
+    assertEquals(-25, read.getBalanceAt(2));
+
+    read = mapper.readValue("{\"entries\":[[20240202,\"Refund\",25],"
+        + "[20230101,\"Gift\",50,999]],\"balance\":1,\"extra\":{\"a\":[1]}}",
+        Ledger.class);
+    assertEquals(100, read.getCapacity());
+    assertEquals("Gift", read.getDescriptionAt(0));
+    assertEquals(75, read.getBalance());
+  }
+
+  /**
+   * Tests that the add order survives a round trip, so incremental exports
+   * of a ledger sent as JSON pick the right entries.
+   *
+   * @throws JsonProcessingException if serialization fails
+   */
+  @Test
+  public void testAddOrderRoundTrip() throws JsonProcessingException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+
+    Ledger read = mapper.readValue(mapper.writeValueAsString(ledger), Ledger.class);
+    assertEquals(ledger.getEntriesAddedSince(1), read.getEntriesAddedSince(1));
+
+    read = mapper.readValue("{\"entries\":[[20230101,\"Gift\",50],[20240202,\"Refund\",25]],"
+        + "\"added\":[1,0]}", Ledger.class);
+    assertEquals(List.of(new LedgerEntry(1, 1, 2023, "Gift", 50)),
+        read.getEntriesAddedSince(1));
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("{\"entries\":[[20230101,\"Gift\",50]],\"added\":[1]}",
+            Ledger.class));
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("{\"entries\":[[20230101,\"Gift\",50],[20240202,\"B\",5]],"
+            + "\"added\":[0,0]}", Ledger.class));
+  }
+
+  /**
+   * Tests the entry limit and malformed bodies.
+   */
+  @Test
+  public void testDeserializeExceptions() {
+    ObjectMapper limited = new ObjectMapper().registerModule(new LedgerJsonModule(2));
+    JsonMappingException e = assertThrows(JsonMappingException.class,
+        () -> limited.readValue("{\"entries\":[[20230101,\"A\",1],[20230101,\"B\",1],"
+            + "[20230101,\"C\",1],[\"never read\"]]}", Ledger.class));
+    assertTrue(e.getMessage().startsWith("Too many entries"));
+
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("{\"entries\":[[20230101,\"Gift\",0]]}", Ledger.class));
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("{\"entries\":[[20231301,\"Gift\",5]]}", Ledger.class));
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("{\"entries\":[{\"date\":20230101}]}", Ledger.class));
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("{\"capacity\":0}", Ledger.class));
+    assertThrows(JsonMappingException.class,
+        () -> mapper.readValue("[]", Ledger.class));
+    assertThrows(JsonProcessingException.class,
+        () -> mapper.readValue("{\"entries\":[[20230101,\"Gift\",5", Ledger.class));
+    assertThrows(IllegalArgumentException.class, () -> new LedgerJsonModule(0));
+  }
+}
@@ -0,0 +1,134 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerMetrics
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerMetricsTest {
+
+  /** Registry that receives the meters during a test. */
+  private SimpleMeterRegistry registry;
+
+  /**
+   * Adds a fresh registry to the global one, so every meter starts at zero.
+   */
+  @BeforeEach
+  public void setUp() {
+    registry = new SimpleMeterRegistry();
+    Metrics.addRegistry(registry);
+  }
+
+  /**
+   * Removes the test registry.
+   */
+  @AfterEach
+  public void tearDown() {
+    Metrics.removeRegistry(registry);
+  }
+
+  /**
+   * Tests the rows, bytes, timers and per-ledger summaries of a CSV write
+   * and read.
+   *
+   * @throws IOException if writing fails
+   */
+  @Test
+  public void testReadAndWrite() throws IOException {
+    Ledger ledger = new Ledger(10);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Coffee", -5);
+    ledger.addEntry(3, 3, 2025, "Refund", 25);
+    assertEquals(3, registry.get("ledger.entry.add").timer().count());
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    LedgerFileProcessing.writeLedgerToStream(output, ledger);
+    assertEquals(1, registry.get("ledger.write").tag("format", "csv").timer().count());
+    assertEquals(3.0, registry.get("ledger.write.rows").tag("format", "csv").counter().count());
+    assertEquals(output.size(),
+        registry.get("ledger.write.bytes").tag("format", "csv").counter().count());
+
+    Ledger read = LedgerFileProcessing.readLedgerFromStream(
+        new ByteArrayInputStream(output.toByteArray()), 10);
+    assertEquals(ledger, read);
+    assertEquals(1, registry.get("ledger.read").tag("format", "csv").timer().count());
+    assertEquals(3.0, registry.get("ledger.read.rows").tag("format", "csv").counter().count());
+    assertEquals(output.size(),
+        registry.get("ledger.read.bytes").tag("format", "csv").counter().count());
+    assertEquals(1, registry.get("ledger.entries").summary().count());
+    assertEquals(3.0, registry.get("ledger.entries").summary().totalAmount());
+    assertTrue(registry.get("ledger.heap").summary().totalAmount() > 0);
+  }
+
+  /**
+   * Tests that rejected rows and failed reads are counted by error.
+   */
+  @Test
+  public void testFailedRows() {
+    String csv = "Date,Description,Amount\n"
+        + "20230101,Gift,50\n"
+        + "20231301,Bad month,10\n"
+        + "20230102,Nothing,0\n"
+        + "20230103,Also bad,x\n";
+    LedgerFileProcessing.validateLedgerFile(
+        new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 10, false);
+    assertEquals(1.0, registry.get("ledger.rows.failed").tag("operation", "validate")
+        .tag("error", "invalid-date").counter().count());
+    assertEquals(1.0, registry.get("ledger.rows.failed").tag("operation", "validate")
+        .tag("error", "amount-is-zero").counter().count());
+    assertEquals(1.0, registry.get("ledger.rows.failed").tag("operation", "validate")
+        .tag("error", "invalid-amount").counter().count());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerFileProcessing.readLedgerFromStream(
+            new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 10));
+    assertEquals(1.0, registry.get("ledger.rows.failed").tag("operation", "read")
+        .tag("error", "invalid-date").counter().count());
+    assertEquals(1.0, registry.get("ledger.read.failures").tag("format", "csv")
+        .tag("error", "invalid-date").counter().count());
+  }
+
+  /**
+   * Tests the gauges of an admission controller, bound to a registry of
+   * their own as Spring binds them to its registry.
+   */
+  @Test
+  public void testBindAdmission() {
+    LedgerImportAdmission admission = new LedgerImportAdmission(2, 4, 1000,
+        Duration.ofMillis(10), 1);
+    SimpleMeterRegistry beans = new SimpleMeterRegistry();
+    LedgerMetrics.admissionMetrics(admission).bindTo(beans);
+    try (LedgerImportAdmission.Permit permit = admission.acquire(100)) {
+      assertNotNull(permit);
+      assertEquals(1.0, beans.get("ledger.imports.active").gauge().value());
+      assertEquals(100.0, beans.get("ledger.imports.reserved").gauge().value());
+    }
+    assertEquals(0.0, beans.get("ledger.imports.active").gauge().value());
+    assertEquals(0.0, beans.get("ledger.imports.queued").gauge().value());
+  }
+
+  /**
+   * Tests turning exception messages into tag values.
+   */
+  @Test
+  public void testErrorTag() {
+    assertEquals("invalid-date", LedgerMetrics.errorTag("Invalid date"));
+    assertEquals("input-file-is-empty", LedgerMetrics.errorTag("Input file is empty."));
+    assertEquals("too-many-entries", LedgerMetrics.errorTag("Too many entries: limit is 5"));
+    assertEquals("unknown", LedgerMetrics.errorTag(null));
+  }
+}
@@ -0,0 +1,105 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerNdjsonWriter
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerNdjsonWriterTest {
+
+  /**
+   * Creates a ledger with credits and debits over several dates.
+   *
+   * @return the ledger
+   */
+  private static Ledger ledger() {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(2, 2, 2024, "Coffee", -5);
+    return ledger;
+  }
+
+  /**
+   * Writes entries and returns the output.
+   *
+   * @param entries the entries
+   * @param filter  the filter
+   * @return the NDJSON text
+   * @throws IOException if writing fails
+   */
+  private static String write(List<LedgerEntry> entries, LedgerNdjsonWriter.Filter filter)
+      throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    LedgerNdjsonWriter.write(output, entries, filter);
+    return output.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Tests writing every entry and filtered entries.
+   *
+   * @throws IOException if writing fails
+   */
+  @Test
+  public void testWrite() throws IOException {
+    Ledger ledger = ledger();
+    List<LedgerEntry> all = LedgerNdjsonWriter.selectRange(ledger, null, null);
+    assertEquals("{\"date\":20230101,\"description\":\"Gift\",\"amount\":50,\"balance\":50}\n"
+        + "{\"date\":20240202,\"description\":\"Coffee\",\"amount\":-5,\"balance\":45}\n"
+        + "{\"date\":20240202,\"description\":\"Refund\",\"amount\":25,\"balance\":70}\n"
+        + "{\"date\":20330303,\"description\":\"Dinner out\",\"amount\":-100,\"balance\":-30}\n",
+        write(all, LedgerNdjsonWriter.Filter.ALL));
+    assertEquals("{\"date\":20240202,\"description\":\"Coffee\",\"amount\":-5,\"balance\":-5}\n"
+        + "{\"date\":20330303,\"description\":\"Dinner out\",\"amount\":-100,\"balance\":-105}\n",
+        write(all, LedgerNdjsonWriter.Filter.parse("Debits")));
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    assertEquals(2, LedgerNdjsonWriter.write(output, all, LedgerNdjsonWriter.Filter.CREDITS));
+    assertEquals("", write(List.of(), LedgerNdjsonWriter.Filter.ALL));
+  }
+
+  /**
+   * Tests that date range selection matches getDateRange.
+   */
+  @Test
+  public void testSelectRange() {
+    Ledger ledger = ledger();
+    assertEquals(ledger.getDateRange(new LedgerDate(2, 2, 2024), new LedgerDate(3, 3, 2033))
+        .getEntries(), LedgerNdjsonWriter.selectRange(ledger, new LedgerDate(2, 2, 2024),
+            new LedgerDate(3, 3, 2033)));
+    assertEquals(2, LedgerNdjsonWriter.selectRange(ledger, new LedgerDate(1, 2, 2023),
+        new LedgerDate(2, 2, 2024)).size());
+    assertEquals(1, LedgerNdjsonWriter.selectRange(ledger, null, new LedgerDate(1, 1, 2024))
+        .size());
+    assertEquals(1, LedgerNdjsonWriter.selectRange(ledger, new LedgerDate(1, 1, 2025), null)
+        .size());
+    assertTrue(LedgerNdjsonWriter.selectRange(ledger, new LedgerDate(1, 1, 2025),
+        new LedgerDate(1, 1, 2024)).isEmpty());
+  }
+
+  /**
+   * Tests exception cases.
+   */
+  @Test
+  public void testExceptions() {
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerNdjsonWriter.selectRange(null, null, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerNdjsonWriter.write(null, List.of(), LedgerNdjsonWriter.Filter.ALL));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerNdjsonWriter.write(new ByteArrayOutputStream(), null,
+            LedgerNdjsonWriter.Filter.ALL));
+    assertEquals("Unsupported type: both", assertThrows(IllegalArgumentException.class,
+        () -> LedgerNdjsonWriter.Filter.parse("both")).getMessage());
+  }
+}
@@ -0,0 +1,97 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerPage
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerPageTest {
+
+  /**
+   * Collects every entry by following cursors.
+   *
+   * @param ledger the ledger
+   * @param limit  the page size
+   * @return the entries in the order returned
+   */
+  private static List<LedgerEntry> readAll(Ledger ledger, int limit) {
+    List<LedgerEntry> all = new ArrayList<>();
+    String cursor = null;
+    do {
+      LedgerPage page = LedgerPage.of(ledger, cursor, limit);
+      assertTrue(page.getNumEntries() <= limit);
+      all.addAll(page.getEntries());
+      cursor = page.getNextCursor();
+    } while (cursor != null);
+    return all;
+  }
+
+  /**
+   * Tests that following cursors returns every entry once, in order, with
+   * the ledger's running balances, including runs of identical entries.
+   */
+  @Test
+  public void testPaging() {
+    Ledger ledger = new Ledger(100);
+    for (int i = 0; i < 20; i++) {
+      ledger.addEntry(1 + i % 3, 1 + i % 5, 2023, i % 4 == 0 ? "Rent: May" : "Gift", 10);
+    }
+    for (int limit = 1; limit <= 21; limit++) {
+      assertEquals(ledger.getEntries(), readAll(ledger, limit));
+    }
+
+    LedgerPage first = LedgerPage.of(ledger, null, 7);
+    assertEquals(7, first.getNumEntries());
+    assertTrue(first.hasMore());
+    LedgerPage second = LedgerPage.of(ledger, first.getNextCursor(), 7);
+    assertEquals(ledger.getEntry(7), second.getEntries().get(0));
+    assertEquals(ledger.getBalanceAt(7), second.getBalanceAt(0));
+
+    LedgerPage last = LedgerPage.of(ledger, null, 20);
+    assertFalse(last.hasMore());
+    assertNull(last.getNextCursor());
+    assertEquals(0, LedgerPage.of(new Ledger(), null, 5).getNumEntries());
+  }
+
+  /**
+   * Tests that a cursor stays on its key when entries are added before it.
+   */
+  @Test
+  public void testCursorAfterInsert() {
+    Ledger ledger = new Ledger(100);
+    ledger.addEntry(1, 1, 2023, "A", 1);
+    ledger.addEntry(1, 2, 2023, "B", 2);
+    ledger.addEntry(1, 3, 2023, "C", 3);
+    String cursor = LedgerPage.of(ledger, null, 2).getNextCursor();
+
+    ledger.addEntry(1, 1, 2022, "Earlier", 4);
+    ledger.addEntry(1, 2, 2023, "Aardvark", 5);
+    LedgerPage next = LedgerPage.of(ledger, cursor, 10);
+    assertEquals(List.of(new LedgerEntry(1, 3, 2023, "C", 3)), next.getEntries());
+    assertEquals(15, next.getBalanceAt(0));
+  }
+
+  /**
+   * Tests exception cases.
+   */
+  @Test
+  public void testExceptions() {
+    Ledger ledger = new Ledger();
+    assertThrows(IllegalArgumentException.class, () -> LedgerPage.of(null, null, 5));
+    assertThrows(IllegalArgumentException.class, () -> LedgerPage.of(ledger, null, 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerPage.of(ledger, null, LedgerPage.MAX_LIMIT + 1));
+    assertEquals("Invalid cursor", assertThrows(IllegalArgumentException.class,
+        () -> LedgerPage.of(ledger, "not*base64", 5)).getMessage());
+    assertThrows(IllegalArgumentException.class, () -> LedgerPage.of(ledger, "YWJj", 5));
+    assertThrows(IllegalArgumentException.class, () -> LedgerPage.of(ledger,
+        LedgerPage.encodeCursor(new LedgerEntry(1, 1, 2023, "A", 1), 0), 5));
+  }
+}
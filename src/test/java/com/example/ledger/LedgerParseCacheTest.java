@@ -0,0 +1,113 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerParseCache
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerParseCacheTest {
+
+  /**
+   * Creates a ledger with some entries.
+   *
+   * @param entries the number of entries
+   * @return the ledger
+   */
+  private static Ledger ledger(int entries) {
+    Ledger ledger = new Ledger(100);
+    for (int i = 0; i < entries; i++) {
+      ledger.addEntry(1, 1 + i % 28, 2023, "Gift", 10 + i);
+    }
+    return ledger;
+  }
+
+  /**
+   * Tests hits, misses and that hits return independent copies.
+   */
+  @Test
+  public void testHitsReturnCopies() {
+    LedgerParseCache cache = new LedgerParseCache(10, 1_000_000);
+    Ledger parsed = ledger(3);
+
+    assertNull(cache.get("abc", 100));
+    cache.put("abc", 100, parsed);
+    parsed.addEntry(2, 2, 2024, "Refund", 5);
+
+    Ledger first = cache.get("abc", 100);
+    assertEquals(ledger(3), first);
+    assertNull(cache.get("abc", 50));
+
+    first.addEntry(3, 3, 2024, "Refund", 5);
+    assertEquals(ledger(3), cache.get("abc", 100));
+
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(0.5, cache.getHitRate());
+    assertEquals(1, cache.getSize());
+  }
+
+  /**
+   * Tests least recently used eviction by count and by bytes.
+   */
+  @Test
+  public void testEviction() {
+    LedgerParseCache cache = new LedgerParseCache(2, 1_000_000);
+    cache.put("a", 100, ledger(1));
+    cache.put("b", 100, ledger(1));
+    assertNotNull(cache.get("a", 100));
+    cache.put("c", 100, ledger(1));
+    assertNull(cache.get("b", 100));
+    assertNotNull(cache.get("a", 100));
+    assertNotNull(cache.get("c", 100));
+    assertEquals(1, cache.getEvictions());
+
+    long oneEntry = LedgerParseCache.estimateMemory(ledger(1));
+    LedgerParseCache small = new LedgerParseCache(10, 3 * oneEntry);
+    small.put("a", 100, ledger(2));
+    small.put("b", 100, ledger(1));
+    assertEquals(3 * oneEntry, small.getBytes());
+    small.put("c", 100, ledger(1));
+    assertNull(small.get("a", 100));
+    assertEquals(2 * oneEntry, small.getBytes());
+
+    // Too large to cache at all
+    small.put("d", 100, ledger(4));
+    assertNull(small.get("d", 100));
+    assertEquals(2, small.getSize());
+
+    small.clear();
+    assertEquals(0, small.getSize());
+    assertEquals(0, small.getBytes());
+  }
+
+  /**
+   * Tests content hashing and exception cases.
+   *
+   * @throws IOException if hashing fails
+   */
+  @Test
+  public void testHashAndExceptions() throws IOException {
+    assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+        LedgerParseCache.hash(new ByteArrayInputStream(new byte[0])));
+    byte[] content = "Date,Description,Amount\n20230101,Gift,50\n"
+        .getBytes(StandardCharsets.UTF_8);
+    assertEquals(LedgerParseCache.hash(new ByteArrayInputStream(content)),
+        LedgerParseCache.hash(new ByteArrayInputStream(content.clone())));
+
+    assertThrows(IllegalArgumentException.class, () -> new LedgerParseCache(0, 1));
+    assertThrows(IllegalArgumentException.class, () -> new LedgerParseCache(1, 0));
+    LedgerParseCache cache = new LedgerParseCache(1, 1000);
+    assertThrows(IllegalArgumentException.class, () -> cache.put(null, 1, ledger(1)));
+    assertThrows(IllegalArgumentException.class, () -> cache.put("a", 1, null));
+    assertEquals("Input file not found.", assertThrows(IllegalArgumentException.class,
+        () -> LedgerParseCache.hash(java.nio.file.Path.of("missing.csv"))).getMessage());
+  }
+}
@@ -0,0 +1,178 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerRecovery
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerRecoveryTest {
+
+  /** Root directory, emptied before each test. */
+  private Path root;
+
+  /** Journal directory. */
+  private Path journalDirectory;
+
+  /** Snapshot file. */
+  private Path snapshot;
+
+  /**
+   * Sets up an empty root directory.
+   *
+   * @throws IOException if the directory cannot be cleared
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    root = Path.of("target", "test-output", "recovery");
+    journalDirectory = root.resolve("journal");
+    snapshot = root.resolve("ledgers" + LedgerRecovery.SNAPSHOT_SUFFIX);
+    if (Files.exists(root)) {
+      try (Stream<Path> files = Files.walk(root)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+    Files.createDirectories(root);
+  }
+
+  /**
+   * Writes ledgers to the snapshot file.
+   *
+   * @param ledgers the ledgers, by id
+   */
+  private void write(Map<String, Ledger> ledgers) {
+    LedgerFileProcessing.writeAtomically(snapshot.toString(), false,
+        channel -> LedgerRecovery.writeSnapshot(channel, ledgers));
+  }
+
+  /**
+   * Tests that ledgers, their capacity and the order entries were added in
+   * survive a snapshot, read whole or a few bytes at a time.
+   *
+   * @throws IOException if the snapshot cannot be read
+   */
+  @Test
+  public void testSnapshotRoundTrip() throws IOException {
+    Ledger household = new Ledger(20);
+    household.addEntry(3, 3, 2033, "Dinner out", -100);
+    household.addEntry(1, 1, 2023, "Gift", 50);
+    household.addEntry(2, 2, 2024, "Gift", 25);
+    Ledger business = new Ledger();
+    business.addEntries(List.of(new LedgerEntry(2, 2, 2024, "Café", -5),
+        new LedgerEntry(2, 3, 2024, "Café", -7)));
+    Map<String, Ledger> ledgers = new LinkedHashMap<>();
+    ledgers.put("household", household);
+    ledgers.put("business", business);
+    ledgers.put("empty", new Ledger(5));
+    write(ledgers);
+
+    for (int windowBytes : new int[] {LedgerRecovery.MAP_WINDOW_BYTES, 13, 1}) {
+      Map<String, Ledger> read = new LinkedHashMap<>();
+      LedgerRecovery.readSnapshot(snapshot, read, windowBytes);
+      assertEquals(ledgers, read);
+      assertEquals(20, read.get("household").getCapacity());
+      assertEquals(household.getEntriesAddedSince(1),
+          read.get("household").getEntriesAddedSince(1));
+      assertEquals(List.of(new LedgerEntry(2, 2, 2024, "Gift", 25)),
+          read.get("household").getEntriesAddedSince(2));
+      assertEquals(-12, read.get("business").getBalance());
+      assertEquals(0, read.get("empty").getNumEntries());
+    }
+  }
+
+  /**
+   * Tests that malformed snapshots are rejected before anything is
+   * allocated for the lengths they claim.
+   *
+   * @throws IOException if the snapshot cannot be written
+   */
+  @Test
+  public void testMalformedSnapshots() throws IOException {
+    Ledger ledger = new Ledger();
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    write(Map.of("a", ledger));
+    byte[] valid = Files.readAllBytes(snapshot);
+
+    // Header, then the id "a" at 20, capacity at 25, entry count at 29 and
+    // dictionary size at 33
+    assertInvalid(patch(valid, 0, 0));
+    assertInvalid(patch(valid, 4, 99));
+    assertInvalid(patch(valid, 20, -1));
+    assertInvalid(patch(valid, 20, Integer.MAX_VALUE));
+    assertInvalid(patch(valid, 29, -1));
+    assertInvalid(patch(valid, 29, Integer.MAX_VALUE));
+    assertInvalid(patch(valid, 33, Integer.MAX_VALUE));
+    assertInvalid(Arrays.copyOf(valid, valid.length - 1));
+    assertInvalid(new byte[2]);
+  }
+
+  /**
+   * Writes bytes to the snapshot file and checks they are rejected.
+   *
+   * @param bytes the malformed snapshot
+   * @throws IOException if the file cannot be written
+   */
+  private void assertInvalid(byte[] bytes) throws IOException {
+    Files.write(snapshot, bytes);
+    assertEquals("Invalid snapshot", assertThrows(IllegalArgumentException.class,
+        () -> LedgerRecovery.readSnapshot(snapshot, new LinkedHashMap<>())).getMessage());
+  }
+
+  /**
+   * Copies bytes with an int replaced.
+   *
+   * @param bytes  the bytes
+   * @param offset the offset of the int
+   * @param value  the new value
+   * @return the patched copy
+   */
+  private static byte[] patch(byte[] bytes, int offset, int value) {
+    byte[] patched = bytes.clone();
+    ByteBuffer.wrap(patched).putInt(offset, value);
+    return patched;
+  }
+
+  /**
+   * Tests that journal records a ledger already holds are skipped, as are
+   * the records of ledgers that are not asked for.
+   */
+  @Test
+  public void testReplayTail() {
+    try (LedgerJournal journal = new LedgerJournal(journalDirectory)) {
+      journal.append("a", 0, new LedgerEntry(1, 1, 2023, "Gift", 50));
+      journal.append("a", 1, new LedgerEntry(1, 2, 2023, "Gift", 25));
+      journal.append("b", 0, new LedgerEntry(1, 3, 2023, "Tip", 5));
+      journal.append("gone", 0, new LedgerEntry(1, 3, 2023, "Tip", 5));
+      journal.append("a", 2, new LedgerEntry(1, 4, 2023, "Refund", 10));
+    }
+
+    Map<String, Integer> asked = new LinkedHashMap<>();
+    Map<String, List<LedgerEntry>> tail = LedgerRecovery.replayTail(journalDirectory, id -> {
+      asked.merge(id, 1, Integer::sum);
+      return id.equals("a") ? 1 : id.equals("gone") ? -1 : 0;
+    });
+    assertEquals(Map.of("a", 1, "b", 1, "gone", 1), asked);
+    assertEquals(List.of("a", "b"), List.copyOf(tail.keySet()));
+    assertEquals(List.of(new LedgerEntry(1, 2, 2023, "Gift", 25),
+        new LedgerEntry(1, 4, 2023, "Refund", 10)), tail.get("a"));
+    assertEquals(List.of(new LedgerEntry(1, 3, 2023, "Tip", 5)), tail.get("b"));
+  }
+
+}
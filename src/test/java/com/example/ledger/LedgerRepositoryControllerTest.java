@@ -0,0 +1,108 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Tests LedgerRepositoryController
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerRepositoryControllerTest {
+
+  /**
+   * Tests that uploads are admitted against the import memory budget.
+   *
+   * @throws IOException if the repository directory cannot be created
+   */
+  @Test
+  public void testUploadAdmission() throws IOException {
+    MockMultipartFile upload = new MockMultipartFile("file", "ledger.csv", "text/csv",
+        "Date,Description,Amount\n20230101,Gift,50\n".getBytes(StandardCharsets.US_ASCII));
+    long needed = LedgerImportAdmission.estimateMemory(upload.getSize(), false);
+    Path directory = Files.createTempDirectory("ledger-repository");
+    LedgerRepository repository = new LedgerRepository(directory, 4);
+    try {
+      ResponseEntity<Map<String, Object>> response = new LedgerRepositoryController(repository,
+          new LedgerImportAdmission(1, 0, needed - 1, Duration.ZERO, 1),
+          new LedgerParseCache(4, 1 << 20)).uploadLedger(upload, 10);
+      assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, response.getStatusCode());
+      assertTrue(repository.getIds().isEmpty());
+
+      // A second import waits for the only slot, and is told when to retry
+      LedgerImportAdmission busy = new LedgerImportAdmission(1, 0, needed, Duration.ZERO, 7);
+      try (LedgerImportAdmission.Permit permit = busy.acquire(1)) {
+        response = new LedgerRepositoryController(repository, busy,
+            new LedgerParseCache(4, 1 << 20)).uploadLedger(upload, 10);
+      }
+      assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+      assertEquals(List.of("7"), response.getHeaders().get(HttpHeaders.RETRY_AFTER));
+
+      response = new LedgerRepositoryController(repository,
+          new LedgerImportAdmission(1, 0, needed, Duration.ZERO, 1),
+          new LedgerParseCache(4, 1 << 20)).uploadLedger(upload, 10);
+      assertEquals(HttpStatus.CREATED, response.getStatusCode());
+      assertEquals(1, response.getBody().get("entriesCount"));
+    } finally {
+      repository.close();
+    }
+  }
+
+  /**
+   * Tests that the JSON and NDJSON entry queries accept the same date
+   * ranges.
+   *
+   * @throws IOException if the repository directory cannot be created
+   */
+  @Test
+  public void testEntriesDateRange() throws IOException {
+    Path directory = Files.createTempDirectory("ledger-repository");
+    LedgerRepository repository = new LedgerRepository(directory, 4);
+    try {
+      Ledger ledger = new Ledger(10);
+      ledger.addEntry(1, 1, 2023, "Gift", 50);
+      ledger.addEntry(2, 2, 2024, "Refund", 25);
+      ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+      String id = repository.create(ledger);
+      LedgerRepositoryController controller = new LedgerRepositoryController(repository,
+          new LedgerImportAdmission(1, 0, 1 << 20, Duration.ZERO, 1),
+          new LedgerParseCache(4, 1 << 20));
+
+      ResponseEntity<Map<String, Object>> json = controller.getEntries(id, 20240101, null,
+          null);
+      assertEquals(HttpStatus.OK, json.getStatusCode());
+      assertEquals(2, json.getBody().get("entriesCount"));
+      json = controller.getEntries(id, null, 20240101, null);
+      assertEquals(1, json.getBody().get("entriesCount"));
+
+      ResponseEntity<StreamingResponseBody> ndjson = controller.streamEntries(id, "all",
+          20240101, null, null);
+      assertEquals(HttpStatus.OK, ndjson.getStatusCode());
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      ndjson.getBody().writeTo(output);
+      assertEquals(2, output.toString(StandardCharsets.UTF_8).lines().count());
+
+      assertEquals(HttpStatus.BAD_REQUEST,
+          controller.getEntries(id, 20241301, null, null).getStatusCode());
+      assertEquals(HttpStatus.BAD_REQUEST,
+          controller.streamEntries(id, "all", 20241301, null, null).getStatusCode());
+    } finally {
+      repository.close();
+    }
+  }
+}
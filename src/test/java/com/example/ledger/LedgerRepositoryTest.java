@@ -0,0 +1,252 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerRepository
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerRepositoryTest {
+
+  /** Repository directory, emptied before each test. */
+  private Path directory;
+
+  /**
+   * Sets up an empty repository directory.
+   *
+   * @throws IOException if the directory cannot be cleared
+   */
+  @BeforeEach
+  public void setUp() throws IOException {
+    directory = Path.of("target", "test-output", "repository");
+    if (Files.exists(directory)) {
+      try (Stream<Path> files = Files.walk(directory)) {
+        for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates a ledger with one entry.
+   *
+   * @param amount the entry amount
+   * @return the ledger
+   */
+  private static Ledger ledger(int amount) {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(1, 1, 2023, "Gift", amount);
+    return ledger;
+  }
+
+  /**
+   * Tests creating, appending to and reading ledgers.
+   */
+  @Test
+  public void testCreateAppendRead() {
+    LedgerRepository repository = new LedgerRepository(directory, 4);
+    String id = repository.create(ledger(50));
+    assertTrue(repository.exists(id));
+
+    assertEquals(3, repository.append(id, List.of(new LedgerEntry(3, 3, 2033, "Dinner out", -100),
+        new LedgerEntry(2, 2, 2024, "Refund", 25))));
+    assertEquals(-25, (int) repository.read(id, Ledger::getBalance));
+
+    Ledger expected = ledger(50);
+    expected.addEntry(2, 2, 2024, "Refund", 25);
+    expected.addEntry(3, 3, 2033, "Dinner out", -100);
+    assertEquals(expected, repository.read(id, Ledger::copy));
+    assertEquals(List.of(id), repository.getIds());
+  }
+
+  /**
+   * Tests that cold ledgers are written to disk and loaded again, and that
+   * changes survive a new repository over the same directory.
+   */
+  @Test
+  public void testEvictionAndReload() {
+    LedgerRepository repository = new LedgerRepository(directory, 2);
+    String first = repository.create(ledger(10));
+    String second = repository.create(ledger(20));
+    String third = repository.create(ledger(30));
+
+    assertEquals(2, repository.getHotCount());
+    assertEquals(1, repository.getEvictions());
+    // Ledgers are written out when they are created
+    assertTrue(Files.exists(directory.resolve(first + LedgerRepository.FILE_SUFFIX)));
+    assertTrue(Files.exists(directory.resolve(third + LedgerRepository.FILE_SUFFIX)));
+
+    repository.append(first, List.of(new LedgerEntry(1, 2, 2023, "Gift", 5)));
+    assertEquals(1, repository.getLoads());
+    assertEquals(15, (int) repository.read(first, Ledger::getBalance));
+    assertEquals(20, (int) repository.read(first, Ledger::getCapacity));
+    assertEquals(3, repository.getIds().size());
+
+    repository.close();
+    LedgerRepository reopened = new LedgerRepository(directory, 2);
+    assertEquals(repository.getIds(), reopened.getIds());
+    assertEquals(15, (int) reopened.read(first, Ledger::getBalance));
+    assertEquals(20, (int) reopened.read(second, Ledger::getBalance));
+    assertEquals(30, (int) reopened.read(third, Ledger::getBalance));
+    assertEquals(1, reopened.getEvictions());
+  }
+
+  /**
+   * Tests that appends made after a ledger was last written survive a
+   * crash, by opening a second repository over the directory of one that
+   * was never flushed or closed.
+   *
+   * @throws IOException if the journal directory cannot be listed
+   */
+  @Test
+  public void testJournalRecovery() throws IOException {
+    LedgerRepository crashed = new LedgerRepository(directory, 4);
+    String id = crashed.create(ledger(50));
+    String deleted = crashed.create(ledger(10));
+    crashed.append(id, List.of(new LedgerEntry(3, 3, 2033, "Dinner out", -100)));
+    crashed.append(id, List.of(new LedgerEntry(2, 2, 2024, "Refund", 25)));
+    crashed.append(deleted, List.of(new LedgerEntry(2, 2, 2024, "Refund", 25)));
+    crashed.delete(deleted);
+    Ledger expected = crashed.read(id, Ledger::copy);
+
+    LedgerRepository recovered = new LedgerRepository(directory, 4);
+    assertEquals(expected, recovered.read(id, Ledger::copy));
+    assertEquals(expected.getEntriesAddedSince(1),
+        recovered.read(id, ledger -> ledger.getEntriesAddedSince(1)));
+    assertFalse(recovered.exists(deleted));
+    assertEquals(List.of(id), recovered.getIds());
+
+    // Appends after recovery are journaled again, and flushing drops the
+    // segments the files now cover
+    recovered.append(id, List.of(new LedgerEntry(1, 2, 2023, "Gift", 5)));
+    recovered.flush();
+    try (Stream<Path> segments = Files.list(directory.resolve(
+        LedgerRepository.JOURNAL_DIRECTORY))) {
+      assertEquals(1, segments.count());
+    }
+    recovered.close();
+    assertEquals(-20, (int) new LedgerRepository(directory, 4).read(id, Ledger::getBalance));
+  }
+
+  /**
+   * Tests that a malformed ledger file found at startup is set aside rather
+   * than stopping the other ledgers from being recovered.
+   *
+   * @throws IOException if the file cannot be corrupted
+   */
+  @Test
+  public void testCorruptFileSetAside() throws IOException {
+    LedgerRepository crashed = new LedgerRepository(directory, 4);
+    String good = crashed.create(ledger(50));
+    String bad = crashed.create(ledger(10));
+    crashed.append(good, List.of(new LedgerEntry(2, 2, 2024, "Refund", 25)));
+    crashed.append(bad, List.of(new LedgerEntry(2, 2, 2024, "Refund", 25)));
+    Path badFile = directory.resolve(bad + LedgerRepository.FILE_SUFFIX);
+    byte[] bytes = Files.readAllBytes(badFile);
+    Files.write(badFile, Arrays.copyOf(bytes, bytes.length / 2));
+
+    LedgerRepository recovered = new LedgerRepository(directory, 4);
+    assertEquals(75, (int) recovered.read(good, Ledger::getBalance));
+    assertFalse(recovered.exists(bad));
+    assertTrue(Files.exists(directory.resolve(bad + LedgerRepository.FILE_SUFFIX
+        + LedgerRepository.CORRUPT_SUFFIX)));
+    assertEquals(List.of(good), recovered.getIds());
+    recovered.close();
+  }
+
+  /**
+   * Tests appending to and reading ledgers from several threads while the
+   * hot set is too small to hold them, so they are evicted and reloaded
+   * throughout.
+   *
+   * @throws Exception if a thread fails
+   */
+  @Test
+  public void testConcurrentAppendsAcrossEvictions() throws Exception {
+    LedgerRepository repository = new LedgerRepository(directory, 2);
+    int numLedgers = 6;
+    int appends = 50;
+    String[] ids = new String[numLedgers];
+    for (int i = 0; i < numLedgers; i++) {
+      Ledger ledger = new Ledger(1000);
+      ledger.addEntry(1, 1, 2023, "Gift", 1);
+      ids[i] = repository.create(ledger);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numLedgers);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int i = 0; i < numLedgers; i++) {
+        String id = ids[i];
+        String other = ids[(i + 1) % numLedgers];
+        workers.add(executor.submit(() -> {
+          for (int j = 0; j < appends; j++) {
+            repository.append(id, List.of(new LedgerEntry(2, 1 + j % 28, 2024, "Pay", 2)));
+            int numEntries = repository.read(other, Ledger::getNumEntries);
+            assertTrue(numEntries >= 1 && numEntries <= appends + 1);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue(repository.getEvictions() > 0);
+    assertTrue(repository.getHotCount() <= 2);
+    for (String id : ids) {
+      assertEquals(appends + 1, (int) repository.read(id, Ledger::getNumEntries));
+      assertEquals(1 + 2 * appends, (int) repository.read(id, Ledger::getBalance));
+    }
+    repository.close();
+
+    LedgerRepository reopened = new LedgerRepository(directory, 2);
+    for (String id : ids) {
+      assertEquals(1 + 2 * appends, (int) reopened.read(id, Ledger::getBalance));
+    }
+    reopened.close();
+  }
+
+  /**
+   * Tests deletion and exception cases.
+   */
+  @Test
+  public void testDeleteAndExceptions() {
+    LedgerRepository repository = new LedgerRepository(directory, 1);
+    String id = repository.create(ledger(10));
+    repository.create(ledger(20));
+    assertTrue(repository.delete(id));
+    assertFalse(repository.delete(id));
+    assertFalse(repository.exists(id));
+    assertEquals(1, repository.getIds().size());
+
+    assertThrows(NoSuchElementException.class, () -> repository.read(id, Ledger::copy));
+    assertThrows(NoSuchElementException.class,
+        () -> repository.read("../escape", Ledger::copy));
+    assertFalse(repository.delete("../escape"));
+    assertThrows(IllegalArgumentException.class, () -> repository.create(null));
+    assertThrows(IllegalArgumentException.class, () -> new LedgerRepository(directory, 0));
+    assertThrows(IllegalArgumentException.class, () -> new LedgerRepository(null, 1));
+  }
+}
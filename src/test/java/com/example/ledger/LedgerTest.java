@@ -387,4 +387,116 @@ public class LedgerTest {
         "Testing getDateRange exception message");
 
   }
+
+  /**
+   * Tests adding many entries at once.
+   */
+  @Test
+  public void testAddEntries() {
+    Ledger expected = new Ledger(30);
+    expected.addEntry(3, 3, 2033, "Dinner out", -100);
+    expected.addEntry(1, 1, 2023, "Gift", 50);
+    expected.addEntry(3, 3, 2033, "Dinner out - friend's portion", 30);
+
+    ledger.addEntries(java.util.List.of(
+        new LedgerEntry(3, 3, 2033, "Dinner out", -100),
+        new LedgerEntry(1, 1, 2023, "Gift", 50),
+        new LedgerEntry(3, 3, 2033, "Dinner out - friend's portion", 30)));
+    assertEquals(expected, ledger);
+    assertEquals(-20, ledger.getBalance());
+    assertEquals(-50, ledger.getBalanceAt(1));
+
+    assertThrows(IllegalArgumentException.class, () -> ledger.addEntries(null));
+    assertThrows(IllegalArgumentException.class,
+        () -> ledger.addEntries(java.util.Arrays.asList((LedgerEntry) null)));
+    assertEquals(3, ledger.getNumEntries());
+  }
+
+  /**
+   * Tests merging ledgers.
+   */
+  @Test
+  public void testMerge() {
+    Ledger first = new Ledger(5);
+    first.addEntry(3, 3, 2033, "Dinner out", -100);
+    first.addEntry(1, 1, 2023, "Gift", 50);
+    Ledger second = new Ledger(5);
+    second.addEntry(2, 2, 2024, "Refund", 25);
+
+    Ledger merged = Ledger.merge(java.util.List.of(first, second), 10);
+    Ledger expected = new Ledger(10);
+    expected.addEntry(1, 1, 2023, "Gift", 50);
+    expected.addEntry(2, 2, 2024, "Refund", 25);
+    expected.addEntry(3, 3, 2033, "Dinner out", -100);
+    assertEquals(expected, merged);
+    assertEquals(2, first.getNumEntries());
+
+    assertEquals(new Ledger(3), Ledger.merge(java.util.List.of(), 3));
+    assertThrows(IllegalArgumentException.class, () -> Ledger.merge(null, 10));
+    assertThrows(IllegalArgumentException.class,
+        () -> Ledger.merge(java.util.Arrays.asList(first, null), 10));
+    assertThrows(IllegalArgumentException.class,
+        () -> Ledger.merge(java.util.List.of(first), 0));
+  }
+
+  /**
+   * Tests that hashCode and the version follow the entries however they
+   * were added.
+   */
+  @Test
+  public void testHashCodeAndVersion() {
+    Ledger ledger = new Ledger(10);
+    assertEquals(0, ledger.getVersion());
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    assertEquals(2, ledger.getVersion());
+
+    Ledger other = new Ledger(10);
+    other.addEntries(java.util.List.of(new LedgerEntry(1, 1, 2023, "Gift", 50),
+        new LedgerEntry(3, 3, 2033, "Dinner out", -100)));
+    assertEquals(ledger, other);
+    assertEquals(ledger.hashCode(), other.hashCode());
+    assertEquals(ledger.getContentHash(), other.getContentHash());
+    assertEquals(ledger.hashCode(), ledger.copy().hashCode());
+
+    // Same size and balance, different entries
+    Ledger swapped = new Ledger(10);
+    swapped.addEntry(3, 3, 2033, "Dinner out", 50);
+    swapped.addEntry(1, 1, 2023, "Gift", -100);
+    assertNotEquals(ledger.getContentHash(), swapped.getContentHash());
+    assertNotEquals(ledger, swapped);
+
+    int before = ledger.hashCode();
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    assertNotEquals(before, ledger.hashCode());
+    assertEquals(3, ledger.getVersion());
+    assertNotEquals(ledger.hashCode(), new Ledger(11).hashCode());
+  }
+
+  /**
+   * Tests that the add sequence follows entries added in and out of order,
+   * one at a time and in batches, and restores the same add order.
+   */
+  @Test
+  public void testAddSequence() {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    assertNull(ledger.getAddSequence());
+
+    ledger.addEntries(java.util.List.of(new LedgerEntry(3, 3, 2033, "Dinner out", -100),
+        new LedgerEntry(1, 1, 2023, "Gift", 50),
+        new LedgerEntry(2, 1, 2024, "Rent", -40)));
+    assertArrayEquals(new int[] { 0, 3, 4, 1, 2 }, ledger.getAddSequence());
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(4, 4, 2040, "Bonus", 10);
+    assertArrayEquals(new int[] { 0, 3, 5, 4, 1, 2, 6 }, ledger.getAddSequence());
+    assertArrayEquals(ledger.getAddSequence(), ledger.copy().getAddSequence());
+
+    Ledger restored = Ledger.fromEntries(20, ledger.getEntries(), ledger.getAddSequence());
+    assertEquals(ledger, restored);
+    assertEquals(ledger.getEntriesAddedSince(0), restored.getEntriesAddedSince(0));
+    assertArrayEquals(ledger.getAddSequence(), restored.getAddSequence());
+    assertEquals(ledger.getBalanceAt(6), restored.getBalanceAt(6));
+  }
 }
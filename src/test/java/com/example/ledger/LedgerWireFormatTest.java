@@ -0,0 +1,152 @@
+package com.example.ledger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests LedgerWireFormat
+ *
+ * @author Zakariya Mohamed
+ */
+public class LedgerWireFormatTest {
+
+  /**
+   * Encodes a ledger.
+   *
+   * @param ledger the ledger
+   * @return the encoded bytes
+   * @throws IOException if encoding fails
+   */
+  private static byte[] encode(Ledger ledger) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    LedgerWireFormat.write(output, ledger);
+    return output.toByteArray();
+  }
+
+  /**
+   * Tests that ledgers decode equal to what was encoded, and that repeated
+   * descriptions and close dates encode compactly.
+   *
+   * @throws IOException if encoding fails
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<LedgerEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      entries.add(new LedgerEntry(1 + i % 12, 1 + i % 28, 2020 + i % 30,
+          i % 2 == 0 ? "Rent" : "Café", i % 3 == 0 ? -70000 - i : 25 + i));
+    }
+    Ledger ledger = new Ledger(5000);
+    ledger.addEntries(entries);
+    byte[] encoded = encode(ledger);
+    Ledger decoded = LedgerWireFormat.read(new ByteArrayInputStream(encoded), 3000);
+    assertEquals(ledger, decoded);
+    assertEquals(5000, decoded.getCapacity());
+    assertTrue(encoded.length < 3000 * 8, "encoded size " + encoded.length);
+
+    Ledger empty = new Ledger(7);
+    assertEquals(empty, LedgerWireFormat.read(new ByteArrayInputStream(encode(empty)), 1));
+  }
+
+  /**
+   * Tests that unsorted entries are sorted on decoding.
+   *
+   * @throws IOException if decoding fails
+   */
+  @Test
+  public void testUnsortedInput() throws IOException {
+    // Two entries: 20240202 "B" 25, then 20230101 "A" 50
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    output.write(new byte[] {0x4C, 0x44, 0x47, 0x57, 1, 20, 2, 2, 1, 'B', 1, 'A'});
+    writeVarint(output, 20240202 << 1);
+    output.write(new byte[] {0, 50});
+    writeVarint(output, (20240202 - 20230101) * 2 - 1);
+    output.write(new byte[] {1, 100});
+
+    Ledger decoded = LedgerWireFormat.read(new ByteArrayInputStream(output.toByteArray()), 10);
+    Ledger expected = new Ledger(20);
+    expected.addEntry(1, 1, 2023, "A", 50);
+    expected.addEntry(2, 2, 2024, "B", 25);
+    assertEquals(expected, decoded);
+    assertEquals(75, decoded.getBalanceAt(1));
+  }
+
+  /**
+   * Tests that the add order survives a round trip, and that an invalid add
+   * order is rejected.
+   *
+   * @throws IOException if encoding fails
+   */
+  @Test
+  public void testAddOrderRoundTrip() throws IOException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(3, 3, 2033, "Dinner out", -100);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    byte[] encoded = encode(ledger);
+
+    Ledger decoded = LedgerWireFormat.read(new ByteArrayInputStream(encoded), 10);
+    assertEquals(ledger, decoded);
+    assertEquals(ledger.getEntriesAddedSince(1), decoded.getEntriesAddedSince(1));
+
+    // Positions are [1, 2, 0]; the last, 0 - 2, becomes 1 - 2, repeating 1
+    byte[] repeated = encoded.clone();
+    repeated[repeated.length - 1] = 1;
+    assertEquals("Invalid ledger data", assertThrows(IllegalArgumentException.class,
+        () -> LedgerWireFormat.read(new ByteArrayInputStream(repeated), 10)).getMessage());
+  }
+
+  /**
+   * Tests the entry limit and malformed data.
+   *
+   * @throws IOException if encoding fails
+   */
+  @Test
+  public void testExceptions() throws IOException {
+    Ledger ledger = new Ledger(20);
+    ledger.addEntry(1, 1, 2023, "Gift", 50);
+    ledger.addEntry(2, 2, 2024, "Refund", 25);
+    byte[] encoded = encode(ledger);
+
+    assertEquals("Too many entries: limit is 1", assertThrows(IllegalArgumentException.class,
+        () -> LedgerWireFormat.read(new ByteArrayInputStream(encoded), 1)).getMessage());
+    assertThrows(EOFException.class, () -> LedgerWireFormat.read(
+        new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1)), 10));
+    byte[] badMagic = encoded.clone();
+    badMagic[0] = 0;
+    assertEquals("Invalid ledger data", assertThrows(IllegalArgumentException.class,
+        () -> LedgerWireFormat.read(new ByteArrayInputStream(badMagic), 10)).getMessage());
+    byte[] badVersion = encoded.clone();
+    badVersion[4] = 9;
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerWireFormat.read(new ByteArrayInputStream(badVersion), 10));
+    assertThrows(IllegalArgumentException.class, () -> LedgerWireFormat.read(
+        new ByteArrayInputStream(new byte[] {0x4C, 0x44, 0x47, 0x57, 1, 1, 1, 2}), 10));
+    assertThrows(IllegalArgumentException.class,
+        () -> LedgerWireFormat.write(new ByteArrayOutputStream(), null));
+    assertThrows(IllegalArgumentException.class, () -> LedgerWireFormat.read(null, 10));
+  }
+
+  /**
+   * Writes an unsigned varint.
+   *
+   * @param output the stream
+   * @param value  the value
+   */
+  private static void writeVarint(ByteArrayOutputStream output, int value) {
+    while ((value & ~0x7F) != 0) {
+      output.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    output.write(value);
+  }
+}